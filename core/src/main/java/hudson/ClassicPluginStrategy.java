@@ -215,6 +215,13 @@ public class ClassicPluginStrategy implements PluginStrategy {
                 return classLoader;
             }
         }
+        if (useIndexedClassLoader) {
+            try {
+                return new IndexedJarClassLoader(paths, parent);
+            } catch (IOException e) {
+                LOGGER.log(Level.WARNING, "Failed to index "+paths+"; falling back to the default class loader", e);
+            }
+        }
         if(useAntClassLoader && !Closeable.class.isAssignableFrom(URLClassLoader.class)) {
             // using AntClassLoader with Closeable so that we can predictably release jar files opened by URLClassLoader
             AntClassLoader2 classLoader = new AntClassLoader2(parent);
@@ -638,5 +645,10 @@ public class ClassicPluginStrategy implements PluginStrategy {
     }
 
     public static boolean useAntClassLoader = Boolean.getBoolean(ClassicPluginStrategy.class.getName()+".useAntClassLoader");
+
+    /**
+     * Whether plugins get {@link IndexedJarClassLoader}s.
+     */
+    public static boolean useIndexedClassLoader = Boolean.getBoolean(ClassicPluginStrategy.class.getName()+".useIndexedClassLoader");
     private static final Logger LOGGER = Logger.getLogger(ClassicPluginStrategy.class.getName());
 }
@@ -261,6 +261,9 @@ public abstract class ExtensionFinder implements ExtensionPoint {
                 extensionAnnotations.put(gea.annotationType,gea);
             }
 
+            // get the classes loaded in parallel, as the module below goes through them one by one.
+            // instances are still created the first time each extension list is asked for
+            ExtensionPreloader.preload(extensionAnnotations.keySet());
             sezpozIndex = loadSezpozIndices(Jenkins.getInstance().getPluginManager().uberClassLoader);
 
             List<Module> modules = new ArrayList<Module>();
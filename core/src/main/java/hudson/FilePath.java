@@ -28,6 +28,9 @@ package hudson;
 import hudson.Launcher.LocalLauncher;
 import hudson.Launcher.RemoteLauncher;
 import jenkins.model.Jenkins;
+import jenkins.util.io.DigestCache;
+import jenkins.util.io.TransferHistory;
+import jenkins.util.io.TransferStatistics;
 import hudson.model.TaskListener;
 import hudson.model.AbstractProject;
 import hudson.model.Item;
@@ -41,7 +44,9 @@ import hudson.remoting.VirtualChannel;
 import hudson.remoting.RemoteInputStream;
 import hudson.remoting.Which;
 import hudson.security.AccessControlled;
+import hudson.slaves.TransferCompressionNodeProperty;
 import hudson.util.DirScanner;
+import hudson.util.FileVisitor;
 import hudson.util.IOException2;
 import hudson.util.HeadBufferingStream;
 import hudson.util.FormValidation;
@@ -53,6 +58,8 @@ import static hudson.FilePath.TarCompression.GZIP;
 import hudson.org.apache.tools.tar.TarInputStream;
 import hudson.util.io.Archiver;
 import hudson.util.io.ArchiverFactory;
+import hudson.util.io.BlockSignature;
+import hudson.util.io.DeltaArchiver;
 import org.apache.tools.ant.BuildException;
 import org.apache.tools.ant.DirectoryScanner;
 import org.apache.tools.ant.Project;
@@ -60,6 +67,7 @@ import org.apache.tools.ant.taskdefs.Copy;
 import org.apache.tools.ant.types.FileSet;
 import org.apache.tools.tar.TarEntry;
 import org.apache.commons.io.input.CountingInputStream;
+import org.apache.commons.io.output.CountingOutputStream;
 import org.apache.commons.fileupload.FileItem;
 import org.kohsuke.stapler.Stapler;
 import java.io.BufferedOutputStream;
@@ -67,6 +75,7 @@ import java.io.File;
 import java.io.FileFilter;
 import java.io.FileInputStream;
 import java.io.FileOutputStream;
+import java.io.FilterInputStream;
 import java.io.FileWriter;
 import java.io.IOException;
 import java.io.InputStream;
@@ -82,7 +91,9 @@ import java.net.URI;
 import java.net.URL;
 import java.net.URLConnection;
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.StringTokenizer;
 import java.util.Arrays;
 import java.util.Comparator;
@@ -92,6 +103,7 @@ import java.util.regex.Pattern;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.TimeoutException;
+import java.util.zip.Deflater;
 import java.util.zip.GZIPOutputStream;
 import java.util.zip.GZIPInputStream;
 
@@ -630,6 +642,27 @@ public final class FilePath implements Serializable {
             public OutputStream compress(OutputStream out) throws IOException {
                 return new GZIPOutputStream(new BufferedOutputStream(out));
             }
+        },
+        /**
+         * gzip at the fastest compression level.
+         *
+         * <p>
+         * This trades some compression ratio for a lot less CPU time, which is a better deal
+         * on fast networks. The output is a regular gzip stream.
+         *
+         * @since 1.519
+         */
+        FAST {
+            public InputStream extract(InputStream in) throws IOException {
+                return GZIP.extract(in);
+            }
+            public OutputStream compress(OutputStream out) throws IOException {
+                return new GZIPOutputStream(new BufferedOutputStream(out)) {
+                    {
+                        def.setLevel(Deflater.BEST_SPEED);
+                    }
+                };
+            }
         };
 
         public abstract InputStream extract(InputStream in) throws IOException;
@@ -998,6 +1031,30 @@ public final class FilePath implements Serializable {
         }
     }
 
+    /**
+     * Takes a {@link FilePath}+{@link FileCallable} pair and returns the equivalent {@link Callable}.
+     * When executing the resulting {@link Callable}, it executes {@link #act(FileCallable)}
+     * on this {@link FilePath}.
+     *
+     * <p>
+     * This is useful for sending the {@link FileCallable} to the node as a part of a bigger request.
+     *
+     * @since 1.519
+     */
+    public <V> Callable<V,IOException> asCallableWith(final FileCallable<V> task) {
+        return new Callable<V,IOException>() {
+            public V call() throws IOException {
+                try {
+                    return act(task);
+                } catch (InterruptedException e) {
+                    throw new TunneledInterruptedException(e);
+                }
+            }
+
+            private static final long serialVersionUID = 1L;
+        };
+    }
+
     /**
      * Converts this file to the URI, relative to the machine
      * on which this file is available.
@@ -1588,6 +1645,99 @@ public final class FilePath implements Serializable {
         return p.getIn();
     }
 
+    /**
+     * Reads a part of this file.
+     *
+     * <p>
+     * When the file is on a remote node, only the requested part is sent over the channel.
+     * Like {@link #read()}, the data is streamed through a {@link Pipe}, so the remote side
+     * doesn't get ahead of the reader by more than the pipe window.
+     *
+     * @param offset
+     *      Position in the file to start reading from.
+     * @param length
+     *      Number of bytes to read. The stream ends earlier if the file is shorter.
+     * @since 1.519
+     */
+    public InputStream read(final long offset, final long length) throws IOException {
+        if(channel==null) {
+            FileInputStream fis = new FileInputStream(new File(remote));
+            try {
+                fis.getChannel().position(offset);
+            } catch (IOException e) {
+                IOUtils.closeQuietly(fis);
+                throw e;
+            } catch (RuntimeException e) {
+                IOUtils.closeQuietly(fis);
+                throw e;
+            }
+            return new RangeInputStream(fis,length);
+        }
+
+        final Pipe p = Pipe.createRemoteToLocal();
+        channel.callAsync(new Callable<Void,IOException>() {
+            private static final long serialVersionUID = 1L;
+            public Void call() throws IOException {
+                InputStream in=null;
+                try {
+                    in = read(offset,length); // we are local to the file now
+                    Util.copyStream(in,p.getOut());
+                    return null;
+                } finally {
+                    IOUtils.closeQuietly(in);
+                    IOUtils.closeQuietly(p.getOut());
+                }
+            }
+        });
+
+        return p.getIn();
+    }
+
+    /**
+     * {@link InputStream} that reads up to the given number of bytes from another stream.
+     */
+    private static final class RangeInputStream extends FilterInputStream {
+        private long remaining;
+
+        RangeInputStream(InputStream in, long length) {
+            super(in);
+            this.remaining = length;
+        }
+
+        @Override
+        public int read() throws IOException {
+            if (remaining<=0)   return -1;
+            int b = super.read();
+            if (b>=0)   remaining--;
+            return b;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            if (remaining<=0)   return -1;
+            int n = super.read(b,off,(int)Math.min(len,remaining));
+            if (n>0)    remaining-=n;
+            return n;
+        }
+
+        @Override
+        public long skip(long n) throws IOException {
+            long r = super.skip(Math.min(n,remaining));
+            remaining -= r;
+            return r;
+        }
+
+        @Override
+        public int available() throws IOException {
+            return (int)Math.min(super.available(),remaining);
+        }
+
+        @Override
+        public boolean markSupported() {
+            return false;
+        }
+    }
+
     /**
      * Reads this file into a string, by using the current system encoding.
      */
@@ -1659,11 +1809,17 @@ public final class FilePath implements Serializable {
 
     /**
      * Computes the MD5 digest of the file in hex string.
+     *
+     * <p>
+     * Digests of files that haven't changed since the last computation are served from {@link DigestCache}.
      */
     public String digest() throws IOException, InterruptedException {
         return act(new FileCallable<String>() {
             private static final long serialVersionUID = 1L;
             public String invoke(File f, VirtualChannel channel) throws IOException {
+                DigestCache cache = DigestCache.get();
+                if (cache!=null)
+                    return cache.digest(f);
                 return Util.getDigestOf(new BufferedInputStream(new FileInputStream(f)));
             }
         });
@@ -1890,41 +2046,50 @@ public final class FilePath implements Serializable {
         if(this.channel==null) {
             // local -> remote copy
             final Pipe pipe = Pipe.createLocalToRemote();
+            final TarCompression compression = TransferCompressionNodeProperty.forChannel(target.channel);
+            long start = System.currentTimeMillis();
 
             Future<Void> future = target.actAsync(new FileCallable<Void>() {
                 private static final long serialVersionUID = 1L;
                 public Void invoke(File f, VirtualChannel channel) throws IOException {
                     try {
-                        readFromTar(remote+'/'+fileMask, f,TarCompression.GZIP.extract(pipe.getIn()));
+                        readFromTar(remote+'/'+fileMask, f,compression.extract(pipe.getIn()));
                         return null;
                     } finally {
                         pipe.getIn().close();
                     }
                 }
             });
-            int r = writeToTar(new File(remote),fileMask,excludes,TarCompression.GZIP.compress(pipe.getOut()));
+            CountingOutputStream wire = new CountingOutputStream(pipe.getOut());
+            CountingOutputStream raw = new CountingOutputStream(compression.compress(wire));
+            int r = writeToTar(new File(remote),fileMask,excludes,raw);
             try {
                 future.get();
             } catch (ExecutionException e) {
                 throw new IOException2(e);
             }
+            recordTransfer(target.channel,compression,raw.getByteCount(),wire.getByteCount(),start);
             return r;
         } else {
             // remote -> local copy
             final Pipe pipe = Pipe.createRemoteToLocal();
+            final TarCompression compression = TransferCompressionNodeProperty.forChannel(channel);
+            long start = System.currentTimeMillis();
 
             Future<Integer> future = actAsync(new FileCallable<Integer>() {
                 private static final long serialVersionUID = 1L;
                 public Integer invoke(File f, VirtualChannel channel) throws IOException {
                     try {
-                        return writeToTar(f,fileMask,excludes,TarCompression.GZIP.compress(pipe.getOut()));
+                        return writeToTar(f,fileMask,excludes,compression.compress(pipe.getOut()));
                     } finally {
                         pipe.getOut().close();
                     }
                 }
             });
+            CountingInputStream wire = new CountingInputStream(pipe.getIn());
+            CountingInputStream raw = new CountingInputStream(compression.extract(wire));
             try {
-                readFromTar(remote+'/'+fileMask,new File(target.remote),TarCompression.GZIP.extract(pipe.getIn()));
+                readFromTar(remote+'/'+fileMask,new File(target.remote),raw);
             } catch (IOException e) {// BuildException or IOException
                 try {
                     future.get(3,TimeUnit.SECONDS);
@@ -1938,7 +2103,9 @@ public final class FilePath implements Serializable {
                 }
             }
             try {
-                return future.get();
+                int r = future.get();
+                recordTransfer(channel,compression,raw.getByteCount(),wire.getByteCount(),start);
+                return r;
             } catch (ExecutionException e) {
                 throw new IOException2(e);
             }
@@ -1946,6 +2113,159 @@ public final class FilePath implements Serializable {
     }
 
 
+    /**
+     * Copies the files that match the given file mask to the specified target node,
+     * like {@link #copyRecursiveTo(String, String, FilePath)}, but only sends the differences
+     * from what the target directory already has.
+     *
+     * <p>
+     * The target first computes {@link BlockSignature}s of the files it already has,
+     * then the source sends only the blocks that the target doesn't have, in the manner of rsync.
+     * Files that have the same length and timestamp on both sides are not sent at all,
+     * and small files are simply sent in full.
+     *
+     * <p>
+     * This costs an extra round-trip and reading the existing files on the target side,
+     * so it's only worth it when the target is expected to already have similar contents,
+     * such as when refreshing a previous copy.
+     *
+     * @param excludes
+     *      Files to be excluded. Can be null.
+     * @return
+     *      the number of files copied, including those that were already up to date.
+     * @since 1.519
+     */
+    public int copyRecursiveDeltaTo(final String fileMask, final String excludes, final FilePath target) throws IOException, InterruptedException {
+        if(this.channel==target.channel) {
+            // no wire to save bandwidth on
+            return copyRecursiveTo(fileMask,excludes,target);
+        }
+
+        final List<String> files = act(new FileCallable<List<String>>() {
+            private static final long serialVersionUID = 1L;
+            public List<String> invoke(File base, VirtualChannel channel) throws IOException {
+                final List<String> r = new ArrayList<String>();
+                new DirScanner.Glob(fileMask,excludes).scan(base,new FileVisitor() {
+                    public void visit(File f, String relativePath) throws IOException {
+                        if (f.isFile())
+                            r.add(relativePath.replace('\\','/'));
+                    }
+                });
+                return r;
+            }
+        });
+
+        final HashMap<String,BlockSignature> signatures = target.act(new FileCallable<HashMap<String,BlockSignature>>() {
+            private static final long serialVersionUID = 1L;
+            public HashMap<String,BlockSignature> invoke(File base, VirtualChannel channel) throws IOException {
+                HashMap<String,BlockSignature> r = new HashMap<String,BlockSignature>();
+                for (String path : files) {
+                    File f = new File(base,path);
+                    if (f.isFile())
+                        r.put(path,BlockSignature.compute(f));
+                }
+                return r;
+            }
+        });
+
+        if(this.channel==null) {
+            // local -> remote copy
+            final Pipe pipe = Pipe.createLocalToRemote();
+            final TarCompression compression = TransferCompressionNodeProperty.forChannel(target.channel);
+            long start = System.currentTimeMillis();
+
+            Future<Void> future = target.actAsync(new FileCallable<Void>() {
+                private static final long serialVersionUID = 1L;
+                public Void invoke(File f, VirtualChannel channel) throws IOException {
+                    try {
+                        DeltaArchiver.extract(f,compression.extract(pipe.getIn()));
+                        return null;
+                    } finally {
+                        pipe.getIn().close();
+                    }
+                }
+            });
+            CountingOutputStream wire = new CountingOutputStream(pipe.getOut());
+            CountingOutputStream raw = new CountingOutputStream(compression.compress(wire));
+            int r = writeToDelta(new File(remote),fileMask,excludes,signatures,raw);
+            try {
+                future.get();
+            } catch (ExecutionException e) {
+                throw new IOException2(e);
+            }
+            recordTransfer(target.channel,compression,raw.getByteCount(),wire.getByteCount(),start);
+            return r;
+        } else {
+            // remote -> local copy
+            final Pipe pipe = Pipe.createRemoteToLocal();
+            final TarCompression compression = TransferCompressionNodeProperty.forChannel(channel);
+            long start = System.currentTimeMillis();
+
+            Future<Integer> future = actAsync(new FileCallable<Integer>() {
+                private static final long serialVersionUID = 1L;
+                public Integer invoke(File f, VirtualChannel channel) throws IOException {
+                    try {
+                        return writeToDelta(f,fileMask,excludes,signatures,compression.compress(pipe.getOut()));
+                    } finally {
+                        pipe.getOut().close();
+                    }
+                }
+            });
+            CountingInputStream wire = new CountingInputStream(pipe.getIn());
+            CountingInputStream raw = new CountingInputStream(compression.extract(wire));
+            try {
+                DeltaArchiver.extract(new File(target.remote),raw);
+            } catch (IOException e) {
+                try {
+                    future.get(3,TimeUnit.SECONDS);
+                    throw e;    // the remote side completed successfully, so the error must be local
+                } catch (ExecutionException x) {
+                    // report both errors
+                    throw new IOException2(Functions.printThrowable(e),x);
+                } catch (TimeoutException _) {
+                    // remote is hanging
+                    throw e;
+                }
+            }
+            try {
+                int r = future.get();
+                recordTransfer(channel,compression,raw.getByteCount(),wire.getByteCount(),start);
+                return r;
+            } catch (ExecutionException e) {
+                throw new IOException2(e);
+            }
+        }
+    }
+
+    /**
+     * Writes the files to a delta stream against the given signatures.
+     *
+     * @return
+     *      number of files/directories that are written.
+     */
+    private static Integer writeToDelta(File baseDir, String fileMask, String excludes, Map<String,BlockSignature> signatures, OutputStream out) throws IOException {
+        DeltaArchiver da = new DeltaArchiver(out,signatures);
+        try {
+            new DirScanner.Glob(fileMask,excludes).scan(baseDir,da);
+        } finally {
+            da.close();
+        }
+        LOGGER.log(Level.FINE, "Delta copy of {0}: {1} bytes sent, {2} bytes reused, {3} files unchanged",
+                new Object[]{baseDir, da.getLiteralBytes(), da.getReusedBytes(), da.getSkippedFiles()});
+        return da.countEntries();
+    }
+
+    /**
+     * Reports the statistics of a completed transfer over the channel.
+     */
+    private static void recordTransfer(VirtualChannel channel, TarCompression compression, long rawBytes, long wireBytes, long start) {
+        TransferStatistics s = new TransferStatistics(compression,rawBytes,wireBytes,System.currentTimeMillis()-start);
+        LOGGER.log(Level.FINE, "Transfer over {0}: {1}", new Object[]{channel,s});
+        if (channel instanceof Channel)
+            TransferHistory.of((Channel)channel).record(s);
+    }
+
+
     /**
      * Writes files in 'this' directory to a tar stream.
      *
@@ -2364,6 +2684,25 @@ public final class FilePath implements Serializable {
 
     public static int SIDE_BUFFER_SIZE = 1024;
 
+    /**
+     * Compression used by {@link #copyRecursiveTo(String, String, FilePath)} when transferring files between nodes,
+     * unless the node is configured otherwise through {@link TransferCompressionNodeProperty}.
+     *
+     * @since 1.519
+     */
+    public static TarCompression TRANSFER_COMPRESSION = GZIP;
+
+    static {
+        String c = System.getProperty(FilePath.class.getName()+".transferCompression");
+        if (c!=null) {
+            try {
+                TRANSFER_COMPRESSION = TarCompression.valueOf(c);
+            } catch (IllegalArgumentException e) {
+                Logger.getLogger(FilePath.class.getName()).warning("Unknown compression "+c+", using "+TRANSFER_COMPRESSION);
+            }
+        }
+    }
+
     private static final Logger LOGGER = Logger.getLogger(FilePath.class.getName());
 
     /**
@@ -0,0 +1,574 @@
+package hudson;
+
+import org.apache.commons.io.FileUtils;
+
+import java.io.ByteArrayInputStream;
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.reflect.Method;
+import java.net.JarURLConnection;
+import java.net.MalformedURLException;
+import java.net.URL;
+import java.net.URLConnection;
+import java.net.URLStreamHandler;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.security.CodeSource;
+import java.security.SecureClassLoader;
+import java.security.cert.Certificate;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Enumeration;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.jar.Attributes;
+import java.util.jar.Attributes.Name;
+import java.util.jar.JarFile;
+import java.util.jar.Manifest;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+
+/**
+ * Plugin class loader that indexes every entry of its jar files and directories once, when it's created,
+ * instead of walking the class path on every lookup.
+ *
+ * <p>
+ * The jars are memory-mapped and stay open for the life of the class loader, and classes and resources are read
+ * straight out of the mapping, so looking things up doesn't open any files. {@link #close()} unmaps them right away
+ * where the JVM allows that, so that the jars aren't held open, and locked on Windows, until the next garbage collection. The URLs of resources are created once,
+ * and they are ordinary {@code jar:} URLs that read from the same mapping when opened.
+ *
+ * <p>
+ * Enabled with {@code -Dhudson.ClassicPluginStrategy.useIndexedClassLoader=true}.
+ * Signatures of signed jars aren't verified, as plugins aren't signed. Jars in the ZIP64 format aren't supported,
+ * and make {@link ClassicPluginStrategy} fall back to the usual class loader.
+ *
+ * @since 1.519
+ */
+final class IndexedJarClassLoader extends SecureClassLoader implements Closeable {
+    private final List<Source> sources = new ArrayList<Source>();
+
+    /**
+     * Entries by their names. Those further down the class path are chained from the first one.
+     */
+    private final Map<String,Entry> entries = new HashMap<String,Entry>();
+
+    private final Set<String> packages = new HashSet<String>();
+
+    private final ConcurrentMap<String,URL> urls = new ConcurrentHashMap<String,URL>();
+
+    IndexedJarClassLoader(List<File> paths, ClassLoader parent) throws IOException {
+        super(parent);
+        boolean success = false;
+        try {
+            Set<File> visited = new HashSet<File>();
+            for (File f : paths)
+                add(f, visited);
+            success = true;
+        } finally {
+            if (!success)
+                close();
+        }
+    }
+
+    private void add(File f, Set<File> visited) throws IOException {
+        if (!visited.add(f))    return;
+        if (f.isDirectory()) {
+            DirSource d = new DirSource(f);
+            sources.add(d);
+            d.scan(f, "");
+            return;
+        }
+        if (!f.isFile())    return;
+
+        JarSource j = new JarSource(f);
+        sources.add(j);
+        j.scan();
+
+        // like URLClassLoader, look into the jars the manifest refers to
+        Manifest m = j.manifest;
+        String cp = m==null ? null : m.getMainAttributes().getValue(Name.CLASS_PATH);
+        if (cp!=null)
+            for (String s : cp.trim().split(" +"))
+                if (s.length()>0)
+                    add(new File(f.getParentFile(), s), visited);
+    }
+
+    private void index(Entry e) {
+        Entry head = entries.get(e.name);
+        if (head==null) {
+            entries.put(e.name, e);
+        } else {
+            while (head.next!=null)
+                head = head.next;
+            head.next = e;
+        }
+        if (e.name.endsWith(".class")) {
+            int idx = e.name.lastIndexOf('/');
+            packages.add(idx<0 ? "" : e.name.substring(0,idx).replace('/','.'));
+        }
+    }
+
+    /**
+     * Packages this class loader has classes in, not counting those of its parents.
+     */
+    Set<String> getPackageNames() {
+        return Collections.unmodifiableSet(packages);
+    }
+
+    @Override
+    protected Class<?> findClass(String name) throws ClassNotFoundException {
+        Entry e = entries.get(name.replace('.','/')+".class");
+        if (e==null)
+            throw new ClassNotFoundException(name);
+        try {
+            byte[] b = e.read();
+            int idx = name.lastIndexOf('.');
+            if (idx>0)
+                definePackage(name.substring(0,idx), e.source);
+            return defineClass(name, b, 0, b.length, e.source.codeSource);
+        } catch (IOException x) {
+            throw new ClassNotFoundException(name, x);
+        }
+    }
+
+    private void definePackage(String pkg, Source s) {
+        if (getPackage(pkg)!=null)  return;
+        Manifest m = s.manifest;
+        if (m==null) {
+            definePackage(pkg, null, null, null, null, null, null, null);
+            return;
+        }
+        Attributes main = m.getMainAttributes();
+        Attributes sect = m.getAttributes(pkg.replace('.','/')+'/');
+        definePackage(pkg,
+                attribute(Name.SPECIFICATION_TITLE, sect, main),
+                attribute(Name.SPECIFICATION_VERSION, sect, main),
+                attribute(Name.SPECIFICATION_VENDOR, sect, main),
+                attribute(Name.IMPLEMENTATION_TITLE, sect, main),
+                attribute(Name.IMPLEMENTATION_VERSION, sect, main),
+                attribute(Name.IMPLEMENTATION_VENDOR, sect, main),
+                null);
+    }
+
+    private static String attribute(Name name, Attributes sect, Attributes main) {
+        String v = sect==null ? null : sect.getValue(name);
+        return v!=null ? v : main.getValue(name);
+    }
+
+    @Override
+    protected URL findResource(String name) {
+        URL u = urls.get(name);
+        if (u!=null)    return u;
+        Entry e = entries.get(name);
+        if (e==null)    return null;
+        u = e.url();
+        urls.put(name, u);
+        return u;
+    }
+
+    @Override
+    protected Enumeration<URL> findResources(String name) throws IOException {
+        List<URL> r = new ArrayList<URL>();
+        Entry e = entries.get(name);
+        if (e!=null) {
+            r.add(findResource(name));
+            for (e=e.next; e!=null; e=e.next)
+                r.add(e.url());
+        }
+        return Collections.enumeration(r);
+    }
+
+    public void close() throws IOException {
+        for (Source s : sources)
+            s.close();
+    }
+
+    @Override
+    public String toString() {
+        return super.toString()+sources;
+    }
+
+    /**
+     * A jar file or a directory on the class path.
+     */
+    private static abstract class Source {
+        final File file;
+        final CodeSource codeSource;
+        Manifest manifest;
+
+        Source(File file) throws MalformedURLException {
+            this.file = file;
+            this.codeSource = new CodeSource(file.toURI().toURL(), (Certificate[])null);
+        }
+
+        void close() throws IOException {}
+
+        @Override
+        public String toString() {
+            return file.toString();
+        }
+    }
+
+    private abstract static class Entry {
+        final Source source;
+        final String name;
+        Entry next;
+
+        Entry(Source source, String name) {
+            this.source = source;
+            this.name = name;
+        }
+
+        abstract byte[] read() throws IOException;
+
+        abstract URL url();
+    }
+
+    private final class DirSource extends Source {
+        DirSource(File dir) throws IOException {
+            super(dir);
+            File mf = new File(dir, JarFile.MANIFEST_NAME);
+            if (mf.isFile()) {
+                InputStream in = new FileInputStream(mf);
+                try {
+                    manifest = new Manifest(in);
+                } finally {
+                    in.close();
+                }
+            }
+        }
+
+        void scan(File dir, String prefix) {
+            File[] children = dir.listFiles();
+            if (children==null) return;
+            for (File c : children) {
+                String name = prefix+c.getName();
+                if (c.isDirectory()) {
+                    index(new FileEntry(this, name+'/', c));
+                    scan(c, name+'/');
+                } else {
+                    index(new FileEntry(this, name, c));
+                }
+            }
+        }
+    }
+
+    private static final class FileEntry extends Entry {
+        private final File file;
+
+        FileEntry(Source source, String name, File file) {
+            super(source, name);
+            this.file = file;
+        }
+
+        byte[] read() throws IOException {
+            return FileUtils.readFileToByteArray(file);
+        }
+
+        URL url() {
+            try {
+                return file.toURI().toURL();
+            } catch (MalformedURLException e) {
+                throw new AssertionError(e);
+            }
+        }
+    }
+
+    private final class JarSource extends Source {
+        private final FileInputStream in;
+        private final FileChannel channel;
+        /**
+         * Null if the jar couldn't be mapped, in which case it's read from {@link #channel}.
+         * Guarded by {@link #mappingLock}, since reading the mapping after it's released crashes the JVM.
+         */
+        private ByteBuffer mapped;
+        private final ReadWriteLock mappingLock = new ReentrantReadWriteLock();
+        private final String base;
+        private final URLStreamHandler handler = new Handler();
+        /**
+         * Opened on demand for {@link Connection#getJarFile()}.
+         */
+        private JarFile jarFile;
+
+        JarSource(File jar) throws IOException {
+            super(jar);
+            base = "jar:"+jar.toURI().toURL()+"!/";
+            in = new FileInputStream(jar);
+            channel = in.getChannel();
+            Lock l = mappingLock.writeLock();
+            l.lock();
+            try {
+                long size = channel.size();
+                if (size<=Integer.MAX_VALUE)
+                    mapped = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+            } catch (IOException e) {
+                // most likely out of address space. reading works just as well
+            } finally {
+                l.unlock();
+            }
+        }
+
+        /**
+         * Gets the given range of the jar file, in the byte order of ZIP.
+         */
+        ByteBuffer read(long pos, int len) throws IOException {
+            ByteBuffer b = ByteBuffer.allocate(len);
+            // copied out, so that nothing refers to the mapping once close() releases it
+            Lock l = mappingLock.readLock();
+            l.lock();
+            try {
+                ByteBuffer m = mapped;
+                if (m!=null) {
+                    ByteBuffer d = m.duplicate();
+                    d.limit((int)pos+len);
+                    d.position((int)pos);
+                    b.put(d);
+                } else {
+                    while (b.hasRemaining())
+                        if (channel.read(b, pos+b.position())<0)
+                            throw new IOException("Unexpected end of "+file);
+                }
+            } finally {
+                l.unlock();
+            }
+            b.flip();
+            return b.order(ByteOrder.LITTLE_ENDIAN);
+        }
+
+        /**
+         * Reads the central directory of the jar.
+         */
+        void scan() throws IOException {
+            long size = channel.size();
+            int tail = (int)Math.min(size, 0xFFFF+22);
+            ByteBuffer t = read(size-tail, tail);
+            int eocd = -1;
+            for (int i=tail-22; i>=0; i--) {
+                if (t.getInt(i)==0x06054b50) {
+                    eocd = i;
+                    break;
+                }
+            }
+            if (eocd<0)
+                throw new IOException("Not a jar file: "+file);
+            int count = t.getShort(eocd+10)&0xFFFF;
+            long cdSize = t.getInt(eocd+12)&0xFFFFFFFFL;
+            long cdOffset = t.getInt(eocd+16)&0xFFFFFFFFL;
+            if (count==0xFFFF || cdOffset==0xFFFFFFFFL)
+                throw new IOException("ZIP64 isn't supported: "+file);
+
+            ByteBuffer cd = read(cdOffset, (int)cdSize);
+            int p = 0;
+            for (int i=0; i<count; i++) {
+                if (cd.getInt(p)!=0x02014b50)
+                    throw new IOException("Corrupt central directory in "+file);
+                int method = cd.getShort(p+10)&0xFFFF;
+                long csize = cd.getInt(p+20)&0xFFFFFFFFL;
+                long usize = cd.getInt(p+24)&0xFFFFFFFFL;
+                int nameLen = cd.getShort(p+28)&0xFFFF;
+                int extraLen = cd.getShort(p+30)&0xFFFF;
+                int commentLen = cd.getShort(p+32)&0xFFFF;
+                long offset = cd.getInt(p+42)&0xFFFFFFFFL;
+                byte[] name = new byte[nameLen];
+                ByteBuffer n = cd.duplicate();
+                n.position(p+46);
+                n.get(name);
+                index(new JarFileEntry(this, new String(name, "UTF-8"), method, csize, usize, offset));
+                p += 46+nameLen+extraLen+commentLen;
+            }
+
+            Entry mf = entries.get(JarFile.MANIFEST_NAME);
+            for (; mf!=null; mf=mf.next)
+                if (mf.source==this)
+                    manifest = new Manifest(new ByteArrayInputStream(mf.read()));
+        }
+
+        synchronized JarFile getJarFile() throws IOException {
+            if (jarFile==null)
+                jarFile = new JarFile(file);
+            return jarFile;
+        }
+
+        @Override
+        void close() throws IOException {
+            ByteBuffer m;
+            Lock l = mappingLock.writeLock();
+            l.lock();
+            try {
+                m = mapped;
+                mapped = null;
+            } finally {
+                l.unlock();
+            }
+            if (m!=null)
+                unmap(m);
+            in.close();
+            synchronized (this) {
+                if (jarFile!=null)
+                    jarFile.close();
+                jarFile = null;
+            }
+        }
+
+        /**
+         * Reads the entries of this jar when their URLs are opened.
+         */
+        private final class Handler extends URLStreamHandler {
+            @Override
+            protected URLConnection openConnection(URL u) throws IOException {
+                String spec = u.toExternalForm();
+                Entry e = null;
+                if (spec.startsWith(base))
+                    for (e=entries.get(spec.substring(base.length())); e!=null && e.source!=JarSource.this; e=e.next)
+                        ;
+                if (e==null)    // not one of ours. let the JDK take care of it
+                    return new URL(spec).openConnection();
+                return new Connection(u, (JarFileEntry)e);
+            }
+        }
+    }
+
+    /**
+     * Releases the mapping of the given buffer now rather than when it gets garbage collected.
+     * There's no public API for that, so if the JVM doesn't let us, it's left to the garbage collector.
+     */
+    private static void unmap(ByteBuffer b) {
+        try {
+            Method cleaner = b.getClass().getMethod("cleaner");
+            cleaner.setAccessible(true);
+            Object c = cleaner.invoke(b);
+            if (c!=null)
+                c.getClass().getMethod("clean").invoke(c);
+        } catch (Exception e) {
+            LOGGER.log(Level.FINE, "Failed to unmap a jar", e);
+        }
+    }
+
+    private static final class JarFileEntry extends Entry {
+        private final int method;
+        private final long compressedSize, size, offset;
+
+        JarFileEntry(JarSource source, String name, int method, long compressedSize, long size, long offset) {
+            super(source, name);
+            this.method = method;
+            this.compressedSize = compressedSize;
+            this.size = size;
+            this.offset = offset;
+        }
+
+        byte[] read() throws IOException {
+            JarSource jar = (JarSource)source;
+            ByteBuffer h = jar.read(offset, 30);
+            if (h.getInt(0)!=0x04034b50)
+                throw new IOException("Corrupt entry "+name+" in "+jar.file);
+            long data = offset+30+(h.getShort(26)&0xFFFF)+(h.getShort(28)&0xFFFF);
+            ByteBuffer b = jar.read(data, (int)compressedSize);
+
+            switch (method) {
+            case 0: // stored
+                byte[] r = new byte[(int)compressedSize];
+                b.get(r);
+                return r;
+            case 8: // deflated
+                // with nowrap, the inflater needs an extra byte at the end
+                byte[] in = new byte[(int)compressedSize+1];
+                b.get(in, 0, (int)compressedSize);
+                byte[] out = new byte[(int)size];
+                Inflater inf = new Inflater(true);
+                try {
+                    inf.setInput(in);
+                    int n = 0;
+                    while (n<out.length && !inf.finished()) {
+                        int c = inf.inflate(out, n, out.length-n);
+                        if (c==0 && (inf.needsInput() || inf.needsDictionary()))
+                            break;
+                        n += c;
+                    }
+                    if (n!=out.length)
+                        throw new IOException("Truncated entry "+name+" in "+jar.file);
+                    return out;
+                } catch (DataFormatException e) {
+                    throw (IOException)new IOException("Corrupt entry "+name+" in "+jar.file).initCause(e);
+                } finally {
+                    inf.end();
+                }
+            default:
+                throw new IOException("Unsupported compression method "+method+" of "+name+" in "+jar.file);
+            }
+        }
+
+        URL url() {
+            JarSource jar = (JarSource)source;
+            try {
+                return new URL(null, jar.base+name, jar.handler);
+            } catch (MalformedURLException e) {
+                throw new AssertionError(e);
+            }
+        }
+    }
+
+    /**
+     * Connection to an entry, which is still a {@link JarURLConnection} for those who look into it.
+     */
+    private static final class Connection extends JarURLConnection {
+        private final JarFileEntry entry;
+
+        Connection(URL url, JarFileEntry entry) throws MalformedURLException {
+            super(url);
+            this.entry = entry;
+        }
+
+        @Override
+        public void connect() {
+            connected = true;
+        }
+
+        @Override
+        public InputStream getInputStream() throws IOException {
+            connect();
+            return new ByteArrayInputStream(entry.read());
+        }
+
+        @Override
+        public int getContentLength() {
+            return (int)entry.size;
+        }
+
+        @Override
+        public long getLastModified() {
+            return entry.source.file.lastModified();
+        }
+
+        @Override
+        public String getContentType() {
+            String t = guessContentTypeFromName(entry.name);
+            return t!=null ? t : "content/unknown";
+        }
+
+        /**
+         * Only opens the jar file for those who really want it, and shares it among the connections to the same jar
+         * until the class loader is closed. So don't close it, just as with the caching {@link JarURLConnection}s of the JDK.
+         */
+        @Override
+        public JarFile getJarFile() throws IOException {
+            return ((JarSource)entry.source).getJarFile();
+        }
+    }
+
+    private static final Logger LOGGER = Logger.getLogger(IndexedJarClassLoader.class.getName());
+}
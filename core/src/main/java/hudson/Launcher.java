@@ -800,7 +800,7 @@ public abstract class Launcher {
             t2.start();
 
             return new Channel("locally launched channel on "+ pb.command(),
-                Computer.threadPoolForRemoting, proc.getInputStream(), proc.getOutputStream(), out) {
+                Computer.threadPoolForChannels, proc.getInputStream(), proc.getOutputStream(), out) {
 
                 /**
                  * Kill the process when the channel is severed.
@@ -864,7 +864,7 @@ public abstract class Launcher {
             OutputStream os = getChannel().call(new RemoteChannelLaunchCallable(cmd, out, err, workDir, envOverrides));
 
             return new Channel("remotely launched channel on "+channel,
-                Computer.threadPoolForRemoting, out.getIn(), new BufferedOutputStream(os));
+                Computer.threadPoolForChannels, out.getIn(), new BufferedOutputStream(os));
         }
 
         @Override
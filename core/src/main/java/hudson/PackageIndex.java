@@ -0,0 +1,122 @@
+package hudson;
+
+import org.apache.tools.ant.AntClassLoader;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.util.ArrayList;
+import java.util.Enumeration;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.jar.Attributes;
+import java.util.jar.JarEntry;
+import java.util.jar.JarFile;
+import java.util.jar.Manifest;
+
+/**
+ * The packages of the classes on the class path of a plugin class loader, read from its jar files and directories,
+ * so that {@link PluginManager.UberClassLoader} only asks the plugins that might have a class.
+ *
+ * @since 1.519
+ */
+final class PackageIndex {
+    private PackageIndex() {}
+
+    /**
+     * Lists the packages the given class loader has classes in, not counting those of its parents.
+     *
+     * @return
+     *      null if the class path of the class loader can't be figured out or read,
+     *      in which case it needs to be asked about every class.
+     */
+    static Set<String> of(ClassLoader cl) throws IOException {
+        if (cl instanceof IndexedJarClassLoader)
+            return ((IndexedJarClassLoader)cl).getPackageNames();
+
+        List<File> paths = getClassPath(cl);
+        if (paths==null)    return null;
+
+        Set<String> packages = new HashSet<String>();
+        Set<File> visited = new HashSet<File>();
+        for (File f : paths)
+            scan(f, packages, visited);
+        return packages;
+    }
+
+    /**
+     * Gets the package of the given class, or "" for the default package.
+     */
+    static String packageOf(String className) {
+        int idx = className.lastIndexOf('.');
+        return idx<0 ? "" : className.substring(0,idx);
+    }
+
+    private static List<File> getClassPath(ClassLoader cl) {
+        List<File> r = new ArrayList<File>();
+        if (cl instanceof AntClassLoader) {
+            for (String s : ((AntClassLoader)cl).getClasspath().split(File.pathSeparator))
+                if (s.length()>0)
+                    r.add(new File(s));
+            return r;
+        }
+        if (cl instanceof URLClassLoader) {
+            for (URL u : ((URLClassLoader)cl).getURLs()) {
+                if (!u.getProtocol().equals("file"))
+                    return null;
+                try {
+                    r.add(new File(u.toURI()));
+                } catch (URISyntaxException e) {
+                    return null;
+                }
+            }
+            return r;
+        }
+        return null;
+    }
+
+    private static void scan(File f, Set<String> packages, Set<File> visited) throws IOException {
+        if (!visited.add(f))    return;
+        if (f.isDirectory()) {
+            scanDir(f, "", packages);
+            return;
+        }
+        if (!f.isFile())    return;
+
+        JarFile jar = new JarFile(f);
+        try {
+            for (Enumeration<JarEntry> e = jar.entries(); e.hasMoreElements();) {
+                String name = e.nextElement().getName();
+                if (name.endsWith(".class")) {
+                    int idx = name.lastIndexOf('/');
+                    packages.add(idx<0 ? "" : name.substring(0,idx).replace('/','.'));
+                }
+            }
+
+            // class loaders also look into the jars the manifest refers to
+            Manifest m = jar.getManifest();
+            String cp = m==null ? null : m.getMainAttributes().getValue(Attributes.Name.CLASS_PATH);
+            if (cp!=null)
+                for (String s : cp.trim().split(" +"))
+                    if (s.length()>0)
+                        scan(new File(f.getParentFile(), s), packages, visited);
+        } finally {
+            jar.close();
+        }
+    }
+
+    private static void scanDir(File dir, String pkg, Set<String> packages) {
+        File[] children = dir.listFiles();
+        if (children==null) return;
+        for (File c : children) {
+            if (c.isDirectory())
+                scanDir(c, pkg.length()==0 ? c.getName() : pkg+'.'+c.getName(), packages);
+            else
+            if (c.getName().endsWith(".class"))
+                packages.add(pkg);
+        }
+    }
+}
@@ -101,6 +101,7 @@ import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentMap;
 import java.util.concurrent.CopyOnWriteArrayList;
 import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.jar.JarFile;
 import java.util.logging.Level;
 import java.util.logging.Logger;
@@ -291,8 +292,10 @@ public abstract class PluginManager extends AbstractModelObject implements OnMas
                                         for (PluginWrapper p : cgd.getSorted()) {
                                             litr.next();
                                             litr.set(p);
-                                            if(p.isActive())
+                                            if(p.isActive()) {
                                                 activePlugins.add(p);
+                                                ((UberClassLoader)uberClassLoader).pluginsAdded();
+                                            }
                                         }
                                     } catch (CycleDetectedException e) {
                                         stop(); // disable all plugins since classloading from them can lead to StackOverflow
@@ -402,6 +405,7 @@ public abstract class PluginManager extends AbstractModelObject implements OnMas
 
         plugins.add(p);
         activePlugins.add(p);
+        ((UberClassLoader)uberClassLoader).pluginsAdded();
 
         try {
             p.resolvePluginDependencies();
@@ -923,12 +927,55 @@ public abstract class PluginManager extends AbstractModelObject implements OnMas
 
         private ClassLoaderReflectionToolkit clt = new ClassLoaderReflectionToolkit();
 
+        /**
+         * Packages each plugin class loader has classes in, or {@link #UNINDEXED} if that can't be told.
+         */
+        private final ConcurrentMap<ClassLoader, Set<String>> packages = new ConcurrentHashMap<ClassLoader, Set<String>>();
+
+        /**
+         * Names of the classes none of the plugins had, with the time that was found out.
+         * Forgotten whenever plugins are added, and after {@link #NOT_FOUND_EXPIRY}.
+         */
+        private final ConcurrentMap<String, Long> notFound = new ConcurrentHashMap<String, Long>();
+
+        /**
+         * Incremented whenever plugins are added, so that a lookup that started before doesn't record a miss.
+         */
+        private final AtomicInteger generation = new AtomicInteger();
+
         public UberClassLoader() {
             super(PluginManager.class.getClassLoader());
         }
 
         public void addNamedClass(String className, Class c) {
             generatedClasses.put(className,new WeakReference<Class>(c));
+            notFound.remove(className);
+        }
+
+        /**
+         * Called after plugins are added to {@link #activePlugins}, since they might have the classes that weren't found so far.
+         */
+        void pluginsAdded() {
+            generation.incrementAndGet();
+            notFound.clear();
+        }
+
+        /**
+         * Whether the given plugin might have a class in the given package.
+         */
+        private boolean mayHave(PluginWrapper p, String pkg) {
+            if (!INDEXED_LOOKUP)    return true;
+            Set<String> s = packages.get(p.classLoader);
+            if (s==null) {
+                try {
+                    s = PackageIndex.of(p.classLoader);
+                } catch (IOException e) {
+                    LOGGER.log(Level.FINE, "Failed to index the packages of "+p.getShortName(), e);
+                }
+                if (s==null)    s = UNINDEXED;
+                packages.put(p.classLoader, s);
+            }
+            return s==UNINDEXED || s.contains(pkg);
         }
 
         @Override
@@ -940,8 +987,29 @@ public abstract class PluginManager extends AbstractModelObject implements OnMas
                 else            generatedClasses.remove(name,wc);
             }
 
+            if (INDEXED_LOOKUP) {
+                // classes defined at runtime, such as by Groovy, can be in packages that the jars don't have
+                for (PluginWrapper p : activePlugins) {
+                    try {
+                        Class c = clt.findLoadedClass(p.classLoader,name);
+                        if (c!=null)    return c;
+                    } catch (InvocationTargetException e) {
+                        //not found. try next
+                    }
+                }
+                Long t = notFound.get(name);
+                if (t!=null) {
+                    if (System.currentTimeMillis()-t < NOT_FOUND_EXPIRY)
+                        throw new ClassNotFoundException(name);
+                    notFound.remove(name,t);
+                }
+            }
+            int g = generation.get();
+            String pkg = PackageIndex.packageOf(name);
+
             if (FAST_LOOKUP) {
                 for (PluginWrapper p : activePlugins) {
+                    if (!mayHave(p,pkg))    continue;
                     try {
                         Class c = clt.findLoadedClass(p.classLoader,name);
                         if (c!=null)    return c;
@@ -953,6 +1021,7 @@ public abstract class PluginManager extends AbstractModelObject implements OnMas
                 }
             } else {
                 for (PluginWrapper p : activePlugins) {
+                    if (!mayHave(p,pkg))    continue;
                     try {
                         return p.classLoader.loadClass(name);
                     } catch (ClassNotFoundException e) {
@@ -961,6 +1030,13 @@ public abstract class PluginManager extends AbstractModelObject implements OnMas
                 }
             }
             // not found in any of the classloader. delegate.
+            if (INDEXED_LOOKUP && g==generation.get()) {
+                if (notFound.size()>=NOT_FOUND_CACHE_SIZE)
+                    notFound.clear();   // mostly garbage by then, such as names from corrupted XML
+                notFound.put(name, System.currentTimeMillis());
+                if (g!=generation.get())
+                    notFound.remove(name);
+            }
             throw new ClassNotFoundException(name);
         }
 
@@ -1015,6 +1091,21 @@ public abstract class PluginManager extends AbstractModelObject implements OnMas
     private static final Logger LOGGER = Logger.getLogger(PluginManager.class.getName());
 
     public static boolean FAST_LOOKUP = !Boolean.getBoolean(PluginManager.class.getName()+".noFastLookup");
+
+    /**
+     * Whether {@link UberClassLoader} skips the plugins that have nothing in the package of a class,
+     * and remembers the classes it couldn't find.
+     */
+    public static boolean INDEXED_LOOKUP = !Boolean.getBoolean(PluginManager.class.getName()+".noIndexedLookup");
+
+    private static final int NOT_FOUND_CACHE_SIZE = 10000;
+
+    /**
+     * How long {@link UberClassLoader} remembers that a class wasn't found, in milliseconds.
+     */
+    public static long NOT_FOUND_EXPIRY = Long.getLong(PluginManager.class.getName()+".notFoundExpiry", 60*1000);
+
+    private static final Set<String> UNINDEXED = Collections.unmodifiableSet(new HashSet<String>());
     
     public static final Permission UPLOAD_PLUGINS = new Permission(Jenkins.PERMISSIONS, "UploadPlugins", Messages._PluginManager_UploadPluginsPermission_Description(),Jenkins.ADMINISTER,PermissionScope.JENKINS);
     public static final Permission CONFIGURE_UPDATECENTER = new Permission(Jenkins.PERMISSIONS, "ConfigureUpdateCenter", Messages._PluginManager_ConfigureUpdateCenterPermission_Description(),Jenkins.ADMINISTER,PermissionScope.JENKINS);
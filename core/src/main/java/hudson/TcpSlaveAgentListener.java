@@ -24,14 +24,28 @@
 package hudson;
 
 import hudson.slaves.OfflineCause;
+import hudson.util.DaemonThreadFactory;
 import jenkins.AgentProtocol;
+import jenkins.util.NamedThreadPool;
 
 import java.io.DataInputStream;
 import java.io.IOException;
 import java.io.PrintWriter;
 import java.net.BindException;
+import java.net.InetAddress;
 import java.net.ServerSocket;
 import java.net.Socket;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -48,6 +62,13 @@ import java.util.logging.Logger;
  * This class accepts the socket, then after a short handshaking, it dispatches to appropriate
  * {@link AgentProtocol}s.
  *
+ * <p>
+ * The handshakes run on a bounded thread pool. When many clients connect at once, such as when all the
+ * slaves reconnect after a restart, the listener limits the rate it accepts connections at, and stops accepting
+ * while too many handshakes are waiting. The clients that can't get in wait in the OS backlog, or retry later.
+ * A connection whose handshake isn't done within {@link #HANDSHAKE_TIMEOUT} is closed, so that stalled clients
+ * can't hold on to the threads.
+ *
  * @author Kohsuke Kawaguchi
  * @see AgentProtocol
  */
@@ -56,6 +77,25 @@ public final class TcpSlaveAgentListener extends Thread {
     private final ServerSocket serverSocket;
     private volatile boolean shuttingDown;
 
+    private final NamedThreadPool handshakes = new NamedThreadPool("TCP slave agent handshake",MAX_HANDSHAKES);
+    private final AtomicInteger inFlight = new AtomicInteger();
+
+    /**
+     * Closes the connections whose handshakes take too long.
+     */
+    private final ScheduledExecutorService timeouts = new ScheduledThreadPoolExecutor(1,new DaemonThreadFactory());
+
+    /**
+     * Limits the connections accepted per second to {@link #ACCEPT_RATE}.
+     */
+    private final TokenBucket acceptRate = new TokenBucket(ACCEPT_RATE,System.nanoTime());
+
+    /**
+     * Limits the connections accepted per second from each address to {@link #SOURCE_ACCEPT_RATE}.
+     * Only used by the listener thread.
+     */
+    private final Map<InetAddress,TokenBucket> sourceRates = new HashMap<InetAddress,TokenBucket>();
+
     public final int configuredPort;
 
     /**
@@ -83,11 +123,30 @@ public final class TcpSlaveAgentListener extends Thread {
         return serverSocket.getLocalPort();
     }
 
+    /**
+     * Number of connections whose handshake is in progress.
+     *
+     * @since 1.519
+     */
+    public int getHandshakesInFlight() {
+        return inFlight.get();
+    }
+
+    /**
+     * Number of connections that are accepted and waiting for their handshake to start.
+     *
+     * @since 1.519
+     */
+    public int getQueuedHandshakes() {
+        return handshakes.getQueueDepth();
+    }
+
     @Override
     public void run() {
         try {
             // the loop eventually terminates when the socket is closed.
             while (true) {
+                throttle();
                 Socket s = serverSocket.accept();
 
                 // this prevents a connection from silently terminated by the router in between or the other peer
@@ -97,12 +156,104 @@ public final class TcpSlaveAgentListener extends Thread {
                 // we take care of buffering on our own
                 s.setTcpNoDelay(true);
 
-                new ConnectionHandler(s).start();
+                if (!allow(s.getInetAddress())) {
+                    LOGGER.warning("Rejected the connection from "+s.getRemoteSocketAddress()+", which connects more than "+SOURCE_ACCEPT_RATE+" times a second");
+                    s.close();
+                    continue;
+                }
+
+                try {
+                    handshakes.execute(new ConnectionHandler(s));
+                } catch (RejectedExecutionException e) {
+                    LOGGER.log(Level.WARNING,"Rejected the connection from "+s.getRemoteSocketAddress(),e);
+                    s.close();
+                }
             }
         } catch (IOException e) {
             if(!shuttingDown) {
                 LOGGER.log(Level.SEVERE,"Failed to accept JNLP slave agent connections",e);
             }
+        } catch (InterruptedException e) {
+            if(!shuttingDown) {
+                LOGGER.log(Level.SEVERE,"Interrupted while accepting JNLP slave agent connections",e);
+            }
+        }
+    }
+
+    /**
+     * Waits until we can take another connection.
+     */
+    private void throttle() throws InterruptedException {
+        // back off while the handshakes are piling up
+        long backoff = 100;
+        while (handshakes.getQueueDepth()>=MAX_QUEUED_HANDSHAKES && !shuttingDown) {
+            LOGGER.fine("Too many handshakes waiting. Backing off for "+backoff+"ms");
+            Thread.sleep(backoff);
+            backoff = Math.min(backoff*2,5000);
+        }
+
+        long wait;
+        while ((wait=acceptRate.take(System.nanoTime()))>0)
+            Thread.sleep(wait);
+    }
+
+    /**
+     * Checks if the given address hasn't used up its share of connections.
+     */
+    private boolean allow(InetAddress source) {
+        if (SOURCE_ACCEPT_RATE<=0)  return true;
+        long now = System.nanoTime();
+        if (sourceRates.size()>=1000) {
+            // forget the addresses that haven't connected lately
+            for (Iterator<TokenBucket> itr = sourceRates.values().iterator(); itr.hasNext();) {
+                if (itr.next().isFull(now))
+                    itr.remove();
+            }
+        }
+        TokenBucket b = sourceRates.get(source);
+        if (b==null)
+            sourceRates.put(source, b=new TokenBucket(SOURCE_ACCEPT_RATE,now));
+        return b.take(now)==0;
+    }
+
+    /**
+     * Allows up to the given number of events per second, with bursts up to the same number.
+     */
+    private static final class TokenBucket {
+        private final int rate;
+        private double tokens;
+        private long lastRefill;
+
+        TokenBucket(int rate, long now) {
+            this.rate = rate;
+            this.tokens = rate;
+            this.lastRefill = now;
+        }
+
+        private void refill(long now) {
+            tokens = Math.min(rate, tokens+(now-lastRefill)*rate/1000000000.0);
+            lastRefill = now;
+        }
+
+        /**
+         * Takes one token if there's one.
+         *
+         * @return
+         *      0 if a token was taken, or else milliseconds until there is one.
+         */
+        long take(long now) {
+            if (rate<=0)    return 0;
+            refill(now);
+            if (tokens>=1) {
+                tokens--;
+                return 0;
+            }
+            return (long)Math.ceil((1-tokens)*1000/rate);
+        }
+
+        boolean isFull(long now) {
+            refill(now);
+            return tokens>=rate;
         }
     }
 
@@ -111,6 +262,8 @@ public final class TcpSlaveAgentListener extends Thread {
      */
     public void shutdown() {
         shuttingDown = true;
+        handshakes.shutdown();
+        timeouts.shutdownNow();
         try {
             serverSocket.close();
         } catch (IOException e) {
@@ -118,7 +271,7 @@ public final class TcpSlaveAgentListener extends Thread {
         }
     }
 
-    private final class ConnectionHandler extends Thread {
+    private final class ConnectionHandler implements Runnable {
         private final Socket s;
         /**
          * Unique number to identify this connection. Used in the log.
@@ -130,11 +283,29 @@ public final class TcpSlaveAgentListener extends Thread {
             synchronized(getClass()) {
                 id = iotaGen++;
             }
-            setName("TCP slave agent connection handler #"+id+" with "+s.getRemoteSocketAddress());
         }
 
-        @Override
         public void run() {
+            Thread t = Thread.currentThread();
+            String oldName = t.getName();
+            t.setName("TCP slave agent connection handler #"+id+" with "+s.getRemoteSocketAddress());
+            inFlight.incrementAndGet();
+            // don't let a client that stalls anywhere in the handshake hold on to the thread.
+            // a socket timeout would also hit the reads of the channel that a protocol has already started by then
+            final AtomicBoolean done = new AtomicBoolean();
+            HANDSHAKES.put(s,done);
+            timeouts.schedule(new Runnable() {
+                public void run() {
+                    if (!done.compareAndSet(false,true))
+                        return;
+                    LOGGER.warning("Connection #"+id+" from "+s.getRemoteSocketAddress()+" didn't complete its handshake in "+HANDSHAKE_TIMEOUT+"ms");
+                    try {
+                        s.close();
+                    } catch (IOException _) {
+                        // nothing more we can do
+                    }
+                }
+            }, HANDSHAKE_TIMEOUT, TimeUnit.MILLISECONDS);
             try {
                 LOGGER.info("Accepted connection #"+id+" from "+s.getRemoteSocketAddress());
 
@@ -167,6 +338,11 @@ public final class TcpSlaveAgentListener extends Thread {
                 } catch (IOException _) {
                     // try to clean up the socket
                 }
+            } finally {
+                // by the time the protocol returns, the connection is established or given up on
+                onHandshakeDone(s);
+                inFlight.decrementAndGet();
+                t.setName(oldName);
             }
         }
 
@@ -186,10 +362,56 @@ public final class TcpSlaveAgentListener extends Thread {
         }
     }
 
+    /**
+     * Tells the listener that the handshake of the connection on the given socket is done, such as when
+     * a {@link hudson.remoting.Channel} has been created on it, so that the connection is no longer
+     * closed when {@link #HANDSHAKE_TIMEOUT} passes. {@link AgentProtocol}s that keep working on the connection
+     * after that before they return from {@link AgentProtocol#handle(Socket)} should call this.
+     *
+     * @since 1.519
+     */
+    public static void onHandshakeDone(Socket s) {
+        AtomicBoolean done = HANDSHAKES.remove(s);
+        if (done!=null)
+            done.set(true);
+    }
+
+    /**
+     * Flags of the connections whose handshake is in progress, which are set once it's done or timed out.
+     */
+    private static final ConcurrentMap<Socket,AtomicBoolean> HANDSHAKES = new ConcurrentHashMap<Socket,AtomicBoolean>();
+
     private static int iotaGen=1;
 
     private static final Logger LOGGER = Logger.getLogger(TcpSlaveAgentListener.class.getName());
 
+    /**
+     * Maximum number of handshakes that run concurrently.
+     */
+    public static int MAX_HANDSHAKES = Integer.getInteger(TcpSlaveAgentListener.class.getName()+".maxHandshakes",32);
+
+    /**
+     * Stop accepting new connections while this many accepted connections are waiting for their handshake.
+     */
+    public static int MAX_QUEUED_HANDSHAKES = Integer.getInteger(TcpSlaveAgentListener.class.getName()+".maxQueuedHandshakes",200);
+
+    /**
+     * Maximum number of connections accepted per second, with bursts up to the same number. 0 for no limit.
+     */
+    public static int ACCEPT_RATE = Integer.getInteger(TcpSlaveAgentListener.class.getName()+".acceptRate",100);
+
+    /**
+     * Maximum number of connections accepted per second from one address, with bursts up to the same number.
+     * Connections beyond that are closed right away. 0 for no limit, which is the default since many slaves
+     * can share an address, such as behind NAT.
+     */
+    public static int SOURCE_ACCEPT_RATE = Integer.getInteger(TcpSlaveAgentListener.class.getName()+".sourceAcceptRate",0);
+
+    /**
+     * Time in milliseconds a client has to complete the handshake of its protocol.
+     */
+    public static int HANDSHAKE_TIMEOUT = Integer.getInteger(TcpSlaveAgentListener.class.getName()+".handshakeTimeout",30*1000);
+
     /**
      * Host name that we advertise the CLI client to connect to.
      * This is primarily for those who have reverse proxies in place such that the HTTP host name
@@ -27,6 +27,7 @@ import com.thoughtworks.xstream.XStream;
 import com.thoughtworks.xstream.converters.ConversionException;
 import com.thoughtworks.xstream.converters.Converter;
 import com.thoughtworks.xstream.converters.UnmarshallingContext;
+import com.thoughtworks.xstream.io.HierarchicalStreamReader;
 import com.thoughtworks.xstream.io.StreamException;
 import com.thoughtworks.xstream.io.xml.XppDriver;
 import hudson.diagnosis.OldDataMonitor;
@@ -34,6 +35,8 @@ import hudson.model.Descriptor;
 import hudson.util.AtomicFileWriter;
 import hudson.util.IOException2;
 import hudson.util.XStream2;
+import jenkins.util.SaveQueue;
+import jenkins.util.xstream.StartupCache;
 import org.xml.sax.Attributes;
 import org.xml.sax.InputSource;
 import org.xml.sax.Locator;
@@ -138,6 +141,10 @@ public final class XmlFile {
         if (LOGGER.isLoggable(Level.FINE)) {
             LOGGER.fine("Reading "+file);
         }
+        SaveQueue.get().flush(file);
+        HierarchicalStreamReader cached = StartupCache.reader(file);
+        if (cached!=null)
+            return unmarshal(cached,null);
         InputStream in = new BufferedInputStream(new FileInputStream(file));
         try {
             return xs.fromXML(in);
@@ -160,6 +167,10 @@ public final class XmlFile {
      *      if the XML representation is completely new.
      */
     public Object unmarshal( Object o ) throws IOException {
+        SaveQueue.get().flush(file);
+        HierarchicalStreamReader cached = StartupCache.reader(file);
+        if (cached!=null)
+            return unmarshal(cached,o);
         InputStream in = new BufferedInputStream(new FileInputStream(file));
         try {
             // TODO: expose XStream the driver from XStream
@@ -175,6 +186,23 @@ public final class XmlFile {
         }
     }
 
+    /**
+     * Unmarshals from a reader of the {@link StartupCache}.
+     */
+    private Object unmarshal(HierarchicalStreamReader r, Object o) throws IOException {
+        try {
+            return xs.unmarshal(r,o);
+        } catch (StreamException e) {
+            throw new IOException2("Unable to read "+file,e);
+        } catch(ConversionException e) {
+            throw new IOException2("Unable to read "+file,e);
+        } catch(Error e) {// mostly reflection errors
+            throw new IOException2("Unable to read "+file,e);
+        } finally {
+            r.close();
+        }
+    }
+
     public void write( Object o ) throws IOException {
         mkdirs();
         AtomicFileWriter w = new AtomicFileWriter(file);
@@ -212,6 +240,7 @@ public final class XmlFile {
      * not just the system default encoding.
      */
     public Reader readRaw() throws IOException {
+        SaveQueue.get().flush(file);
         return new InputStreamReader(new FileInputStream(file),sniffEncoding());
     }
 
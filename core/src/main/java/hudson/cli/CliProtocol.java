@@ -46,10 +46,10 @@ public class CliProtocol extends AgentProtocol {
 
         protected void runCli(Connection c) throws IOException, InterruptedException {
             Channel channel = new Channel("CLI channel from " + socket.getInetAddress(),
-                    Computer.threadPoolForRemoting, Mode.BINARY,
+                    Computer.threadPoolForCLI, Mode.BINARY,
                     new BufferedInputStream(c.in), new BufferedOutputStream(c.out), null, true, Jenkins.getInstance().pluginManager.uberClassLoader);
             channel.setProperty(CliEntryPoint.class.getName(),new CliManagerImpl(channel));
-            channel.join();
+            // the channel runs on its own from here, so don't hold on to the handshake thread
         }
     }
 }
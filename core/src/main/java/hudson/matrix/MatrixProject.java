@@ -43,6 +43,7 @@ import hudson.model.Node;
 import hudson.slaves.WorkspaceList;
 import hudson.util.AlternativeUiTextProvider;
 import jenkins.model.Jenkins;
+import jenkins.model.ItemIndex;
 import hudson.model.Item;
 import hudson.model.ItemGroup;
 import hudson.model.Items;
@@ -595,6 +596,7 @@ public class MatrixProject extends AbstractProject<MatrixProject,MatrixBuild> im
             new CopyOnWriteMap.Tree<Combination,MatrixConfiguration>();
         loadConfigurations(getConfigurationsDir(),configurations,Collections.<String,String>emptyMap());
         this.configurations = configurations;
+        ItemIndex.onChildrenChanged(this);
 
         Iterable<Combination> activeCombinations;
         if (context!=null) {
@@ -43,6 +43,7 @@ import hudson.util.AtomicFileWriter;
 import hudson.util.IOException2;
 import hudson.util.IOUtils;
 import jenkins.model.Jenkins;
+import jenkins.util.SaveQueue;
 import org.apache.tools.ant.taskdefs.Copy;
 import org.apache.tools.ant.types.FileSet;
 import org.kohsuke.stapler.WebMethod;
@@ -52,6 +53,7 @@ import org.kohsuke.stapler.export.ExportedBean;
 import java.io.File;
 import java.io.IOException;
 import java.util.Collection;
+import java.util.Collections;
 
 import org.kohsuke.stapler.StaplerRequest;
 import org.kohsuke.stapler.StaplerResponse;
@@ -228,6 +230,8 @@ public abstract class AbstractItem extends Actionable implements Item, HttpDelet
                 boolean success = false;
 
                 try {// rename data files
+                    SaveQueue.get().flush(oldRoot);
+
                     boolean interrupted = false;
                     boolean renamed = false;
 
@@ -449,8 +453,7 @@ public abstract class AbstractItem extends Actionable implements Item, HttpDelet
      */
     public synchronized void save() throws IOException {
         if(BulkChange.contains(this))   return;
-        getConfigFile().write(this);
-        SaveableListener.fireOnChange(this, getConfigFile());
+        SaveQueue.get().save(this, getConfigFile());
     }
 
     public final XmlFile getConfigFile() {
@@ -511,7 +514,10 @@ public abstract class AbstractItem extends Actionable implements Item, HttpDelet
             // ignore
         }
 
-        Jenkins.getInstance().rebuildDependencyGraph();
+        if (this instanceof AbstractProject && !(this instanceof ItemGroup))
+            Jenkins.getInstance().removeFromDependencyGraph((AbstractProject)this);
+        else
+            Jenkins.getInstance().rebuildDependencyGraph();
     }
 
     /**
@@ -526,6 +532,7 @@ public abstract class AbstractItem extends Actionable implements Item, HttpDelet
      * Does the real job of deleting the item.
      */
     protected void performDelete() throws IOException, InterruptedException {
+        SaveQueue.get().discard(getRootDir());
         getConfigFile().delete();
         Util.deleteRecursive(getRootDir());
     }
@@ -590,7 +597,10 @@ public abstract class AbstractItem extends Actionable implements Item, HttpDelet
             } finally {
                 Items.updatingByXml.set(false);
             }
-            Jenkins.getInstance().rebuildDependencyGraph();
+            if (this instanceof AbstractProject)
+                Jenkins.getInstance().updateDependencyGraph(Collections.singleton((AbstractProject)this));
+            else
+                Jenkins.getInstance().rebuildDependencyGraph();
 
             // if everything went well, commit this new version
             out.commit();
@@ -764,13 +764,18 @@ public abstract class AbstractProject<P extends AbstractProject<P,R>,R extends A
             upstream = new HashSet<AbstractProject>(Items.fromNameList(getParent(),req.getParameter("upstreamProjects"),AbstractProject.class));
         }
 
+        // the projects whose build triggers might get changed below, besides this one
+        Set<AbstractProject> changed = new HashSet<AbstractProject>(upstream);
+        changed.addAll(Jenkins.getInstance().getDependencyGraph().getUpstream(this));
+        changed.add(this);
+
         convertUpstreamBuildTrigger(upstream);
 
         // notify the queue as the project might be now tied to different node
         Jenkins.getInstance().getQueue().scheduleMaintenance();
 
         // this is to reflect the upstream build adjustments done above
-        Jenkins.getInstance().rebuildDependencyGraph();
+        Jenkins.getInstance().updateDependencyGraph(changed);
     }
 
     /**
@@ -51,14 +51,13 @@ import hudson.slaves.RetentionStrategy;
 import hudson.slaves.WorkspaceList;
 import hudson.slaves.OfflineCause;
 import hudson.slaves.OfflineCause.ByCLI;
-import hudson.util.DaemonThreadFactory;
 import hudson.util.EditDistance;
-import hudson.util.ExceptionCatchingThreadFactory;
 import hudson.util.RemotingDiagnostics;
 import hudson.util.RemotingDiagnostics.HeapDump;
 import hudson.util.RunList;
 import hudson.util.Futures;
 import jenkins.model.Jenkins;
+import jenkins.util.NamedThreadPool;
 import org.kohsuke.args4j.Argument;
 import org.kohsuke.args4j.CmdLineException;
 import org.kohsuke.stapler.StaplerRequest;
@@ -82,7 +81,6 @@ import java.io.StringWriter;
 import java.util.*;
 import java.util.concurrent.CopyOnWriteArrayList;
 import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
 import java.util.concurrent.Future;
 import java.util.concurrent.ExecutionException;
 import java.util.logging.LogRecord;
@@ -1059,7 +1057,45 @@ public /*transient*/ abstract class Computer extends Actionable implements Acces
         private static final long serialVersionUID = 1L;
     }
 
-    public static final ExecutorService threadPoolForRemoting = Executors.newCachedThreadPool(new ExceptionCatchingThreadFactory(new DaemonThreadFactory()));
+    /**
+     * General purpose thread pool for activities related to nodes and remoting.
+     *
+     * <p>
+     * Work that can pile up in large numbers, such as launching slaves or running channels,
+     * have their own pools below, so that they don't crowd out everything else.
+     */
+    public static final ExecutorService threadPoolForRemoting = new NamedThreadPool("Computer.threadPoolForRemoting",
+            Integer.getInteger(Computer.class.getName()+".remotingThreads",Integer.MAX_VALUE));
+
+    /**
+     * Thread pool that launches slaves. When many slaves are launched at once, such as after a restart,
+     * the excess launches wait for their turn.
+     *
+     * @since 1.519
+     */
+    public static final NamedThreadPool threadPoolForLaunching = new NamedThreadPool("Computer.threadPoolForLaunching",
+            Integer.getInteger(Computer.class.getName()+".launchThreads",64));
+
+    /**
+     * Thread pool that {@link Channel}s to slaves use to execute requests from the other side.
+     *
+     * <p>
+     * Unbounded by default, like {@link #threadPoolForRemoting}. A request can wait for other requests
+     * of the same channel to complete, so if this is capped, requests queued behind it can hang the channel.
+     *
+     * @since 1.519
+     */
+    public static final NamedThreadPool threadPoolForChannels = new NamedThreadPool("Computer.threadPoolForChannels",
+            Integer.getInteger(Computer.class.getName()+".channelThreads",Integer.MAX_VALUE));
+
+    /**
+     * Thread pool for the channels of CLI clients. Unbounded by default, for the same reason as
+     * {@link #threadPoolForChannels}.
+     *
+     * @since 1.519
+     */
+    public static final NamedThreadPool threadPoolForCLI = new NamedThreadPool("Computer.threadPoolForCLI",
+            Integer.getInteger(Computer.class.getName()+".cliThreads",Integer.MAX_VALUE));
 
 //
 //
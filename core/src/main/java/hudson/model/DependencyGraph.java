@@ -24,6 +24,7 @@
  */
 package hudson.model;
 
+import jenkins.model.DeferredItemLoader;
 import jenkins.model.DependencyDeclarer;
 import com.google.common.collect.ImmutableList;
 import hudson.security.ACL;
@@ -37,6 +38,7 @@ import java.util.Collections;
 import java.util.Comparator;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.IdentityHashMap;
 import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.ListIterator;
@@ -44,6 +46,7 @@ import java.util.Map;
 import java.util.Map.Entry;
 import java.util.Set;
 import java.util.Stack;
+import java.util.concurrent.ConcurrentHashMap;
 
 /**
  * Maintains the build dependencies between {@link AbstractProject}s
@@ -62,6 +65,9 @@ import java.util.Stack;
  * Once built, {@link DependencyGraph} is immutable, and every time
  * there's a change (which is relatively rare), a new instance
  * will be created. This eliminates the need of synchronization.
+ * When only a few projects changed, the new instance is derived from
+ * the old one by {@link #update(Collection, Collection)}, which only
+ * asks those projects for their dependencies again.
  *
  * @see Jenkins#getDependencyGraph()
  * @author Kohsuke Kawaguchi
@@ -75,6 +81,30 @@ public class DependencyGraph implements Comparator<AbstractProject> {
 
     private boolean built;
 
+    /**
+     * Dependencies each project added in {@link AbstractProject#buildDependencyGraph(DependencyGraph)},
+     * so that they can be taken out when the project changes. Null for {@link #EMPTY}.
+     */
+    private Map<AbstractProject, List<Dependency>> declared;
+
+    /**
+     * The project whose {@link AbstractProject#buildDependencyGraph(DependencyGraph)} is running.
+     */
+    private transient AbstractProject declarer;
+
+    /**
+     * Dependencies added while being {@linkplain #update(Collection, Collection) updated}, or null for a full build.
+     */
+    private transient List<Dependency> added;
+
+    /**
+     * {@link #getTransitiveDownstream(AbstractProject)} and {@link #getTransitiveUpstream(AbstractProject)}
+     * computed so far. Since the graph doesn't change once built, they stay valid for the life of this instance,
+     * and those that the changes didn't affect are carried over by {@link #update(Collection, Collection)}.
+     */
+    private final Map<AbstractProject, Set<AbstractProject>> transitiveDownstream = new ConcurrentHashMap<AbstractProject, Set<AbstractProject>>();
+    private final Map<AbstractProject, Set<AbstractProject>> transitiveUpstream = new ConcurrentHashMap<AbstractProject, Set<AbstractProject>>();
+
     /**
      * Builds the dependency graph.
      */
@@ -86,8 +116,12 @@ public class DependencyGraph implements Comparator<AbstractProject> {
         SecurityContext saveCtx = ACL.impersonate(ACL.SYSTEM);
         try {
             this.computationalData = new HashMap<Class<?>, Object>();
-            for( AbstractProject p : getAllProjects() )
+            this.declared = new HashMap<AbstractProject, List<Dependency>>();
+            for( AbstractProject p : getAllProjects() ) {
+                declarer = p;
                 p.buildDependencyGraph(this);
+            }
+            declarer = null;
 
             forward = finalize(forward);
             backward = finalize(backward);
@@ -100,7 +134,147 @@ public class DependencyGraph implements Comparator<AbstractProject> {
     }
     
     Collection<AbstractProject> getAllProjects() {
-        return Jenkins.getInstance().getAllItems(AbstractProject.class);
+        Jenkins j = Jenkins.getInstance();
+        DeferredItemLoader d = j.getDeferredItemLoader();
+        if (d!=null && d.isPending())   // the rest are added as they get loaded
+            return d.getLoadedItems(AbstractProject.class);
+        return j.getAllItems(AbstractProject.class);
+    }
+
+    /**
+     * Builds a new graph that's the same as this one, except that the given projects are asked for
+     * their dependencies again, and the given projects that are gone are taken out along with
+     * all the dependencies from and to them.
+     *
+     * <p>
+     * Only the edges of the projects at either end of a dependency that was taken out or added are regrouped,
+     * and only the transitive dependencies that could have changed are thrown away, so this costs
+     * about as much as the changes themselves rather than as the whole graph.
+     * This instance is left untouched, for the readers that still have it.
+     *
+     * @return
+     *      null if the graph can't be updated this way, and needs to be built from scratch.
+     *      That's the case when a project uses {@link #putComputationalData(Class, Object)}
+     *      to build dependencies together with the other projects.
+     * @since 1.519
+     */
+    public DependencyGraph update(Collection<? extends AbstractProject> changed, Collection<? extends AbstractProject> removed) {
+        // dependencies to take out, by identity since Dependency.equals() is loose
+        Map<Dependency, Boolean> gone = new IdentityHashMap<Dependency, Boolean>();
+        DependencyGraph g = new DependencyGraph();
+        g.declared = declared==null ? new HashMap<AbstractProject, List<Dependency>>() : new HashMap<AbstractProject, List<Dependency>>(declared);
+        g.added = new ArrayList<Dependency>();
+
+        for (AbstractProject p : removed) {
+            List<Dependency> d = g.declared.remove(p);
+            if (d!=null)    putAll(gone, d);
+            putAll(gone, getAll(forward,p));
+            putAll(gone, getAll(backward,p));
+        }
+
+        SecurityContext saveCtx = ACL.impersonate(ACL.SYSTEM);
+        try {
+            for (AbstractProject p : changed) {
+                if (removed.contains(p))    continue;
+                List<Dependency> d = g.declared.remove(p);
+                if (d!=null)    putAll(gone, d);
+                g.declarer = p;
+                p.buildDependencyGraph(g);
+            }
+        } catch (NeedsFullBuild e) {
+            return null;
+        } finally {
+            SecurityContextHolder.setContext(saveCtx);
+        }
+        g.declarer = null;
+
+        // drop what the other projects declared about the removed ones, so that they don't hang on to them
+        if (!removed.isEmpty()) {
+            for (Entry<AbstractProject, List<Dependency>> e : g.declared.entrySet()) {
+                List<Dependency> d = new ArrayList<Dependency>(e.getValue().size());
+                for (Dependency dep : e.getValue())
+                    if (!gone.containsKey(dep))
+                        d.add(dep);
+                if (d.size()<e.getValue().size())
+                    e.setValue(d);
+            }
+        }
+
+        // regroup the edges of the projects at either end of whatever changed
+        Set<AbstractProject> ups = new HashSet<AbstractProject>(), downs = new HashSet<AbstractProject>();
+        for (Dependency dep : gone.keySet()) {
+            ups.add(dep.getUpstreamProject());
+            downs.add(dep.getDownstreamProject());
+        }
+        for (Dependency dep : g.added) {
+            ups.add(dep.getUpstreamProject());
+            downs.add(dep.getDownstreamProject());
+        }
+        g.forward = regroup(forward, ups, removed, gone, g.added, false);
+        g.backward = regroup(backward, downs, removed, gone, g.added, true);
+        g.added = null;
+        g.built = true;
+
+        // a project's transitive downstream can only change if it reaches the upstream end of a changed edge
+        // either before or after the change, and likewise for the upstream
+        Set<AbstractProject> staleDown = reachers(ups, g, true);
+        Set<AbstractProject> staleUp = reachers(downs, g, false);
+        for (Entry<AbstractProject, Set<AbstractProject>> e : transitiveDownstream.entrySet())
+            if (!staleDown.contains(e.getKey()) && !removed.contains(e.getKey()))
+                g.transitiveDownstream.put(e.getKey(), e.getValue());
+        for (Entry<AbstractProject, Set<AbstractProject>> e : transitiveUpstream.entrySet())
+            if (!staleUp.contains(e.getKey()) && !removed.contains(e.getKey()))
+                g.transitiveUpstream.put(e.getKey(), e.getValue());
+        return g;
+    }
+
+    /**
+     * Copies the edges of this graph in one direction, regrouping those of the given projects.
+     */
+    private Map<AbstractProject, List<DependencyGroup>> regroup(Map<AbstractProject, List<DependencyGroup>> old, Set<AbstractProject> keys,
+            Collection<? extends AbstractProject> removed, Map<Dependency, Boolean> gone, List<Dependency> added, boolean up) {
+        Map<AbstractProject, List<DependencyGroup>> m = new HashMap<AbstractProject, List<DependencyGroup>>(old);
+        Map<AbstractProject, List<DependencyGroup>> r = new HashMap<AbstractProject, List<DependencyGroup>>();
+        for (AbstractProject k : keys) {
+            m.remove(k);
+            if (removed.contains(k))    continue;
+            // the same dependency may have been declared by several projects, so the edge stays as long as one does
+            for (Dependency dep : getAll(old,k))
+                if (!gone.containsKey(dep))
+                    add(r,k,dep);
+        }
+        for (Dependency dep : added)
+            if (!removed.contains(dep.getUpstreamProject()) && !removed.contains(dep.getDownstreamProject()))
+                add(r, up ? dep.getDownstreamProject() : dep.getUpstreamProject(), dep);
+        for (Entry<AbstractProject, List<DependencyGroup>> e : r.entrySet()) {
+            Collections.sort( e.getValue(), NAME_COMPARATOR );
+            m.put(e.getKey(), Collections.unmodifiableList(e.getValue()));
+        }
+        return Collections.unmodifiableMap(m);
+    }
+
+    /**
+     * Gets the given projects and all those that reach them in this graph or the other,
+     * going backward if {@code up} is true.
+     */
+    private Set<AbstractProject> reachers(Set<AbstractProject> targets, DependencyGraph other, boolean up) {
+        Set<AbstractProject> r = new HashSet<AbstractProject>(targets);
+        for (AbstractProject p : targets) {
+            r.addAll(getTransitive(up ? backward : forward, p, up));
+            r.addAll(other.getTransitive(up ? other.backward : other.forward, p, up));
+        }
+        return r;
+    }
+
+    private static void putAll(Map<Dependency, Boolean> set, Collection<Dependency> deps) {
+        for (Dependency dep : deps)
+            set.put(dep, true);
+    }
+
+    /**
+     * Thrown when a project needs data shared by all the projects, which isn't there while updating.
+     */
+    private static final class NeedsFullBuild extends RuntimeException {
     }
 
     /**
@@ -116,6 +290,8 @@ public class DependencyGraph implements Comparator<AbstractProject> {
      * All this data will be cleaned once the dependency graph creation has finished.
      */
     public <T> void putComputationalData(Class<T> key, T value) {
+        if (added!=null)
+            throw new NeedsFullBuild();
         this.computationalData.put(key, value);
     }
 
@@ -123,6 +299,8 @@ public class DependencyGraph implements Comparator<AbstractProject> {
      * Gets temporary data which is needed for building up the dependency graph.
      */
     public <T> T getComputationalData(Class<T> key) {
+        if (added!=null)
+            throw new NeedsFullBuild();
         @SuppressWarnings("unchecked")
         T result = (T) this.computationalData.get(key);
         return result;
@@ -184,6 +362,18 @@ public class DependencyGraph implements Comparator<AbstractProject> {
 
     }
 
+    /**
+     * Gets the dependencies of the given project in one direction, including those equal to one already there.
+     */
+    private static List<Dependency> getAll(Map<AbstractProject, List<DependencyGroup>> map, AbstractProject src) {
+        List<DependencyGroup> v = map.get(src);
+        if (v==null)    return Collections.emptyList();
+        List<Dependency> r = new ArrayList<Dependency>();
+        for (DependencyGroup g : v)
+            g.addAllTo(r);
+        return r;
+    }
+
     /**
      * @deprecated since 1.341; use {@link #addDependency(Dependency)}
      */
@@ -198,6 +388,16 @@ public class DependencyGraph implements Comparator<AbstractProject> {
     public void addDependency(Dependency dep) {
         if(built)
             throw new IllegalStateException();
+        if (declarer!=null) {
+            List<Dependency> d = declared.get(declarer);
+            if (d==null)
+                declared.put(declarer, d = new ArrayList<Dependency>());
+            d.add(dep);
+        }
+        if (added!=null) {
+            added.add(dep);
+            return;
+        }
         add(forward,dep.getUpstreamProject(),dep);
         add(backward,dep.getDownstreamProject(),dep);
     }
@@ -260,14 +460,23 @@ public class DependencyGraph implements Comparator<AbstractProject> {
      * Gets all the direct and indirect upstream dependencies of the given project.
      */
     public Set<AbstractProject> getTransitiveUpstream(AbstractProject src) {
-        return getTransitive(backward,src,true);
+        return new HashSet<AbstractProject>(getTransitive(transitiveUpstream,backward,src,true));
     }
 
     /**
      * Gets all the direct and indirect downstream dependencies of the given project.
      */
     public Set<AbstractProject> getTransitiveDownstream(AbstractProject src) {
-        return getTransitive(forward,src,false);
+        return new HashSet<AbstractProject>(getTransitive(transitiveDownstream,forward,src,false));
+    }
+
+    private Set<AbstractProject> getTransitive(Map<AbstractProject, Set<AbstractProject>> cache, Map<AbstractProject, List<DependencyGroup>> direction, AbstractProject src, boolean up) {
+        if (!built || declared==null)   // don't remember anything in the shared EMPTY graph
+            return getTransitive(direction,src,up);
+        Set<AbstractProject> r = cache.get(src);
+        if (r==null)
+            cache.put(src, r = Collections.unmodifiableSet(getTransitive(direction,src,up)));
+        return r;
     }
 
     private Set<AbstractProject> getTransitive(Map<AbstractProject, List<DependencyGroup>> direction, AbstractProject src, boolean up) {
@@ -327,8 +536,8 @@ public class DependencyGraph implements Comparator<AbstractProject> {
      * Compare to Projects based on the topological order defined by this Dependency Graph
      */
     public int compare(AbstractProject o1, AbstractProject o2) {
-        Set<AbstractProject> o1sdownstreams = getTransitiveDownstream(o1);
-        Set<AbstractProject> o2sdownstreams = getTransitiveDownstream(o2);
+        Set<AbstractProject> o1sdownstreams = getTransitive(transitiveDownstream,forward,o1,false);
+        Set<AbstractProject> o2sdownstreams = getTransitive(transitiveDownstream,forward,o2,false);
         if (o1sdownstreams.contains(o2)) {
             if (o2sdownstreams.contains(o1)) return 0; else return 1;
         } else {
@@ -407,8 +616,25 @@ public class DependencyGraph implements Comparator<AbstractProject> {
             group.add(first);
         }
 
+        /**
+         * Dependencies that were added while {@link #group} already had an equal one, such as when two projects
+         * declare the same dependency. They are kept so that {@link DependencyGraph#update(Collection, Collection)}
+         * can fall back on them when the project that declared the one in the group changes. Null if there are none.
+         */
+        private List<Dependency> duplicates;
+
         private void add(Dependency next) {
-            group.add(next);
+            if (!group.add(next)) {
+                if (duplicates==null)
+                    duplicates = new ArrayList<Dependency>(1);
+                duplicates.add(next);
+            }
+        }
+
+        private void addAllTo(List<Dependency> r) {
+            r.addAll(group);
+            if (duplicates!=null)
+                r.addAll(duplicates);
         }
 
         public Set<Dependency> getGroup() {
@@ -28,6 +28,8 @@ import hudson.Util;
 import hudson.util.IOException2;
 import hudson.FilePath.FileCallable;
 import hudson.remoting.VirtualChannel;
+import hudson.util.io.ArchiverFactory;
+import jenkins.management.ArchiveDownloadsLink;
 import jenkins.model.Jenkins;
 import org.kohsuke.stapler.StaplerRequest;
 import org.kohsuke.stapler.StaplerResponse;
@@ -38,11 +40,15 @@ import org.apache.tools.ant.DirectoryScanner;
 import javax.servlet.ServletException;
 import javax.servlet.http.HttpServletResponse;
 import java.io.File;
+import java.io.FileInputStream;
 import java.io.FilenameFilter;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
 import java.io.Serializable;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
 import java.text.Collator;
 import java.util.ArrayList;
 import java.util.Arrays;
@@ -155,6 +161,7 @@ public final class DirectoryBrowserSupport implements HttpResponse {
         StringBuilder _rest = new StringBuilder();
         int restSize=-1; // number of ".." needed to go back to the 'base' level.
         boolean zip=false;  // if we are asked to serve a zip file bundle
+        boolean tgz=false;  // if we are asked to serve a tar.gz file bundle
         boolean plain = false; // if asked to serve a plain text directory listing
         {
             boolean inBase = true;
@@ -172,6 +179,11 @@ public final class DirectoryBrowserSupport implements HttpResponse {
                     zip=true;
                     break;
                 }
+                if(pathElement.equals("*tar.gz*")) {
+                    // same as above, like foo/bar/*tar.gz*/bar.tar.gz
+                    tgz=true;
+                    break;
+                }
                 if(pathElement.equals("*plain*")) {
                     plain = true;
                     break;
@@ -192,9 +204,17 @@ public final class DirectoryBrowserSupport implements HttpResponse {
         FilePath baseFile = new FilePath(root,base);
 
         if(baseFile.isDirectory()) {
-            if(zip) {
-                rsp.setContentType("application/zip");
-                baseFile.zip(rsp.getOutputStream(),rest);
+            if(zip || tgz) {
+                rsp.setContentType(zip ? "application/zip" : "application/x-gzip");
+                ArchiveDownloadsLink.Download d = ArchiveDownloadsLink.get().start(baseFile.getRemote(), zip ? "zip" : "tar.gz", rsp.getOutputStream());
+                try {
+                    if (zip)
+                        baseFile.zip(d.getOutputStream(),rest);
+                    else
+                        baseFile.archive(ArchiverFactory.TARGZ_PARALLEL,d.getOutputStream(),rest);
+                } finally {
+                    d.finish();
+                }
                 return;
             }
             if (plain) {
@@ -271,18 +291,176 @@ public final class DirectoryBrowserSupport implements HttpResponse {
         if(LOGGER.isLoggable(Level.FINE))
             LOGGER.fine("Serving "+baseFile+" with lastModified="+ci.lastModified+", contentLength="+ci.contentLength);
 
-        InputStream in = baseFile.read();
+        String etag = ci.getETag();
+        rsp.setHeader("ETag", etag);
+        rsp.setHeader("Accept-Ranges", "bytes");
+
+        if (matchesETag(req.getHeader("If-None-Match"),etag)
+         || (req.getHeader("If-None-Match")==null && !isModifiedSince(req,ci.lastModified))) {
+            rsp.setStatus(HttpServletResponse.SC_NOT_MODIFIED);
+            return;
+        }
+
+        long[] range = null;
+        if (isRangeValid(req,ci,etag))
+            range = parseRange(req.getHeader("Range"),ci.contentLength);
+        if (range==UNSATISFIABLE) {
+            rsp.setHeader("Content-Range", "bytes */"+ci.contentLength);
+            rsp.sendError(HttpServletResponse.SC_REQUESTED_RANGE_NOT_SATISFIABLE);
+            return;
+        }
+
+        String fileName;
         if (view) {
             // for binary files, provide the file name for download
             rsp.setHeader("Content-Disposition", "inline; filename=" + baseFile.getName());
 
-            // pseudo file name to let the Stapler set text/plain
-            rsp.serveFile(req, in, ci.lastModified, -1, ci.contentLength, "plain.txt");
+            // pseudo file name to let the servlet container pick text/plain
+            fileName = "plain.txt";
+        } else {
+            fileName = baseFile.getName();
+        }
+        String contentType = req.getStapler().getServletContext().getMimeType(fileName);
+        rsp.setContentType(contentType!=null ? contentType : "application/octet-stream");
+        rsp.setDateHeader("Last-Modified", ci.lastModified);
+
+        long start = 0, length = ci.contentLength;
+        if (range!=null) {
+            start = range[0];
+            length = range[1]-range[0]+1;
+            rsp.setStatus(HttpServletResponse.SC_PARTIAL_CONTENT);
+            rsp.setHeader("Content-Range", "bytes "+range[0]+"-"+range[1]+"/"+ci.contentLength);
+        }
+        rsp.setHeader("Content-Length", Long.toString(length));
+
+        if (req.getMethod().equals("HEAD"))
+            return;
+
+        OutputStream out = rsp.getOutputStream();
+        if (baseFile.isRemote()) {
+            // workspace on a slave. stream just the part we need
+            InputStream in = baseFile.read(start,length);
+            try {
+                Util.copyStream(in,out);
+            } finally {
+                in.close();
+            }
         } else {
-            rsp.serveFile(req, in, ci.lastModified, -1, ci.contentLength, baseFile.getName() );
+            // let the OS copy the file into the response as much as the container allows
+            FileChannel fc = new FileInputStream(baseFile.getRemote()).getChannel();
+            try {
+                WritableByteChannel wc = Channels.newChannel(out);
+                long pos = start, end = start+length;
+                while (pos<end) {
+                    long n = fc.transferTo(pos,end-pos,wc);
+                    if (n<=0)   break; // file got truncated
+                    pos += n;
+                }
+            } finally {
+                fc.close();
+            }
         }
+        out.flush();
     }
 
+    /**
+     * Checks the If-Modified-Since header.
+     */
+    private static boolean isModifiedSince(StaplerRequest req, long lastModified) {
+        long since;
+        try {
+            since = req.getDateHeader("If-Modified-Since");
+        } catch (IllegalArgumentException e) {
+            return true; // malformed
+        }
+        // HTTP dates only have a second precision
+        return since<0 || lastModified/1000 > since/1000;
+    }
+
+    /**
+     * Checks the If-Range header, which tells us to ignore the Range header
+     * if the file has changed since the client downloaded the first part.
+     */
+    private static boolean isRangeValid(StaplerRequest req, ContentInfo ci, String etag) {
+        String ifRange = req.getHeader("If-Range");
+        if (ifRange==null)  return true;
+        ifRange = ifRange.trim();
+        if (ifRange.startsWith("\"") || ifRange.startsWith("W/"))
+            return ifRange.equals(etag);    // weak validators never match
+        try {
+            long date = req.getDateHeader("If-Range");
+            return date>=0 && ci.lastModified/1000 == date/1000;
+        } catch (IllegalArgumentException e) {
+            return false;
+        }
+    }
+
+    /**
+     * Does the If-None-Match header value match the given entity tag?
+     */
+    static boolean matchesETag(String ifNoneMatch, String etag) {
+        if (ifNoneMatch==null)  return false;
+        for (String token : ifNoneMatch.split(",")) {
+            token = token.trim();
+            if (token.startsWith("W/"))
+                token = token.substring(2);
+            if (token.equals("*") || token.equals(etag))
+                return true;
+        }
+        return false;
+    }
+
+    /**
+     * Parses the value of the Range header.
+     *
+     * <p>
+     * Only a single byte range is supported. Requests for multiple ranges are served the whole file,
+     * as RFC 2616 allows.
+     *
+     * @return
+     *      null to serve the whole file, {@link #UNSATISFIABLE} if the range lies outside of the file,
+     *      or the first and the last byte position (inclusive) to serve.
+     */
+    static long[] parseRange(String header, long length) {
+        if (header==null)   return null;
+        header = header.trim();
+        if (!header.startsWith("bytes="))   return null;
+        String spec = header.substring(6).trim();
+        if (spec.indexOf(',')>=0)   return null;
+
+        int dash = spec.indexOf('-');
+        if (dash<0) return null;
+        try {
+            String first = spec.substring(0,dash).trim();
+            String last = spec.substring(dash+1).trim();
+            long start, end;
+            if (first.length()==0) {
+                // suffix range, such as "-500" for the last 500 bytes
+                if (last.length()==0)   return null;
+                long n = Long.parseLong(last);
+                if (n<=0)   return UNSATISFIABLE;
+                start = Math.max(0,length-n);
+                end = length-1;
+            } else {
+                start = Long.parseLong(first);
+                if (last.length()==0) {
+                    end = length-1;
+                } else {
+                    end = Long.parseLong(last);
+                    if (end<start)  return null;    // syntactically invalid, so ignore it
+                    end = Math.min(end,length-1);
+                }
+            }
+            if (start<0)    return null;
+            if (start>=length)  return UNSATISFIABLE;
+            return new long[]{start,end};
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+
+    static final long[] UNSATISFIABLE = new long[0];
+
     private String getPath(StaplerRequest req) {
         String path = req.getRestOfPath();
         if(path.length()==0)
@@ -300,6 +478,13 @@ public final class DirectoryBrowserSupport implements HttpResponse {
             return this;
         }
 
+        /**
+         * Strong entity tag derived from the size and the timestamp.
+         */
+        String getETag() {
+            return '"'+Long.toHexString(contentLength)+'-'+Long.toHexString(lastModified)+'"';
+        }
+
         private static final long serialVersionUID = 1L;
     }
 
@@ -251,6 +251,11 @@ public class Executor extends Thread implements ModelObject {
                     finishTime = System.currentTimeMillis();
                     if (LOGGER.isLoggable(FINE))
                         LOGGER.log(FINE, getName()+" completed "+executable+" in "+(finishTime-startTime)+"ms");
+                    if (workUnit.isMainWork()) {
+                        // lets the provisioning strategies learn how long the builds of each label take
+                        Label l = workUnit.context.item.getAssignedLabel();
+                        (l!=null ? l.loadStatistics : Jenkins.getInstance().unlabeledLoad).onCompletion(finishTime-startTime);
+                    }
                     try {
                         workUnit.context.synchronizeEnd(executable,problems,finishTime - startTime);
                     } catch (InterruptedException e) {
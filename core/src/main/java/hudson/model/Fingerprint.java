@@ -46,12 +46,14 @@ import hudson.util.XStream2;
 import jenkins.model.FingerprintFacet;
 import jenkins.model.Jenkins;
 import jenkins.model.TransientFingerprintFacetFactory;
+import jenkins.util.SaveQueue;
 import org.kohsuke.stapler.export.Exported;
 import org.kohsuke.stapler.export.ExportedBean;
 
 import java.io.File;
 import java.io.IOException;
 import java.io.PrintWriter;
+import java.io.StringWriter;
 import java.util.AbstractCollection;
 import java.util.ArrayList;
 import java.util.Collection;
@@ -858,8 +860,16 @@ public class Fingerprint implements ModelObject, Saveable {
             start = System.currentTimeMillis();
 
         File file = getFingerprintFile(md5sum);
-        save(file);
-        SaveableListener.fireOnChange(this, getConfigFile(file));
+        if (!SaveQueue.ENABLED) {
+            save(file);
+            SaveableListener.fireOnChange(this, getConfigFile(file));
+        } else if (facets.isEmpty()) {
+            StringWriter w = new StringWriter();
+            write(new PrintWriter(w));
+            SaveQueue.get().save(this, getConfigFile(file), w.toString());
+        } else {
+            SaveQueue.get().save(this, getConfigFile(file));
+        }
 
         if(logger.isLoggable(Level.FINE))
             logger.fine("Saving fingerprint "+file+" took "+(System.currentTimeMillis()-start)+"ms");
@@ -871,42 +881,7 @@ public class Fingerprint implements ModelObject, Saveable {
             // JENKINS-16301: fast path for the common case.
             PrintWriter w = new PrintWriter(file, "UTF-8");
             try {
-                w.println("<?xml version='1.0' encoding='UTF-8'?>");
-                w.println("<fingerprint>");
-                w.print("  <timestamp>");
-                w.print(DATE_CONVERTER.toString(timestamp));
-                w.println("</timestamp>");
-                if (original != null) {
-                    w.println("  <original>");
-                    w.print("    <name>");
-                    w.print(original.name);
-                    w.println("</name>");
-                    w.print("    <number>");
-                    w.print(original.number);
-                    w.println("</number>");
-                    w.println("  </original>");
-                }
-                w.print("  <md5sum>");
-                w.print(Util.toHexString(md5sum));
-                w.println("</md5sum>");
-                w.print("  <fileName>");
-                w.print(fileName);
-                w.println("</fileName>");
-                w.println("  <usages>");
-                for (Map.Entry<String,RangeSet> e : usages.entrySet()) {
-                    w.println("    <entry>");
-                    w.print("      <string>");
-                    w.print(e.getKey());
-                    w.println("</string>");
-                    w.print("      <ranges>");
-                    w.print(RangeSet.ConverterImpl.serialize(e.getValue()));
-                    w.println("</ranges>");
-                    w.println("    </entry>");
-                }
-                w.println("  </usages>");
-                w.println("  <facets/>");
-                w.print("</fingerprint>");
-                w.flush();
+                write(w);
             } finally {
                 w.close();
             }
@@ -916,6 +891,48 @@ public class Fingerprint implements ModelObject, Saveable {
         }
     }
 
+    /**
+     * Writes the XML of a fingerprint without facets.
+     */
+    private void write(PrintWriter w) {
+        w.println("<?xml version='1.0' encoding='UTF-8'?>");
+        w.println("<fingerprint>");
+        w.print("  <timestamp>");
+        w.print(DATE_CONVERTER.toString(timestamp));
+        w.println("</timestamp>");
+        if (original != null) {
+            w.println("  <original>");
+            w.print("    <name>");
+            w.print(original.name);
+            w.println("</name>");
+            w.print("    <number>");
+            w.print(original.number);
+            w.println("</number>");
+            w.println("  </original>");
+        }
+        w.print("  <md5sum>");
+        w.print(Util.toHexString(md5sum));
+        w.println("</md5sum>");
+        w.print("  <fileName>");
+        w.print(fileName);
+        w.println("</fileName>");
+        w.println("  <usages>");
+        for (Map.Entry<String,RangeSet> e : usages.entrySet()) {
+            w.println("    <entry>");
+            w.print("      <string>");
+            w.print(e.getKey());
+            w.println("</string>");
+            w.print("      <ranges>");
+            w.print(RangeSet.ConverterImpl.serialize(e.getValue()));
+            w.println("</ranges>");
+            w.println("    </entry>");
+        }
+        w.println("  </usages>");
+        w.println("  <facets/>");
+        w.print("</fingerprint>");
+        w.flush();
+    }
+
     /**
      * Update references to a renamed job in the fingerprint
      */
@@ -84,7 +84,7 @@ abstract public class FullDuplexHttpChannel {
 
         try {
             channel = new Channel("HTTP full-duplex channel " + uuid,
-                    Computer.threadPoolForRemoting, Mode.BINARY, upload, out, null, restricted);
+                    Computer.threadPoolForCLI, Mode.BINARY, upload, out, null, restricted);
 
             // so that we can detect dead clients, periodically send something
             PingThread ping = new PingThread(channel) {
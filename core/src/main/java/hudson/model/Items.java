@@ -243,6 +243,9 @@ public class Items {
      * @since 1.512
      */
     public static <T extends Item> List<T> getAllItems(final ItemGroup root, Class<T> type) {
+        if (root instanceof Jenkins)
+            return ((Jenkins)root).getAllItems(type);
+
         List<T> r = new ArrayList<T>();
 
         Stack<ItemGroup> q = new Stack<ItemGroup>();
@@ -46,6 +46,7 @@ import org.kohsuke.stapler.export.Exported;
 import java.awt.*;
 import java.io.IOException;
 import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
  * Utilization statistics for a node or a set of nodes.
@@ -82,6 +83,16 @@ public abstract class LoadStatistics {
     @Exported
     public final MultiStageTimeSeries queueLength;
 
+    /**
+     * Number of {@link Queue.BuildableItem}s that have arrived for this node set so far.
+     */
+    private final AtomicLong arrivals = new AtomicLong();
+
+    /**
+     * Number of builds that have completed in this node set so far, and the milliseconds they took in total.
+     */
+    private final AtomicLong completions = new AtomicLong(), completedTime = new AtomicLong();
+
     protected LoadStatistics(int initialTotalExecutors, int initialBusyExecutors) {
         this.totalExecutors = new MultiStageTimeSeries(
                 Messages._LoadStatistics_Legends_TotalExecutors(), ColorPalette.BLUE, initialTotalExecutors,DECAY);
@@ -95,6 +106,51 @@ public abstract class LoadStatistics {
         return totalExecutors.pick(timeScale).getLatest() - busyExecutors.pick(timeScale).getLatest();
     }
 
+    /**
+     * Gets the number of {@link Queue.BuildableItem}s that have become buildable in this node set
+     * since Jenkins started. Compare two values to get the arrivals between them.
+     *
+     * @since 1.519
+     */
+    public long getArrivals() {
+        return arrivals.get();
+    }
+
+    /**
+     * Called by {@link Queue} when an item becomes buildable in this node set.
+     */
+    /*package*/ void onArrival() {
+        arrivals.incrementAndGet();
+    }
+
+    /**
+     * Gets the number of builds that have completed in this node set since Jenkins started.
+     * Compare two values to get the completions between them.
+     *
+     * @since 1.519
+     */
+    public long getCompletions() {
+        return completions.get();
+    }
+
+    /**
+     * Gets the milliseconds that the builds counted by {@link #getCompletions()} took, in total.
+     *
+     * @since 1.519
+     */
+    public long getCompletedTime() {
+        return completedTime.get();
+    }
+
+    /**
+     * Called by {@link Executor} when it has completed a build that became buildable in this node set.
+     */
+    /*package*/ void onCompletion(long duration) {
+        // the time first, so that a reader who sees the build counted also sees its time
+        completedTime.addAndGet(duration);
+        completions.incrementAndGet();
+    }
+
     /**
      * Computes the # of idle executors right now and obtains the snapshot value.
      */
@@ -1087,7 +1087,14 @@ public class Queue extends ResourceController implements Saveable {
             // if the execution get here, it means we couldn't schedule it anywhere.
             // so do the scheduling like other normal jobs.
         }
-        
+
+        Jenkins j = Jenkins.getInstance();
+        Label l = p.getAssignedLabel();
+        (l!=null ? l.loadStatistics : j.unlabeledLoad).onArrival();
+        j.overallLoad.onArrival();
+        // get the clouds going right away if nothing can take this
+        (l!=null ? l.nodeProvisioner : j.unlabeledNodeProvisioner).onBuildable();
+
         buildables.put(p.task,p);
     }
 
@@ -28,7 +28,6 @@ import com.infradna.tool.bridge_method_injector.WithBridgeMethods;
 import com.thoughtworks.xstream.XStream;
 import hudson.*;
 import hudson.model.Descriptor.FormException;
-import hudson.model.listeners.SaveableListener;
 import hudson.security.ACL;
 import hudson.security.AccessControlled;
 import hudson.security.Permission;
@@ -38,6 +37,7 @@ import hudson.util.RunList;
 import hudson.util.XStream2;
 import jenkins.model.Jenkins;
 import jenkins.model.ModelObjectWithContextMenu;
+import jenkins.util.SaveQueue;
 import net.sf.json.JSONObject;
 
 import org.acegisecurity.Authentication;
@@ -478,8 +478,7 @@ public class User extends AbstractModelObject implements AccessControlled, Descr
      */
     public synchronized void save() throws IOException {
         if(BulkChange.contains(this))   return;
-        getConfigFile().write(this);
-        SaveableListener.fireOnChange(this, getConfigFile());
+        SaveQueue.get().save(this, getConfigFile());
     }
 
     /**
@@ -490,7 +489,9 @@ public class User extends AbstractModelObject implements AccessControlled, Descr
      */
     public synchronized void delete() throws IOException {
         byName.remove(id.toLowerCase(Locale.ENGLISH));
-        Util.deleteRecursive(new File(getRootDir(), id));
+        File dir = new File(getRootDir(), id);
+        SaveQueue.get().discard(dir);
+        Util.deleteRecursive(dir);
     }
 
     /**
@@ -29,15 +29,28 @@ import hudson.model.Descriptor;
 import jenkins.model.Jenkins;
 import hudson.model.ComputerSet;
 import hudson.model.AdministrativeMonitor;
+import hudson.remoting.Callable;
 import hudson.triggers.Trigger;
 import hudson.triggers.SafeTimerTask;
 import hudson.slaves.OfflineCause;
+import hudson.util.DaemonThreadFactory;
+import jenkins.util.LatencyHistogram;
 
 import java.io.IOException;
+import java.util.Collections;
 import java.util.Date;
 import java.util.HashMap;
+import java.util.Iterator;
 import java.util.Map;
+import java.util.Map.Entry;
 import java.util.Timer;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -92,6 +105,19 @@ public abstract class AbstractNodeMonitorDescriptor<T> extends Descriptor<NodeMo
      */
     private volatile Record inProgress = null;
 
+    /**
+     * How long each round of monitoring took.
+     */
+    private transient final LatencyHistogram sweepDurations = new LatencyHistogram();
+
+    /**
+     * How long {@link #monitor(Computer)} took for each node.
+     */
+    private transient final LatencyHistogram latencies = new LatencyHistogram();
+
+    private transient volatile long lastSweepDuration = -1;
+    private transient final AtomicInteger lastTimeouts = new AtomicInteger();
+
     /**
      * Performs monitoring of the given computer object.
      * This method is invoked periodically to perform the monitoring of the computer.
@@ -106,6 +132,50 @@ public abstract class AbstractNodeMonitorDescriptor<T> extends Descriptor<NodeMo
      */
     protected abstract T monitor(Computer c) throws IOException,InterruptedException;
 
+    /**
+     * Returns the part of the monitoring that needs to run on the node, so that it can be sent
+     * to the node together with those of other monitors in one remoting call.
+     *
+     * <p>
+     * Monitors that override this method also need to override {@link #processProbeResult(Computer, Object, long, long)}
+     * if the result of the probe isn't the monitoring value itself. {@link #monitor(Computer)} is still used
+     * when the batching is disabled.
+     *
+     * <p>
+     * Monitors that measure the timing of the call itself, such as the clock difference or the response time,
+     * shouldn't override this, as the other probes in the same call add to its round trip.
+     *
+     * @return
+     *      null if this monitor can't do so for the given computer, in which case {@link #monitor(Computer)} is used.
+     * @since 1.519
+     */
+    protected Callable<?,?> createProbe(Computer c) {
+        return null;
+    }
+
+    /**
+     * Converts the result of the {@linkplain #createProbe(Computer) probe} into the monitoring value.
+     *
+     * @param requestTime
+     *      When the call that carried the probe was sent to the node.
+     * @param responseTime
+     *      When the result of that call came back. As the call carries the probes of other monitors,
+     *      this includes the time they took.
+     * @since 1.519
+     */
+    @SuppressWarnings("unchecked")
+    protected T processProbeResult(Computer c, Object result, long requestTime, long responseTime) throws IOException {
+        return (T)result;
+    }
+
+    private T monitorNode(Computer c) throws IOException, InterruptedException {
+        Callable<?,?> probe = ProbeBatch.DISABLED ? null : createProbe(c);
+        if (probe==null)
+            return monitor(c);
+        ProbeBatch.Result r = ProbeBatch.run(this,c,probe);
+        return processProbeResult(c,r.value,r.requestTime,r.responseTime);
+    }
+
     /**
      * Obtains the monitoring result currently available, or null if no data is available.
      *
@@ -114,6 +184,11 @@ public abstract class AbstractNodeMonitorDescriptor<T> extends Descriptor<NodeMo
      */
     public T get(Computer c) {
         if(record==null || !record.data.containsKey(c)) {
+            // the round in progress may already have the data for this node
+            Record r = inProgress;
+            if(r!=null && r.data.containsKey(c))
+                return r.data.get(c);
+
             // if we don't have the data, schedule the check now
             if(!isInProgress()) {
                 synchronized(this) {
@@ -149,6 +224,41 @@ public abstract class AbstractNodeMonitorDescriptor<T> extends Descriptor<NodeMo
         return Util.getTimeSpanString(System.currentTimeMillis()-record.timestamp);
     }
 
+    /**
+     * Distribution of how long a whole round of monitoring took.
+     */
+    public LatencyHistogram getSweepDurations() {
+        return sweepDurations;
+    }
+
+    /**
+     * Distribution of how long monitoring of a single node took.
+     */
+    public LatencyHistogram getLatencies() {
+        return latencies;
+    }
+
+    /**
+     * How long the last completed round of monitoring took in milliseconds, or -1 if none has completed yet.
+     */
+    public long getLastSweepDuration() {
+        return lastSweepDuration;
+    }
+
+    /**
+     * Number of nodes that didn't respond within {@link #TIMEOUT} in the last round.
+     */
+    public int getLastTimeouts() {
+        return lastTimeouts.get();
+    }
+
+    public String getSweepStatisticsString() {
+        if (lastSweepDuration<0)
+            return Messages.AbstractNodeMonitorDescriptor_NoDataYet();
+        return Messages.AbstractNodeMonitorDescriptor_SweepStatistics(
+                Util.getTimeSpanString(lastSweepDuration), lastTimeouts.get(), latencies);
+    }
+
     /**
      * Is this monitor currently ignored?
      */
@@ -209,12 +319,17 @@ public abstract class AbstractNodeMonitorDescriptor<T> extends Descriptor<NodeMo
     /**
      * Thread that monitors nodes, as well as the data structure to record
      * the result.
+     *
+     * <p>
+     * Nodes are monitored concurrently, up to {@link #PARALLELISM} at a time, so that
+     * a slow node doesn't hold up the monitoring of others. Nodes that don't
+     * respond within {@link #TIMEOUT} are given up on, and have no observed value in this round.
      */
     private final class Record extends Thread {
         /**
-         * Last computed monitoring result.
+         * Last computed monitoring result. Filled as the results from each node arrive.
          */
-        private final Map<Computer,T> data = new HashMap<Computer,T>();
+        private final Map<Computer,T> data = Collections.synchronizedMap(new HashMap<Computer,T>());
 
         private long timestamp;
 
@@ -230,35 +345,106 @@ public abstract class AbstractNodeMonitorDescriptor<T> extends Descriptor<NodeMo
             }
         }
 
+        /**
+         * Monitors one node.
+         */
+        private final class Probe implements java.util.concurrent.Callable<Void> {
+            private final Computer c;
+            /**
+             * When the monitoring has actually started, or 0 if it's still waiting for a thread.
+             */
+            private volatile long started;
+
+            Probe(Computer c) {
+                this.c = c;
+            }
+
+            public Void call() {
+                Thread t = Thread.currentThread();
+                String oldName = t.getName();
+                t.setName("Monitoring "+c.getDisplayName()+" for "+getDisplayName());
+                started = System.currentTimeMillis();
+                try {
+                    data.put(c,monitorNode(c));
+                    latencies.record(System.currentTimeMillis()-started);
+                } catch (RuntimeException e) {
+                    LOGGER.log(Level.WARNING, "Failed to monitor "+c.getDisplayName()+" for "+getDisplayName(), e);
+                } catch (IOException e) {
+                    LOGGER.log(Level.WARNING, "Failed to monitor "+c.getDisplayName()+" for "+getDisplayName(), e);
+                } catch (InterruptedException e) {
+                    LOGGER.log(Level.FINE, "Node monitoring "+c.getDisplayName()+" for "+getDisplayName()+" aborted.", e);
+                } finally {
+                    t.setName(oldName);
+                }
+                return null;
+            }
+        }
+
         @Override
         public void run() {
             try {
                 long startTime = System.currentTimeMillis();
-                String oldName = getName();
-
-                for( Computer c : Jenkins.getInstance().getComputers() ) {
-                    try {
-                        setName("Monitoring "+c.getDisplayName()+" for "+getDisplayName());
-
-                        if(c.getChannel()==null)
-                            data.put(c,null);
-                        else
-                            data.put(c,monitor(c));
-                    } catch (RuntimeException e) {
-                        LOGGER.log(Level.WARNING, "Failed to monitor "+c.getDisplayName()+" for "+getDisplayName(), e);
-                    } catch (IOException e) {
-                        LOGGER.log(Level.WARNING, "Failed to monitor "+c.getDisplayName()+" for "+getDisplayName(), e);
-                    } catch (InterruptedException e) {
-                        LOGGER.log(Level.WARNING,"Node monitoring "+c.getDisplayName()+" for "+getDisplayName()+" aborted.",e);
-                        return; // we are told to die
+                Computer[] computers = Jenkins.getInstance().getComputers();
+
+                int timeouts = 0;
+                CompletionService<Void> cs = new ExecutorCompletionService<Void>(POOL);
+                Map<Future<Void>,Probe> pending = new HashMap<Future<Void>,Probe>();
+                try {
+                    int next = 0;
+                    while (true) {
+                        while (pending.size()<PARALLELISM && next<computers.length) {
+                            Computer c = computers[next++];
+                            if(c.getChannel()==null)
+                                data.put(c,null);
+                            else {
+                                Probe p = new Probe(c);
+                                pending.put(cs.submit(p),p);
+                            }
+                        }
+                        if (pending.isEmpty())
+                            break;
+
+                        Future<Void> f = cs.poll(1,TimeUnit.SECONDS);
+                        if (f!=null) {
+                            pending.remove(f);
+                            continue;
+                        }
+
+                        // give up on nodes that are taking too long
+                        long now = System.currentTimeMillis();
+                        for (Iterator<Entry<Future<Void>,Probe>> itr = pending.entrySet().iterator(); itr.hasNext();) {
+                            Entry<Future<Void>,Probe> e = itr.next();
+                            Probe p = e.getValue();
+                            if (p.started!=0 && now-p.started>TIMEOUT) {
+                                LOGGER.warning("Monitoring "+p.c.getDisplayName()+" for "+getDisplayName()+" timed out after "+TIMEOUT+"ms");
+                                e.getKey().cancel(true);
+                                // so that get() doesn't start another round for this node right away
+                                synchronized (data) {
+                                    if (!data.containsKey(p.c))
+                                        data.put(p.c,null);
+                                }
+                                latencies.record(now-p.started);
+                                timeouts++;
+                                itr.remove();
+                            }
+                        }
                     }
+                } catch (InterruptedException e) {
+                    LOGGER.log(Level.WARNING,"Node monitoring for "+getDisplayName()+" aborted.",e);
+                    return; // we are told to die
+                } finally {
+                    for (Future<Void> f : pending.keySet())
+                        f.cancel(true);
                 }
-                setName(oldName);
 
                 timestamp = System.currentTimeMillis();
                 record = this;
 
-                LOGGER.fine("Node monitoring "+getDisplayName()+" completed in "+(System.currentTimeMillis()-startTime)+"ms");
+                long duration = timestamp-startTime;
+                lastSweepDuration = duration;
+                lastTimeouts.set(timeouts);
+                sweepDurations.record(duration);
+                LOGGER.fine("Node monitoring "+getDisplayName()+" completed in "+duration+"ms");
             } catch (Throwable t) {
                 LOGGER.log(Level.WARNING, "Unexpected node monitoring termination: "+getDisplayName(),t);
             } finally {
@@ -273,4 +459,19 @@ public abstract class AbstractNodeMonitorDescriptor<T> extends Descriptor<NodeMo
     private final Logger LOGGER = Logger.getLogger(getClass().getName());
 
     private static final long HOUR = 1000*60*60L;
+
+    /**
+     * Number of nodes monitored concurrently by one monitor.
+     */
+    public static int PARALLELISM = Integer.getInteger(AbstractNodeMonitorDescriptor.class.getName()+".parallelism",16);
+
+    /**
+     * How long in milliseconds to wait for a single node before giving up on it.
+     */
+    public static long TIMEOUT = Long.getLong(AbstractNodeMonitorDescriptor.class.getName()+".timeout",2*60*1000);
+
+    /**
+     * Threads that monitor the nodes, shared by all the monitors and rounds.
+     */
+    private static final ExecutorService POOL = Executors.newCachedThreadPool(new DaemonThreadFactory());
 }
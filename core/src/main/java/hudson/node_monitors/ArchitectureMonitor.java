@@ -43,6 +43,11 @@ public class ArchitectureMonitor extends NodeMonitor {
             return c.getChannel().call(new GetArchTask());
         }
 
+        @Override
+        protected Callable<String,RuntimeException> createProbe(Computer c) {
+            return new GetArchTask();
+        }
+
         public String getDisplayName() {
             return Messages.ArchitectureMonitor_DisplayName();
         }
@@ -29,6 +29,7 @@ import hudson.Functions;
 import hudson.model.Computer;
 import jenkins.model.Jenkins;
 import hudson.node_monitors.DiskSpaceMonitorDescriptor.DiskSpace;
+import hudson.remoting.Callable;
 import org.kohsuke.stapler.DataBoundConstructor;
 
 import java.io.IOException;
@@ -70,6 +71,14 @@ public class DiskSpaceMonitor extends AbstractDiskSpaceMonitor {
 
             return p.act(new GetUsableSpace());
         }
+
+        @Override
+        protected Callable<DiskSpace,IOException> createProbe(Computer c) {
+            FilePath p = c.getNode().getRootPath();
+            if(p==null) return null;
+
+            return p.asCallableWith(new GetUsableSpace());
+        }
     };
 
     @Extension
@@ -0,0 +1,231 @@
+package hudson.node_monitors;
+
+import hudson.model.Computer;
+import hudson.model.ComputerSet;
+import hudson.remoting.Callable;
+import hudson.remoting.VirtualChannel;
+import hudson.util.IOException2;
+
+import java.io.IOException;
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Sends the node-side parts of all the {@link NodeMonitor}s to a node in one remoting call.
+ *
+ * <p>
+ * When a monitor needs to check a node, the {@linkplain AbstractNodeMonitorDescriptor#createProbe(Computer) probes}
+ * of all the other monitors are sent along with it, and the results are kept for a short while.
+ * The other monitors, which normally run their rounds at about the same time, then pick up their
+ * results from here instead of making their own calls. If a batch for the node is already in flight,
+ * the monitor waits for it instead of sending another, for up to {@link #WAIT}. If it takes longer than that,
+ * the monitor sends its own probe by itself.
+ *
+ * @since 1.519
+ */
+final class ProbeBatch {
+    private final Computer computer;
+
+    /**
+     * Probes in this batch, keyed by the monitor they belong to.
+     */
+    private final Map<AbstractNodeMonitorDescriptor<?>,Callable<?,?>> probes;
+
+    private final CountDownLatch done = new CountDownLatch(1);
+
+    private volatile List<Object> results;
+    private volatile Throwable failure;
+    private volatile long requestTime, responseTime;
+
+    private ProbeBatch(Computer computer, Map<AbstractNodeMonitorDescriptor<?>,Callable<?,?>> probes) {
+        this.computer = computer;
+        this.probes = probes;
+    }
+
+    /**
+     * Result of a single probe.
+     */
+    static final class Result {
+        final Object value;
+        /**
+         * When the batch was sent to the node, and when the response came back.
+         */
+        final long requestTime, responseTime;
+
+        Result(Object value, long requestTime, long responseTime) {
+            this.value = value;
+            this.requestTime = requestTime;
+            this.responseTime = responseTime;
+        }
+    }
+
+    private boolean isInFlight() {
+        return done.getCount()>0;
+    }
+
+    /**
+     * Can we still hand out the results of this batch?
+     */
+    private boolean isFresh() {
+        return results!=null && System.currentTimeMillis()-responseTime < FRESHNESS;
+    }
+
+    /**
+     * Gets the result of the given monitor's probe, once the batch is done.
+     */
+    private Result get(AbstractNodeMonitorDescriptor<?> d) throws IOException {
+        if (failure!=null)
+            throw new IOException2("Failed to monitor "+computer.getName(),failure);
+
+        Object v = results.get(new ArrayList<AbstractNodeMonitorDescriptor<?>>(probes.keySet()).indexOf(d));
+        if (v instanceof Failure)
+            throw new IOException2(d.getDisplayName()+" failed on "+computer.getName(),((Failure)v).cause);
+        return new Result(v,requestTime,responseTime);
+    }
+
+    private void execute() {
+        try {
+            VirtualChannel ch = computer.getChannel();
+            if (ch==null)
+                throw new IOException(computer.getName()+" is offline");
+
+            requestTime = System.currentTimeMillis();
+            List<Object> r = ch.call(new CompositeProbe(new ArrayList<Callable<?,?>>(probes.values())));
+            responseTime = System.currentTimeMillis();
+            results = r;
+            LOGGER.log(Level.FINE, "Monitored {0} for {1} monitors in {2}ms",
+                    new Object[]{computer.getName(), probes.size(), responseTime-requestTime});
+        } catch (Throwable t) {
+            failure = t;
+        } finally {
+            done.countDown();
+        }
+    }
+
+    /**
+     * Batches in flight or recently completed, by the node name.
+     * Batches are dropped once they are no longer of use, so that removed nodes don't stay in memory.
+     */
+    private static final Map<String,ProbeBatch> batches = new HashMap<String,ProbeBatch>();
+
+    /**
+     * Runs the probe of the given monitor on the given node, sending it together with the probes of
+     * the other monitors, or reusing the result of a batch that did so.
+     *
+     * @param probe
+     *      The probe of the given monitor, which is used if a new batch needs to be sent.
+     */
+    static Result run(AbstractNodeMonitorDescriptor<?> d, Computer c, Callable<?,?> probe) throws IOException, InterruptedException {
+        ProbeBatch b;
+        boolean leader = false;
+        synchronized (batches) {
+            for (Iterator<ProbeBatch> itr = batches.values().iterator(); itr.hasNext();) {
+                ProbeBatch x = itr.next();
+                if (!x.isInFlight() && !x.isFresh())
+                    itr.remove();
+            }
+            b = batches.get(c.getName());
+            if (b==null || b.computer!=c || !b.probes.containsKey(d)) {
+                b = new ProbeBatch(c,collectProbes(d,c,probe));
+                batches.put(c.getName(),b);
+                leader = true;
+            }
+        }
+        if (leader)
+            b.execute();
+        else if (!b.done.await(WAIT,TimeUnit.MILLISECONDS)) {
+            LOGGER.log(Level.FINE, "Batch for {0} is taking too long, monitoring {1} by itself",
+                    new Object[]{c.getName(), d.getDisplayName()});
+            synchronized (batches) {
+                // so that the monitors coming next don't wait for it, either
+                if (batches.get(c.getName())==b)
+                    batches.remove(c.getName());
+            }
+            b = new ProbeBatch(c,Collections.<AbstractNodeMonitorDescriptor<?>,Callable<?,?>>singletonMap(d,probe));
+            b.execute();
+        }
+        return b.get(d);
+    }
+
+    private static Map<AbstractNodeMonitorDescriptor<?>,Callable<?,?>> collectProbes(AbstractNodeMonitorDescriptor<?> d, Computer c, Callable<?,?> probe) {
+        Map<AbstractNodeMonitorDescriptor<?>,Callable<?,?>> r = new LinkedHashMap<AbstractNodeMonitorDescriptor<?>,Callable<?,?>>();
+        r.put(d,probe);
+        for (NodeMonitor m : ComputerSet.getMonitors()) {
+            AbstractNodeMonitorDescriptor<?> md = m.getDescriptor();
+            if (md==d || r.containsKey(md))     continue;
+            try {
+                Callable<?,?> p = md.createProbe(c);
+                if (p!=null)
+                    r.put(md,p);
+            } catch (RuntimeException e) {
+                LOGGER.log(Level.WARNING, "Failed to create a probe of "+md.getDisplayName()+" for "+c.getName(), e);
+            }
+        }
+        return r;
+    }
+
+    /**
+     * Runs all the probes on the node. The failure of one doesn't affect others.
+     */
+    private static final class CompositeProbe implements Callable<List<Object>,IOException> {
+        private final List<Callable<?,?>> probes;
+
+        CompositeProbe(List<Callable<?,?>> probes) {
+            this.probes = probes;
+        }
+
+        public List<Object> call() throws IOException {
+            List<Object> r = new ArrayList<Object>(probes.size());
+            for (Callable<?,?> p : probes) {
+                try {
+                    r.add(p.call());
+                } catch (Throwable t) {
+                    r.add(new Failure(t));
+                }
+            }
+            return r;
+        }
+
+        private static final long serialVersionUID = 1L;
+    }
+
+    /**
+     * Marks the failure of a probe in {@link CompositeProbe}'s result.
+     */
+    private static final class Failure implements Serializable {
+        final Throwable cause;
+
+        Failure(Throwable cause) {
+            this.cause = cause;
+        }
+
+        private static final long serialVersionUID = 1L;
+    }
+
+    /**
+     * How long in milliseconds the results of a batch can be handed out to the monitors that didn't send it.
+     */
+    static long FRESHNESS = Long.getLong(ProbeBatch.class.getName()+".freshness",60*1000);
+
+    /**
+     * How long in milliseconds a monitor waits for a batch that another monitor sent, before sending its own probe.
+     */
+    static long WAIT = Long.getLong(ProbeBatch.class.getName()+".wait",30*1000);
+
+    /**
+     * Set to true to have each monitor make its own calls, as it used to be.
+     */
+    static boolean DISABLED = Boolean.getBoolean(ProbeBatch.class.getName()+".disabled");
+
+    private static final Logger LOGGER = Logger.getLogger(ProbeBatch.class.getName());
+}
@@ -30,6 +30,7 @@ import hudson.Functions;
 import hudson.model.Computer;
 import jenkins.model.Jenkins;
 import hudson.node_monitors.DiskSpaceMonitorDescriptor.DiskSpace;
+import hudson.remoting.Callable;
 import hudson.remoting.VirtualChannel;
 import org.codehaus.mojo.animal_sniffer.IgnoreJRERequirement;
 import org.kohsuke.stapler.DataBoundConstructor;
@@ -72,6 +73,14 @@ public class TemporarySpaceMonitor extends AbstractDiskSpaceMonitor {
 
             return p.act(new GetTempSpace());
         }
+
+        @Override
+        protected Callable<DiskSpace,IOException> createProbe(Computer c) {
+            FilePath p = c.getNode().getRootPath();
+            if(p==null) return null;
+
+            return p.asCallableWith(new GetTempSpace());
+        }
     };
 
     @Extension
@@ -115,7 +115,7 @@ public class WindowsRemoteLauncher extends Launcher {
             Process proc = launcher.launch(Util.join(asList(cmd), " "), _workDir.getRemote());
 
             return new Channel("channel over named pipe to "+launcher.getHostName(),
-                Computer.threadPoolForRemoting, proc.getInputStream(), new BufferedOutputStream(proc.getOutputStream()));
+                Computer.threadPoolForChannels, proc.getInputStream(), new BufferedOutputStream(proc.getOutputStream()));
         } catch (JIException e) {
             throw new IOException2(e);
         }
@@ -281,6 +281,9 @@ public final class CronTab {
      *
      * <p>
      * Note that if t already matches this cron, it's returned as is.
+     *
+     * @throws IllegalArgumentException
+     *      if this crontab never matches, such as "0 0 30 2 *".
      */
     public Calendar ceil(long t) {
         Calendar cal = new GregorianCalendar(Locale.US);
@@ -294,8 +297,11 @@ public final class CronTab {
      * This method modifies the given calendar and returns the same object.
      */
     public Calendar ceil(Calendar cal) {
+        int limit = cal.get(Calendar.YEAR)+CEIL_YEAR_LIMIT;
         OUTER:
         while (true) {
+            if (cal.get(Calendar.YEAR)>limit)
+                throw new IllegalArgumentException("No time matches "+spec);
             for (CalendarField f : CalendarField.ADJUST_ORDER) {
                 int cur = f.valueOf(cal);
                 int next = f.ceil(this,cur);
@@ -469,4 +475,10 @@ public final class CronTab {
             return null;
         }
     }
+
+    /**
+     * How many years {@link #ceil(Calendar)} looks ahead before it gives up.
+     * Feb 29th on a given day of the week can be decades apart, so this is generous.
+     */
+    private static final int CEIL_YEAR_LIMIT = 100;
 }
@@ -52,6 +52,28 @@ public final class CronTabList {
         return false;
     }
 
+    /**
+     * Computes the nearest future time that matches any of the crontabs.
+     *
+     * @return
+     *      null if there's no crontab, or none of them ever matches.
+     * @see CronTab#ceil(long)
+     * @since 1.519
+     */
+    public synchronized Calendar ceil(long t) {
+        Calendar r = null;
+        for (CronTab tab : tabs) {
+            try {
+                Calendar c = tab.ceil(t);
+                if (r==null || c.before(r))
+                    r = c;
+            } catch (IllegalArgumentException e) {
+                // never matches, so it doesn't count
+            }
+        }
+        return r;
+    }
+
     /**
      * Checks if this crontab entry looks reasonable,
      * and if not, return an warning message.
@@ -56,6 +56,7 @@ import java.util.ArrayList;
 
 import org.kohsuke.stapler.export.Exported;
 import org.kohsuke.stapler.export.ExportedBean;
+import javax.annotation.CheckForNull;
 
 /**
  * Captures the configuration information in it.
@@ -370,12 +371,86 @@ public abstract class SCM implements Describable<SCM>, ExtensionPoint {
                 baseline2 = _calcRevisionsFromBuild(project.getLastBuild(), launcher, listener);
             }
 
+            String key = workspace==null && implementsQueryRemoteRevision() ? getPollingKey(project) : null;
+            if (key!=null)
+                return SharedPolling.get().poll(this, key, project, listener, baseline2);
+
             return _compareRemoteRevisionWith(project, launcher, workspace, listener, baseline2);
         } else {
             return pollChanges(project,launcher,workspace,listener) ? PollingResult.SIGNIFICANT : PollingResult.NO_CHANGES;
         }
     }
 
+    /**
+     * Identifies the remote repository that polling of the given project queries, so that
+     * the projects polling the same repository can share one query of it.
+     *
+     * <p>
+     * Returning non-null only takes effect if the SCM also implements {@link #queryRemoteRevision(AbstractProject, TaskListener)}
+     * and {@link #compareRevisions(AbstractProject, SCMRevisionState, SCMRevisionState, TaskListener)}, which are
+     * then used instead of {@link #compareRemoteRevisionWith(AbstractProject, Launcher, FilePath, TaskListener, SCMRevisionState)}
+     * for polling that {@linkplain #requiresWorkspaceForPolling() doesn't use a workspace}. Two projects should only get
+     * the same key if the remote state queried for one of them is just as good for the other, for example
+     * the URL of the repository and the branch being watched.
+     *
+     * @return
+     *      null, the default, if polling can't be shared.
+     * @see SharedPolling
+     * @since 1.519
+     */
+    public @CheckForNull String getPollingKey(AbstractProject<?,?> project) {
+        return null;
+    }
+
+    /**
+     * Queries the current state of the remote repository {@linkplain #getPollingKey(AbstractProject) identified}
+     * for the given project. The result may be used for the other projects with the same key,
+     * so it should not depend on anything else about the project.
+     *
+     * <p>
+     * The default implementation doesn't query anything and returns {@link SCMRevisionState#NONE},
+     * leaving it to {@link #compareRevisions(AbstractProject, SCMRevisionState, SCMRevisionState, TaskListener)}.
+     * Polling is only shared for SCMs that override this method.
+     *
+     * @param listener
+     *      Logs during the query should be sent here. Only the project the query is made for gets to see them.
+     * @since 1.519
+     */
+    public SCMRevisionState queryRemoteRevision(AbstractProject<?,?> project, TaskListener listener) throws IOException, InterruptedException {
+        return SCMRevisionState.NONE;
+    }
+
+    /**
+     * Compares the state of the remote repository obtained from {@link #queryRemoteRevision(AbstractProject, TaskListener)},
+     * possibly for another project, with the baseline of the given project, without querying the repository again.
+     *
+     * <p>
+     * The default implementation ignores the given state and calls
+     * {@link #compareRemoteRevisionWith(AbstractProject, Launcher, FilePath, TaskListener, SCMRevisionState)}
+     * without a workspace, which does query the repository again.
+     *
+     * @return
+     *      Same as {@link #compareRemoteRevisionWith(AbstractProject, Launcher, FilePath, TaskListener, SCMRevisionState)}.
+     * @since 1.519
+     */
+    public PollingResult compareRevisions(AbstractProject<?,?> project, SCMRevisionState remote, SCMRevisionState baseline, TaskListener listener) throws IOException, InterruptedException {
+        return _compareRemoteRevisionWith(project, null, null, listener, baseline);
+    }
+
+    /**
+     * Whether this SCM overrides {@link #queryRemoteRevision(AbstractProject, TaskListener)}, without which
+     * there's nothing for {@link SharedPolling} to share.
+     */
+    private boolean implementsQueryRemoteRevision() {
+        for (Class<?> c = getClass(); c != SCM.class; c = c.getSuperclass()) {
+            try {
+                c.getDeclaredMethod("queryRemoteRevision", AbstractProject.class, TaskListener.class);
+                return true;
+            } catch (NoSuchMethodException e) { }
+        }
+        return false;
+    }
+
     private boolean is1_346OrLater() {
         for (Class<?> c = getClass(); c != SCM.class; c = c.getSuperclass()) {
             try {
@@ -0,0 +1,273 @@
+package hudson.scm;
+
+import hudson.Util;
+import hudson.model.AbstractProject;
+import hudson.model.TaskListener;
+import hudson.util.IOException2;
+import hudson.util.TimeUnit2;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+
+/**
+ * Lets the projects that poll the same remote repository share one query of it.
+ *
+ * <p>
+ * For {@link SCM}s that return a {@linkplain SCM#getPollingKey(AbstractProject) polling key}
+ * and implement {@link SCM#queryRemoteRevision(AbstractProject, TaskListener)},
+ * {@link SCM#poll(AbstractProject, hudson.Launcher, hudson.FilePath, TaskListener, SCMRevisionState)}
+ * comes here. If another project is querying the same repository at the moment, or did so within
+ * {@link #MAX_AGE}, its result is used, unless that query started before the polling was
+ * {@linkplain #setRequestTime(long) requested} by something like a post-commit hook, as it may have missed
+ * the commit the hook tells about. Otherwise the repository is queried on the calling thread, and projects
+ * that come along in the mean time wait for that. Each project then compares the result with its own baseline.
+ *
+ * <p>
+ * Along the way, this keeps track of how often and how long each repository is queried.
+ * Repositories that haven't been queried for {@link #RETENTION} are forgotten.
+ *
+ * @since 1.519
+ */
+public final class SharedPolling {
+    private final Map<String,Repository> repositories = new HashMap<String,Repository>();
+
+    /**
+     * A remote repository, and how it has been queried.
+     */
+    public static final class Repository {
+        private final String key;
+
+        /**
+         * The latest query, which may still be running.
+         */
+        private Query current;
+
+        private int queries, shared, failures;
+        private long totalLatency, lastLatency, lastQueried;
+
+        Repository(String key) {
+            this.key = key;
+        }
+
+        public String getKey() {
+            return key;
+        }
+
+        /**
+         * Number of times the repository was actually queried.
+         */
+        public synchronized int getQueries() {
+            return queries;
+        }
+
+        /**
+         * Number of pollings that used a query made for another project.
+         */
+        public synchronized int getShared() {
+            return shared;
+        }
+
+        public synchronized int getFailures() {
+            return failures;
+        }
+
+        /**
+         * Average milliseconds a query of the repository takes.
+         */
+        public synchronized long getAverageLatency() {
+            return queries==0 ? 0 : totalLatency/queries;
+        }
+
+        public String getAverageLatencyString() {
+            return Util.getTimeSpanString(getAverageLatency());
+        }
+
+        public synchronized long getLastLatency() {
+            return lastLatency;
+        }
+
+        /**
+         * When the repository was last queried, or 0 if never.
+         */
+        public synchronized long getLastQueried() {
+            return lastQueried;
+        }
+
+        /**
+         * Whether a query of the repository is running right now.
+         */
+        public synchronized boolean isQuerying() {
+            return current!=null && !current.isDone();
+        }
+
+        private synchronized void record(long latency, boolean success) {
+            queries++;
+            if (!success)   failures++;
+            totalLatency += latency;
+            lastLatency = latency;
+        }
+    }
+
+    /**
+     * One query of a repository. Whether it failed is kept here rather than on {@link Repository},
+     * since a query requested by a hook may replace it while it's still running.
+     */
+    private static final class Query extends FutureTask<SCMRevisionState> {
+        private final long started;
+        private volatile boolean failed;
+
+        Query(Callable<SCMRevisionState> callable, long started) {
+            super(callable);
+            this.started = started;
+        }
+
+        @Override
+        protected void setException(Throwable t) {
+            failed = true;
+            super.setException(t);
+        }
+
+        /**
+         * Whether the result can be used for polling requested at the given time.
+         */
+        boolean isUsable(long requested, long now) {
+            return started>=requested && !(isDone() && (failed || now-started>MAX_AGE));
+        }
+    }
+
+    /**
+     * Polls the project, sharing the query of the remote repository with the other projects that poll it.
+     */
+    PollingResult poll(final SCM scm, String key, final AbstractProject<?,?> project, final TaskListener listener, SCMRevisionState baseline) throws IOException, InterruptedException {
+        long now = System.currentTimeMillis();
+        Repository r;
+        synchronized (this) {
+            r = repositories.get(key);
+            if (r==null) {
+                forgetIdle(now);
+                repositories.put(key, r=new Repository(key));
+            }
+        }
+
+        Query task;
+        boolean mine = false;
+        Long requested = REQUEST_TIME.get();
+        synchronized (r) {
+            task = r.current;
+            if (task==null || !task.isUsable(requested!=null ? requested : now, now)) {
+                final Repository repository = r;
+                task = r.current = new Query(new Callable<SCMRevisionState>() {
+                    public SCMRevisionState call() throws Exception {
+                        long start = System.currentTimeMillis();
+                        boolean success = false;
+                        try {
+                            SCMRevisionState s = scm.queryRemoteRevision(project, listener);
+                            success = true;
+                            return s;
+                        } finally {
+                            repository.record(System.currentTimeMillis()-start, success);
+                        }
+                    }
+                }, now);
+                r.lastQueried = now;
+                mine = true;
+            } else {
+                r.shared++;
+            }
+        }
+
+        SCMRevisionState remote;
+        if (mine) {
+            task.run();
+        } else {
+            listener.getLogger().println(Messages.SharedPolling_Sharing(key, TimeUnit2.MILLISECONDS.toSeconds(now-task.started)));
+        }
+        try {
+            remote = task.get();
+        } catch (ExecutionException e) {
+            Throwable t = e.getCause();
+            if (t instanceof IOException)           throw (IOException)t;
+            if (t instanceof InterruptedException)  throw (InterruptedException)t;
+            if (t instanceof RuntimeException)      throw (RuntimeException)t;
+            if (t instanceof Error)                 throw (Error)t;
+            throw new IOException2("Failed to query "+key,t);
+        }
+        return scm.compareRevisions(project, remote, baseline, listener);
+    }
+
+    /**
+     * Drops the repositories that haven't been queried for {@link #RETENTION},
+     * so that the keys of the projects deleted or reconfigured since don't pile up.
+     */
+    private void forgetIdle(long now) {
+        for (Iterator<Repository> itr = repositories.values().iterator(); itr.hasNext();) {
+            Repository r = itr.next();
+            synchronized (r) {
+                if (now-r.lastQueried>RETENTION && !r.isQuerying())
+                    itr.remove();
+            }
+        }
+    }
+
+    /**
+     * Gets the repositories that have been polled, ordered by their keys.
+     */
+    public synchronized List<Repository> getRepositories() {
+        List<Repository> r = new ArrayList<Repository>(repositories.values());
+        Collections.sort(r, new Comparator<Repository>() {
+            public int compare(Repository a, Repository b) {
+                return a.key.compareTo(b.key);
+            }
+        });
+        return r;
+    }
+
+    /**
+     * Gets the repository of the given key, or null if it hasn't been polled.
+     */
+    public synchronized Repository getRepository(String key) {
+        return repositories.get(key);
+    }
+
+    /**
+     * Tells the polling done on the current thread when it was last requested other than by the crontab,
+     * so that it only uses the queries of the repository started since then. Polling that wasn't told
+     * only uses queries started after it, so it practically never shares.
+     *
+     * @param time
+     *      the time, as in {@link System#currentTimeMillis()}, or 0 if only the crontab asked for the polling,
+     *      or -1 to forget it once the polling is done.
+     */
+    public static void setRequestTime(long time) {
+        if (time<0)     REQUEST_TIME.remove();
+        else            REQUEST_TIME.set(time);
+    }
+
+    private static final ThreadLocal<Long> REQUEST_TIME = new ThreadLocal<Long>();
+
+    public static SharedPolling get() {
+        return INSTANCE;
+    }
+
+    private static final SharedPolling INSTANCE = new SharedPolling();
+
+    /**
+     * How old the result of a query can get, in milliseconds, for it to still be used by other projects.
+     * Even a younger result isn't used for pollings requested other than by the crontab before the query started.
+     */
+    public static long MAX_AGE = Long.getLong(SharedPolling.class.getName()+".maxAge", TimeUnit2.MINUTES.toMillis(1));
+
+    /**
+     * How long, in milliseconds, a repository that isn't queried anymore is remembered along with its statistics.
+     */
+    public static long RETENTION = Long.getLong(SharedPolling.class.getName()+".retention", TimeUnit2.DAYS.toMillis(1));
+}
@@ -204,7 +204,7 @@ public class Channels {
         Socket s = serverSocket.accept();
         serverSocket.close();
 
-        return forProcess("Channel to "+displayName, Computer.threadPoolForRemoting,
+        return forProcess("Channel to "+displayName, Computer.threadPoolForChannels,
                 new BufferedInputStream(new SocketInputStream(s)),
                 new BufferedOutputStream(new SocketOutputStream(s)),null,p);
     }
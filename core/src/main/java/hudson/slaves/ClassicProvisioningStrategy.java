@@ -0,0 +1,146 @@
+package hudson.slaves;
+
+import hudson.Extension;
+
+import java.util.logging.Logger;
+
+/**
+ * The original {@link ProvisioningStrategy} of {@link NodeProvisioner}, which provisions
+ * when the executors are all busy and the queue stays longer than what's being provisioned.
+ *
+ * <p>
+ * This is the default, so clouds behave as they did in earlier versions unless
+ * another strategy is selected.
+ *
+ * @since 1.519
+ */
+@Extension(ordinal=100)
+public class ClassicProvisioningStrategy extends ProvisioningStrategy {
+    @Override
+    public int apply(State s) {
+        /*
+            Here we determine how many additional slaves we need to keep up with the load (if at all),
+            which involves a simple math.
+
+            Broadly speaking, first we check that all the executors are fully utilized before attempting
+            to start any new slave (this also helps to ignore the temporary gap between different numbers,
+            as changes in them are not necessarily synchronized --- for example, there's a time lag between
+            when a slave launches (thus bringing the planned capacity down) and the time when its executors
+            pick up builds (thus bringing the queue length down.)
+
+            Once we confirm that, we compare the # of buildable items against the additional slaves
+            that are being brought online. If we have more jobs than our executors can handle, we'll launch a new slave.
+
+            So this computation involves three stats:
+
+              1. # of idle executors
+              2. # of jobs that are starving for executors
+              3. # of additional slaves being provisioned (planned capacities.)
+
+            To ignore a temporary surge/drop, we make conservative estimates on each one of them. That is,
+            we take the current snapshot value, and we take the current exponential moving average (EMA) value,
+            and use the max/min.
+
+            This is another measure to be robust against temporary surge/drop in those indicators, and helps
+            us avoid over-reacting to stats.
+
+            If we only use the snapshot value or EMA value, tests confirmed that the gap creates phantom
+            excessive loads and Hudson ends up firing excessive capacities. In a static system, over the time
+            EMA and the snapshot value becomes the same, so this makes sure that in a long run this conservative
+            estimate won't create a starvation.
+         */
+
+        boolean needSomeWhenNoneAtAll = (s.idleExecutors==0) && (s.totalExecutors + s.plannedCapacity == 0) && (s.queueLength > 0);
+        float idle = Math.max(s.idleExecutorsEMA, s.idleExecutors);
+        if(idle>=MARGIN && !needSomeWhenNoneAtAll)
+            return 0;   // make sure the system is fully utilized before attempting any new launch.
+
+        // this is the amount of work left to be done
+        float qlen = Math.min(s.queueLengthEMA, s.queueLength);
+
+        // ... and this is the additional executors we've already provisioned.
+        float plannedCapacity = Math.max(s.plannedCapacityEMA, s.plannedCapacity);
+
+        float excessWorkload = qlen - plannedCapacity;
+        if (needSomeWhenNoneAtAll && excessWorkload < 1) {
+            // in this specific exceptional case we should just provision right now
+            // the exponential smoothing will delay the build unnecessarily
+            excessWorkload = 1;
+        }
+        float m = calcThresholdMargin(s.totalExecutors);
+        if(excessWorkload<=1-m)
+            return 0;
+
+        LOGGER.fine("Excess workload "+excessWorkload+" detected. (planned capacity="+plannedCapacity+",Qlen="+qlen+",idle="+idle+"&"+s.idleExecutors+",total="+s.totalExecutors+"m,="+m+")");
+
+        // provisioning a new node should be conservative --- for example if exceeWorkload is 1.4,
+        // we don't want to allocate two nodes but just one.
+        // OTOH, because of the exponential decay, even when we need one slave, excess workload is always
+        // something like 0.95, in which case we want to allocate one node.
+        // so the threshold here is 1-MARGIN, and hence floor(excessWorkload+MARGIN) is needed to handle this.
+        return (int)Math.round(Math.floor(excessWorkload+m));
+    }
+
+    /**
+     * Computes the threshold for triggering an allocation.
+     *
+     * <p>
+     * Because the excessive workload value is EMA, even when the snapshot value of the excessive
+     * workload is 1, the value never really gets to 1. So we need to introduce a notion of the margin M,
+     * where we provision a new node if the EMA of the excessive workload goes beyond 1-M (where M is a small value
+     * in the (0,1) range.)
+     *
+     * <p>
+     * M effectively controls how long Hudson waits until allocating a new node, in the face of workload.
+     * This delay is justified for absorbing temporary ups and downs, and can be interpreted as Hudson
+     * holding off provisioning in the hope that one of the existing nodes will become available.
+     *
+     * <p>
+     * M can be a constant value, but there's a benefit in adjusting M based on the total current capacity,
+     * based on the above justification; that is, if there's no existing capacity at all, holding off
+     * an allocation doesn't make much sense, as there won't be any executors available no matter how long we wait.
+     * On the other hand, if we have a large number of existing executors, chances are good that some
+     * of them become available &mdash; the chance gets better and better as the number of current total
+     * capacity increases.
+     *
+     * <p>
+     * Therefore, we compute the threshold margin as follows:
+     *
+     * <pre>
+     *   M(t) = M* + (M0 - M*) alpha ^ t
+     * </pre>
+     *
+     * ... where:
+     *
+     * <ul>
+     * <li>M* is the ultimate margin value that M(t) converges to with t->inf,
+     * <li>M0 is the value of M(0), the initial value.
+     * <li>alpha is the decay factor in (0,1). M(t) converges to M* faster if alpha is smaller.
+     * </ul>
+     */
+    private float calcThresholdMargin(int totalSnapshot) {
+        float f = (float) (MARGIN + (MARGIN0 - MARGIN) * Math.pow(MARGIN_DECAY, totalSnapshot));
+        // defensively ensure that the threshold margin is in (0,1)
+        f = Math.max(f,0);
+        f = Math.min(f,1);
+        return f;
+    }
+
+    private static final Logger LOGGER = Logger.getLogger(NodeProvisioner.class.getName());
+
+    // the system properties keep the names they had when this code was in NodeProvisioner
+    private static final float MARGIN = Integer.getInteger(NodeProvisioner.class.getName()+".MARGIN",10)/100f;
+    private static final float MARGIN0 = Math.max(MARGIN, getFloatSystemProperty(NodeProvisioner.class.getName()+".MARGIN0",0.5f));
+    private static final float MARGIN_DECAY = getFloatSystemProperty(NodeProvisioner.class.getName()+".MARGIN_DECAY",0.5f);
+
+    static float getFloatSystemProperty(String propName, float defaultValue) {
+        String v = System.getProperty(propName);
+        if (v!=null)
+            try {
+                return Float.parseFloat(v);
+            } catch (NumberFormatException e) {
+                LOGGER.warning("Failed to parse a float value from system property "+propName+". value was "+v);
+            }
+        return defaultValue;
+    }
+}
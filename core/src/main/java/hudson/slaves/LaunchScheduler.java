@@ -0,0 +1,401 @@
+package hudson.slaves;
+
+import hudson.model.Computer;
+import hudson.model.Label;
+import hudson.model.Node;
+import hudson.model.Queue;
+import hudson.util.DaemonThreadFactory;
+import jenkins.model.Jenkins;
+import jenkins.util.LatencyHistogram;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Decides when {@link SlaveComputer}s get launched.
+ *
+ * <p>
+ * When Jenkins starts, every slave gets launched at once, and SSH handshakes and such
+ * can bring the master to its knees. So at most as many launches as
+ * {@link Computer#threadPoolForLaunching} allows run at a time, and the rest waits.
+ * Waiting launches of slaves that can build something in the queue go first.
+ *
+ * <p>
+ * A slave that failed to launch doesn't get launched again by {@link RetentionStrategy}s right away.
+ * It waits for an exponentially growing, randomized delay, so that slaves that are down
+ * don't keep the launch threads busy, and that a bunch of slaves that failed together don't come back together.
+ * Launches requested by users are not delayed. Only launches that threw count as failures, and only for launchers
+ * that {@linkplain ComputerLauncher#isLaunchSupported() can launch}, as the others, such as {@link JNLPLauncher},
+ * just wait for the slave to connect. The delay is reset once the slave comes online.
+ *
+ * @since 1.519
+ */
+public final class LaunchScheduler {
+    /**
+     * Launches waiting for their turn.
+     */
+    private final List<Launch> pending = new ArrayList<Launch>();
+
+    private int running;
+
+    /**
+     * When {@link #timer} is going to look at the delayed launches next.
+     */
+    private long nextWakeUp = Long.MAX_VALUE;
+
+    /**
+     * Launch history by the node name.
+     */
+    private final Map<String,NodeRecord> records = new HashMap<String,NodeRecord>();
+
+    private final LatencyHistogram durations = new LatencyHistogram(1000,5000,10000,30000,60000,5*60000,15*60000);
+
+    private final ScheduledExecutorService timer = new ScheduledThreadPoolExecutor(1,new DaemonThreadFactory());
+
+    /**
+     * Runs the launches. Its maximum pool size is how many run at a time.
+     */
+    private final ThreadPoolExecutor pool;
+
+    private final Random random = new Random();
+
+    /**
+     * Launch history of one node.
+     */
+    public static final class NodeRecord {
+        private volatile long lastDuration = -1;
+        private volatile int failures;
+        private volatile long notBefore;
+
+        /**
+         * How long the last launch took in milliseconds, or -1 if it hasn't launched yet.
+         */
+        public long getLastDuration() {
+            return lastDuration;
+        }
+
+        /**
+         * Number of consecutive launch failures.
+         */
+        public int getFailures() {
+            return failures;
+        }
+
+        /**
+         * The time before which the node isn't launched again automatically, because it failed to launch.
+         */
+        public long getNotBefore() {
+            return notBefore;
+        }
+    }
+
+    private final class Launch extends FutureTask<Object> {
+        private final SlaveComputer computer;
+        private final long notBefore;
+        private final long submitted = System.currentTimeMillis();
+        /**
+         * Set when handed to {@link #pool}. Guarded by {@link LaunchScheduler}.
+         */
+        private boolean dispatched;
+        private volatile long started;
+
+        Launch(SlaveComputer computer, Callable<Object> task, long notBefore) {
+            super(task);
+            this.computer = computer;
+            this.notBefore = notBefore;
+        }
+
+        @Override
+        public void run() {
+            started = System.currentTimeMillis();
+            super.run();
+        }
+
+        // record before the outcome becomes visible to those waiting for this launch
+
+        @Override
+        protected void set(Object v) {
+            if (!isCancelled())
+                record(this, null);
+            super.set(v);
+        }
+
+        @Override
+        protected void setException(Throwable t) {
+            // cancelled by a disconnect or a new launch says nothing about the node
+            if (!isCancelled())
+                record(this, t);
+            super.setException(t);
+        }
+
+        @Override
+        protected void done() {
+            synchronized (LaunchScheduler.this) {
+                if (!dispatched) {
+                    // cancelled while waiting
+                    pending.remove(this);
+                    return;
+                }
+                running--;
+            }
+            dispatch();
+        }
+    }
+
+    LaunchScheduler(ThreadPoolExecutor pool) {
+        this.pool = pool;
+    }
+
+    /**
+     * Schedules the launch of the given computer.
+     *
+     * @param force
+     *      Launch as soon as possible, even if the computer recently failed to launch.
+     */
+    public Future<?> submit(SlaveComputer c, Callable<Object> task, boolean force) {
+        long notBefore = 0;
+        if (!force) {
+            NodeRecord r = getRecord(c.getName());
+            if (r!=null)
+                notBefore = r.notBefore;
+        }
+        Launch l = new Launch(c,task,notBefore);
+        synchronized (this) {
+            pending.add(l);
+        }
+        dispatch();
+        return l;
+    }
+
+    /**
+     * Cancels the launch returned from {@link #submit(SlaveComputer, Callable, boolean)} if it's still waiting.
+     *
+     * @return
+     *      true if the launch was cancelled, false if it has already started.
+     */
+    public boolean cancelIfWaiting(Future<?> launch) {
+        synchronized (this) {
+            if (!(launch instanceof Launch) || !pending.contains(launch))
+                return false;
+        }
+        return launch.cancel(false);
+    }
+
+    /**
+     * Starts as many waiting launches as allowed.
+     */
+    private void dispatch() {
+        List<Launch> eligible = new ArrayList<Launch>();
+        long wakeUp = Long.MAX_VALUE;
+        boolean contended;
+        synchronized (this) {
+            int slots = pool.getMaximumPoolSize()-running;
+            if (slots<=0 || pending.isEmpty())  return;
+
+            long now = System.currentTimeMillis();
+            for (Launch l : pending) {
+                if (l.notBefore<=now)   eligible.add(l);
+                else                    wakeUp = Math.min(wakeUp,l.notBefore);
+            }
+
+            if (wakeUp<nextWakeUp)
+                nextWakeUp = wakeUp;
+            else
+                wakeUp = Long.MAX_VALUE;    // the timer is already set to go off early enough
+
+            contended = eligible.size()>slots;
+        }
+
+        // this looks at the queue, so do it outside our lock
+        if (contended)
+            prioritize(eligible);
+
+        List<Launch> toRun = new ArrayList<Launch>();
+        synchronized (this) {
+            int slots = pool.getMaximumPoolSize()-running;
+            for (Launch l : eligible) {
+                if (slots<=0)   break;
+                if (!pending.remove(l))
+                    continue;   // cancelled or taken by another thread in the mean time
+                l.dispatched = true;
+                running++;
+                slots--;
+                toRun.add(l);
+            }
+        }
+
+        for (Launch l : toRun)
+            pool.execute(l);
+
+        if (wakeUp!=Long.MAX_VALUE) {
+            timer.schedule(new Runnable() {
+                public void run() {
+                    synchronized (LaunchScheduler.this) {
+                        nextWakeUp = Long.MAX_VALUE;
+                    }
+                    dispatch();
+                }
+            }, wakeUp-System.currentTimeMillis(), TimeUnit.MILLISECONDS);
+        }
+    }
+
+    /**
+     * Sorts the launches so that the nodes that can build something in the queue come first,
+     * then by the order they were requested.
+     */
+    private void prioritize(List<Launch> launches) {
+        final Map<Launch,Integer> demand = new HashMap<Launch,Integer>();
+        Jenkins j = Jenkins.getInstance();
+        Queue q = j!=null ? j.getQueue() : null;
+        for (Launch l : launches) {
+            int d = 0;
+            Node n = l.computer.getNode();
+            if (q!=null && n!=null) {
+                for (Label label : n.getAssignedLabels())
+                    d = Math.max(d, q.countBuildableItemsFor(label));
+                if (n.getMode()==Node.Mode.NORMAL)
+                    d = Math.max(d, q.countBuildableItemsFor(null));
+            }
+            demand.put(l,d);
+        }
+        Collections.sort(launches, new Comparator<Launch>() {
+            public int compare(Launch a, Launch b) {
+                int da = demand.get(a), db = demand.get(b);
+                if (da!=db)     return da>db ? -1 : 1;
+                return a.submitted<b.submitted ? -1 : a.submitted>b.submitted ? 1 : 0;
+            }
+        });
+    }
+
+    /**
+     * @param failure
+     *      What the launch threw, or null if it didn't.
+     */
+    private void record(Launch l, Throwable failure) {
+        long duration = System.currentTimeMillis()-l.started;
+        boolean success = failure==null;
+        if (!success && !l.computer.isLaunchSupported())
+            return;     // the launcher can't launch. the slave connects when it does
+
+        NodeRecord r;
+        synchronized (this) {
+            if (l.computer.getNode()==null)
+                return;     // removed in the mean time
+            r = records.get(l.computer.getName());
+            if (r==null)
+                records.put(l.computer.getName(), r=new NodeRecord());
+        }
+        r.lastDuration = duration;
+        if (success) {
+            durations.record(duration);
+            r.failures = 0;
+            r.notBefore = 0;
+        } else {
+            r.failures++;
+            long delay = Math.min(MAX_BACKOFF, BASE_BACKOFF<<Math.min(r.failures-1,20));
+            delay = (long)(delay*(0.5+random.nextDouble()));    // +/- 50%
+            r.notBefore = System.currentTimeMillis()+delay;
+            LOGGER.log(Level.FINE, "Launch of {0} failed {1} times in a row. Not retrying automatically for {2}ms",
+                    new Object[]{l.computer.getName(), r.failures, delay});
+        }
+    }
+
+    /**
+     * Called when the given computer comes online, however it got connected, so that it's launched
+     * right away the next time it goes offline.
+     */
+    void onOnline(SlaveComputer c) {
+        NodeRecord r = getRecord(c.getName());
+        if (r!=null) {
+            r.failures = 0;
+            r.notBefore = 0;
+        }
+    }
+
+    /**
+     * Is the given launch still waiting for its turn, as opposed to running or done?
+     */
+    public synchronized boolean isWaiting(Future<?> launch) {
+        return launch instanceof Launch && pending.contains(launch);
+    }
+
+    /**
+     * Forgets the given computer, which is being removed, and drops its launches that are still waiting.
+     */
+    void onRemoved(SlaveComputer c) {
+        List<Launch> waiting = new ArrayList<Launch>();
+        synchronized (this) {
+            records.remove(c.getName());
+            for (Launch l : pending)
+                if (l.computer==c)
+                    waiting.add(l);
+        }
+        for (Launch l : waiting)
+            l.cancel(false);
+    }
+
+    public synchronized NodeRecord getRecord(String nodeName) {
+        return records.get(nodeName);
+    }
+
+    /**
+     * Number of launches waiting for their turn.
+     */
+    public synchronized int getBacklog() {
+        return pending.size();
+    }
+
+    /**
+     * Number of launches in progress.
+     */
+    public synchronized int getRunning() {
+        return running;
+    }
+
+    /**
+     * Names of the nodes waiting to be launched.
+     */
+    public synchronized List<String> getPendingNodeNames() {
+        List<String> r = new ArrayList<String>(pending.size());
+        for (Launch l : pending)
+            r.add(l.computer.getName());
+        return r;
+    }
+
+    /**
+     * Distribution of how long the successful launches took.
+     */
+    public LatencyHistogram getLaunchDurations() {
+        return durations;
+    }
+
+    private static final LaunchScheduler INSTANCE = new LaunchScheduler(Computer.threadPoolForLaunching);
+
+    public static LaunchScheduler get() {
+        return INSTANCE;
+    }
+
+    /**
+     * Delay before retrying the launch after the first failure, in milliseconds.
+     * It doubles with each consecutive failure.
+     */
+    public static long BASE_BACKOFF = Long.getLong(LaunchScheduler.class.getName()+".baseBackoff",30*1000);
+
+    public static long MAX_BACKOFF = Long.getLong(LaunchScheduler.class.getName()+".maxBackoff",30*60*1000);
+
+    private static final Logger LOGGER = Logger.getLogger(LaunchScheduler.class.getName());
+}
@@ -29,6 +29,7 @@ import jenkins.model.Jenkins;
 import static hudson.model.LoadStatistics.DECAY;
 import hudson.model.MultiStageTimeSeries.TimeScale;
 import hudson.Extension;
+import hudson.util.DaemonThreadFactory;
 
 import java.awt.Color;
 import java.util.concurrent.Future;
@@ -37,7 +38,12 @@ import java.util.List;
 import java.util.Collection;
 import java.util.ArrayList;
 import java.util.Iterator;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.logging.Logger;
 import java.util.logging.Level;
 import java.io.IOException;
@@ -46,6 +52,9 @@ import java.io.IOException;
  * Uses the {@link LoadStatistics} and determines when we need to allocate
  * new {@link Node}s through {@link Cloud}.
  *
+ * <p>
+ * How many executors to allocate is decided by the {@link ProvisioningStrategy} in use.
+ *
  * @author Kohsuke Kawaguchi
  */
 public class NodeProvisioner {
@@ -118,8 +127,47 @@ public class NodeProvisioner {
 
     private List<PlannedNode> pendingLaunches = new ArrayList<PlannedNode>();
 
+    /**
+     * Where and when each of {@link #pendingLaunches} was started.
+     */
+    private final Map<PlannedNode,Origin> origins = new HashMap<PlannedNode,Origin>();
+
+    private static final class Origin {
+        final String cloud;
+        final long started;
+
+        Origin(String cloud, long started) {
+            this.cloud = cloud;
+            this.started = started;
+        }
+    }
+
+    /**
+     * When the last review started.
+     */
     private transient volatile long lastSuggestedReview;
 
+    /**
+     * True while a review requested by {@link #suggestReviewNow()} is waiting to start.
+     */
+    private final AtomicBoolean reviewPending = new AtomicBoolean();
+
+    /**
+     * True if the review that's waiting to start was asked for by {@link #suggestReviewNow()},
+     * and not just by {@link #onBuildable()}, so it shouldn't be skipped when there are idle executors.
+     */
+    private final AtomicBoolean reviewForced = new AtomicBoolean();
+
+    /**
+     * {@link LoadStatistics#getArrivals()} at the last review.
+     */
+    private long lastArrivals;
+
+    /**
+     * {@link LoadStatistics#getCompletions()} and {@link LoadStatistics#getCompletedTime()} at the last review.
+     */
+    private long lastCompletions, lastCompletedTime;
+
     /**
      * Exponential moving average of the "planned capacity" over time, which is the number of
      * additional executors being brought up.
@@ -133,6 +181,9 @@ public class NodeProvisioner {
     public NodeProvisioner(Label label, LoadStatistics loadStatistics) {
         this.label = label;
         this.stat = loadStatistics;
+        this.lastArrivals = loadStatistics.getArrivals();
+        this.lastCompletions = loadStatistics.getCompletions();
+        this.lastCompletedTime = loadStatistics.getCompletedTime();
     }
 
     /**
@@ -148,26 +199,72 @@ public class NodeProvisioner {
 
     /**
      * Give the {@link NodeProvisioner} a hint that now would be a good time to think about provisioning some nodes.
-     * The hint will be ignored if subjected to excessive pestering by callers.
+     *
+     * <p>
+     * The review happens right away on another thread. Hints that come in while a review is waiting to start
+     * are folded into it, and reviews are spaced at least {@link #MIN_REVIEW_INTERVAL} apart,
+     * so a flurry of hints only results in a review or two.
      *
      * @since 1.415
      */
     public void suggestReviewNow() {
-        if (System.currentTimeMillis() > lastSuggestedReview + TimeUnit.SECONDS.toMillis(1)) {
-            lastSuggestedReview = System.currentTimeMillis();
-            Computer.threadPoolForRemoting.submit(new Runnable() {
-                public void run() {
-                    update();
+        reviewForced.set(true);
+        scheduleReview();
+    }
+
+    private void scheduleReview() {
+        if (!reviewPending.compareAndSet(false,true))
+            return;     // the review that's about to happen will take care of this, too
+
+        Runnable review = new Runnable() {
+            public void run() {
+                // from now on, further hints need another review, since this one may not see what prompted them
+                reviewPending.set(false);
+                boolean forced = reviewForced.getAndSet(false);
+                try {
+                    if (!forced && stat.computeIdleExecutors()>0)
+                        return;     // only new items prompted this, and there are executors free to take them
+                    update(false);
+                } catch (RuntimeException e) {
+                    LOGGER.log(Level.WARNING, "Failed to review the load of "+(label==null ? "unlabeled jobs" : label), e);
                 }
-            });
-        }
+            }
+        };
+        long delay = lastSuggestedReview+MIN_REVIEW_INTERVAL-System.currentTimeMillis();
+        if (delay>0)
+            REVIEW_TIMER.schedule(review, delay, TimeUnit.MILLISECONDS);
+        else
+            Computer.threadPoolForRemoting.submit(review);
     }
 
     /**
-     * Periodically invoked to keep track of the load.
-     * Launches additional nodes if necessary.
+     * Called by {@link Queue} when an item becomes buildable for this label.
+     * If no executor is free to take it, clouds are asked for more right away,
+     * instead of at the next periodic review.
+     *
+     * <p>
+     * This is called with the queue locked, so the free executors are counted on the thread that does the review,
+     * once for all the items that became buildable in the meantime.
+     *
+     * @since 1.519
+     */
+    public void onBuildable() {
+        if (reviewPending.get())
+            return;     // cheap way out for bursts
+        Jenkins j = Jenkins.getInstance();
+        if (j.clouds.isEmpty() || System.currentTimeMillis()<STARTED+NodeProvisionerInvoker.INITIALDELAY)
+            return;     // nothing to provision from, or static slaves may still be coming online
+        scheduleReview();
+    }
+
+    /**
+     * Reviews the load and launches additional nodes if necessary.
+     *
+     * @param periodic
+     *      True if invoked by {@link NodeProvisionerInvoker}, at the same pace as {@link LoadStatistics} are updated.
+     *      Moving averages are only updated then, so that they decay at the same rate.
      */
-    private synchronized void update() {
+    private synchronized void update(boolean periodic) {
         Jenkins hudson = Jenkins.getInstance();
         lastSuggestedReview = System.currentTimeMillis();
 
@@ -176,8 +273,10 @@ public class NodeProvisioner {
         for (Iterator<PlannedNode> itr = pendingLaunches.iterator(); itr.hasNext();) {
             PlannedNode f = itr.next();
             if(f.future.isDone()) {
+                boolean success = false;
                 try {
                     hudson.addNode(f.future.get());
+                    success = true;
                     LOGGER.info(f.displayName+" provisioning successfully completed. We have now "+hudson.getComputers().length+" computer(s)");
                 } catch (InterruptedException e) {
                     throw new AssertionError(e); // since we confirmed that the future is already done
@@ -187,139 +286,66 @@ public class NodeProvisioner {
                     LOGGER.log(Level.WARNING, "Provisioned slave "+f.displayName+" failed to launch",e);
                 }
 
+                Origin o = origins.remove(f);
+                if (o!=null)
+                    ProvisioningStrategy.get().onProvisioned(o.cloud, label, f.numExecutors, System.currentTimeMillis()-o.started, success);
+
                 f.spent();
 
                 itr.remove();
             } else
                 plannedCapacitySnapshot += f.numExecutors;
         }
-        float plannedCapacity = plannedCapacitySnapshot;
-        plannedCapacitiesEMA.update(plannedCapacity);
-
-        /*
-            Here we determine how many additional slaves we need to keep up with the load (if at all),
-            which involves a simple math.
-
-            Broadly speaking, first we check that all the executors are fully utilized before attempting
-            to start any new slave (this also helps to ignore the temporary gap between different numbers,
-            as changes in them are not necessarily synchronized --- for example, there's a time lag between
-            when a slave launches (thus bringing the planned capacity down) and the time when its executors
-            pick up builds (thus bringing the queue length down.)
-
-            Once we confirm that, we compare the # of buildable items against the additional slaves
-            that are being brought online. If we have more jobs than our executors can handle, we'll launch a new slave.
-
-            So this computation involves three stats:
-
-              1. # of idle executors
-              2. # of jobs that are starving for executors
-              3. # of additional slaves being provisioned (planned capacities.)
-
-            To ignore a temporary surge/drop, we make conservative estimates on each one of them. That is,
-            we take the current snapshot value, and we take the current exponential moving average (EMA) value,
-            and use the max/min.
-
-            This is another measure to be robust against temporary surge/drop in those indicators, and helps
-            us avoid over-reacting to stats.
-
-            If we only use the snapshot value or EMA value, tests confirmed that the gap creates phantom
-            excessive loads and Hudson ends up firing excessive capacities. In a static system, over the time
-            EMA and the snapshot value becomes the same, so this makes sure that in a long run this conservative
-            estimate won't create a starvation.
-         */
-
-        int idleSnapshot = stat.computeIdleExecutors();
-        int totalSnapshot = stat.computeTotalExecutors();
-        boolean needSomeWhenNoneAtAll = (idleSnapshot==0) && (totalSnapshot + plannedCapacitySnapshot == 0) && (stat.computeQueueLength() > 0);
-        float idle = Math.max(stat.getLatestIdleExecutors(TIME_SCALE), idleSnapshot);
-        if(idle<MARGIN || needSomeWhenNoneAtAll) {
-            // make sure the system is fully utilized before attempting any new launch.
-
-            // this is the amount of work left to be done
-            float qlen = Math.min(stat.queueLength.getLatest(TIME_SCALE), stat.computeQueueLength());
-
-            // ... and this is the additional executors we've already provisioned.
-            plannedCapacity = Math.max(plannedCapacitiesEMA.getLatest(TIME_SCALE),plannedCapacity);
-
-            float excessWorkload = qlen - plannedCapacity;
-            if (needSomeWhenNoneAtAll && excessWorkload < 1) {
-                // in this specific exceptional case we should just provision right now
-                // the exponential smoothing will delay the build unnecessarily
-                excessWorkload = 1;
+        if (periodic)
+            plannedCapacitiesEMA.update(plannedCapacitySnapshot);
+
+        List<Cloud> clouds = new ArrayList<Cloud>();
+        List<String> cloudNames = new ArrayList<String>();
+        for (Cloud c : hudson.clouds) {
+            // Make sure this cloud actually can provision for this label.
+            if (c.canProvision(label)) {
+                clouds.add(c);
+                cloudNames.add(c.name);
             }
-            float m = calcThresholdMargin(totalSnapshot);
-            if(excessWorkload>1-m) {// and there's more work to do...
-                LOGGER.fine("Excess workload "+excessWorkload+" detected. (planned capacity="+plannedCapacity+",Qlen="+qlen+",idle="+idle+"&"+idleSnapshot+",total="+totalSnapshot+"m,="+m+")");
-                for( Cloud c : hudson.clouds ) {
-                    if(excessWorkload<0)    break;  // enough slaves allocated
-
-                    // Make sure this cloud actually can provision for this label.
-                    if (c.canProvision(label)) {
-                        // provisioning a new node should be conservative --- for example if exceeWorkload is 1.4,
-                        // we don't want to allocate two nodes but just one.
-                        // OTOH, because of the exponential decay, even when we need one slave, excess workload is always
-                        // something like 0.95, in which case we want to allocate one node.
-                        // so the threshold here is 1-MARGIN, and hence floor(excessWorkload+MARGIN) is needed to handle this.
-                        
-                        Collection<PlannedNode> additionalCapacities = c.provision(label, (int)Math.round(Math.floor(excessWorkload+m)));
-                        for (PlannedNode ac : additionalCapacities) {
-                            excessWorkload -= ac.numExecutors;
-                            LOGGER.info("Started provisioning "+ac.displayName+" from "+c.name+" with "+ac.numExecutors+" executors. Remaining excess workload:"+excessWorkload);
-                        }
-                        pendingLaunches.addAll(additionalCapacities);
-                    }
-                }
+        }
+
+        long arrivals = stat.getArrivals();
+        long completions = stat.getCompletions(), completedTime = stat.getCompletedTime();
+        ProvisioningStrategy.State state = new ProvisioningStrategy.State(label, System.currentTimeMillis(),
+                stat.computeIdleExecutors(), stat.computeTotalExecutors(), stat.computeQueueLength(), plannedCapacitySnapshot, (int)(arrivals-lastArrivals),
+                (int)(completions-lastCompletions), completedTime-lastCompletedTime,
+                stat.getLatestIdleExecutors(TIME_SCALE), stat.queueLength.getLatest(TIME_SCALE), plannedCapacitiesEMA.getLatest(TIME_SCALE),
+                cloudNames);
+        lastArrivals = arrivals;
+        lastCompletions = completions;
+        lastCompletedTime = completedTime;
+        ProvisioningStrategy strategy = ProvisioningStrategy.get();
+        int excessWorkload = strategy.apply(state);
+        if (excessWorkload<=0)
+            return;
+
+        LOGGER.fine(strategy.getClass().getSimpleName()+" decided to provision "+excessWorkload+" executors for "+state);
+        for (Cloud c : clouds) {
+            if(excessWorkload<=0)    break;  // enough slaves allocated
+
+            long started = System.currentTimeMillis();
+            Collection<PlannedNode> additionalCapacities = c.provision(label, excessWorkload);
+            for (PlannedNode ac : additionalCapacities) {
+                excessWorkload -= ac.numExecutors;
+                origins.put(ac, new Origin(c.name, started));
+                LOGGER.info("Started provisioning "+ac.displayName+" from "+c.name+" with "+ac.numExecutors+" executors. Remaining excess workload:"+excessWorkload);
             }
+            pendingLaunches.addAll(additionalCapacities);
         }
     }
 
     /**
-     * Computes the threshold for triggering an allocation.
-     *
-     * <p>
-     * Because the excessive workload value is EMA, even when the snapshot value of the excessive
-     * workload is 1, the value never really gets to 1. So we need to introduce a notion of the margin M,
-     * where we provision a new node if the EMA of the excessive workload goes beyond 1-M (where M is a small value
-     * in the (0,1) range.)
+     * Periodically invoke NodeProvisioners.
      *
      * <p>
-     * M effectively controls how long Hudson waits until allocating a new node, in the face of workload.
-     * This delay is justified for absorbing temporary ups and downs, and can be interpreted as Hudson
-     * holding off provisioning in the hope that one of the existing nodes will become available.
-     *
-     * <p>
-     * M can be a constant value, but there's a benefit in adjusting M based on the total current capacity,
-     * based on the above justification; that is, if there's no existing capacity at all, holding off
-     * an allocation doesn't make much sense, as there won't be any executors available no matter how long we wait.
-     * On the other hand, if we have a large number of existing executors, chances are good that some
-     * of them become available &mdash; the chance gets better and better as the number of current total
-     * capacity increases.
-     *
-     * <p>
-     * Therefore, we compute the threshold margin as follows:
-     *
-     * <pre>
-     *   M(t) = M* + (M0 - M*) alpha ^ t
-     * </pre>
-     *
-     * ... where:
-     *
-     * <ul>
-     * <li>M* is the ultimate margin value that M(t) converges to with t->inf,
-     * <li>M0 is the value of M(0), the initial value.
-     * <li>alpha is the decay factor in (0,1). M(t) converges to M* faster if alpha is smaller.
-     * </ul>
-     */
-    private float calcThresholdMargin(int totalSnapshot) {
-        float f = (float) (MARGIN + (MARGIN0 - MARGIN) * Math.pow(MARGIN_DECAY, totalSnapshot));
-        // defensively ensure that the threshold margin is in (0,1)
-        f = Math.max(f,0);
-        f = Math.min(f,1);
-        return f;
-    }
-
-    /**
-     * Periodically invoke NodeProvisioners
+     * Most of the time, new items in the queue get their nodes through {@link NodeProvisioner#onBuildable()} already.
+     * This catches what the events don't, such as executors becoming busy or nodes going away,
+     * and keeps the moving averages going.
      */
     @Extension
     public static class NodeProvisionerInvoker extends PeriodicWork {
@@ -342,28 +368,23 @@ public class NodeProvisioner {
         @Override
         protected void doRun() {
             Jenkins h = Jenkins.getInstance();
-            h.unlabeledNodeProvisioner.update();
+            h.unlabeledNodeProvisioner.update(true);
             for( Label l : h.getLabels() )
-                l.nodeProvisioner.update();
+                l.nodeProvisioner.update(true);
         }
     }
 
     private static final Logger LOGGER = Logger.getLogger(NodeProvisioner.class.getName());
-    private static final float MARGIN = Integer.getInteger(NodeProvisioner.class.getName()+".MARGIN",10)/100f;
-    private static final float MARGIN0 = Math.max(MARGIN, getFloatSystemProperty(NodeProvisioner.class.getName()+".MARGIN0",0.5f));
-    private static final float MARGIN_DECAY = getFloatSystemProperty(NodeProvisioner.class.getName()+".MARGIN_DECAY",0.5f);
+
+    /**
+     * Minimum milliseconds between the starts of two reviews of the same label prompted by {@link #suggestReviewNow()}.
+     */
+    public static long MIN_REVIEW_INTERVAL = Long.getLong(NodeProvisioner.class.getName()+".minReviewInterval",100);
+
+    private static final ScheduledExecutorService REVIEW_TIMER = new ScheduledThreadPoolExecutor(1,new DaemonThreadFactory());
+
+    private static final long STARTED = System.currentTimeMillis();
 
     // TODO: picker should be selectable
     private static final TimeScale TIME_SCALE = TimeScale.SEC10;
-
-    private static float getFloatSystemProperty(String propName, float defaultValue) {
-        String v = System.getProperty(propName);
-        if (v!=null)
-            try {
-                return Float.parseFloat(v);
-            } catch (NumberFormatException e) {
-                LOGGER.warning("Failed to parse a float value from system property "+propName+". value was "+v);
-            }
-        return defaultValue;
-    }
 }
@@ -0,0 +1,231 @@
+package hudson.slaves;
+
+import hudson.Extension;
+import hudson.model.Label;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.logging.Logger;
+
+/**
+ * {@link ProvisioningStrategy} that provisions for the load expected by the time the new nodes
+ * come online, rather than for the load right now.
+ *
+ * <p>
+ * For each label, it learns the rate at which items arrive in the queue (and whether that rate is
+ * going up or down), and how long the builds of the label take. For each cloud, it learns how long
+ * it takes for a provisioned node to come online. When asked, it works out how many executors will be
+ * needed when a node provisioned now would be up, given that the existing executors keep draining
+ * the queue in the mean time, and provisions the difference.
+ *
+ * <p>
+ * So a steady ramp in the load gets nodes before the queue builds up, while a burst that
+ * the existing executors will have worked off by the time new nodes are up doesn't get any.
+ * It never provisions more executors than there are items waiting or expected to arrive before
+ * the nodes are up.
+ *
+ * <p>
+ * Select it with {@code -Dhudson.slaves.ProvisioningStrategy=hudson.slaves.PredictiveProvisioningStrategy}.
+ *
+ * @since 1.519
+ */
+@Extension
+public class PredictiveProvisioningStrategy extends ProvisioningStrategy {
+    /**
+     * Load of each label, by {@link #key(Label)}.
+     */
+    private final Map<String,Load> loads = new HashMap<String,Load>();
+
+    /**
+     * Lead time of each cloud, by {@link Cloud#name}.
+     */
+    private final Map<String,LeadTime> leadTimes = new HashMap<String,LeadTime>();
+
+    /**
+     * What we've learned about the load of a label.
+     */
+    static final class Load {
+        /**
+         * Arrivals per second, smoothed.
+         */
+        double rate;
+        /**
+         * Change in {@link #rate} per second.
+         */
+        double trend;
+        /**
+         * Seconds a build of the label takes, averaged over the recent builds, or -1 if not known yet.
+         * Learned from the builds themselves, as the executors of a label may also be busy with other labels.
+         */
+        double duration = -1;
+
+        long lastUpdate = -1;
+        /**
+         * Arrivals we haven't accounted for because no time has passed since the last update.
+         */
+        int arrivals;
+
+        void update(State s) {
+            if (s.completions>0) {
+                double sample = s.completedTime/1000.0/s.completions;
+                // as if each of the builds had moved the average by DURATION_WEIGHT
+                duration = duration<0 ? sample : duration+(1-Math.pow(1-DURATION_WEIGHT,s.completions))*(sample-duration);
+            }
+
+            arrivals += s.arrivals;
+            if (lastUpdate<0) {
+                lastUpdate = s.timestamp;
+                arrivals = 0;
+                return;
+            }
+            double dt = (s.timestamp-lastUpdate)/1000.0;
+            if (dt<=0)  return;
+
+            // double exponential smoothing with irregular intervals
+            double a = 1-Math.exp(-dt/RATE_SMOOTHING);
+            double b = 1-Math.exp(-dt/TREND_SMOOTHING);
+            double prev = rate;
+            // a burst shows up as the queue length. only let it move the rate as much as a few times the usual arrivals would,
+            // or else it gets extrapolated as if it went on for the whole lead time
+            double sample = Math.min(arrivals/dt, Math.max(BURST_LIMIT*rate, 1/dt));
+            rate = a*sample + (1-a)*(rate+trend*dt);
+            trend = b*(rate-prev)/dt + (1-b)*trend;
+
+            lastUpdate = s.timestamp;
+            arrivals = 0;
+        }
+
+        /**
+         * Expected arrival rate after the given number of seconds.
+         */
+        double rateAfter(double seconds) {
+            return Math.max(0, rate+trend*Math.min(seconds,TREND_HORIZON));
+        }
+    }
+
+    /**
+     * Learned provisioning lead time of a cloud.
+     */
+    static final class LeadTime {
+        /**
+         * Moving average of the milliseconds it took to provision a node, or -1 if not known yet.
+         */
+        double average = -1;
+        int successes, failures;
+
+        void record(long latency, boolean success) {
+            if (!success) {
+                failures++;
+                return;
+            }
+            successes++;
+            average = average<0 ? latency : average+LEAD_TIME_WEIGHT*(latency-average);
+        }
+    }
+
+    @Override
+    public int apply(State s) {
+        double rate, rateAfter, duration;
+        long leadTime;
+        synchronized (this) {
+            Load l = loads.get(key(s.label));
+            if (l==null)
+                loads.put(key(s.label), l=new Load());
+            l.update(s);
+            // the first cloud that can provision gets asked first
+            leadTime = getLeadTime(s.clouds.isEmpty() ? null : s.clouds.get(0));
+            rate = Math.max(0,l.rate);
+            rateAfter = l.rateAfter(leadTime/1000.0);
+            duration = l.duration>0 ? l.duration : DEFAULT_DURATION/1000.0;
+        }
+
+        double lead = Math.max(1,leadTime/1000.0);
+        int capacity = s.totalExecutors+s.plannedCapacity;
+
+        // items still waiting when a node provisioned now comes online, if the executors we have keep working on the queue.
+        // like the classic strategy, take the smaller of the snapshot and the average of the queue length to ignore temporary surges,
+        // and don't count the queue at all while the executors have had idle time, which means they're keeping up
+        double backlog = 0;
+        if (s.idleExecutorsEMA<1)
+            backlog = Math.max(0, Math.min(s.queueLength,s.queueLengthEMA) + (rate+rateAfter)/2*lead - s.totalExecutors*lead/duration);
+        // enough executors to keep up with the arrivals then, and to work off that backlog within another lead time
+        double needed = rateAfter*duration + Math.min(backlog, backlog*duration/lead);
+
+        double excess = needed-capacity;
+        // every executor provisioned now should find an item to build when it's up,
+        // either one that's waiting now or one that arrives in the mean time
+        excess = Math.min(excess, s.queueLength+rateAfter*lead);
+        if (s.queueLength>0 && capacity==0 && excess<1)
+            excess = 1;     // nothing would ever run these
+        if (excess<THRESHOLD)
+            return 0;
+
+        LOGGER.fine(String.format("Expecting %.2f more executors to be needed in %dms (rate=%.3f->%.3f/s, duration=%.1fs, backlog=%.1f, %s)",
+                excess, leadTime, rate, rateAfter, duration, backlog, s));
+        return (int)Math.floor(excess+1-THRESHOLD);
+    }
+
+    @Override
+    public synchronized void onProvisioned(String cloud, Label label, int numExecutors, long latency, boolean success) {
+        LeadTime t = leadTimes.get(cloud);
+        if (t==null)
+            leadTimes.put(cloud, t=new LeadTime());
+        t.record(latency, success);
+    }
+
+    /**
+     * Gets how long the given cloud is expected to take to provision a node, in milliseconds.
+     */
+    public synchronized long getLeadTime(String cloud) {
+        LeadTime t = leadTimes.get(cloud);
+        return t==null || t.average<0 ? DEFAULT_LEAD_TIME : (long)t.average;
+    }
+
+    private static String key(Label l) {
+        return l==null ? "" : l.getName();
+    }
+
+    private static final Logger LOGGER = Logger.getLogger(PredictiveProvisioningStrategy.class.getName());
+
+    /**
+     * Time constants in seconds of the smoothing of the arrival rate and its trend.
+     * Bursts shorter than these barely move the estimates.
+     */
+    public static double RATE_SMOOTHING = ClassicProvisioningStrategy.getFloatSystemProperty(PredictiveProvisioningStrategy.class.getName()+".rateSmoothing",300);
+    public static double TREND_SMOOTHING = ClassicProvisioningStrategy.getFloatSystemProperty(PredictiveProvisioningStrategy.class.getName()+".trendSmoothing",600);
+
+    /**
+     * How far in seconds the trend of the arrival rate is extrapolated at most.
+     */
+    public static double TREND_HORIZON = ClassicProvisioningStrategy.getFloatSystemProperty(PredictiveProvisioningStrategy.class.getName()+".trendHorizon",900);
+
+    /**
+     * How many times the learned arrival rate a single sample can count as.
+     */
+    private static final double BURST_LIMIT = 3;
+
+    /**
+     * Lead time assumed for clouds that haven't provisioned anything yet, in milliseconds.
+     */
+    public static long DEFAULT_LEAD_TIME = Long.getLong(PredictiveProvisioningStrategy.class.getName()+".defaultLeadTime",60*1000);
+
+    /**
+     * Build duration assumed for labels we haven't learned it for yet, in milliseconds.
+     */
+    public static long DEFAULT_DURATION = Long.getLong(PredictiveProvisioningStrategy.class.getName()+".defaultDuration",5*60*1000);
+
+    /**
+     * How much a completed build moves the average build duration.
+     */
+    public static double DURATION_WEIGHT = 0.1;
+
+    /**
+     * How much a new sample moves the average lead time.
+     */
+    public static double LEAD_TIME_WEIGHT = 0.3;
+
+    /**
+     * How big the expected shortfall needs to get before we provision, in executors.
+     */
+    public static double THRESHOLD = ClassicProvisioningStrategy.getFloatSystemProperty(PredictiveProvisioningStrategy.class.getName()+".threshold",0.75f);
+}
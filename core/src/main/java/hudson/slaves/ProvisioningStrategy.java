@@ -0,0 +1,154 @@
+package hudson.slaves;
+
+import hudson.ExtensionList;
+import hudson.ExtensionPoint;
+import hudson.model.Label;
+import hudson.model.LoadStatistics;
+import jenkins.model.Jenkins;
+
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Decides how many executors {@link NodeProvisioner} asks {@link Cloud}s for.
+ *
+ * <p>
+ * {@link NodeProvisioner} periodically takes a snapshot of the load of its label as a {@link State},
+ * and asks the strategy in use how many more executors are needed. It then goes through the clouds
+ * that can provision for the label until that many are on their way.
+ *
+ * <p>
+ * A single instance serves all the labels, and it can be called for different labels concurrently.
+ * The strategy in use is the first one found, unless the {@code hudson.slaves.ProvisioningStrategy}
+ * system property names the class of another.
+ *
+ * @since 1.519
+ */
+public abstract class ProvisioningStrategy implements ExtensionPoint {
+    /**
+     * Decides how many more executors should be provisioned for the label right now.
+     *
+     * @return
+     *      The number of executors. Zero or less to not provision anything.
+     */
+    public abstract int apply(State state);
+
+    /**
+     * Called when a node that a cloud started provisioning on behalf of {@link NodeProvisioner}
+     * has been added to Jenkins, or has failed to come up.
+     *
+     * @param cloud
+     *      {@link Cloud#name} of the cloud that provisioned the node.
+     * @param latency
+     *      Milliseconds between the {@link Cloud#provision(Label, int)} call and the point
+     *      {@link NodeProvisioner} found the node to be done.
+     */
+    public void onProvisioned(String cloud, Label label, int numExecutors, long latency, boolean success) {
+    }
+
+    /**
+     * Snapshot of the load of a label.
+     */
+    public static final class State {
+        /**
+         * The label being provisioned for. Null for the jobs that aren't tied to any label.
+         */
+        public final Label label;
+        /**
+         * When this snapshot was taken.
+         */
+        public final long timestamp;
+
+        public final int idleExecutors;
+        public final int totalExecutors;
+        /**
+         * Number of buildable items waiting for an executor.
+         */
+        public final int queueLength;
+        /**
+         * Number of executors being provisioned.
+         */
+        public final int plannedCapacity;
+        /**
+         * Number of items that have become buildable since the previous snapshot of this label.
+         */
+        public final int arrivals;
+        /**
+         * Number of builds of the label that have completed since the previous snapshot,
+         * and the milliseconds they took in total.
+         */
+        public final int completions;
+        public final long completedTime;
+
+        /**
+         * Exponential moving averages of the above, as in {@link LoadStatistics}.
+         */
+        public final float idleExecutorsEMA, queueLengthEMA, plannedCapacityEMA;
+
+        /**
+         * {@link Cloud#name}s of the clouds that can provision for the label,
+         * in the order {@link NodeProvisioner} tries them.
+         */
+        public final List<String> clouds;
+
+        public State(Label label, long timestamp, int idleExecutors, int totalExecutors, int queueLength, int plannedCapacity, int arrivals,
+                     int completions, long completedTime,
+                     float idleExecutorsEMA, float queueLengthEMA, float plannedCapacityEMA, List<String> clouds) {
+            this.label = label;
+            this.timestamp = timestamp;
+            this.idleExecutors = idleExecutors;
+            this.totalExecutors = totalExecutors;
+            this.queueLength = queueLength;
+            this.plannedCapacity = plannedCapacity;
+            this.arrivals = arrivals;
+            this.completions = completions;
+            this.completedTime = completedTime;
+            this.idleExecutorsEMA = idleExecutorsEMA;
+            this.queueLengthEMA = queueLengthEMA;
+            this.plannedCapacityEMA = plannedCapacityEMA;
+            this.clouds = Collections.unmodifiableList(clouds);
+        }
+
+        /**
+         * Number of executors that are building something.
+         */
+        public int getBusyExecutors() {
+            return totalExecutors-idleExecutors;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("label=%s,idle=%d&%.2f,total=%d,qlen=%d&%.2f,planned=%d&%.2f,arrivals=%d,completions=%d",
+                    label, idleExecutors, idleExecutorsEMA, totalExecutors, queueLength, queueLengthEMA, plannedCapacity, plannedCapacityEMA, arrivals, completions);
+        }
+    }
+
+    /**
+     * All the registered strategies.
+     */
+    public static ExtensionList<ProvisioningStrategy> all() {
+        return Jenkins.getInstance().getExtensionList(ProvisioningStrategy.class);
+    }
+
+    /**
+     * Gets the strategy in use.
+     */
+    public static ProvisioningStrategy get() {
+        Jenkins j = Jenkins.getInstance();
+        if (j==null)    return CLASSIC;
+        ExtensionList<ProvisioningStrategy> all = all();
+        if (NAME!=null) {
+            for (ProvisioningStrategy s : all)
+                if (s.getClass().getName().equals(NAME))
+                    return s;
+        }
+        return all.isEmpty() ? CLASSIC : all.get(0);
+    }
+
+    private static final ProvisioningStrategy CLASSIC = new ClassicProvisioningStrategy();
+
+    /**
+     * Class name of the strategy to use, if not the default.
+     */
+    public static String NAME = System.getProperty(ProvisioningStrategy.class.getName());
+}
@@ -71,6 +71,9 @@ import javax.crypto.spec.SecretKeySpec;
 import javax.servlet.RequestDispatcher;
 import jenkins.model.Jenkins;
 import jenkins.slaves.JnlpSlaveAgentProtocol;
+import jenkins.slaves.SlaveJarCache;
+import jenkins.util.io.TransferHistory;
+import jenkins.util.io.TransferStatistics;
 import org.kohsuke.stapler.StaplerRequest;
 import org.kohsuke.stapler.StaplerResponse;
 import org.kohsuke.stapler.QueryParameter;
@@ -180,7 +183,7 @@ public class SlaveComputer extends Computer {
     @Override
     public String getIcon() {
         Future<?> l = lastConnectActivity;
-        if(l!=null && !l.isDone())
+        if(l!=null && !l.isDone() && !LaunchScheduler.get().isWaiting(l))
             return "computer-flash.gif";
         return super.getIcon();
     }
@@ -204,13 +207,18 @@ public class SlaveComputer extends Computer {
 
     protected Future<?> _connect(boolean forceReconnect) {
         if(channel!=null)   return Futures.precomputed(null);
-        if(!forceReconnect && isConnecting())
-            return lastConnectActivity;
-        if(forceReconnect && isConnecting())
+        // unlike isConnecting(), this includes the launch waiting for its turn
+        Future<?> l = lastConnectActivity;
+        boolean launching = l!=null && !l.isDone();
+        if(!forceReconnect && launching)
+            return l;
+        if(forceReconnect && launching) {
             logger.fine("Forcing a reconnect on "+getName());
+            LaunchScheduler.get().cancelIfWaiting(l);
+        }
 
         closeChannel();
-        return lastConnectActivity = Computer.threadPoolForRemoting.submit(new java.util.concurrent.Callable<Object>() {
+        return lastConnectActivity = LaunchScheduler.get().submit(this, new java.util.concurrent.Callable<Object>() {
             public Object call() throws Exception {
                 // do this on another thread so that the lengthy launch operation
                 // (which is typical) won't block UI thread.
@@ -244,7 +252,26 @@ public class SlaveComputer extends Computer {
                     throw new IOException("Slave failed to connect, even though the launcher didn't report it. See the log output for details.");
                 return null;
             }
-        });
+        }, forceReconnect);
+    }
+
+    /**
+     * Gets the launch history of this computer, or null if it hasn't been launched yet.
+     *
+     * @since 1.519
+     */
+    public LaunchScheduler.NodeRecord getLaunchRecord() {
+        return LaunchScheduler.get().getRecord(getName());
+    }
+
+    /**
+     * Gets how the jars were preloaded into this slave when it last connected, or null if they weren't.
+     *
+     * @since 1.519
+     */
+    public SlaveJarCache.Statistics getJarCacheStatistics() {
+        SlaveJarCache c = SlaveJarCache.get();
+        return c!=null ? c.getStatistics(this) : null;
     }
 
     /**
@@ -297,7 +324,8 @@ public class SlaveComputer extends Computer {
     @Override
     public boolean isConnecting() {
         Future<?> l = lastConnectActivity;
-        return isOffline() && l!=null && !l.isDone();
+        // a launch that's only scheduled, possibly for much later, isn't connecting yet
+        return isOffline() && l!=null && !l.isDone() && !LaunchScheduler.get().isWaiting(l);
     }
 
     public OutputStream openLogFile() {
@@ -336,7 +364,7 @@ public class SlaveComputer extends Computer {
      *      so the implementation of the listener doesn't need to do that again.
      */
     public void setChannel(InputStream in, OutputStream out, OutputStream launchLog, Channel.Listener listener) throws IOException, InterruptedException {
-        Channel channel = new Channel(nodeName,threadPoolForRemoting, Channel.Mode.NEGOTIATE, in,out, launchLog);
+        Channel channel = new Channel(nodeName,threadPoolForChannels, Channel.Mode.NEGOTIATE, in,out, launchLog);
         setChannel(channel,launchLog,listener);
     }
 
@@ -468,6 +496,7 @@ public class SlaveComputer extends Computer {
                 statusChangeLock.notifyAll();
             }
         }
+        LaunchScheduler.get().onOnline(this);
         for (ComputerListener cl : ComputerListener.all())
             cl.onOnline(this,taskListener);
         log.println("Slave successfully connected and online");
@@ -483,6 +512,18 @@ public class SlaveComputer extends Computer {
         return defaultCharset;
     }
 
+    /**
+     * Gets the statistics of the recent {@link FilePath} transfers to/from this slave, newest first.
+     *
+     * @since 1.519
+     */
+    public List<TransferStatistics> getTransferStatistics() {
+        Channel ch = channel;
+        if(ch==null)
+            return Collections.emptyList();
+        return TransferHistory.of(ch).getRecentTransfers();
+    }
+
     public List<LogRecord> getLogRecords() throws IOException, InterruptedException {
         if(channel==null)
             return Collections.emptyList();
@@ -592,6 +633,7 @@ public class SlaveComputer extends Computer {
         super.kill();
         closeChannel();
         IOUtils.closeQuietly(log);
+        LaunchScheduler.get().onRemoved(this);
     }
 
     public RetentionStrategy getRetentionStrategy() {
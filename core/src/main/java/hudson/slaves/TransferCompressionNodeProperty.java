@@ -0,0 +1,114 @@
+package hudson.slaves;
+
+import hudson.Extension;
+import hudson.FilePath;
+import hudson.FilePath.TarCompression;
+import hudson.Util;
+import hudson.model.Computer;
+import hudson.model.Node;
+import hudson.remoting.Channel;
+import hudson.remoting.VirtualChannel;
+import hudson.util.ListBoxModel;
+import jenkins.model.Jenkins;
+import jenkins.util.io.TransferHistory;
+import org.kohsuke.stapler.DataBoundConstructor;
+
+/**
+ * {@link NodeProperty} that controls how {@link FilePath} compresses the files it sends to/from this node.
+ *
+ * @since 1.519
+ * @see FilePath#copyRecursiveTo(String, String, FilePath)
+ */
+public class TransferCompressionNodeProperty extends NodeProperty<Node> {
+    /**
+     * Name of the {@link TarCompression} constant to use, or null to pick one adaptively.
+     */
+    private final String compression;
+
+    @DataBoundConstructor
+    public TransferCompressionNodeProperty(String compression) {
+        this.compression = Util.fixEmpty(compression);
+    }
+
+    public String getCompression() {
+        return compression;
+    }
+
+    public boolean isAdaptive() {
+        return compression==null;
+    }
+
+    /**
+     * Picks the compression for a transfer over the given channel to this node.
+     */
+    public TarCompression select(VirtualChannel channel) {
+        if (compression!=null) {
+            try {
+                return TarCompression.valueOf(compression);
+            } catch (IllegalArgumentException e) {
+                // fall through to the default
+            }
+        }
+        if (channel instanceof Channel)
+            return TransferHistory.of((Channel)channel).select();
+        return FilePath.TRANSFER_COMPRESSION;
+    }
+
+    /**
+     * Picks the compression for a transfer over the given channel, taking the configuration
+     * of the node on the other side into account.
+     *
+     * @return
+     *      {@link FilePath#TRANSFER_COMPRESSION} if the node doesn't have this property, or if the node
+     *      can't be determined, such as when we are not on the master.
+     */
+    public static TarCompression forChannel(VirtualChannel channel) {
+        if (channel instanceof Channel) {
+            Computer c = computerOf((Channel)channel);
+            Node n = c!=null ? c.getNode() : null;
+            if (n!=null) {
+                TransferCompressionNodeProperty p = n.getNodeProperties().get(TransferCompressionNodeProperty.class);
+                if (p!=null)
+                    return p.select(channel);
+            }
+        }
+        return FilePath.TRANSFER_COMPRESSION;
+    }
+
+    /**
+     * Finds the computer on the other side of the channel. It's remembered as a property of the channel,
+     * so that a transfer doesn't need to look through all the computers.
+     */
+    private static Computer computerOf(Channel channel) {
+        Computer c = (Computer)channel.getProperty(TransferCompressionNodeProperty.class);
+        if (c!=null)
+            return c;
+        Jenkins j = Jenkins.getInstance();
+        if (j==null)
+            return null;
+        for (Computer x : j.getComputers()) {
+            if (x.getChannel()==channel) {
+                // the computer of a channel never changes. misses aren't remembered, as the channel may not be set on its computer yet
+                channel.setProperty(TransferCompressionNodeProperty.class, x);
+                return x;
+            }
+        }
+        return null;
+    }
+
+    @Extension
+    public static class DescriptorImpl extends NodePropertyDescriptor {
+        @Override
+        public String getDisplayName() {
+            return Messages.TransferCompressionNodeProperty_displayName();
+        }
+
+        public ListBoxModel doFillCompressionItems() {
+            ListBoxModel r = new ListBoxModel();
+            r.add(Messages.TransferCompressionNodeProperty_Adaptive(),"");
+            for (TarCompression c : TarCompression.values())
+                r.add(c.name());
+            return r;
+        }
+    }
+}
@@ -63,6 +63,7 @@ import java.io.IOException;
 import java.io.Serializable;
 import java.lang.ref.WeakReference;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
@@ -136,7 +137,8 @@ public class Fingerprinter extends Recorder implements Serializable, DependencyD
             build.getActions().add(new FingerprintAction(build,record));
 
             if (enableFingerprintsInDependencyGraph) {
-                Jenkins.getInstance().rebuildDependencyGraph();
+                // only the project recording the fingerprints declares the dependencies they make
+                Jenkins.getInstance().updateDependencyGraph(Collections.singleton(build.getProject().getRootProject()));
             }
         } catch (IOException e) {
             e.printStackTrace(listener.error(Messages.Fingerprinter_Failed()));
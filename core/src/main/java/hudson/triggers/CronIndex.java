@@ -0,0 +1,226 @@
+package hudson.triggers;
+
+import hudson.Extension;
+import hudson.model.AbstractProject;
+import hudson.model.Item;
+import hudson.model.listeners.ItemListener;
+import hudson.scheduler.CronTabList;
+import jenkins.model.DeferredItemLoader;
+import jenkins.model.Jenkins;
+
+import java.util.ArrayList;
+import java.util.Calendar;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+
+/**
+ * {@link Trigger}s of all the {@link AbstractProject}s, ordered by the next time their crontab matches,
+ * so that {@link Trigger#checkTriggers(Calendar)} only looks at the triggers that are due
+ * instead of checking every trigger of every project every minute.
+ *
+ * <p>
+ * Triggers get added as they are {@linkplain Trigger#start(Item, boolean) started}. The entries of
+ * triggers that are no longer in use are dropped when the project gets updated or deleted, and otherwise
+ * when they come due. Since some triggers don't call {@code super.start(...)}, the index is also
+ * rebuilt from the projects every so often.
+ *
+ * @since 1.519
+ */
+public final class CronIndex {
+    /**
+     * Entries by the time they are due. When a trigger is added again, its old entry stays here
+     * until it gets polled, and is then ignored because it's no longer the one in {@link #entries}.
+     */
+    private final PriorityQueue<Entry> queue = new PriorityQueue<Entry>();
+
+    /**
+     * Current entry of each trigger.
+     */
+    private final Map<Trigger<?>,Entry> entries = new IdentityHashMap<Trigger<?>,Entry>();
+
+    private long lastResync;
+
+    public static final class Entry implements Comparable<Entry> {
+        public final AbstractProject<?,?> project;
+        public final Trigger<?> trigger;
+        /**
+         * When the crontab of the trigger next matches.
+         */
+        public final long next;
+
+        Entry(AbstractProject<?,?> project, Trigger<?> trigger, long next) {
+            this.project = project;
+            this.trigger = trigger;
+            this.next = next;
+        }
+
+        public int compareTo(Entry that) {
+            return next<that.next ? -1 : next>that.next ? 1 : 0;
+        }
+    }
+
+    /**
+     * Adds the trigger, or updates its entry, to become due the first minute
+     * at or after the given time that its crontab matches.
+     */
+    public synchronized void add(AbstractProject<?,?> project, Trigger<?> trigger, long from) {
+        Entry e = createEntry(project, trigger, from);
+        if (e==null) {
+            entries.remove(trigger);
+            return;
+        }
+        entries.put(trigger, e);
+        queue.add(e);
+    }
+
+    /**
+     * Removes all the triggers of the given project.
+     */
+    public synchronized void remove(Item project) {
+        for (Iterator<Entry> itr = entries.values().iterator(); itr.hasNext();) {
+            if (itr.next().project==project)
+                itr.remove();
+        }
+    }
+
+    /**
+     * Removes and returns the entries that are due at the given time.
+     * Callers are expected to {@linkplain #add add} the triggers that are still in use back.
+     */
+    public synchronized List<Entry> pollDue(long time) {
+        List<Entry> r = new ArrayList<Entry>();
+        while (!queue.isEmpty() && queue.peek().next<=time) {
+            Entry e = queue.poll();
+            if (entries.get(e.trigger)!=e)
+                continue;   // superseded or removed
+            entries.remove(e.trigger);
+            r.add(e);
+        }
+        return r;
+    }
+
+    /**
+     * Number of triggers in the index.
+     */
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    /**
+     * Rebuilds the index from the projects if it hasn't been for {@link #RESYNC_INTERVAL}.
+     */
+    public void resyncIfNeeded(long now) {
+        synchronized (this) {
+            if (now-lastResync<RESYNC_INTERVAL)
+                return;
+        }
+        resync(now);
+    }
+
+    /**
+     * Rebuilds the index from the projects, adding the triggers that are missing
+     * and dropping those that are no longer in use.
+     */
+    public void resync(long now) {
+        Jenkins j = Jenkins.getInstance();
+        if (j==null)    return;
+        DeferredItemLoader d = j.getDeferredItemLoader();
+        if (d!=null && d.isPending())
+            return;     // jobs with triggers aren't deferred, and looking at all the jobs would load the rest. try again later
+
+        Map<Trigger<?>,Entry> before = snapshot();
+        Map<Trigger<?>,AbstractProject<?,?>> live = new IdentityHashMap<Trigger<?>,AbstractProject<?,?>>();
+        for (AbstractProject<?,?> p : j.getAllItems(AbstractProject.class)) {
+            for (Trigger<?> t : p.getTriggers().values())
+                live.put(t,p);
+        }
+        resync(before, live, now);
+    }
+
+    /**
+     * Copies the current entries, before looking at the projects for {@link #resync(Map, Map, long)}.
+     */
+    /*package*/ synchronized Map<Trigger<?>,Entry> snapshot() {
+        return new IdentityHashMap<Trigger<?>,Entry>(entries);
+    }
+
+    /**
+     * Brings the index in line with the triggers found in the projects.
+     *
+     * @param before
+     *      The entries as of before the projects were looked at. Triggers added since then might not have been
+     *      seen in the projects, so only the entries that are still the same as these are dropped.
+     * @param live
+     *      The triggers in the projects.
+     */
+    /*package*/ synchronized void resync(Map<Trigger<?>,Entry> before, Map<Trigger<?>,AbstractProject<?,?>> live, long now) {
+        for (Iterator<Map.Entry<Trigger<?>,Entry>> itr = entries.entrySet().iterator(); itr.hasNext();) {
+            Map.Entry<Trigger<?>,Entry> e = itr.next();
+            if (!live.containsKey(e.getKey()) && before.get(e.getKey())==e.getValue())
+                itr.remove();
+        }
+        for (Map.Entry<Trigger<?>,AbstractProject<?,?>> e : live.entrySet()) {
+            if (entries.containsKey(e.getKey()))    continue;
+            Entry n = createEntry(e.getValue(), e.getKey(), now);
+            if (n!=null)
+                entries.put(e.getKey(), n);
+        }
+        // also gets rid of the stale entries in the queue
+        queue.clear();
+        queue.addAll(entries.values());
+        lastResync = now;
+    }
+
+    private static Entry createEntry(AbstractProject<?,?> project, Trigger<?> trigger, long from) {
+        CronTabList tabs = trigger.tabs;
+        if (tabs==null)     return null;
+        Calendar next = tabs.ceil(from/MINUTE*MINUTE);
+        if (next==null)     return null;    // no crontab, or one that never matches
+        return new Entry(project, trigger, next.getTimeInMillis());
+    }
+
+    private static final long MINUTE = 60*1000;
+
+    /**
+     * Gets the index of this Jenkins.
+     */
+    public static CronIndex get() {
+        return INSTANCE;
+    }
+
+    private static final CronIndex INSTANCE = new CronIndex();
+
+    /**
+     * How often the index is rebuilt from the projects, in milliseconds.
+     */
+    public static long RESYNC_INTERVAL = Long.getLong(CronIndex.class.getName()+".resyncInterval",60*60*1000);
+
+    @Extension
+    public static class ItemListenerImpl extends ItemListener {
+        @Override
+        public void onLoaded() {
+            get().resync(System.currentTimeMillis());
+        }
+
+        @Override
+        public void onUpdated(Item item) {
+            if (item instanceof AbstractProject) {
+                AbstractProject<?,?> p = (AbstractProject<?,?>) item;
+                long now = System.currentTimeMillis();
+                synchronized (get()) {
+                    get().remove(p);
+                    for (Trigger<?> t : p.getTriggers().values())
+                        get().add(p, t, now);
+                }
+            }
+        }
+
+        @Override
+        public void onDeleted(Item item) {
+            get().remove(item);
+        }
+    }
+}
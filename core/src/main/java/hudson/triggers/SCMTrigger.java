@@ -36,6 +36,9 @@ import hudson.model.Item;
 import hudson.model.Project;
 import hudson.model.SCMedItem;
 import hudson.model.AdministrativeMonitor;
+import hudson.scheduler.Hash;
+import hudson.scm.SCM;
+import hudson.scm.SharedPolling;
 import hudson.util.FlushProofOutputStream;
 import hudson.util.FormValidation;
 import hudson.util.StreamTaskListener;
@@ -51,10 +54,16 @@ import java.io.IOException;
 import java.io.PrintStream;
 import java.nio.charset.Charset;
 import java.util.Collection;
+import java.util.Calendar;
 import java.util.Collections;
+import java.util.Comparator;
 import java.util.Date;
+import java.util.HashMap;
+import java.util.Iterator;
 import java.util.List;
 import java.util.ArrayList;
+import java.util.Map;
+import java.util.Timer;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.logging.Level;
@@ -75,6 +84,12 @@ import static java.util.logging.Level.*;
 public class SCMTrigger extends Trigger<SCMedItem> {
     
     private boolean ignorePostCommitHooks;
+
+    /**
+     * When polling was last requested other than by the crontab, for example by a post-commit hook.
+     * Polling after that must not use a query of the repository that started before then.
+     */
+    private transient volatile long lastRequested;
     
     public SCMTrigger(String scmpoll_spec) throws ANTLRException {
         this(scmpoll_spec, false);
@@ -110,6 +125,11 @@ public class SCMTrigger extends Trigger<SCMedItem> {
      * @since 1.375
      */
     public void run(Action[] additionalActions) {
+        lastRequested = System.currentTimeMillis();
+        schedule(additionalActions);
+    }
+
+    private void schedule(Action[] additionalActions) {
         if(Jenkins.getInstance().isQuietingDown())
             return; // noop
 
@@ -130,6 +150,29 @@ public class SCMTrigger extends Trigger<SCMedItem> {
         }
     }
 
+    /**
+     * Runs the trigger after a delay that is fixed for each project, up to the time the crontab matches next
+     * or {@link #JITTER}, whichever comes first, so that the projects whose crontab matches the same minute
+     * don't all poll at the top of it.
+     * {@link Trigger#checkTriggers(Calendar)} uses this, while post-commit hooks call {@link #run()} directly.
+     */
+    /*package*/ void runSpread() {
+        Timer t = Trigger.timer;
+        long now = System.currentTimeMillis();
+        Calendar next = tabs.ceil(now+60*1000);
+        long spread = next==null ? JITTER : Math.min(JITTER, next.getTimeInMillis()-now);
+        long delay = spread<1000 ? 0 : Hash.from(job.getFullName()+"#polling").next((int)(spread/1000))*1000L;
+        if (t==null || delay==0) {
+            schedule(null);
+            return;
+        }
+        t.schedule(new SafeTimerTask() {
+            protected void doRun() {
+                schedule(null);
+            }
+        }, delay);
+    }
+
     @Override
     public DescriptorImpl getDescriptor() {
         return (DescriptorImpl)super.getDescriptor();
@@ -171,6 +214,12 @@ public class SCMTrigger extends Trigger<SCMedItem> {
          */
         private int maximumThreads;
 
+        /**
+         * How long the pollings of each repository waited in {@link #queue}, by {@link SCM#getPollingKey(AbstractProject)}.
+         * Repositories that haven't been polled for {@link SharedPolling#RETENTION} are dropped.
+         */
+        private transient final Map<String,RepositoryStatistics> statistics = new HashMap<String,RepositoryStatistics>();
+
         public DescriptorImpl() {
             load();
             resizeThreadPool();
@@ -217,6 +266,54 @@ public class SCMTrigger extends Trigger<SCMedItem> {
             return r;
         }
 
+        /**
+         * Gets the polling statistics of each repository, including the pollings that are waiting right now,
+         * ordered by the longest wait.
+         *
+         * @since 1.519
+         */
+        public List<RepositoryStatistics> getRepositoryStatistics() {
+            Map<String,RepositoryStatistics> r = new HashMap<String,RepositoryStatistics>();
+            synchronized (statistics) {
+                for (RepositoryStatistics s : statistics.values())
+                    r.put(s.key, new RepositoryStatistics(s));
+            }
+            long now = System.currentTimeMillis();
+            for (Map.Entry<Runnable,Long> e : queue.getWaiting().entrySet()) {
+                if (!(e.getKey() instanceof Runner))    continue;
+                String key = ((Runner)e.getKey()).getPollingKey();
+                RepositoryStatistics s = r.get(key);
+                if (s==null)
+                    r.put(key, s=new RepositoryStatistics(key));
+                s.waiting++;
+                s.longestWait = Math.max(s.longestWait, now-e.getValue());
+            }
+
+            List<RepositoryStatistics> l = new ArrayList<RepositoryStatistics>(r.values());
+            Collections.sort(l, new Comparator<RepositoryStatistics>() {
+                public int compare(RepositoryStatistics a, RepositoryStatistics b) {
+                    return a.longestWait>b.longestWait ? -1 : a.longestWait<b.longestWait ? 1 : 0;
+                }
+            });
+            return l;
+        }
+
+        /*package*/ void recordWait(String key, long wait) {
+            synchronized (statistics) {
+                long now = System.currentTimeMillis();
+                RepositoryStatistics s = statistics.get(key);
+                if (s==null) {
+                    for (Iterator<RepositoryStatistics> itr = statistics.values().iterator(); itr.hasNext();)
+                        if (now-itr.next().lastPolled>SharedPolling.RETENTION)
+                            itr.remove();
+                    statistics.put(key, s=new RepositoryStatistics(key));
+                }
+                s.polls++;
+                s.totalWait += wait;
+                s.lastPolled = now;
+            }
+        }
+
         public String getDisplayName() {
             return Messages.SCMTrigger_DisplayName();
         }
@@ -274,6 +371,78 @@ public class SCMTrigger extends Trigger<SCMedItem> {
         }
     }
 
+    /**
+     * How long the pollings of a repository wait for a polling thread.
+     *
+     * @since 1.519
+     */
+    public static final class RepositoryStatistics {
+        /**
+         * {@link SCM#getPollingKey(AbstractProject)} of the repository,
+         * or null for all the projects whose SCM doesn't identify the repository it polls.
+         */
+        public final String key;
+        /**
+         * Number of pollings that were started, and the total milliseconds they waited.
+         */
+        private int polls;
+        private long totalWait, lastPolled;
+        /**
+         * Number of pollings waiting right now, and the longest they've waited.
+         */
+        private int waiting;
+        private long longestWait;
+
+        RepositoryStatistics(String key) {
+            this.key = key;
+        }
+
+        RepositoryStatistics(RepositoryStatistics that) {
+            this(that.key);
+            this.polls = that.polls;
+            this.totalWait = that.totalWait;
+            this.lastPolled = that.lastPolled;
+        }
+
+        public int getPolls() {
+            return polls;
+        }
+
+        public long getAverageWait() {
+            return polls==0 ? 0 : totalWait/polls;
+        }
+
+        public int getWaiting() {
+            return waiting;
+        }
+
+        public long getLongestWait() {
+            return longestWait;
+        }
+
+        public String getAverageWaitString() {
+            return Util.getTimeSpanString(getAverageWait());
+        }
+
+        public String getLongestWaitString() {
+            return Util.getTimeSpanString(longestWait);
+        }
+
+        /**
+         * Whether the pollings of this repository have been waiting for longer than {@link #STARVATION_THRESHOLD}.
+         */
+        public boolean isStarving() {
+            return longestWait>STARVATION_THRESHOLD;
+        }
+
+        /**
+         * How the queries of the repository went, if it's polled through {@link SharedPolling}.
+         */
+        public SharedPolling.Repository getRemote() {
+            return key==null ? null : SharedPolling.get().getRepository(key);
+        }
+    }
+
     @Extension
     public static final class AdministrativeMonitorImpl extends AdministrativeMonitor {
         private boolean on;
@@ -384,6 +553,11 @@ public class SCMTrigger extends Trigger<SCMedItem> {
          */
         private volatile long startTime;
 
+        /**
+         * When was this polling put in the queue?
+         */
+        private volatile long scheduledTime = System.currentTimeMillis();
+
         private Action[] additionalActions;
 
         public Runner() {
@@ -397,6 +571,18 @@ public class SCMTrigger extends Trigger<SCMedItem> {
                 additionalActions = actions;
             }
         }
+
+        /**
+         * {@link SCM#getPollingKey(AbstractProject)} of the repository being polled, if known.
+         */
+        public String getPollingKey() {
+            try {
+                return job.getScm().getPollingKey(job.asProject());
+            } catch (RuntimeException e) {
+                LOGGER.log(Level.FINE, "Failed to get the polling key of "+job, e);
+                return null;
+            }
+        }
         
         /**
          * Where the log file is written.
@@ -436,7 +622,14 @@ public class SCMTrigger extends Trigger<SCMedItem> {
                     PrintStream logger = listener.getLogger();
                     long start = System.currentTimeMillis();
                     logger.println("Started on "+ DateFormat.getDateTimeInstance().format(new Date()));
-                    boolean result = job.poll(listener).hasChanges();
+                    // a query of the repository started before a post-commit hook may have missed what it was about
+                    SharedPolling.setRequestTime(lastRequested);
+                    boolean result;
+                    try {
+                        result = job.poll(listener).hasChanges();
+                    } finally {
+                        SharedPolling.setRequestTime(-1);
+                    }
                     logger.println("Done. Took "+ Util.getTimeSpanString(System.currentTimeMillis()-start));
                     if(result)
                         logger.println("Changes found");
@@ -465,6 +658,7 @@ public class SCMTrigger extends Trigger<SCMedItem> {
             Thread.currentThread().setName("SCM polling for "+job);
             try {
                 startTime = System.currentTimeMillis();
+                getDescriptor().recordWait(getPollingKey(), startTime-scheduledTime);
                 if(runPolling()) {
                     AbstractProject p = job.asProject();
                     String name = " #"+p.getNextBuildNumber();
@@ -483,6 +677,8 @@ public class SCMTrigger extends Trigger<SCMedItem> {
                 }
             } finally {
                 Thread.currentThread().setName(threadName);
+                // if another polling was requested in the mean time, SequentialExecutionQueue runs this again right away
+                scheduledTime = System.currentTimeMillis();
             }
         }
 
@@ -563,4 +759,10 @@ public class SCMTrigger extends Trigger<SCMedItem> {
      * How long is too long for a polling activity to be in the queue?
      */
     public static long STARVATION_THRESHOLD =Long.getLong(SCMTrigger.class.getName()+".starvationThreshold", TimeUnit2.HOURS.toMillis(1));
+
+    /**
+     * Up to how long scheduled pollings are delayed to spread them over the interval until their crontab matches next.
+     * 0 to start them all at once.
+     */
+    public static long JITTER = Long.getLong(SCMTrigger.class.getName()+".jitter", TimeUnit2.HOURS.toMillis(1));
 }
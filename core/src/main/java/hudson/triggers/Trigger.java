@@ -95,6 +95,9 @@ public abstract class Trigger<J extends Item> implements Describable<Trigger<?>>
             // so if it fails, use whatever 'tabs' that we already have.
             LOGGER.log(Level.FINE, "Failed to parse crontab spec: "+spec,e);
         }
+
+        if (project instanceof AbstractProject)
+            CronIndex.get().add((AbstractProject<?,?>)project, this, System.currentTimeMillis());
     }
 
     /**
@@ -249,25 +252,37 @@ public abstract class Trigger<J extends Item> implements Describable<Trigger<?>>
             }
         }
 
-        // Process all triggers, except SCMTriggers when synchronousPolling is set
-        for (AbstractProject<?,?> p : inst.getAllItems(AbstractProject.class)) {
-            for (Trigger t : p.getTriggers().values()) {
-                if (! (t instanceof SCMTrigger && scmd.synchronousPolling)) {
-                    LOGGER.fine("cron checking "+p.getName());
-
-                    if (t.tabs.check(cal)) {
-                        LOGGER.config("cron triggered "+p.getName());
-                        try {
+        // Process the triggers that are due, except SCMTriggers when synchronousPolling is set
+        CronIndex index = CronIndex.get();
+        long time = cal.getTimeInMillis();
+        index.resyncIfNeeded(time);
+        List<CronIndex.Entry> due = index.pollDue(time);
+        for (CronIndex.Entry e : due) {
+            AbstractProject<?,?> p = e.project;
+            Trigger t = e.trigger;
+            if (inst.getItemByFullName(p.getFullName(),AbstractProject.class)!=p || !p.getTriggers().containsValue(t))
+                continue;   // the project was deleted or reconfigured since this was indexed
+
+            if (! (t instanceof SCMTrigger && scmd.synchronousPolling)) {
+                LOGGER.fine("cron checking "+p.getName());
+
+                if (t.tabs.check(cal)) {
+                    LOGGER.config("cron triggered "+p.getName());
+                    try {
+                        if (t instanceof SCMTrigger)
+                            ((SCMTrigger)t).runSpread();
+                        else
                             t.run();
-                        } catch (Throwable e) {
-                            // t.run() is a plugin, and some of them throw RuntimeException and other things.
-                            // don't let that cancel the polling activity. report and move on.
-                            LOGGER.log(Level.WARNING, t.getClass().getName()+".run() failed for "+p.getName(),e);
-                        }
+                    } catch (Throwable x) {
+                        // t.run() is a plugin, and some of them throw RuntimeException and other things.
+                        // don't let that cancel the polling activity. report and move on.
+                        LOGGER.log(Level.WARNING, t.getClass().getName()+".run() failed for "+p.getName(),x);
                     }
                 }
             }
+            index.add(p, t, time+60*1000);
         }
+        LOGGER.fine("cron checked "+due.size()+" triggers out of "+index.size());
     }
 
     private static final Logger LOGGER = Logger.getLogger(Trigger.class.getName());
@@ -51,6 +51,7 @@ import java.util.Iterator;
 import java.util.LinkedList;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 import static java.util.logging.Level.WARNING;
 import java.util.logging.Logger;
 import javax.annotation.Nonnull;
@@ -65,6 +66,11 @@ import javax.annotation.Nonnull;
  *     instead of causing an error.
  * </ul>
  *
+ * <p>
+ * What the {@link Mapper} chain says about each field of each class is worked out the first time the class is
+ * seen, and kept until the mapping changes. Changes made through {@link XStream2}, such as
+ * {@link XStream2#aliasField(String, Class, String)}, are noticed by every converter built on its mapper.
+ * Anything else that changes the mapping has to {@link #flushCache()}.
  */
 public class RobustReflectionConverter implements Converter {
 
@@ -73,6 +79,11 @@ public class RobustReflectionConverter implements Converter {
     protected transient SerializationMethodInvoker serializationMethodInvoker;
     private transient ReflectionProvider pureJavaReflectionProvider;
     private final @Nonnull XStream2.ClassOwnership classOwnership;
+    private transient volatile Plans plans;
+    /**
+     * Tells when the mapping changes, if the mapper comes from {@link XStream2}.
+     */
+    private transient XStream2.MapperInjectionPoint injectionPoint;
 
     public RobustReflectionConverter(Mapper mapper, ReflectionProvider reflectionProvider) {
         this(mapper, reflectionProvider, new XStream2().new PluginClassOwnership());
@@ -83,6 +94,11 @@ public class RobustReflectionConverter implements Converter {
         assert classOwnership != null;
         this.classOwnership = classOwnership;
         serializationMethodInvoker = new SerializationMethodInvoker();
+        injectionPoint = findInjectionPoint();
+    }
+
+    private XStream2.MapperInjectionPoint findInjectionPoint() {
+        return (XStream2.MapperInjectionPoint) mapper.lookupMapperOfType(XStream2.MapperInjectionPoint.class);
     }
 
     public boolean canConvert(Class type) {
@@ -138,18 +154,18 @@ public class RobustReflectionConverter implements Converter {
     protected void doMarshal(final Object source, final HierarchicalStreamWriter writer, final MarshallingContext context) {
         final Set seenFields = new HashSet();
         final Set seenAsAttributes = new HashSet();
+        final Plans plans = plans();
+        final ClassPlan plan = plans.of(source.getClass());
 
         // Attributes might be preferred to child elements ...
          reflectionProvider.visitSerializableFields(source, new ReflectionProvider.Visitor() {
             public void visit(String fieldName, Class type, Class definedIn, Object value) {
-                SingleValueConverter converter = mapper.getConverterFromItemType(fieldName, type, definedIn);
-                if (converter == null) converter = mapper.getConverterFromItemType(fieldName, type);
-                if (converter == null) converter = mapper.getConverterFromItemType(type);
-                if (converter != null) {
+                FieldPlan f = plan.field(fieldName, type, definedIn);
+                if (f.attributeConverter != null) {
                     if (value != null) {
-                        final String str = converter.toString(value);
+                        final String str = f.attributeConverter.toString(value);
                         if (str != null) {
-                            writer.addAttribute(mapper.aliasForAttribute(fieldName), str);
+                            writer.addAttribute(f.attributeAlias, str);
                         }
                     }
                     seenAsAttributes.add(fieldName);
@@ -161,7 +177,8 @@ public class RobustReflectionConverter implements Converter {
         reflectionProvider.visitSerializableFields(source, new ReflectionProvider.Visitor() {
             public void visit(String fieldName, Class fieldType, Class definedIn, Object newObj) {
                 if (!seenAsAttributes.contains(fieldName) && newObj != null) {
-                    Mapper.ImplicitCollectionMapping mapping = mapper.getImplicitCollectionDefForFieldName(source.getClass(), fieldName);
+                    FieldPlan f = plan.field(fieldName, fieldType, definedIn);
+                    Mapper.ImplicitCollectionMapping mapping = f.implicitCollection;
                     if (mapping != null) {
                         if (mapping.getItemFieldName() != null) {
                             Collection list = (Collection) newObj;
@@ -173,7 +190,7 @@ public class RobustReflectionConverter implements Converter {
                             context.convertAnother(newObj);
                         }
                     } else {
-                        writeField(fieldName, fieldName, fieldType, definedIn, newObj);
+                        writeField(f, newObj);
                         seenFields.add(fieldName);
                     }
                 }
@@ -184,36 +201,50 @@ public class RobustReflectionConverter implements Converter {
                     if (!mapper.shouldSerializeMember(definedIn, aliasName)) {
                         return;
                     }
-                    ExtendedHierarchicalStreamWriterHelper.startNode(writer, mapper.serializedMember(definedIn, aliasName), fieldType);
-
-                    Class actualType = newObj.getClass();
+                    writeField(aliasName, mapper.serializedMember(definedIn, aliasName), fieldType, mapper.defaultImplementationOf(fieldType), definedIn,
+                            reflectionProvider.getField(definedIn,fieldName), newObj);
+                } catch (RuntimeException e) {
+                    // intercept an exception so that the stack trace shows how we end up marshalling the object in question
+                    throw new RuntimeException("Failed to serialize "+definedIn.getName()+"#"+fieldName+" for "+source.getClass(),e);
+                }
+            }
 
-                    Class defaultType = mapper.defaultImplementationOf(fieldType);
-                    if (!actualType.equals(defaultType)) {
-                        String serializedClassName = mapper.serializedClass(actualType);
-                        if (!serializedClassName.equals(mapper.serializedClass(defaultType))) {
-                            writer.addAttribute(mapper.aliasForSystemAttribute("class"), serializedClassName);
-                        }
+            private void writeField(FieldPlan f, Object newObj) {
+                try {
+                    if (!f.shouldSerialize) {
+                        return;
                     }
+                    writeField(f.name, f.serializedName, f.type, f.defaultType, f.definedIn, f.field, newObj);
+                } catch (RuntimeException e) {
+                    throw new RuntimeException("Failed to serialize "+f.definedIn.getName()+"#"+f.name+" for "+source.getClass(),e);
+                }
+            }
+
+            private void writeField(String aliasName, String serializedName, Class fieldType, Class defaultType, Class definedIn, Field field, Object newObj) {
+                ExtendedHierarchicalStreamWriterHelper.startNode(writer, serializedName, fieldType);
 
-                    if (seenFields.contains(aliasName)) {
-                        writer.addAttribute(mapper.aliasForAttribute("defined-in"), mapper.serializedClass(definedIn));
+                Class actualType = newObj.getClass();
+
+                if (!actualType.equals(defaultType)) {
+                    String serializedClassName = mapper.serializedClass(actualType);
+                    if (!serializedClassName.equals(mapper.serializedClass(defaultType))) {
+                        writer.addAttribute(plans.systemClassAttribute, serializedClassName);
                     }
+                }
 
-                    Field field = reflectionProvider.getField(definedIn,fieldName);
-                    marshallField(context, newObj, field);
-                    writer.endNode();
-                } catch (RuntimeException e) {
-                    // intercept an exception so that the stack trace shows how we end up marshalling the object in question
-                    throw new RuntimeException("Failed to serialize "+definedIn.getName()+"#"+fieldName+" for "+source.getClass(),e);
+                if (seenFields.contains(aliasName)) {
+                    writer.addAttribute(plans.definedInAttribute, mapper.serializedClass(definedIn));
                 }
+
+                marshallField(context, newObj, field);
+                writer.endNode();
             }
 
         });
     }
 
     protected void marshallField(final MarshallingContext context, Object newObj, Field field) {
-        Converter converter = mapper.getLocalConverter(field.getDeclaringClass(), field.getName());
+        Converter converter = plans().localConverter(field);
         context.convertAnother(newObj, converter);
     }
 
@@ -225,6 +256,8 @@ public class RobustReflectionConverter implements Converter {
 
     public Object doUnmarshal(final Object result, final HierarchicalStreamReader reader, final UnmarshallingContext context) {
         final SeenFields seenFields = new SeenFields();
+        final Plans plans = plans();
+        final ClassPlan plan = plans.of(result.getClass());
         Iterator it = reader.getAttributeNames();
         // Remember outermost Saveable encountered, for reporting below
         if (result instanceof Saveable && context.get("Saveable") == null)
@@ -233,16 +266,13 @@ public class RobustReflectionConverter implements Converter {
         // Process attributes before recursing into child elements.
         while (it.hasNext()) {
             String attrAlias = (String) it.next();
-            String attrName = mapper.attributeForAlias(attrAlias);
+            AttributePlan a = plan.attribute(attrAlias);
+            String attrName = a.name;
             Class classDefiningField = determineWhichClassDefinesField(reader);
-            boolean fieldExistsInClass = fieldDefinedInClass(result, attrName);
+            boolean fieldExistsInClass = a.field != null;
             if (fieldExistsInClass) {
-                Field field = reflectionProvider.getField(result.getClass(), attrName);
-                SingleValueConverter converter = mapper.getConverterFromAttribute(field.getDeclaringClass(),attrName,field.getType());
-                Class type = field.getType();
-                if (converter == null) {
-                    converter = mapper.getConverterFromItemType(type);
-                }
+                SingleValueConverter converter = a.converter;
+                Class type = a.field.getType();
                 if (converter != null) {
                     Object value = converter.fromString(reader.getAttribute(attrAlias));
                     if (type.isPrimitive()) {
@@ -262,19 +292,18 @@ public class RobustReflectionConverter implements Converter {
             reader.moveDown();
 
             try {
-                String fieldName = mapper.realMember(result.getClass(), reader.getNodeName());
-                boolean implicitCollectionHasSameName = mapper.getImplicitCollectionDefForFieldName(result.getClass(), reader.getNodeName()) != null;
+                ElementPlan e = plan.element(reader.getNodeName());
+                String fieldName = e.fieldName;
 
                 Class classDefiningField = determineWhichClassDefinesField(reader);
-                boolean fieldExistsInClass = !implicitCollectionHasSameName && fieldDefinedInClass(result,fieldName);
+                boolean fieldExistsInClass = e.field != null;
 
-                Class type = determineType(reader, fieldExistsInClass, result, fieldName, classDefiningField);
+                Class type = determineType(reader, e, result, classDefiningField);
                 final Object value;
                 if (fieldExistsInClass) {
-                    Field field = reflectionProvider.getField(result.getClass(),fieldName);
-                    value = unmarshalField(context, result, type, field);
+                    value = unmarshalField(context, result, type, e.field);
                     // TODO the reflection provider should have returned the proper field in first place ....
-                    Class definedType = reflectionProvider.getFieldType(result, fieldName, classDefiningField);
+                    Class definedType = classDefiningField == null ? e.field.getType() : reflectionProvider.getFieldType(result, fieldName, classDefiningField);
                     if (!definedType.isPrimitive()) {
                         type = definedType;
                     }
@@ -322,14 +351,8 @@ public class RobustReflectionConverter implements Converter {
         list.add(e);
     }
 
-    private boolean fieldDefinedInClass(Object result, String attrName) {
-        // during unmarshalling, unmarshal into transient fields like XStream 1.1.3
-        //boolean fieldExistsInClass = reflectionProvider.fieldDefinedInClass(attrName, result.getClass());
-        return reflectionProvider.getFieldOrNull(result.getClass(),attrName)!=null;
-    }
-
     protected Object unmarshalField(final UnmarshallingContext context, final Object result, Class type, Field field) {
-        Converter converter = mapper.getLocalConverter(field.getDeclaringClass(), field.getName());
+        Converter converter = plans().localConverter(field);
         return context.convertAnother(result, type, converter);
     }
 
@@ -359,12 +382,12 @@ public class RobustReflectionConverter implements Converter {
     }
 
     private Class determineWhichClassDefinesField(HierarchicalStreamReader reader) {
-        String definedIn = reader.getAttribute(mapper.aliasForAttribute("defined-in"));
+        String definedIn = reader.getAttribute(plans().definedInAttribute);
         return definedIn == null ? null : mapper.realClass(definedIn);
     }
 
     protected Object instantiateNewInstance(HierarchicalStreamReader reader, UnmarshallingContext context) {
-        String readResolveValue = reader.getAttribute(mapper.aliasForAttribute("resolves-to"));
+        String readResolveValue = reader.getAttribute(plans().resolvesToAttribute);
 
         Class type = readResolveValue != null ? mapper.realClass(readResolveValue) : context.getRequiredType();
 
@@ -394,9 +417,12 @@ public class RobustReflectionConverter implements Converter {
 
     }
 
-    private Class determineType(HierarchicalStreamReader reader, boolean validField, Object result, String fieldName, Class definedInCls) {
-        String classAttribute = reader.getAttribute(mapper.aliasForAttribute("class"));
-        Class fieldType = reflectionProvider.getFieldType(result, fieldName, definedInCls);
+    private Class determineType(HierarchicalStreamReader reader, ElementPlan e, Object result, Class definedInCls) {
+        String fieldName = e.fieldName;
+        boolean validField = e.field != null;
+        String classAttribute = reader.getAttribute(plans().classAttribute);
+        // for a missing field, this throws MissingFieldException
+        Class fieldType = validField && definedInCls == null ? e.field.getType() : reflectionProvider.getFieldType(result, fieldName, definedInCls);
         if (classAttribute != null) {
             Class specifiedType = mapper.realClass(classAttribute);
             if(fieldType.isAssignableFrom(specifiedType))
@@ -412,15 +438,188 @@ public class RobustReflectionConverter implements Converter {
                 return mapper.realClass(reader.getNodeName());
             }
         } else {
-            return mapper.defaultImplementationOf(fieldType);
+            return fieldType == e.field.getType() ? e.defaultType : mapper.defaultImplementationOf(fieldType);
         }
     }
 
     private Object readResolve() {
         serializationMethodInvoker = new SerializationMethodInvoker();
+        injectionPoint = findInjectionPoint();
         return this;
     }
 
+    /**
+     * Forgets what's been worked out from the {@link Mapper}. Needs to be called whenever the mapping changes.
+     */
+    public void flushCache() {
+        plans = null;
+    }
+
+    private Plans plans() {
+        Plans p = plans;
+        int generation = injectionPoint == null ? 0 : injectionPoint.getGeneration();
+        if (p == null || p.generation != generation)
+            plans = p = new Plans(generation);
+        return p;
+    }
+
+    /**
+     * Everything cached from the {@link Mapper} since the last {@link #flushCache()} or change of the mapping.
+     */
+    private final class Plans {
+        final int generation;
+        final String classAttribute = mapper.aliasForAttribute("class");
+        final String systemClassAttribute = mapper.aliasForSystemAttribute("class");
+        final String definedInAttribute = mapper.aliasForAttribute("defined-in");
+        final String resolvesToAttribute = mapper.aliasForAttribute("resolves-to");
+        private final Map<Class,ClassPlan> classes = new ConcurrentHashMap<Class,ClassPlan>();
+        private final Map<Field,Object> localConverters = new ConcurrentHashMap<Field,Object>();
+
+        Plans(int generation) {
+            this.generation = generation;
+        }
+
+        ClassPlan of(Class c) {
+            ClassPlan p = classes.get(c);
+            if (p == null)
+                classes.put(c, p = new ClassPlan(c));
+            return p;
+        }
+
+        Converter localConverter(Field f) {
+            Object c = localConverters.get(f);
+            if (c == null) {
+                c = mapper.getLocalConverter(f.getDeclaringClass(), f.getName());
+                localConverters.put(f, c != null ? c : NONE);
+            }
+            return c == NONE ? null : (Converter) c;
+        }
+    }
+
+    /**
+     * How the elements, attributes and fields of a class map to each other.
+     * Two threads may work out the same thing at the same time, which is harmless.
+     */
+    private final class ClassPlan {
+        final Class type;
+        private final Map<String,ElementPlan> elements = new ConcurrentHashMap<String,ElementPlan>();
+        private final Map<String,AttributePlan> attributes = new ConcurrentHashMap<String,AttributePlan>();
+        private final Map<String,FieldPlan> fields = new ConcurrentHashMap<String,FieldPlan>();
+
+        ClassPlan(Class type) {
+            this.type = type;
+        }
+
+        ElementPlan element(String nodeName) {
+            ElementPlan p = elements.get(nodeName);
+            if (p == null)
+                elements.put(nodeName, p = new ElementPlan(type, nodeName));
+            return p;
+        }
+
+        AttributePlan attribute(String alias) {
+            AttributePlan p = attributes.get(alias);
+            if (p == null)
+                attributes.put(alias, p = new AttributePlan(type, alias));
+            return p;
+        }
+
+        FieldPlan field(String name, Class fieldType, Class definedIn) {
+            String key = definedIn.getName() + '#' + name;
+            FieldPlan p = fields.get(key);
+            if (p == null)
+                fields.put(key, p = new FieldPlan(type, name, fieldType, definedIn));
+            return p;
+        }
+    }
+
+    /**
+     * A child element being unmarshalled.
+     */
+    private final class ElementPlan {
+        final String fieldName;
+        /**
+         * Null if there's no such field, or if the element belongs to an implicit collection of the same name.
+         * During unmarshalling, unmarshal into transient fields like XStream 1.1.3.
+         */
+        final Field field;
+        final Class defaultType;
+
+        ElementPlan(Class type, String nodeName) {
+            fieldName = mapper.realMember(type, nodeName);
+            boolean implicitCollectionHasSameName = mapper.getImplicitCollectionDefForFieldName(type, nodeName) != null;
+            field = implicitCollectionHasSameName ? null : reflectionProvider.getFieldOrNull(type, fieldName);
+            defaultType = field == null ? null : mapper.defaultImplementationOf(field.getType());
+        }
+    }
+
+    /**
+     * An attribute being unmarshalled.
+     */
+    private final class AttributePlan {
+        final String name;
+        final Field field;
+        final SingleValueConverter converter;
+
+        AttributePlan(Class type, String alias) {
+            name = mapper.attributeForAlias(alias);
+            field = reflectionProvider.getFieldOrNull(type, name);
+            if (field != null) {
+                SingleValueConverter c = mapper.getConverterFromAttribute(field.getDeclaringClass(), name, field.getType());
+                if (c == null) {
+                    c = mapper.getConverterFromItemType(field.getType());
+                }
+                converter = c;
+            } else {
+                converter = null;
+            }
+        }
+    }
+
+    /**
+     * A field being marshalled.
+     */
+    private final class FieldPlan {
+        final String name;
+        final Class type;
+        final Class definedIn;
+        /**
+         * Non-null if the field is written as an attribute.
+         */
+        final SingleValueConverter attributeConverter;
+        final String attributeAlias;
+        final Mapper.ImplicitCollectionMapping implicitCollection;
+        final boolean shouldSerialize;
+        final String serializedName;
+        final Class defaultType;
+        final Field field;
+
+        FieldPlan(Class owner, String name, Class type, Class definedIn) {
+            this.name = name;
+            this.type = type;
+            this.definedIn = definedIn;
+            SingleValueConverter converter = mapper.getConverterFromItemType(name, type, definedIn);
+            if (converter == null) converter = mapper.getConverterFromItemType(name, type);
+            if (converter == null) converter = mapper.getConverterFromItemType(type);
+            attributeConverter = converter;
+            attributeAlias = converter == null ? null : mapper.aliasForAttribute(name);
+            implicitCollection = converter == null ? mapper.getImplicitCollectionDefForFieldName(owner, name) : null;
+            if (converter == null && implicitCollection == null) {
+                shouldSerialize = mapper.shouldSerializeMember(definedIn, name);
+                serializedName = mapper.serializedMember(definedIn, name);
+                defaultType = mapper.defaultImplementationOf(type);
+                field = reflectionProvider.getField(definedIn, name);
+            } else {
+                shouldSerialize = false;
+                serializedName = null;
+                defaultType = null;
+                field = null;
+            }
+        }
+    }
+
+    private static final Object NONE = new Object();
+
     public static class DuplicateFieldException extends ConversionException {
         public DuplicateFieldException(String msg) {
             super(msg);
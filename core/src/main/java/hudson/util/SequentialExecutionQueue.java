@@ -92,6 +92,20 @@ public class SequentialExecutionQueue implements Executor {
         return items;
     }
 
+    /**
+     * Gets {@link Runnable}s that are waiting for a thread, along with when they were submitted.
+     *
+     * @since 1.519
+     */
+    public synchronized Map<Runnable,Long> getWaiting() {
+        Map<Runnable,Long> items = new HashMap<Runnable,Long>();
+        for (QueueEntry entry : entries.values()) {
+            if (entry.queued && !inProgress.contains(entry))
+                items.put(entry.item,entry.submissionTime);
+        }
+        return items;
+    }
+
     private final class QueueEntry implements Runnable {
         private final Runnable item;
         private boolean queued;
@@ -75,6 +75,10 @@ public class XStream2 extends XStream {
     private final ThreadLocal<Boolean> oldData = new ThreadLocal<Boolean>();
     private final @CheckForNull ClassOwnership classOwnership;
     private final Map<String,Class<?>> compatibilityAliases = new ConcurrentHashMap<String, Class<?>>();
+    /**
+     * Bumped whenever the mapping changes. No initializer, as the super constructor already changes the mapping.
+     */
+    private volatile int mappingGeneration;
 
     /**
      * Hook to insert {@link Mapper}s after they are created.
@@ -201,6 +205,106 @@ public class XStream2 extends XStream {
      */
     public void setMapper(Mapper m) {
         mapperInjectionPoint.setDelegate(m);
+        mappingChanged();
+    }
+
+    /**
+     * {@link RobustReflectionConverter}s remember what the mapper says about each class,
+     * so the methods below that change the mapping need to tell them. All the converters built on
+     * the mapper of this object, not just the default one, find this through {@link MapperInjectionPoint}.
+     */
+    private void mappingChanged() {
+        mappingGeneration++;
+    }
+
+    @Override public void aliasSystemAttribute(String alias, String systemAttributeName) {
+        super.aliasSystemAttribute(alias, systemAttributeName);
+        mappingChanged();
+    }
+
+    @Override public void aliasField(String alias, Class definedIn, String fieldName) {
+        super.aliasField(alias, definedIn, fieldName);
+        mappingChanged();
+    }
+
+    @Override public void aliasAttribute(String alias, String attributeName) {
+        super.aliasAttribute(alias, attributeName);
+        mappingChanged();
+    }
+
+    @Override public void aliasAttribute(Class definedIn, String attributeName, String alias) {
+        super.aliasAttribute(definedIn, attributeName, alias);
+        mappingChanged();
+    }
+
+    @Override public void useAttributeFor(String fieldName, Class type) {
+        super.useAttributeFor(fieldName, type);
+        mappingChanged();
+    }
+
+    @Override public void useAttributeFor(Class definedIn, String fieldName) {
+        super.useAttributeFor(definedIn, fieldName);
+        mappingChanged();
+    }
+
+    @Override public void useAttributeFor(Class type) {
+        super.useAttributeFor(type);
+        mappingChanged();
+    }
+
+    @Override public void addImplicitCollection(Class ownerType, String fieldName) {
+        super.addImplicitCollection(ownerType, fieldName);
+        mappingChanged();
+    }
+
+    @Override public void addImplicitCollection(Class ownerType, String fieldName, Class itemType) {
+        super.addImplicitCollection(ownerType, fieldName, itemType);
+        mappingChanged();
+    }
+
+    @Override public void addImplicitCollection(Class ownerType, String fieldName, String itemFieldName, Class itemType) {
+        super.addImplicitCollection(ownerType, fieldName, itemFieldName, itemType);
+        mappingChanged();
+    }
+
+    @Override public void addDefaultImplementation(Class defaultImplementation, Class ofType) {
+        super.addDefaultImplementation(defaultImplementation, ofType);
+        mappingChanged();
+    }
+
+    @Override public void omitField(Class definedIn, String fieldName) {
+        super.omitField(definedIn, fieldName);
+        mappingChanged();
+    }
+
+    @Override public void registerConverter(Converter converter, int priority) {
+        super.registerConverter(converter, priority);
+        mappingChanged();
+    }
+
+    @Override public void registerConverter(SingleValueConverter converter, int priority) {
+        super.registerConverter(converter, priority);
+        mappingChanged();
+    }
+
+    @Override public void registerLocalConverter(Class definedIn, String fieldName, Converter converter) {
+        super.registerLocalConverter(definedIn, fieldName, converter);
+        mappingChanged();
+    }
+
+    @Override public void registerLocalConverter(Class definedIn, String fieldName, SingleValueConverter converter) {
+        super.registerLocalConverter(definedIn, fieldName, converter);
+        mappingChanged();
+    }
+
+    @Override public void processAnnotations(Class[] types) {
+        super.processAnnotations(types);
+        mappingChanged();
+    }
+
+    @Override public void processAnnotations(Class type) {
+        super.processAnnotations(type);
+        mappingChanged();
     }
 
     final class MapperInjectionPoint extends MapperDelegate {
@@ -208,6 +312,13 @@ public class XStream2 extends XStream {
             super(wrapped);
         }
 
+        /**
+         * Changes whenever the mapping changes.
+         */
+        int getGeneration() {
+            return mappingGeneration;
+        }
+
         public Mapper getDelegate() {
             return delegate;
         }
@@ -388,6 +499,12 @@ public class XStream2 extends XStream {
 
         private PluginManager pm;
 
+        /**
+         * Owners found so far, with {@code ""} for none. The plugin a class comes from doesn't change,
+         * and {@link PluginManager#whichPlugin(Class)} has to look through every plugin.
+         */
+        private final Map<Class<?>,String> owners = new ConcurrentHashMap<Class<?>,String>();
+
         @SuppressWarnings("NP_NULL_ON_SOME_PATH_FROM_RETURN_VALUE") // classOwnership checked for null so why does FB complain?
         @Override public String ownerOf(Class<?> clazz) {
             if (classOwnership != null) {
@@ -402,9 +519,14 @@ public class XStream2 extends XStream {
             if (pm == null) {
                 return null;
             }
-            // TODO: possibly recursively scan super class to discover dependencies
-            PluginWrapper p = pm.whichPlugin(clazz);
-            return p != null ? p.getShortName() + '@' + trimVersion(p.getVersion()) : null;
+            String owner = owners.get(clazz);
+            if (owner == null) {
+                // TODO: possibly recursively scan super class to discover dependencies
+                PluginWrapper p = pm.whichPlugin(clazz);
+                owner = p != null ? p.getShortName() + '@' + trimVersion(p.getVersion()) : "";
+                owners.put(clazz, owner);
+            }
+            return owner.length() > 0 ? owner : null;
         }
 
     }
@@ -52,6 +52,14 @@ public abstract class ArchiverFactory implements Serializable {
      */
     public static ArchiverFactory TARGZ = new TarArchiverFactory(TarCompression.GZIP);
 
+    /**
+     * tar+gz, compressed on multiple threads with {@link ParallelGZIPOutputStream}.
+     * Meant for serving archives to users, as the output consists of multiple gzip members.
+     *
+     * @since 1.519
+     */
+    public static ArchiverFactory TARGZ_PARALLEL = new ParallelTarGzArchiverFactory();
+
     /**
      * Zip format.
      */
@@ -73,6 +81,14 @@ public abstract class ArchiverFactory implements Serializable {
         private static final long serialVersionUID = 1L;
     }
 
+    private static final class ParallelTarGzArchiverFactory extends ArchiverFactory {
+        public Archiver create(OutputStream out) {
+            return new TarArchiver(new ParallelGZIPOutputStream(out));
+        }
+
+        private static final long serialVersionUID = 1L;
+    }
+
     private static final class ZipArchiverFactory extends ArchiverFactory {
         public Archiver create(OutputStream out) {
             return new ZipArchiver(out);
@@ -0,0 +1,192 @@
+package hudson.util.io;
+
+import java.io.BufferedInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.Serializable;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+/**
+ * Per-block checksums of a file that already exists on the receiving side of a delta copy.
+ *
+ * <p>
+ * The receiver computes this and sends it to the sender, which then uses {@link DeltaArchiver}
+ * to find the blocks it doesn't have to send again. Each block has a cheap rolling checksum
+ * (to find candidates at any offset) and a strong checksum (to confirm them).
+ *
+ * <p>
+ * Files smaller than {@link #MIN_DELTA_SIZE} only carry the length and the timestamp, so that
+ * unchanged files can still be skipped, but changed ones are just sent in full.
+ *
+ * @since 1.519
+ * @see DeltaArchiver
+ */
+public final class BlockSignature implements Serializable {
+    /**
+     * Length of the file in bytes.
+     */
+    public final long length;
+
+    /**
+     * Timestamp of the file.
+     */
+    public final long lastModified;
+
+    /**
+     * Size of the block. 0 if this signature doesn't carry any block checksums.
+     */
+    public final int blockSize;
+
+    /**
+     * Rolling checksums of each full block, as computed by {@link #weakChecksum(byte[], int, int)}.
+     * The trailing partial block, if any, is not included.
+     */
+    final int[] weak;
+
+    /**
+     * Strong checksums that correspond to {@link #weak}.
+     */
+    final long[] strong;
+
+    private BlockSignature(long length, long lastModified, int blockSize, int[] weak, long[] strong) {
+        this.length = length;
+        this.lastModified = lastModified;
+        this.blockSize = blockSize;
+        this.weak = weak;
+        this.strong = strong;
+    }
+
+    /**
+     * Number of full blocks in this signature.
+     */
+    public int getBlockCount() {
+        return weak.length;
+    }
+
+    /**
+     * Does the given file look unchanged from the file this signature was computed from?
+     * This is the same quick check rsync uses by default.
+     */
+    public boolean isSameAs(File f) {
+        return f.length()==length && f.lastModified()==lastModified;
+    }
+
+    /**
+     * Computes the signature of the given file.
+     */
+    public static BlockSignature compute(File f) throws IOException {
+        long len = f.length();
+        long timestamp = f.lastModified();
+        if (len<MIN_DELTA_SIZE)
+            return new BlockSignature(len,timestamp,0,new int[0],new long[0]);
+
+        int bs = blockSizeFor(len);
+        int n = (int)Math.min(len/bs, Integer.MAX_VALUE);
+        int[] weak = new int[n];
+        long[] strong = new long[n];
+
+        MessageDigest md5 = createDigest();
+        byte[] buf = new byte[bs];
+        InputStream in = new BufferedInputStream(new FileInputStream(f),Math.max(8192,bs));
+        try {
+            for (int i=0; i<n; i++) {
+                readFully(in,buf);
+                weak[i] = weakChecksum(buf,0,bs);
+                strong[i] = strongChecksum(md5,buf,0,bs);
+            }
+        } finally {
+            in.close();
+        }
+        return new BlockSignature(len,timestamp,bs,weak,strong);
+    }
+
+    /**
+     * Picks the block size roughly proportional to the square root of the file size, like rsync does,
+     * so that the signature stays small for large files but small edits still only invalidate a few blocks.
+     */
+    static int blockSizeFor(long length) {
+        long bs = (long)Math.sqrt(length);
+        bs = (bs+1023)/1024*1024; // round up to 1K
+        return (int)Math.max(MIN_BLOCK_SIZE, Math.min(MAX_BLOCK_SIZE, bs));
+    }
+
+    private static void readFully(InputStream in, byte[] buf) throws IOException {
+        int pos=0;
+        while (pos<buf.length) {
+            int n = in.read(buf,pos,buf.length-pos);
+            if (n<0)    throw new IOException("File shrank while computing its signature");
+            pos+=n;
+        }
+    }
+
+    /**
+     * rsync-style rolling checksum of the given range.
+     *
+     * @see #roll(int, int, byte, byte)
+     */
+    static int weakChecksum(byte[] buf, int start, int len) {
+        int a=0, b=0;
+        for (int i=0; i<len; i++) {
+            int x = buf[start+i]&0xFF;
+            a += x;
+            b += (len-i)*x;
+        }
+        return pack(a,b);
+    }
+
+    /**
+     * Slides the window of the checksum computed by {@link #weakChecksum(byte[], int, int)} by one byte.
+     *
+     * @param checksum
+     *      Checksum of the current window.
+     * @param len
+     *      Window size.
+     * @param out
+     *      The byte that leaves the window.
+     * @param in
+     *      The byte that enters the window.
+     */
+    static int roll(int checksum, int len, byte out, byte in) {
+        int a = checksum&0xFFFF;
+        int b = checksum>>>16;
+        int o = out&0xFF;
+        a = a - o + (in&0xFF);
+        b = b - len*o + a;
+        return pack(a,b);
+    }
+
+    private static int pack(int a, int b) {
+        return (a&0xFFFF) | (b<<16);
+    }
+
+    static long strongChecksum(MessageDigest md5, byte[] buf, int start, int len) {
+        md5.reset();
+        md5.update(buf,start,len);
+        byte[] d = md5.digest();
+        long r=0;
+        for (int i=0; i<8; i++)
+            r = (r<<8) | (d[i]&0xFF);
+        return r;
+    }
+
+    static MessageDigest createDigest() {
+        try {
+            return MessageDigest.getInstance("MD5");
+        } catch (NoSuchAlgorithmException e) {
+            throw new Error(e);    // impossible
+        }
+    }
+
+    /**
+     * Files smaller than this are always sent in full.
+     */
+    public static int MIN_DELTA_SIZE = Integer.getInteger(BlockSignature.class.getName()+".minDeltaSize",64*1024);
+
+    private static final int MIN_BLOCK_SIZE = 2048;
+    private static final int MAX_BLOCK_SIZE = 128*1024;
+
+    private static final long serialVersionUID = 1L;
+}
@@ -0,0 +1,357 @@
+package hudson.util.io;
+
+import hudson.FilePath;
+import hudson.Functions;
+import hudson.model.TaskListener;
+import hudson.os.PosixException;
+import hudson.util.IOException2;
+import hudson.util.IOUtils;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * {@link Archiver} that writes a stream of rsync-style deltas against the files the receiver already has.
+ *
+ * <p>
+ * For each file, the receiver sends its {@link BlockSignature} ahead of time. Files whose
+ * length and timestamp match are skipped altogether, blocks that the receiver already has
+ * (at whatever offset) are sent as references, and everything else is sent as literal bytes.
+ * The stream is read back by {@link #extract(File, InputStream)}.
+ *
+ * <p>
+ * Like other archivers, this doesn't compress the data by itself, so callers normally put
+ * a compressing stream in between.
+ *
+ * @since 1.519
+ * @see FilePath#copyRecursiveDeltaTo(String, String, FilePath)
+ */
+public final class DeltaArchiver extends Archiver {
+    private final DataOutputStream out;
+    private final Map<String,BlockSignature> signatures;
+    private final byte[] buf = new byte[8192];
+
+    private long literalBytes, reusedBytes;
+    private int skipped;
+
+    /**
+     * @param signatures
+     *      Signatures of the files the receiver already has, keyed by their relative path ('/' separated).
+     *      Files not in this map are sent in full.
+     */
+    public DeltaArchiver(OutputStream out, Map<String,BlockSignature> signatures) {
+        this.out = new DataOutputStream(new BufferedOutputStream(out));
+        this.signatures = signatures!=null ? signatures : Collections.<String,BlockSignature>emptyMap();
+    }
+
+    /**
+     * Number of bytes that were sent as is.
+     */
+    public long getLiteralBytes() {
+        return literalBytes;
+    }
+
+    /**
+     * Number of bytes the receiver reconstructed from the blocks it already had.
+     */
+    public long getReusedBytes() {
+        return reusedBytes;
+    }
+
+    /**
+     * Number of files that were skipped because they were identical on both sides.
+     */
+    public int getSkippedFiles() {
+        return skipped;
+    }
+
+    @Override
+    public boolean understandsSymlink() {
+        return true;
+    }
+
+    @Override
+    public void visitSymlink(File link, String target, String relativePath) throws IOException {
+        out.writeByte(ENTRY_SYMLINK);
+        out.writeUTF(normalize(relativePath));
+        out.writeUTF(target);
+        entriesWritten++;
+    }
+
+    public void visit(File f, String relativePath) throws IOException {
+        relativePath = normalize(relativePath);
+        if (f.isDirectory()) {
+            out.writeByte(ENTRY_DIR);
+            out.writeUTF(relativePath);
+            entriesWritten++;
+            return;
+        }
+
+        BlockSignature sig = signatures.get(relativePath);
+        entriesWritten++;
+        if (sig!=null && sig.isSameAs(f)) {
+            skipped++;
+            return;
+        }
+
+        out.writeByte(ENTRY_FILE);
+        out.writeUTF(relativePath);
+        out.writeLong(f.lastModified());
+        out.writeInt(mode(f));
+
+        if (sig!=null && sig.getBlockCount()>0 && f.length()>=sig.blockSize) {
+            out.writeInt(sig.blockSize);
+            writeDelta(f,sig);
+        } else {
+            out.writeInt(0);
+            writeLiteral(f);
+        }
+        out.writeByte(OP_END);
+    }
+
+    private void writeLiteral(File f) throws IOException {
+        FileInputStream in = new FileInputStream(f);
+        try {
+            int len;
+            while ((len=in.read(buf))>=0) {
+                if (len==0) continue;
+                out.writeByte(OP_LITERAL);
+                out.writeInt(len);
+                out.write(buf,0,len);
+                literalBytes += len;
+            }
+        } finally {
+            in.close();
+        }
+    }
+
+    /**
+     * Slides a window of {@link BlockSignature#blockSize} over the file and looks for the blocks the receiver has.
+     */
+    private void writeDelta(File f, BlockSignature sig) throws IOException {
+        final int bs = sig.blockSize;
+        Map<Integer,List<Integer>> index = new HashMap<Integer,List<Integer>>();
+        for (int i=0; i<sig.weak.length; i++) {
+            List<Integer> l = index.get(sig.weak[i]);
+            if (l==null)    index.put(sig.weak[i], l=new ArrayList<Integer>(1));
+            l.add(i);
+        }
+        MessageDigest md5 = BlockSignature.createDigest();
+
+        byte[] window = new byte[Math.max(WINDOW_BUFFER_SIZE,bs*4)];
+        InputStream in = new FileInputStream(f);
+        try {
+            int len = 0;        // number of valid bytes in the window buffer
+            int pos = 0;        // start of the current block candidate
+            int literal = 0;    // start of the bytes that are yet to be sent
+            boolean eof = false;
+            boolean fresh = true;
+            int checksum = 0;
+
+            while (true) {
+                if (pos+bs>len) {
+                    if (eof)    break;
+                    // send what we have, and make room for more data
+                    writeLiteral(window,literal,pos-literal);
+                    System.arraycopy(window,pos,window,0,len-pos);
+                    len -= pos;
+                    pos = literal = 0;
+                    int n = in.read(window,len,window.length-len);
+                    if (n<0)    eof = true;
+                    else        len += n;
+                    continue;
+                }
+
+                if (fresh) {
+                    checksum = BlockSignature.weakChecksum(window,pos,bs);
+                    fresh = false;
+                }
+
+                int match = -1;
+                List<Integer> candidates = index.get(checksum);
+                if (candidates!=null) {
+                    long strong = BlockSignature.strongChecksum(md5,window,pos,bs);
+                    for (int i : candidates) {
+                        if (sig.strong[i]==strong) {
+                            match = i;
+                            break;
+                        }
+                    }
+                }
+
+                if (match>=0) {
+                    writeLiteral(window,literal,pos-literal);
+                    out.writeByte(OP_BLOCK);
+                    out.writeInt(match);
+                    reusedBytes += bs;
+                    pos += bs;
+                    literal = pos;
+                    fresh = true;
+                } else {
+                    if (pos+bs<len)
+                        checksum = BlockSignature.roll(checksum,bs,window[pos],window[pos+bs]);
+                    else
+                        fresh = true;
+                    pos++;
+                }
+            }
+
+            writeLiteral(window,literal,len-literal);
+        } finally {
+            in.close();
+        }
+    }
+
+    private void writeLiteral(byte[] data, int start, int len) throws IOException {
+        if (len<=0) return;
+        out.writeByte(OP_LITERAL);
+        out.writeInt(len);
+        out.write(data,start,len);
+        literalBytes += len;
+    }
+
+    public void close() throws IOException {
+        out.writeByte(ENTRY_END);
+        out.close();
+    }
+
+    private static String normalize(String relativePath) {
+        if(Functions.isWindows())
+            relativePath = relativePath.replace('\\','/');
+        return relativePath;
+    }
+
+    private static int mode(File f) {
+        try {
+            return IOUtils.mode(f);
+        } catch (PosixException e) {
+            return -1;
+        }
+    }
+
+    /**
+     * Reads the stream written by {@link DeltaArchiver} and updates the files in the given directory.
+     *
+     * <p>
+     * Each file is reconstructed into a temporary file next to it, then renamed over the original,
+     * so that the blocks of the original can be read while the new contents are being written.
+     *
+     * @param in
+     *      The stream will be closed by this method after it's fully read.
+     */
+    public static void extract(File baseDir, InputStream in) throws IOException {
+        DataInputStream din = new DataInputStream(new BufferedInputStream(in));
+        try {
+            byte[] buf = new byte[8192];
+            int type;
+            while ((type=din.readByte())!=ENTRY_END) {
+                File f = new File(baseDir,din.readUTF());
+                switch (type) {
+                case ENTRY_DIR:
+                    f.mkdirs();
+                    break;
+                case ENTRY_SYMLINK:
+                    String target = din.readUTF();
+                    File parent = f.getParentFile();
+                    if (parent!=null)   parent.mkdirs();
+                    new FilePath(f).symlinkTo(target, TaskListener.NULL);
+                    break;
+                case ENTRY_FILE:
+                    extractFile(f,din,buf);
+                    break;
+                default:
+                    throw new IOException("Unexpected entry type "+type+" in the delta stream");
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt(); // process this later
+            throw new IOException2("Failed to extract the delta stream into "+baseDir,e);
+        } finally {
+            din.close();
+        }
+    }
+
+    private static void extractFile(File f, DataInputStream din, byte[] buf) throws IOException, InterruptedException {
+        long timestamp = din.readLong();
+        int mode = din.readInt();
+        int bs = din.readInt();
+
+        File parent = f.getParentFile();
+        if (parent!=null)   parent.mkdirs();
+
+        File tmp = File.createTempFile(f.getName(),".delta",parent);
+        RandomAccessFile basis = null;
+        OutputStream os = new BufferedOutputStream(new FileOutputStream(tmp));
+        boolean completed = false;
+        try {
+            int op;
+            while ((op=din.readByte())!=OP_END) {
+                switch (op) {
+                case OP_LITERAL:
+                    int len = din.readInt();
+                    while (len>0) {
+                        int chunk = Math.min(len,buf.length);
+                        din.readFully(buf,0,chunk);
+                        os.write(buf,0,chunk);
+                        len -= chunk;
+                    }
+                    break;
+                case OP_BLOCK:
+                    int idx = din.readInt();
+                    if (basis==null)    basis = new RandomAccessFile(f,"r");
+                    basis.seek((long)idx*bs);
+                    for (int remaining=bs; remaining>0; ) {
+                        int chunk = Math.min(remaining,buf.length);
+                        basis.readFully(buf,0,chunk);
+                        os.write(buf,0,chunk);
+                        remaining -= chunk;
+                    }
+                    break;
+                default:
+                    throw new IOException("Unexpected op "+op+" in the delta stream for "+f);
+                }
+            }
+            os.close();
+            completed = true;
+        } finally {
+            IOUtils.closeQuietly(os);
+            if (basis!=null)    basis.close();
+            if (!completed)     tmp.delete();
+        }
+
+        if (f.exists() && !f.delete())
+            throw new IOException("Failed to delete "+f);
+        if (!tmp.renameTo(f))
+            throw new IOException("Failed to rename "+tmp+" to "+f);
+
+        f.setLastModified(timestamp);
+        if (mode>0 && !Functions.isWindows()) // be defensive
+            new FilePath(f).chmod(mode&0777);
+    }
+
+    private static final int WINDOW_BUFFER_SIZE = 256*1024;
+
+    private static final byte ENTRY_END = 0;
+    private static final byte ENTRY_FILE = 1;
+    private static final byte ENTRY_DIR = 2;
+    private static final byte ENTRY_SYMLINK = 3;
+
+    private static final byte OP_END = 0;
+    private static final byte OP_LITERAL = 1;
+    private static final byte OP_BLOCK = 2;
+}
@@ -0,0 +1,159 @@
+package hudson.util.io;
+
+import hudson.util.DaemonThreadFactory;
+import hudson.util.IOException2;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.util.LinkedList;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * gzip {@link OutputStream} that compresses on multiple threads.
+ *
+ * <p>
+ * The data is cut into blocks of {@link #BLOCK_SIZE} bytes, and each block is compressed
+ * into an independent gzip member on a shared thread pool. The members are then written out in order.
+ * A concatenation of gzip members is a valid gzip file (RFC 1952), which gzip, tar and
+ * browsers read as one stream, but note that not every {@code GZIPInputStream} implementation does.
+ * So this is for sending data to users, not for transfers between Jenkins nodes.
+ *
+ * <p>
+ * Only a few blocks are compressed ahead of the underlying stream, so a slow reader
+ * on the other end slows down the writer instead of making us buffer everything.
+ *
+ * @since 1.519
+ */
+public class ParallelGZIPOutputStream extends OutputStream {
+    private final OutputStream out;
+    private final LinkedList<Future<byte[]>> pending = new LinkedList<Future<byte[]>>();
+    private byte[] buf = new byte[BLOCK_SIZE];
+    private int count;
+    private boolean written;
+    private boolean closed;
+
+    public ParallelGZIPOutputStream(OutputStream out) {
+        this.out = out;
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+        if (count==buf.length)
+            submit();
+        buf[count++] = (byte)b;
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException {
+        while (len>0) {
+            if (count==buf.length)
+                submit();
+            int chunk = Math.min(len,buf.length-count);
+            System.arraycopy(b,off,buf,count,chunk);
+            count += chunk;
+            off += chunk;
+            len -= chunk;
+        }
+    }
+
+    /**
+     * Writes out everything written so far. Note that this ends the current gzip member,
+     * so flushing frequently hurts the compression ratio.
+     */
+    @Override
+    public void flush() throws IOException {
+        submit();
+        while (!pending.isEmpty())
+            drain();
+        out.flush();
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (closed)     return;
+        closed = true;
+        try {
+            if (!written && count==0) {
+                // produce a valid, empty gzip file
+                out.write(compress(buf,0));
+            }
+            flush();
+        } finally {
+            for (Future<byte[]> f : pending)
+                f.cancel(true);
+            pending.clear();
+            out.close();
+        }
+    }
+
+    private void submit() throws IOException {
+        if (count==0)   return;
+        final byte[] block = buf;
+        final int len = count;
+        buf = new byte[BLOCK_SIZE];
+        count = 0;
+        written = true;
+
+        pending.add(POOL.submit(new Callable<byte[]>() {
+            public byte[] call() throws IOException {
+                return compress(block,len);
+            }
+        }));
+        while (pending.size()>MAX_PENDING)
+            drain();
+    }
+
+    /**
+     * Waits for the oldest block to be compressed and writes it out.
+     */
+    private void drain() throws IOException {
+        Future<byte[]> f = pending.removeFirst();
+        try {
+            out.write(f.get());
+        } catch (InterruptedException e) {
+            f.cancel(true);
+            throw (IOException)new InterruptedIOException().initCause(e);
+        } catch (ExecutionException e) {
+            throw new IOException2("Failed to compress",e.getCause());
+        }
+    }
+
+    private static byte[] compress(byte[] data, int len) throws IOException {
+        ByteArrayOutputStream baos = new ByteArrayOutputStream(len/2+64);
+        GZIPOutputStream gz = new GZIPOutputStream(baos);
+        gz.write(data,0,len);
+        gz.close();
+        return baos.toByteArray();
+    }
+
+    /**
+     * Size of the block that gets compressed as one unit.
+     */
+    public static int BLOCK_SIZE = Integer.getInteger(ParallelGZIPOutputStream.class.getName()+".blockSize",1024*1024);
+
+    private static final int THREADS = Runtime.getRuntime().availableProcessors();
+
+    /**
+     * Number of blocks a single stream can have in flight.
+     */
+    private static final int MAX_PENDING = THREADS*2;
+
+    /**
+     * Shared by all the streams so that concurrent downloads don't multiply the number of threads.
+     */
+    private static final ExecutorService POOL = Executors.newFixedThreadPool(THREADS, new DaemonThreadFactory(new ThreadFactory() {
+        private final AtomicInteger n = new AtomicInteger();
+        public Thread newThread(Runnable r) {
+            return new Thread(r, "Parallel gzip compression thread #"+n.incrementAndGet());
+        }
+    }));
+}
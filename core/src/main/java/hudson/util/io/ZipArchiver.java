@@ -33,6 +33,11 @@ import java.io.File;
 import java.io.FileInputStream;
 import java.io.IOException;
 import java.io.OutputStream;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Locale;
+import java.util.Set;
+import java.util.zip.Deflater;
 
 /**
  * {@link FileVisitor} that creates a zip archive.
@@ -68,6 +73,8 @@ final class ZipArchiver extends Archiver {
             ZipEntry fileZipEntry = new ZipEntry(relativePath);
             if (mode!=-1)   fileZipEntry.setUnixMode(mode);
             fileZipEntry.setTime(f.lastModified());
+            // deflating data that's already compressed just burns CPU
+            zip.setLevel(isCompressed(relativePath) ? Deflater.NO_COMPRESSION : Deflater.DEFAULT_COMPRESSION);
             zip.putNextEntry(fileZipEntry);
             FileInputStream in = new FileInputStream(f);
             int len;
@@ -83,6 +90,20 @@ final class ZipArchiver extends Archiver {
         zip.close();
     }
 
+    /**
+     * Does the file name look like a file whose contents are already compressed?
+     */
+    static boolean isCompressed(String name) {
+        int idx = name.lastIndexOf('.');
+        if (idx<0)  return false;
+        return COMPRESSED_EXTENSIONS.contains(name.substring(idx+1).toLowerCase(Locale.ENGLISH));
+    }
+
     // Bitmask indicating directories in 'external attributes' of a ZIP archive entry.
     private static final long BITMASK_IS_DIRECTORY = 1<<4;
+
+    private static final Set<String> COMPRESSED_EXTENSIONS = new HashSet<String>(Arrays.asList(
+            "zip", "jar", "war", "ear", "hpi", "jpi", "apk", "nupkg",
+            "gz", "tgz", "bz2", "tbz2", "xz", "txz", "lzma", "z", "7z", "rar",
+            "png", "jpg", "jpeg", "gif", "mp3", "mp4", "avi", "mov", "mkv", "ogg"));
 }
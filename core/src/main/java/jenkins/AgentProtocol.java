@@ -32,6 +32,13 @@ public abstract class AgentProtocol implements ExtensionPoint {
 
     /**
      * Called by the connection handling thread to execute the protocol.
+     *
+     * <p>
+     * The connection handling threads come from a bounded pool shared by all the incoming connections,
+     * so implementations should return once the handshake is done and the connection can run on its own,
+     * such as after a {@link hudson.remoting.Channel} is created, instead of blocking until the connection ends.
+     * The connection is closed if this method hasn't returned within {@link TcpSlaveAgentListener#HANDSHAKE_TIMEOUT},
+     * unless the implementation calls {@link TcpSlaveAgentListener#onHandshakeDone(Socket)} before then.
      */
     public abstract void handle(Socket socket) throws IOException, InterruptedException;
 
@@ -0,0 +1,465 @@
+package jenkins.diagnostics;
+
+import hudson.Util;
+import hudson.init.InitMilestone;
+import hudson.init.InitReactorListener;
+import jenkins.model.Jenkins;
+import net.sf.json.JSONArray;
+import net.sf.json.JSONObject;
+import org.jvnet.hudson.reactor.Milestone;
+import org.jvnet.hudson.reactor.Task;
+import org.kohsuke.MetaInfServices;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Records when each task of the initialization reactor ran and on which thread, and once
+ * {@link InitMilestone#COMPLETED} is attained, works out what held the startup up.
+ *
+ * <p>
+ * The critical path is the chain of tasks, each of which was the last one the next was waiting for,
+ * that ends with the task that completed last. Making any other task faster doesn't make the startup any faster.
+ * Tasks that ran for a while with nothing else running alongside them are flagged as blocking the parallelism.
+ *
+ * <p>
+ * Work done inside a task that's worth seeing on its own, such as loading the extensions of each plugin,
+ * can be {@linkplain #recordDetail(String, long, long) recorded} too.
+ *
+ * <p>
+ * The result is written as a Chrome trace (load it in {@code chrome://tracing}) into
+ * {@code $JENKINS_HOME/logs/startup-profile.json}, and shown in the management page by
+ * {@link jenkins.management.StartupProfileLink}.
+ *
+ * @since 1.519
+ */
+@MetaInfServices(InitReactorListener.class)
+public class StartupProfiler implements InitReactorListener {
+    private final long start = System.currentTimeMillis();
+    private final Map<Task,TaskRecord> records = new IdentityHashMap<Task,TaskRecord>();
+    private final List<TaskRecord> order = new ArrayList<TaskRecord>();
+    private final Map<Milestone,Long> milestones = new HashMap<Milestone,Long>();
+
+    /**
+     * When a reactor task ran.
+     */
+    public static final class TaskRecord {
+        private final Task task;
+        public final String name;
+        public final String thread;
+        public final long threadId;
+        /**
+         * Milliseconds since the reactor started.
+         */
+        public final long start;
+        private long end = -1;
+        private boolean failed;
+
+        private boolean critical;
+        private long solo;
+
+        TaskRecord(Task task, long start) {
+            this.task = task;
+            this.name = Util.fixNull(task.getDisplayName());
+            this.thread = Thread.currentThread().getName();
+            this.threadId = Thread.currentThread().getId();
+            this.start = start;
+        }
+
+        public long getEnd() {
+            return end;
+        }
+
+        public long getDuration() {
+            return end-start;
+        }
+
+        public String getDurationString() {
+            return Util.getTimeSpanString(getDuration());
+        }
+
+        public boolean isFailed() {
+            return failed;
+        }
+
+        /**
+         * Whether this task is on the critical path.
+         */
+        public boolean isCritical() {
+            return critical;
+        }
+
+        /**
+         * Milliseconds this task was the only one running.
+         */
+        public long getSolo() {
+            return solo;
+        }
+
+        public String getSoloString() {
+            return Util.getTimeSpanString(solo);
+        }
+
+        /**
+         * Whether this task held up the other tasks for long enough to be worth looking into.
+         */
+        public boolean isBlocking() {
+            return solo>=BLOCKING_THRESHOLD;
+        }
+    }
+
+    /**
+     * A part of the work of a task, recorded by {@link #recordDetail(String, long, long)}.
+     */
+    public static final class Detail {
+        public final String name;
+        public final String thread;
+        public final long threadId;
+        /**
+         * Milliseconds since the reactor started.
+         */
+        public final long start;
+        private final long duration;
+
+        Detail(String name, long start, long duration) {
+            this(name, Thread.currentThread().getName(), Thread.currentThread().getId(), start, duration);
+        }
+
+        Detail(String name, String thread, long threadId, long start, long duration) {
+            this.name = name;
+            this.thread = thread;
+            this.threadId = threadId;
+            this.start = start;
+            this.duration = duration;
+        }
+
+        public long getDuration() {
+            return duration;
+        }
+
+        public String getDurationString() {
+            return Util.getTimeSpanString(duration);
+        }
+    }
+
+    /**
+     * What was learned from a completed startup.
+     */
+    public static final class Profile {
+        /**
+         * When the reactor started.
+         */
+        public final long timestamp;
+        /**
+         * Milliseconds it took to attain {@link InitMilestone#COMPLETED}.
+         */
+        public final long duration;
+        public final List<TaskRecord> tasks;
+        public final List<TaskRecord> criticalPath;
+        public final int threads;
+        private final Map<Milestone,Long> milestones;
+        public final List<Detail> details;
+
+        Profile(long timestamp, long duration, List<TaskRecord> tasks, List<TaskRecord> criticalPath, int threads, Map<Milestone,Long> milestones, List<Detail> details) {
+            this.timestamp = timestamp;
+            this.duration = duration;
+            this.tasks = Collections.unmodifiableList(tasks);
+            this.criticalPath = Collections.unmodifiableList(criticalPath);
+            this.threads = threads;
+            this.milestones = milestones;
+            this.details = Collections.unmodifiableList(details);
+        }
+
+        public String getDurationString() {
+            return Util.getTimeSpanString(duration);
+        }
+
+        public List<TaskRecord> getCriticalPath() {
+            return criticalPath;
+        }
+
+        /**
+         * The tasks that were the only ones running for a while, the longest first.
+         */
+        public List<TaskRecord> getBlockingTasks() {
+            List<TaskRecord> r = new ArrayList<TaskRecord>();
+            for (TaskRecord t : tasks)
+                if (t.isBlocking())
+                    r.add(t);
+            Collections.sort(r, new Comparator<TaskRecord>() {
+                public int compare(TaskRecord a, TaskRecord b) {
+                    return a.solo>b.solo ? -1 : a.solo<b.solo ? 1 : 0;
+                }
+            });
+            return r;
+        }
+
+        /**
+         * The given number of slowest tasks, the slowest first.
+         */
+        public List<TaskRecord> getSlowestTasks(int n) {
+            List<TaskRecord> r = new ArrayList<TaskRecord>(tasks);
+            Collections.sort(r, new Comparator<TaskRecord>() {
+                public int compare(TaskRecord a, TaskRecord b) {
+                    long x = a.getDuration(), y = b.getDuration();
+                    return x>y ? -1 : x<y ? 1 : 0;
+                }
+            });
+            return r.subList(0, Math.min(n, r.size()));
+        }
+
+        /**
+         * The given number of slowest {@link Detail}s, the slowest first.
+         */
+        public List<Detail> getSlowestDetails(int n) {
+            List<Detail> r = new ArrayList<Detail>(details);
+            Collections.sort(r, new Comparator<Detail>() {
+                public int compare(Detail a, Detail b) {
+                    return a.duration>b.duration ? -1 : a.duration<b.duration ? 1 : 0;
+                }
+            });
+            return r.subList(0, Math.min(n, r.size()));
+        }
+
+        /**
+         * Milliseconds since the start at which each {@link InitMilestone} was attained.
+         */
+        public Map<InitMilestone,Long> getMilestones() {
+            Map<InitMilestone,Long> r = new TreeMap<InitMilestone,Long>();
+            for (Map.Entry<Milestone,Long> e : milestones.entrySet())
+                if (e.getKey() instanceof InitMilestone)
+                    r.put((InitMilestone)e.getKey(), e.getValue());
+            return r;
+        }
+
+        /**
+         * Writes this profile in the Chrome trace event format.
+         */
+        public void writeTrace(Writer w) throws IOException {
+            JSONArray events = new JSONArray();
+            for (TaskRecord t : tasks) {
+                JSONObject args = new JSONObject();
+                args.put("thread", t.thread);
+                if (t.failed)       args.put("failed", true);
+                if (t.critical)     args.put("critical", true);
+                if (t.isBlocking()) args.put("solo", t.solo);
+
+                JSONObject e = new JSONObject();
+                e.put("name", t.name);
+                e.put("cat", t.critical ? "critical" : "task");
+                e.put("ph", "X");
+                e.put("pid", 1);
+                e.put("tid", t.threadId);
+                e.put("ts", t.start*1000);
+                e.put("dur", t.getDuration()*1000);
+                e.put("args", args);
+                events.add(e);
+            }
+            for (Detail d : details) {
+                JSONObject args = new JSONObject();
+                args.put("thread", d.thread);
+
+                JSONObject e = new JSONObject();
+                e.put("name", d.name);
+                e.put("cat", "detail");
+                e.put("ph", "X");
+                e.put("pid", 1);
+                e.put("tid", d.threadId);
+                e.put("ts", d.start*1000);
+                e.put("dur", d.duration*1000);
+                e.put("args", args);
+                events.add(e);
+            }
+            for (Map.Entry<InitMilestone,Long> m : getMilestones().entrySet()) {
+                JSONObject e = new JSONObject();
+                e.put("name", m.getKey().toString());
+                e.put("ph", "i");
+                e.put("s", "g");
+                e.put("pid", 1);
+                e.put("tid", 0);
+                e.put("ts", m.getValue()*1000);
+                events.add(e);
+            }
+            JSONObject o = new JSONObject();
+            o.put("traceEvents", events);
+            o.put("displayTimeUnit", "ms");
+            o.write(w);
+        }
+    }
+
+    private long now() {
+        return System.currentTimeMillis()-start;
+    }
+
+    public synchronized void onTaskStarted(Task t) {
+        TaskRecord r = new TaskRecord(t, now());
+        records.put(t, r);
+        order.add(r);
+    }
+
+    public synchronized void onTaskCompleted(Task t) {
+        TaskRecord r = records.get(t);
+        if (r!=null)    r.end = now();
+    }
+
+    public synchronized void onTaskFailed(Task t, Throwable err, boolean fatal) {
+        TaskRecord r = records.get(t);
+        if (r!=null) {
+            r.end = now();
+            r.failed = true;
+        }
+    }
+
+    public void onAttained(Milestone milestone) {
+        Profile p;
+        synchronized (this) {
+            milestones.put(milestone, now());
+            if (milestone!=InitMilestone.COMPLETED)
+                return;
+            p = analyze();
+        }
+        latest = p;
+        LOGGER.info(String.format("Startup took %s. The critical path has %d tasks, and %d tasks kept the other threads waiting",
+                p.getDurationString(), p.criticalPath.size(), p.getBlockingTasks().size()));
+        write(p);
+    }
+
+    /**
+     * Computes the critical path and how long each task ran alone.
+     */
+    private Profile analyze() {
+        long end = now();
+        List<TaskRecord> tasks = new ArrayList<TaskRecord>();
+        for (TaskRecord r : order) {
+            if (r.end<0)    r.end = end;    // shouldn't happen, but don't let it break the analysis
+            tasks.add(r);
+        }
+
+        // which tasks attain each milestone. a task can't start before all of them are done
+        Map<Milestone,List<TaskRecord>> attainedBy = new HashMap<Milestone,List<TaskRecord>>();
+        for (TaskRecord r : tasks) {
+            for (Milestone m : r.task.attains()) {
+                List<TaskRecord> l = attainedBy.get(m);
+                if (l==null)
+                    attainedBy.put(m, l=new ArrayList<TaskRecord>());
+                l.add(r);
+            }
+        }
+
+        // walk back from the task that completed last, each time to the last of the tasks the current one waited for
+        List<TaskRecord> path = new ArrayList<TaskRecord>();
+        TaskRecord cur = null;
+        for (TaskRecord r : tasks)
+            if (cur==null || r.end>cur.end)
+                cur = r;
+        while (cur!=null && !cur.critical) {
+            cur.critical = true;
+            path.add(cur);
+            TaskRecord prev = null;
+            for (Milestone m : cur.task.requires()) {
+                List<TaskRecord> l = attainedBy.get(m);
+                if (l==null)    continue;
+                for (TaskRecord r : l)
+                    if (r.end<=cur.start && (prev==null || r.end>prev.end))
+                        prev = r;
+            }
+            cur = prev;
+        }
+        Collections.reverse(path);
+
+        // sweep through the starts and ends to see when just one task was running
+        List<long[]> events = new ArrayList<long[]>();     // {time, +1/-1, index}
+        for (int i=0; i<tasks.size(); i++) {
+            events.add(new long[]{tasks.get(i).start, 1, i});
+            events.add(new long[]{tasks.get(i).end, -1, i});
+        }
+        Collections.sort(events, new Comparator<long[]>() {
+            public int compare(long[] a, long[] b) {
+                if (a[0]!=b[0]) return a[0]<b[0] ? -1 : 1;
+                return a[1]<b[1] ? -1 : a[1]>b[1] ? 1 : 0;   // ends before starts at the same time
+            }
+        });
+        Set<Integer> running = new HashSet<Integer>();
+        long last = 0;
+        for (long[] e : events) {
+            if (running.size()==1)
+                tasks.get(running.iterator().next()).solo += e[0]-last;
+            last = e[0];
+            if (e[1]>0)     running.add((int)e[2]);
+            else            running.remove((int)e[2]);
+        }
+
+        Set<Long> threads = new HashSet<Long>();
+        for (TaskRecord r : tasks)
+            threads.add(r.threadId);
+
+        List<Detail> details = new ArrayList<Detail>();
+        for (Detail d; (d=DETAILS.poll())!=null; )
+            details.add(new Detail(d.name, d.thread, d.threadId, d.start-start, d.duration));
+
+        return new Profile(start, end, tasks, path, threads.size(), new HashMap<Milestone,Long>(milestones), details);
+    }
+
+    private void write(Profile p) {
+        Jenkins j = Jenkins.getInstance();
+        if (j==null)    return;
+        File f = new File(j.getRootDir(), "logs/startup-profile.json");
+        try {
+            f.getParentFile().mkdirs();
+            Writer w = new OutputStreamWriter(new FileOutputStream(f), "UTF-8");
+            try {
+                p.writeTrace(w);
+            } finally {
+                w.close();
+            }
+        } catch (IOException e) {
+            LOGGER.log(Level.WARNING, "Failed to write the startup profile to "+f, e);
+        }
+    }
+
+    private static volatile Profile latest;
+
+    private static final ConcurrentLinkedQueue<Detail> DETAILS = new ConcurrentLinkedQueue<Detail>();
+
+    /**
+     * Records a part of the work of the task that's running on the current thread, or of one it's waiting for,
+     * to be shown in the next profile.
+     *
+     * @param start
+     *      When the work started, as in {@link System#currentTimeMillis()}.
+     */
+    public static void recordDetail(String name, long start, long end) {
+        if (latest==null)   // nothing would pick them up once the startup has completed
+            DETAILS.add(new Detail(name, start, end-start));
+    }
+
+    /**
+     * Gets the profile of the last startup, or null if it hasn't completed yet.
+     */
+    public static Profile getLatest() {
+        return latest;
+    }
+
+    private static final Logger LOGGER = Logger.getLogger(StartupProfiler.class.getName());
+
+    /**
+     * How many milliseconds a task needs to run alone to count as blocking the parallelism.
+     */
+    public static long BLOCKING_THRESHOLD = Long.getLong(StartupProfiler.class.getName()+".blockingThreshold", 1000);
+}
@@ -0,0 +1,168 @@
+package jenkins.management;
+
+import hudson.Extension;
+import hudson.Util;
+import hudson.model.DirectoryBrowserSupport;
+import hudson.model.ManagementLink;
+import org.apache.commons.io.output.CountingOutputStream;
+
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Keeps track of the archives of artifacts and workspaces that are being downloaded
+ * through {@link DirectoryBrowserSupport}, and shows them in the management page.
+ *
+ * <p>
+ * Large archives keep a request thread busy for a long time, so this helps in finding out
+ * who's keeping the server busy, and how fast the archives are produced.
+ *
+ * @since 1.519
+ */
+@Extension
+public class ArchiveDownloadsLink extends ManagementLink {
+    private final List<Download> active = new CopyOnWriteArrayList<Download>();
+
+    private final AtomicLong completed = new AtomicLong();
+    private final AtomicLong completedBytes = new AtomicLong();
+    private final AtomicLong completedTime = new AtomicLong();
+
+    /**
+     * An archive being downloaded.
+     */
+    public final class Download {
+        /**
+         * What is being downloaded, for display.
+         */
+        public final String name;
+        /**
+         * Archive format, such as "zip".
+         */
+        public final String format;
+        /**
+         * When the download started.
+         */
+        public final long start = System.currentTimeMillis();
+
+        private final CountingOutputStream out;
+
+        private Download(String name, String format, OutputStream out) {
+            this.name = name;
+            this.format = format;
+            this.out = new CountingOutputStream(out);
+        }
+
+        /**
+         * The stream to write the archive into.
+         */
+        public OutputStream getOutputStream() {
+            return out;
+        }
+
+        /**
+         * Bytes sent so far.
+         */
+        public long getBytes() {
+            return out.getByteCount();
+        }
+
+        public long getDuration() {
+            return System.currentTimeMillis()-start;
+        }
+
+        public String getDurationString() {
+            return Util.getTimeSpanString(getDuration());
+        }
+
+        /**
+         * Throughput in MB/s.
+         */
+        public double getThroughput() {
+            return toMBps(getBytes(),getDuration());
+        }
+
+        public String getThroughputString() {
+            return String.format("%.1f",getThroughput());
+        }
+
+        /**
+         * Marks the download as completed, successfully or not.
+         */
+        public void finish() {
+            if (active.remove(this)) {
+                completed.incrementAndGet();
+                completedBytes.addAndGet(getBytes());
+                completedTime.addAndGet(getDuration());
+            }
+        }
+    }
+
+    /**
+     * Starts tracking a new download.
+     *
+     * @param out
+     *      The stream the archive is sent to.
+     *      The caller should write to {@link Download#getOutputStream()} instead, then call {@link Download#finish()}.
+     */
+    public Download start(String name, String format, OutputStream out) {
+        Download d = new Download(name,format,out);
+        active.add(d);
+        return d;
+    }
+
+    public List<Download> getActiveDownloads() {
+        return new ArrayList<Download>(active);
+    }
+
+    public long getCompletedDownloads() {
+        return completed.get();
+    }
+
+    public long getCompletedBytes() {
+        return completedBytes.get();
+    }
+
+    /**
+     * Average throughput of the completed downloads, in MB/s.
+     */
+    public double getAverageThroughput() {
+        return toMBps(completedBytes.get(),completedTime.get());
+    }
+
+    public String getAverageThroughputString() {
+        return String.format("%.1f",getAverageThroughput());
+    }
+
+    private static double toMBps(long bytes, long millis) {
+        return bytes/1024.0/1024.0 * 1000 / Math.max(1,millis);
+    }
+
+    @Override
+    public String getIconFileName() {
+        return "package.png";
+    }
+
+    public String getDisplayName() {
+        return Messages.ArchiveDownloadsLink_DisplayName();
+    }
+
+    @Override
+    public String getDescription() {
+        return Messages.ArchiveDownloadsLink_Description();
+    }
+
+    @Override
+    public String getUrlName() {
+        return "archiveDownloads";
+    }
+
+    /**
+     * Gets the singleton instance.
+     */
+    public static ArchiveDownloadsLink get() {
+        return all().get(ArchiveDownloadsLink.class);
+    }
+}
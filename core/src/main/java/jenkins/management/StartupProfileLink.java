@@ -0,0 +1,62 @@
+package jenkins.management;
+
+import hudson.Extension;
+import hudson.model.ManagementLink;
+import jenkins.diagnostics.StartupProfiler;
+import jenkins.diagnostics.StartupProfiler.Profile;
+import jenkins.model.Jenkins;
+import org.kohsuke.stapler.StaplerResponse;
+
+import java.io.IOException;
+import java.io.Writer;
+
+/**
+ * Shows the {@linkplain StartupProfiler profile} of the last startup in the management page.
+ *
+ * @since 1.519
+ */
+@Extension
+public class StartupProfileLink extends ManagementLink {
+    /**
+     * Null until the startup has completed.
+     */
+    public Profile getProfile() {
+        return StartupProfiler.getLatest();
+    }
+
+    /**
+     * Sends the profile as a Chrome trace.
+     */
+    public void doTrace(StaplerResponse rsp) throws IOException {
+        Jenkins.getInstance().checkPermission(Jenkins.ADMINISTER);
+        Profile p = getProfile();
+        if (p==null) {
+            rsp.sendError(StaplerResponse.SC_NOT_FOUND);
+            return;
+        }
+        rsp.setContentType("application/json;charset=UTF-8");
+        rsp.setHeader("Content-Disposition", "attachment; filename=startup-profile.json");
+        Writer w = rsp.getWriter();
+        p.writeTrace(w);
+        w.close();
+    }
+
+    @Override
+    public String getIconFileName() {
+        return "graph.png";
+    }
+
+    public String getDisplayName() {
+        return Messages.StartupProfileLink_DisplayName();
+    }
+
+    @Override
+    public String getDescription() {
+        return Messages.StartupProfileLink_Description();
+    }
+
+    @Override
+    public String getUrlName() {
+        return "startupProfile";
+    }
+}
@@ -0,0 +1,296 @@
+package jenkins.model;
+
+import hudson.model.AbstractProject;
+import hudson.model.Item;
+import hudson.model.ItemGroup;
+import hudson.model.Items;
+import hudson.model.TopLevelItem;
+import hudson.security.ACL;
+import hudson.util.CaseInsensitiveComparator;
+import hudson.util.DaemonThreadFactory;
+import hudson.util.IOException2;
+import org.acegisecurity.context.SecurityContext;
+import org.acegisecurity.context.SecurityContextHolder;
+
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+import java.io.BufferedInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.Stack;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Loads the top-level jobs of {@link Jenkins} when they are first needed rather than during the startup,
+ * for instances with so many jobs that unmarshalling them all dominates the startup.
+ *
+ * <p>
+ * Enabled with {@code -Djenkins.model.Jenkins.lazyLoad=true}. During the startup, only a small {@link ItemHeader} is read
+ * from the <tt>config.xml</tt> of each job. Jobs that have triggers, and anything that isn't an {@link AbstractProject}
+ * (such as folders, which may contain jobs with triggers) are still loaded right away. The rest get loaded when
+ * {@link Jenkins#getItem(String)} asks for them, when something needs all the items (such as {@link Jenkins#getItems()}),
+ * or by the background warm-up that starts once the startup completes, whichever comes first.
+ * The dependency graph starts out with the jobs loaded during the startup, and each job is added to it
+ * as it gets loaded, so that the downstream jobs of those already loaded get triggered in the mean time.
+ * Once everything is loaded, the dependency graph is rebuilt.
+ *
+ * @since 1.519
+ */
+public final class DeferredItemLoader {
+    private final Jenkins jenkins;
+
+    /**
+     * Jobs not loaded yet.
+     */
+    private final Map<String,ItemHeader> pending = new TreeMap<String,ItemHeader>(CaseInsensitiveComparator.INSTANCE);
+
+    /**
+     * Jobs that were pending and have been loaded since.
+     */
+    private final Set<String> loaded = new TreeSet<String>(CaseInsensitiveComparator.INSTANCE);
+
+    /**
+     * What's read from the <tt>config.xml</tt> of a job without unmarshalling it.
+     */
+    public static final class ItemHeader {
+        public final String name;
+        public final File dir;
+        /**
+         * Class the root element of <tt>config.xml</tt> maps to, or null if it doesn't map to anything known.
+         */
+        public final Class<?> type;
+        public final boolean disabled;
+        /**
+         * Whether there's anything in the <tt>triggers</tt> element.
+         */
+        public final boolean hasTriggers;
+
+        private TopLevelItem item;
+        private boolean loaded;
+
+        ItemHeader(String name, File dir, Class<?> type, boolean disabled, boolean hasTriggers) {
+            this.name = name;
+            this.dir = dir;
+            this.type = type;
+            this.disabled = disabled;
+            this.hasTriggers = hasTriggers;
+        }
+
+        /**
+         * Whether loading this job can wait.
+         */
+        public boolean isDeferrable() {
+            return type!=null && AbstractProject.class.isAssignableFrom(type) && !hasTriggers;
+        }
+
+        /**
+         * Reads the header of the job in the given directory.
+         */
+        public static ItemHeader read(File dir) throws IOException {
+            File config = Items.getConfigFile(dir).getFile();
+            InputStream in = new BufferedInputStream(new FileInputStream(config));
+            try {
+                XMLStreamReader r = XML_INPUT_FACTORY.createXMLStreamReader(in);
+                try {
+                    r.nextTag();
+                    Class<?> type;
+                    try {
+                        type = Items.XSTREAM.getMapper().realClass(r.getLocalName());
+                    } catch (RuntimeException e) {
+                        type = null;    // CannotResolveClassException, if the plugin is gone
+                    }
+
+                    boolean disabled = false, triggers = false, sawTriggers = false;
+                    int depth = 1;
+                    while (depth>0 && r.hasNext()) {
+                        switch (r.next()) {
+                        case XMLStreamReader.START_ELEMENT:
+                            depth++;
+                            if (depth==2 && r.getLocalName().equals("disabled")) {
+                                disabled = Boolean.parseBoolean(r.getElementText().trim());
+                                depth--;    // getElementText() consumes the end tag
+                            } else if (depth==3 && sawTriggers) {
+                                triggers = true;
+                            } else if (depth==2) {
+                                sawTriggers = r.getLocalName().equals("triggers");
+                            }
+                            break;
+                        case XMLStreamReader.END_ELEMENT:
+                            depth--;
+                            if (depth==1 && sawTriggers)
+                                return new ItemHeader(dir.getName(), dir, type, disabled, triggers);
+                            break;
+                        }
+                    }
+                    return new ItemHeader(dir.getName(), dir, type, disabled, triggers);
+                } finally {
+                    r.close();
+                }
+            } catch (XMLStreamException e) {
+                throw new IOException2("Failed to read "+config, e);
+            } finally {
+                in.close();
+            }
+        }
+    }
+
+    DeferredItemLoader(Jenkins jenkins) {
+        this.jenkins = jenkins;
+    }
+
+    /**
+     * Defers loading the given job.
+     */
+    synchronized void defer(ItemHeader h) {
+        pending.put(h.name, h);
+    }
+
+    /**
+     * Whether there's any job still waiting to be loaded.
+     */
+    public synchronized boolean isPending() {
+        return !pending.isEmpty();
+    }
+
+    /**
+     * Headers of the jobs not loaded yet.
+     */
+    public synchronized List<ItemHeader> getPending() {
+        return new ArrayList<ItemHeader>(pending.values());
+    }
+
+    /**
+     * Whether the job of the given name was deferred and has been loaded since.
+     */
+    public synchronized boolean isLoaded(String name) {
+        return loaded.contains(name);
+    }
+
+    /**
+     * Names of the jobs not loaded yet.
+     */
+    public synchronized Collection<String> getPendingNames() {
+        return new ArrayList<String>(pending.keySet());
+    }
+
+    /**
+     * Loads the job of the given name if it's pending.
+     *
+     * @return
+     *      null if there's no such pending job, or if it failed to load.
+     */
+    public TopLevelItem load(String name) {
+        ItemHeader h;
+        synchronized (this) {
+            h = pending.get(name);
+        }
+        return h==null ? null : load(h);
+    }
+
+    private TopLevelItem load(ItemHeader h) {
+        boolean last;
+        synchronized (h) {
+            if (h.loaded)
+                return h.item;
+            // as it would have been loaded by the reactor, regardless of who's asking
+            SecurityContext old = ACL.impersonate(ACL.SYSTEM);
+            try {
+                h.item = (TopLevelItem) Items.load(jenkins, h.dir);
+                jenkins.items.put(h.item.getName(), h.item);
+                synchronized (this) {
+                    loaded.add(h.item.getName());
+                }
+            } catch (Exception e) {
+                LOGGER.log(Level.WARNING, "Failed to load "+h.dir, e);
+            } catch (LinkageError e) {
+                LOGGER.log(Level.WARNING, "Failed to load "+h.dir, e);
+            } finally {
+                SecurityContextHolder.setContext(old);
+            }
+            h.loaded = true;
+            synchronized (this) {
+                pending.remove(h.name);
+                last = pending.isEmpty();
+            }
+        }
+        if (last)
+            onAllLoaded();
+        else if (h.item instanceof AbstractProject)
+            jenkins.updateDependencyGraph(Collections.singleton((AbstractProject)h.item));
+        return h.item;
+    }
+
+    /**
+     * Gets the items of the given type that have been loaded so far, without loading the rest.
+     */
+    public <T extends Item> List<T> getLoadedItems(Class<T> type) {
+        List<T> r = new ArrayList<T>();
+        Stack<Item> q = new Stack<Item>();
+        q.addAll(jenkins.items.values());
+        while (!q.isEmpty()) {
+            Item i = q.pop();
+            if (type.isInstance(i))
+                r.add(type.cast(i));
+            if (i instanceof ItemGroup)
+                q.addAll(((ItemGroup<?>)i).getItems());
+        }
+        return r;
+    }
+
+    /**
+     * Loads all the pending jobs, and waits for those other threads are loading.
+     */
+    public void loadAll() {
+        for (ItemHeader h : getPending())
+            load(h);
+    }
+
+    /**
+     * Starts loading the pending jobs in the background.
+     */
+    void startWarmUp() {
+        final List<ItemHeader> all = getPending();
+        if (all.isEmpty())
+            return;
+        LOGGER.info("Loading "+all.size()+" jobs in the background");
+        ExecutorService es = Executors.newFixedThreadPool(WARM_UP_THREADS, new DaemonThreadFactory());
+        for (final ItemHeader h : all) {
+            es.submit(new Runnable() {
+                public void run() {
+                    load(h);
+                }
+            });
+        }
+        es.shutdown();
+    }
+
+    private void onAllLoaded() {
+        LOGGER.info("All the deferred jobs are loaded");
+        jenkins.itemIndex.rebuild();
+        jenkins.rebuildDependencyGraph();
+    }
+
+    private static final XMLInputFactory XML_INPUT_FACTORY = XMLInputFactory.newInstance();
+
+    private static final Logger LOGGER = Logger.getLogger(DeferredItemLoader.class.getName());
+
+    /**
+     * Number of threads that load the pending jobs in the background.
+     */
+    public static int WARM_UP_THREADS = Integer.getInteger(DeferredItemLoader.class.getName()+".warmUpThreads",
+            Runtime.getRuntime().availableProcessors());
+}
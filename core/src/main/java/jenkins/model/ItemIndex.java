@@ -0,0 +1,359 @@
+package jenkins.model;
+
+import hudson.Extension;
+import hudson.model.Item;
+import hudson.model.ItemGroup;
+import hudson.model.TopLevelItem;
+import hudson.model.listeners.ItemListener;
+import hudson.security.ACL;
+import org.acegisecurity.AccessDeniedException;
+import org.acegisecurity.context.SecurityContext;
+import org.acegisecurity.context.SecurityContextHolder;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Stack;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Items of {@link Jenkins} by their full names, and the sorted lists of all the items of each type,
+ * so that {@link Jenkins#getItemByFullName(String, Class)} and {@link Jenkins#getAllItems(Class)}
+ * don't have to walk the tree every time.
+ *
+ * <p>
+ * The full name index is kept up to date by {@link ItemListener} events and rebuilt when all the items
+ * are loaded. Items it doesn't know about, such as those loaded by {@link DeferredItemLoader} on demand,
+ * or names spelled with a different case, are looked up the old way. The lists are built the first time
+ * they are asked for, and thrown away whenever an item is created, renamed, updated or deleted.
+ *
+ * <p>
+ * {@link ItemGroup}s that change their children without firing {@link ItemListener} events,
+ * like {@link hudson.matrix.MatrixProject} when it rebuilds its configurations, should call
+ * {@link #onChildrenChanged(ItemGroup)}. Since not all of them do, each item the index comes up with
+ * is checked to still be where it was found, and when one isn't, the tree is walked the old way.
+ *
+ * <p>
+ * Both hold every item regardless of permissions, which are checked on the way out.
+ *
+ * @since 1.519
+ */
+public final class ItemIndex {
+    private final Jenkins jenkins;
+
+    private final ConcurrentMap<String,Item> byFullName = new ConcurrentHashMap<String,Item>();
+
+    /**
+     * All the items sorted by their full names, ignoring case, then the items of each type asked for so far.
+     * Null when it needs to be rebuilt.
+     */
+    private Map<Class<?>,List<Item>> byType;
+
+    /**
+     * Incremented whenever {@link #byType} is thrown away, so that a list built
+     * while an item was changing doesn't get kept.
+     */
+    private int generation;
+
+    ItemIndex(Jenkins jenkins) {
+        this.jenkins = jenkins;
+    }
+
+    /**
+     * Looks up an item by its exact full name, without checking permissions.
+     *
+     * @return null if the item isn't in the index, which doesn't necessarily mean there's no such item.
+     */
+    Item get(String fullName) {
+        Item i = byFullName.get(fullName);
+        if (i!=null && !(i.getFullName().equals(fullName) && isCurrent(Collections.singletonList(i)))) {
+            // moved or removed behind our back
+            byFullName.remove(fullName, i);
+            invalidate();
+            return null;
+        }
+        return i;
+    }
+
+    /**
+     * Whether the given items are all still in the tree, as the children of their parents by their names.
+     */
+    private boolean isCurrent(List<Item> items) {
+        SecurityContext old = ACL.impersonate(ACL.SYSTEM);
+        try {
+            Map<Item,Boolean> checked = new IdentityHashMap<Item,Boolean>();
+            for (Item item : items) {
+                for (Item i=item; checked.put(i, true)==null; ) {
+                    ItemGroup<?> p = i.getParent();
+                    if (p.getItem(i.getName())!=i)
+                        return false;
+                    if (!(p instanceof Item)) {
+                        if (p!=jenkins)
+                            return false;
+                        break;
+                    }
+                    i = (Item)p;
+                }
+            }
+            return true;
+        } finally {
+            SecurityContextHolder.setContext(old);
+        }
+    }
+
+    /**
+     * Looks up an item by its full name for the current user, just like walking down the tree from {@link Jenkins} would.
+     *
+     * @return
+     *      null if the item isn't readable or isn't of the given type.
+     * @throws AccessDeniedException
+     *      if the top-level item on the way can be discovered but not read, as {@link Jenkins#getItem(String)} does.
+     */
+    <T extends Item> T lookUp(Item item, Class<T> type) {
+        List<Item> chain = new ArrayList<Item>();
+        for (Item i=item; ; ) {
+            chain.add(i);
+            ItemGroup<?> p = i.getParent();
+            if (!(p instanceof Item))    break;
+            i = (Item)p;
+        }
+        for (int n=chain.size()-1; n>=0; n--) {
+            Item i = chain.get(n);
+            if (i.hasPermission(Item.READ))
+                continue;
+            if (n==chain.size()-1 && i.hasPermission(Item.DISCOVER))
+                throw new AccessDeniedException("Please login to access job " + i.getName());
+            return null;
+        }
+        return type.isInstance(item) ? type.cast(item) : null;
+    }
+
+    /**
+     * Adds the item and everything in it.
+     */
+    void add(Item item) {
+        Stack<Item> q = new Stack<Item>();
+        q.push(item);
+        while (!q.isEmpty()) {
+            Item i = q.pop();
+            byFullName.put(i.getFullName(), i);
+            if (i instanceof ItemGroup)
+                for (Item c : ((ItemGroup<?>)i).getItems())
+                    q.push(c);
+        }
+        invalidate();
+    }
+
+    /**
+     * Removes the item of the given full name and everything in it.
+     */
+    void remove(String fullName) {
+        byFullName.remove(fullName);
+        String prefix = fullName+'/';
+        for (Iterator<String> itr = byFullName.keySet().iterator(); itr.hasNext();)
+            if (itr.next().startsWith(prefix))
+                itr.remove();
+        invalidate();
+    }
+
+    /**
+     * Re-indexes what's in the given group.
+     */
+    void refresh(ItemGroup<?> group) {
+        SecurityContext old = ACL.impersonate(ACL.SYSTEM);
+        try {
+            if (group instanceof Item) {
+                String prefix = group.getFullName()+'/';
+                for (Iterator<String> itr = byFullName.keySet().iterator(); itr.hasNext();)
+                    if (itr.next().startsWith(prefix))
+                        itr.remove();
+                for (Item c : group.getItems())
+                    add(c);
+            }
+            invalidate();
+        } finally {
+            SecurityContextHolder.setContext(old);
+        }
+    }
+
+    /**
+     * Tells the index that the children of the given group have changed without {@link ItemListener} events.
+     */
+    public static void onChildrenChanged(ItemGroup<?> group) {
+        Jenkins j = Jenkins.getInstance();
+        if (j!=null)    j.itemIndex.refresh(group);
+    }
+
+    /**
+     * Rebuilds the full name index from scratch. Jobs whose loading is deferred are left out.
+     */
+    void rebuild() {
+        SecurityContext old = ACL.impersonate(ACL.SYSTEM);
+        try {
+            byFullName.clear();
+            for (TopLevelItem i : jenkins.items.values())
+                add(i);
+        } finally {
+            SecurityContextHolder.setContext(old);
+        }
+    }
+
+    /**
+     * Throws away the lists of all the items.
+     */
+    synchronized void invalidate() {
+        byType = null;
+        generation++;
+    }
+
+    /**
+     * Gets all the items of the given type that the current user can see, sorted by their full names.
+     */
+    <T extends Item> List<T> getAllItems(Class<T> type) {
+        Map<Class<?>,List<Item>> m;
+        int g;
+        synchronized (this) {
+            m = byType;
+            g = generation;
+        }
+        boolean fresh = m==null;
+        if (fresh)
+            m = build(g);
+        List<Item> all = filter(m, type);
+        if (!fresh && !isCurrent(all)) {
+            // some group changed its children without telling
+            invalidate();
+            synchronized (this) {
+                g = generation;
+            }
+            all = filter(m = build(g), type);
+        }
+
+        List<T> r = new ArrayList<T>();
+        Map<ItemGroup<?>,Boolean> readable = new IdentityHashMap<ItemGroup<?>,Boolean>();
+        for (Item i : all)
+            if (i.hasPermission(Item.READ) && isReadable(i.getParent(), readable))
+                r.add(type.cast(i));
+        return r;
+    }
+
+    private <T> List<Item> filter(Map<Class<?>,List<Item>> m, Class<T> type) {
+        List<Item> all = m.get(type);
+        if (all==null) {
+            all = new ArrayList<Item>();
+            for (Item i : m.get(Item.class))
+                if (type.isInstance(i))
+                    all.add(i);
+            m.put(type, all = Collections.unmodifiableList(all));
+        }
+        return all;
+    }
+
+    /**
+     * Whether the user can see into the given group, which is what it takes for {@link jenkins.model.Jenkins#getItems()}
+     * and the like to list what's in it.
+     */
+    private boolean isReadable(ItemGroup<?> g, Map<ItemGroup<?>,Boolean> cache) {
+        if (!(g instanceof Item))   return true;
+        Boolean b = cache.get(g);
+        if (b==null) {
+            Item i = (Item)g;
+            b = i.hasPermission(Item.READ) && isReadable(i.getParent(), cache);
+            cache.put(g, b);
+        }
+        return b;
+    }
+
+    /**
+     * Walks the tree to list all the items, and keeps the lists unless they were thrown away since the given generation.
+     */
+    private Map<Class<?>,List<Item>> build(int g) {
+        List<Item> all = new ArrayList<Item>();
+        SecurityContext old = ACL.impersonate(ACL.SYSTEM);
+        try {
+            Stack<ItemGroup<?>> q = new Stack<ItemGroup<?>>();
+            q.push(jenkins);
+            while (!q.isEmpty()) {
+                for (Item i : q.pop().getItems()) {
+                    all.add(i);
+                    if (i instanceof ItemGroup)
+                        q.push((ItemGroup<?>)i);
+                }
+            }
+        } finally {
+            SecurityContextHolder.setContext(old);
+        }
+
+        final Map<Item,String> names = new IdentityHashMap<Item,String>();
+        for (Item i : all)
+            names.put(i, i.getFullName());
+        Collections.sort(all, new Comparator<Item>() {
+            public int compare(Item a, Item b) {
+                return names.get(a).compareToIgnoreCase(names.get(b));
+            }
+        });
+
+        Map<Class<?>,List<Item>> m = new ConcurrentHashMap<Class<?>,List<Item>>();
+        m.put(Item.class, Collections.unmodifiableList(all));
+        synchronized (this) {
+            if (g==generation)
+                byType = m;
+        }
+        return m;
+    }
+
+    @Extension
+    public static class ItemListenerImpl extends ItemListener {
+        private static ItemIndex index() {
+            Jenkins j = Jenkins.getInstance();
+            return j==null ? null : j.itemIndex;
+        }
+
+        @Override
+        public void onLoaded() {
+            ItemIndex i = index();
+            if (i!=null)    i.rebuild();
+        }
+
+        @Override
+        public void onCreated(Item item) {
+            ItemIndex i = index();
+            if (i!=null)    i.add(item);
+        }
+
+        @Override
+        public void onCopied(Item src, Item item) {
+            onCreated(item);
+        }
+
+        @Override
+        public void onUpdated(Item item) {
+            ItemIndex i = index();
+            if (i==null)    return;
+            if (item instanceof ItemGroup)
+                i.refresh((ItemGroup<?>)item);
+            else
+                i.invalidate();
+        }
+
+        @Override
+        public void onDeleted(Item item) {
+            ItemIndex i = index();
+            if (i!=null)    i.remove(item.getFullName());
+        }
+
+        @Override
+        public void onRenamed(Item item, String oldName, String newName) {
+            ItemIndex i = index();
+            if (i==null)    return;
+            String parent = item.getParent().getFullName();
+            i.remove(parent.length()==0 ? oldName : parent+'/'+oldName);
+            i.add(item);
+        }
+    }
+}
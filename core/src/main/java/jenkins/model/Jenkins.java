@@ -83,7 +83,6 @@ import hudson.model.Descriptor.FormException;
 import hudson.model.labels.LabelAtom;
 import hudson.model.listeners.ItemListener;
 import hudson.model.listeners.SCMListener;
-import hudson.model.listeners.SaveableListener;
 import hudson.model.Queue;
 import hudson.model.WorkspaceCleanupThread;
 
@@ -199,7 +198,10 @@ import jenkins.model.ProjectNamingStrategy.DefaultProjectNamingStrategy;
 import jenkins.security.ConfidentialKey;
 import jenkins.security.ConfidentialStore;
 import jenkins.slaves.WorkspaceLocator;
+import jenkins.util.SaveQueue;
+import jenkins.util.io.DigestCache;
 import jenkins.util.io.FileBoolean;
+import jenkins.util.xstream.StartupCache;
 import net.sf.json.JSONObject;
 import org.acegisecurity.AccessDeniedException;
 import org.acegisecurity.AcegiSecurityException;
@@ -274,6 +276,7 @@ import java.util.Comparator;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Iterator;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
@@ -420,6 +423,16 @@ public class Jenkins extends AbstractCIBase implements ModifiableTopLevelItemGro
      */
     /*package*/ transient final Map<String,TopLevelItem> items = new CopyOnWriteMap.Tree<String,TopLevelItem>(CaseInsensitiveComparator.INSTANCE);
 
+    /**
+     * Jobs whose loading is deferred. Null unless {@link #LAZY_LOAD}.
+     */
+    private transient volatile DeferredItemLoader deferredItems;
+
+    /**
+     * {@link #items} and everything in them, by their full names.
+     */
+    /*package*/ transient final ItemIndex itemIndex = new ItemIndex(this);
+
     /**
      * The sole instance.
      */
@@ -432,6 +445,18 @@ public class Jenkins extends AbstractCIBase implements ModifiableTopLevelItemGro
 
     private transient volatile DependencyGraph dependencyGraph;
 
+    /**
+     * Serializes the changes to {@link #dependencyGraph}, so that one update doesn't lose another.
+     */
+    private transient final Object dependencyGraphLock = new Object();
+
+    /**
+     * Projects that changed while this thread was building {@link #dependencyGraph}, such as the jobs
+     * {@link DeferredItemLoader} loaded because a {@link hudson.tasks.BuildTrigger} asked for them.
+     * They are put in once the graph is done. Null unless the graph is being built. Guarded by {@link #dependencyGraphLock}.
+     */
+    private transient Set<AbstractProject> changedWhileBuildingGraph;
+
     /**
      * Currently active Views tab bar.
      */
@@ -800,12 +825,20 @@ public class Jenkins extends AbstractCIBase implements ModifiableTopLevelItemGro
 
             adjuncts = new AdjunctManager(servletContext, pluginManager.uberClassLoader,"adjuncts/"+SESSION_HASH, TimeUnit2.DAYS.toMillis(365));
 
-            // initialization consists of ...
-            executeReactor( is,
-                    pluginManager.initTasks(is),    // loading and preparing plugins
-                    loadTasks(),                    // load jobs
-                    InitMilestone.ordering()        // forced ordering among key milestones
-            );
+            StartupCache cache = STARTUP_CACHE ? StartupCache.activate(new File(root,"startup-cache.bin")) : null;
+            try {
+                // initialization consists of ...
+                executeReactor( is,
+                        pluginManager.initTasks(is),    // loading and preparing plugins
+                        loadTasks(),                    // load jobs
+                        InitMilestone.ordering()        // forced ordering among key milestones
+                );
+                if (cache!=null)
+                    cache.saveInBackground();
+            } finally {
+                if (cache!=null)
+                    cache.deactivate();
+            }
 
             if(KILL_AFTER_LOAD)
                 System.exit(0);
@@ -905,6 +938,9 @@ public class Jenkins extends AbstractCIBase implements ModifiableTopLevelItemGro
             @Override
             protected void onInitMilestoneAttained(InitMilestone milestone) {
                 initLevel = milestone;
+                DeferredItemLoader d = deferredItems;
+                if (milestone==COMPLETED && d!=null)
+                    d.startWarmUp();
             }
         }.run(reactor);
     }
@@ -995,6 +1031,7 @@ public class Jenkins extends AbstractCIBase implements ModifiableTopLevelItemGro
      * @deprecated Potentially very expensive call; do not use from Jelly views.
      */
     public boolean hasPeople() {
+        loadDeferredItems();
         return View.People.isApplicable(items.values());
     }
 
@@ -1349,6 +1386,7 @@ public class Jenkins extends AbstractCIBase implements ModifiableTopLevelItemGro
      */
     @Exported(name="jobs")
     public List<TopLevelItem> getItems() {
+        loadDeferredItems();
 		if (authorizationStrategy instanceof AuthorizationStrategy.Unsecured ||
 			authorizationStrategy instanceof FullControlOnceLoggedInAuthorizationStrategy) {
 			return new ArrayList(items.values());
@@ -1371,9 +1409,30 @@ public class Jenkins extends AbstractCIBase implements ModifiableTopLevelItemGro
      * @since 1.296
      */
     public Map<String,TopLevelItem> getItemMap() {
+        loadDeferredItems();
         return Collections.unmodifiableMap(items);
     }
 
+    /**
+     * Gets the loader of the jobs whose loading was deferred by {@link #LAZY_LOAD}.
+     *
+     * @return
+     *      null if lazy loading is off.
+     * @since 1.519
+     */
+    public DeferredItemLoader getDeferredItemLoader() {
+        return deferredItems;
+    }
+
+    /**
+     * Makes sure that all the jobs are loaded, for callers that need them all.
+     */
+    private void loadDeferredItems() {
+        DeferredItemLoader d = deferredItems;
+        if (d!=null && d.isPending())
+            d.loadAll();
+    }
+
     /**
      * Gets just the immediate children of {@link Jenkins} but of the given type.
      */
@@ -1390,7 +1449,7 @@ public class Jenkins extends AbstractCIBase implements ModifiableTopLevelItemGro
      * and filter them by the given type.
      */
     public <T extends Item> List<T> getAllItems(Class<T> type) {
-        return Items.getAllItems(this, type);
+        return itemIndex.getAllItems(type);
     }
 
     /**
@@ -1413,6 +1472,7 @@ public class Jenkins extends AbstractCIBase implements ModifiableTopLevelItemGro
      */
     @Deprecated
     public List<Project> getProjects() {
+        loadDeferredItems();
         return Util.createSubList(items.values(),Project.class);
     }
 
@@ -1437,6 +1497,9 @@ public class Jenkins extends AbstractCIBase implements ModifiableTopLevelItemGro
         List<String> names = new ArrayList<String>();
         for (TopLevelItem j : items.values())
             names.add(j.getName());
+        DeferredItemLoader d = deferredItems;
+        if (d!=null)    // no need to load them just for their names
+            names.addAll(d.getPendingNames());
         return names;
     }
 
@@ -2219,8 +2282,13 @@ public class Jenkins extends AbstractCIBase implements ModifiableTopLevelItemGro
     public TopLevelItem getItem(String name) {
         if (name==null)    return null;
     	TopLevelItem item = items.get(name);
-        if (item==null)
-            return null;
+        if (item==null) {
+            DeferredItemLoader d = deferredItems;
+            if (d!=null)
+                item = d.load(name);
+            if (item==null)
+                return null;
+        }
         if (!item.hasPermission(Item.READ)) {
             if (item.hasPermission(Item.DISCOVER)) {
                 throw new AccessDeniedException("Please login to access job " + name);
@@ -2321,6 +2389,10 @@ public class Jenkins extends AbstractCIBase implements ModifiableTopLevelItemGro
      *      or it exists but it's no an instance of the given type.
      */
     public @CheckForNull <T extends Item> T getItemByFullName(String fullName, Class<T> type) {
+        Item indexed = itemIndex.get(fullName);
+        if (indexed!=null)
+            return itemIndex.lookUp(indexed, type);
+
         StringTokenizer tokens = new StringTokenizer(fullName,"/");
         ItemGroup parent = this;
 
@@ -2419,6 +2491,8 @@ public class Jenkins extends AbstractCIBase implements ModifiableTopLevelItemGro
             l.onDeleted(item);
 
         items.remove(item.getName());
+        // the listeners were told before it was gone
+        itemIndex.invalidate();
         for (View v : views)
             v.onJobRenamed(item, item.getName(), null);
         save();
@@ -2496,6 +2570,8 @@ public class Jenkins extends AbstractCIBase implements ModifiableTopLevelItemGro
         });
 
         final Set<String> loadedNames = Collections.synchronizedSet(new HashSet<String>());
+        final DeferredItemLoader deferred = LAZY_LOAD ? new DeferredItemLoader(this) : null;
+        deferredItems = deferred;
 
         TaskGraphBuilder g = new TaskGraphBuilder();
         Handle loadHudson = g.requires(EXTENSIONS_AUGMENTED).attains(JOB_LOADED).add("Loading global config", new Executable() {
@@ -2539,6 +2615,17 @@ public class Jenkins extends AbstractCIBase implements ModifiableTopLevelItemGro
         for (final File subdir : subdirs) {
             g.requires(loadHudson).attains(JOB_LOADED).notFatal().add("Loading job "+subdir.getName(),new Executable() {
                 public void run(Reactor session) throws Exception {
+                    if (deferred!=null) {
+                        try {
+                            DeferredItemLoader.ItemHeader h = DeferredItemLoader.ItemHeader.read(subdir);
+                            if (h.isDeferrable()) {
+                                deferred.defer(h);
+                                return;
+                            }
+                        } catch (IOException e) {
+                            LOGGER.log(Level.FINE, "Failed to read the header of "+subdir+", so loading it now", e);
+                        }
+                    }
                     TopLevelItem item = (TopLevelItem) Items.load(Jenkins.this, subdir);
                     items.put(item.getName(), item);
                     loadedNames.add(item.getName());
@@ -2555,7 +2642,7 @@ public class Jenkins extends AbstractCIBase implements ModifiableTopLevelItemGro
                 // retainAll doesn't work well because of CopyOnWriteMap implementation, so remove one by one
                 // hopefully there shouldn't be too many of them.
                 for (String name : items.keySet()) {
-                    if (!loadedNames.contains(name))
+                    if (!loadedNames.contains(name) && (deferred==null || !deferred.isLoaded(name)))
                         items.remove(name);
                 }
             }
@@ -2563,6 +2650,7 @@ public class Jenkins extends AbstractCIBase implements ModifiableTopLevelItemGro
 
         g.requires(JOB_LOADED).add("Finalizing set up",new Executable() {
             public void run(Reactor session) throws Exception {
+                // with deferred jobs, this only covers those loaded so far. the rest join as they are loaded
                 rebuildDependencyGraph();
 
                 {// recompute label objects - populates the labels mapping.
@@ -2622,8 +2710,7 @@ public class Jenkins extends AbstractCIBase implements ModifiableTopLevelItemGro
      */
     public synchronized void save() throws IOException {
         if(BulkChange.contains(this))   return;
-        getConfigFile().write(this);
-        SaveableListener.fireOnChange(this, getConfigFile());
+        SaveQueue.get().save(this, getConfigFile());
     }
 
 
@@ -2659,10 +2746,13 @@ public class Jenkins extends AbstractCIBase implements ModifiableTopLevelItemGro
         if(pluginManager!=null) // be defensive. there could be some ugly timing related issues
             pluginManager.stop();
 
-        if(getRootDir().exists())
+        if(getRootDir().exists()) {
             // if we are aborting because we failed to create JENKINS_HOME,
             // don't try to save. Issue #536
             getQueue().save();
+            SaveQueue.get().flushAll();
+            DigestCache.saveMaster();
+        }
 
         threadPoolForLoad.shutdown();
         for (Future<?> f : pending)
@@ -3048,6 +3138,7 @@ public class Jenkins extends AbstractCIBase implements ModifiableTopLevelItemGro
      */
     public void reload() throws IOException, InterruptedException, ReactorException {
         executeReactor(null, loadTasks());
+        itemIndex.rebuild();
         User.reload();
         servletContext.setAttribute("app", this);
     }
@@ -3581,11 +3672,89 @@ public class Jenkins extends AbstractCIBase implements ModifiableTopLevelItemGro
      * Rebuilds the dependency map.
      */
     public void rebuildDependencyGraph() {
-        DependencyGraph graph = new DependencyGraph();
-        graph.build();
-        // volatile acts a as a memory barrier here and therefore guarantees 
-        // that graph is fully build, before it's visible to other threads
-        dependencyGraph = graph;
+        synchronized (dependencyGraphLock) {
+            boolean outermost = startBuildingGraph();
+            try {
+                DependencyGraph graph = new DependencyGraph();
+                graph.build();
+                // volatile acts a as a memory barrier here and therefore guarantees 
+                // that graph is fully build, before it's visible to other threads
+                dependencyGraph = graph;
+                if (outermost)
+                    addChangedWhileBuildingGraph();
+            } finally {
+                if (outermost)
+                    changedWhileBuildingGraph = null;
+            }
+        }
+    }
+
+    /**
+     * Updates the dependency map after the configuration of the given projects changed,
+     * asking only them for their dependencies again, unless the whole map needs to be rebuilt.
+     *
+     * @param changed
+     *      The projects whose configuration changed, and those whose configuration was changed along the way,
+     *      such as the upstream projects whose {@link hudson.tasks.BuildTrigger}s were updated.
+     * @since 1.519
+     */
+    public void updateDependencyGraph(Collection<? extends AbstractProject> changed) {
+        updateDependencyGraph(changed, Collections.<AbstractProject>emptySet());
+    }
+
+    /**
+     * Takes the given project, which has been deleted, out of the dependency map.
+     *
+     * @since 1.519
+     */
+    public void removeFromDependencyGraph(AbstractProject<?,?> p) {
+        updateDependencyGraph(Collections.<AbstractProject>emptySet(), Collections.<AbstractProject>singleton(p));
+    }
+
+    private void updateDependencyGraph(Collection<? extends AbstractProject> changed, Collection<? extends AbstractProject> removed) {
+        synchronized (dependencyGraphLock) {
+            if (changedWhileBuildingGraph!=null && removed.isEmpty()) {
+                // called back from within the build, which would overwrite what we do here
+                changedWhileBuildingGraph.addAll(changed);
+                return;
+            }
+            boolean outermost = startBuildingGraph();
+            try {
+                dependencyGraph = update(dependencyGraph, changed, removed);
+                if (outermost)
+                    addChangedWhileBuildingGraph();
+            } finally {
+                if (outermost)
+                    changedWhileBuildingGraph = null;
+            }
+        }
+    }
+
+    /**
+     * @return true unless the graph was already being built on this thread.
+     */
+    private boolean startBuildingGraph() {
+        if (changedWhileBuildingGraph!=null)
+            return false;
+        changedWhileBuildingGraph = new LinkedHashSet<AbstractProject>();
+        return true;
+    }
+
+    private void addChangedWhileBuildingGraph() {
+        while (!changedWhileBuildingGraph.isEmpty()) {
+            List<AbstractProject> changed = new ArrayList<AbstractProject>(changedWhileBuildingGraph);
+            changedWhileBuildingGraph.clear();
+            dependencyGraph = update(dependencyGraph, changed, Collections.<AbstractProject>emptySet());
+        }
+    }
+
+    private static DependencyGraph update(DependencyGraph graph, Collection<? extends AbstractProject> changed, Collection<? extends AbstractProject> removed) {
+        DependencyGraph g = graph.update(changed, removed);
+        if (g==null) {
+            g = new DependencyGraph();
+            g.build();
+        }
+        return g;
     }
 
     public DependencyGraph getDependencyGraph() {
@@ -3683,6 +3852,7 @@ public class Jenkins extends AbstractCIBase implements ModifiableTopLevelItemGro
      * @return
      */
     boolean isDisplayNameUnique(String displayName, String currentJobName) {
+        loadDeferredItems();
         Collection<TopLevelItem> itemCollection = items.values();
         
         // if there are a lot of projects, we'll have to store their 
@@ -3975,6 +4145,18 @@ public class Jenkins extends AbstractCIBase implements ModifiableTopLevelItemGro
 
     public static boolean PARALLEL_LOAD = Configuration.getBooleanConfigParameter("parallelLoad", true);
     public static boolean KILL_AFTER_LOAD = Configuration.getBooleanConfigParameter("killAfterLoad", false);
+    /**
+     * Defers loading the jobs that don't need to be loaded during the startup.
+     * @see DeferredItemLoader
+     * @since 1.519
+     */
+    public static boolean LAZY_LOAD = Configuration.getBooleanConfigParameter("lazyLoad", false);
+    /**
+     * Restores the configuration files that haven't changed since the last startup from a snapshot.
+     * @see StartupCache
+     * @since 1.519
+     */
+    public static boolean STARTUP_CACHE = Configuration.getBooleanConfigParameter("startupCache", false);
     /**
      * Enabled by default as of 1.337. Will keep it for a while just in case we have some serious problems.
      */
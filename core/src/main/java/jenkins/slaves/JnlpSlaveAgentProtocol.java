@@ -2,6 +2,8 @@ package jenkins.slaves;
 
 import hudson.AbortException;
 import hudson.Extension;
+import hudson.TcpSlaveAgentListener;
+import hudson.model.Computer;
 import hudson.remoting.Channel;
 import hudson.remoting.Channel.Listener;
 import hudson.remoting.Engine;
@@ -117,7 +119,11 @@ public class JnlpSlaveAgentProtocol extends AgentProtocol {
             logw.println("JNLP agent connected from "+ socket.getInetAddress());
 
             try {
-                computer.setChannel(new BufferedInputStream(socket.getInputStream()), new BufferedOutputStream(socket.getOutputStream()), log,
+                Channel channel = new Channel(nodeName, Computer.threadPoolForChannels, Channel.Mode.NEGOTIATE,
+                        new BufferedInputStream(socket.getInputStream()), new BufferedOutputStream(socket.getOutputStream()), log);
+                // the slave can no longer stall the handshake. what's left, like running the ComputerListeners, may take a while
+                TcpSlaveAgentListener.onHandshakeDone(socket);
+                computer.setChannel(channel, log,
                     new Listener() {
                         @Override
                         public void onClosed(Channel channel, IOException cause) {
@@ -0,0 +1,200 @@
+package jenkins.slaves;
+
+import hudson.Extension;
+import hudson.FilePath;
+import hudson.PluginWrapper;
+import hudson.model.Computer;
+import hudson.model.TaskListener;
+import hudson.remoting.Channel;
+import hudson.remoting.Which;
+import hudson.slaves.ComputerListener;
+import hudson.slaves.SlaveComputer;
+import jenkins.model.Jenkins;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.WeakHashMap;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Sends the jar files of the core and plugins to slaves in one piece each, so that the classes in them
+ * don't have to be sent over the channel one by one as the slave needs them.
+ *
+ * <p>
+ * Once a slave is online, the jars are preloaded into the slave-side class loaders that mirror
+ * the class loaders of the master, with {@link Channel#preloadJar(ClassLoader, URL...)}, one call per class loader.
+ * This happens on a background thread, so it doesn't hold up bringing the slave online; classes needed before
+ * it's done are sent one by one as before. The slave-side class loaders keep the jars for as long as the channel
+ * is open. Remoting offers no way to hand them jar files that are already on the slave, so they are sent again
+ * when the slave reconnects.
+ *
+ * <p>
+ * Only the jar of the core and the plugins' own classes are sent. The classes of plugins that
+ * aren't in a jar, but in {@code WEB-INF/classes}, are put into a jar on the master the first time.
+ * Libraries bundled in plugins are left alone, since the master might load some of their classes
+ * from elsewhere.
+ *
+ * @since 1.519
+ */
+@Extension
+public class SlaveJarCache extends ComputerListener {
+    private final Map<Computer,Statistics> statistics = Collections.synchronizedMap(new WeakHashMap<Computer,Statistics>());
+
+    /**
+     * Jars made from the {@code WEB-INF/classes} directories of plugins, keyed by the directory.
+     */
+    private final Map<File,File> classesJars = new HashMap<File,File>();
+
+    /**
+     * Outcome of preloading the jars into a slave when it connected.
+     */
+    public static final class Statistics {
+        public final int jars;
+        /**
+         * Bytes sent to the slave.
+         */
+        public final long transferred;
+        public final long duration;
+
+        Statistics(int jars, long transferred, long duration) {
+            this.jars = jars;
+            this.transferred = transferred;
+            this.duration = duration;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("preloaded %d jars, %dKB in %dms", jars, transferred/1024, duration);
+        }
+    }
+
+    @Override
+    public void onOnline(final Computer c, TaskListener listener) {
+        if (DISABLED || !(c instanceof SlaveComputer))   return;
+        final Channel channel = c.getChannel();
+        if (channel==null)  return;
+        Computer.threadPoolForRemoting.submit(new Runnable() {
+            public void run() {
+                try {
+                    preload(c, channel);
+                } catch (IOException e) {
+                    LOGGER.log(Level.FINE, "Failed to preload jars into "+c.getName(), e);
+                } catch (InterruptedException e) {
+                    LOGGER.log(Level.FINE, "Failed to preload jars into "+c.getName(), e);
+                }
+            }
+        });
+    }
+
+    private void preload(Computer c, Channel channel) throws IOException, InterruptedException {
+        long start = System.currentTimeMillis();
+        int jars = 0;
+        long transferred = 0;
+        for (Map.Entry<ClassLoader,List<File>> e : collect().entrySet()) {
+            List<File> files = e.getValue();
+            URL[] urls = new URL[files.size()];
+            for (int i=0; i<urls.length; i++)
+                urls[i] = files.get(i).toURI().toURL();
+            if (channel.preloadJar(e.getKey(), urls)) {
+                jars += urls.length;
+                for (File f : files)
+                    transferred += f.length();
+            }
+        }
+        Statistics s = new Statistics(jars, transferred, System.currentTimeMillis()-start);
+        statistics.put(c,s);
+        LOGGER.fine("Jar cache of "+c.getName()+": "+s);
+    }
+
+    /**
+     * Gets the outcome of preloading the jars into the given computer when it last connected,
+     * or null if that hasn't happened.
+     */
+    public Statistics getStatistics(Computer c) {
+        return statistics.get(c);
+    }
+
+    /**
+     * Lists up the jar files to send, by the class loader whose classes they contain.
+     */
+    private Map<ClassLoader,List<File>> collect() throws IOException, InterruptedException {
+        Map<ClassLoader,List<File>> r = new LinkedHashMap<ClassLoader,List<File>>();
+        try {
+            r.put(Jenkins.class.getClassLoader(), Collections.singletonList(Which.jarFile(Jenkins.class)));
+        } catch (IOException e) {
+            // core is not in a jar, such as in development
+        }
+        for (PluginWrapper p : Jenkins.getInstance().getPluginManager().getPlugins()) {
+            if (!p.isActive())  continue;
+            try {
+                List<File> jars = getJars(new File(p.baseResourceURL.toURI()), p.getShortName());
+                if (!jars.isEmpty())
+                    r.put(p.classLoader, jars);
+            } catch (URISyntaxException e) {
+                // not a local file
+            } catch (IllegalArgumentException e) {
+                // not a local file
+            }
+        }
+        return r;
+    }
+
+    /**
+     * Gets the jars that hold the own classes of the plugin exploded in the given directory.
+     */
+    /*package*/ List<File> getJars(File base, String shortName) throws IOException, InterruptedException {
+        List<File> r = new ArrayList<File>();
+        for (String name : new String[] {shortName+".jar", "classes.jar"}) {
+            File jar = new File(base, "WEB-INF/lib/"+name);
+            if (jar.isFile())
+                r.add(jar);
+        }
+        File classes = new File(base, "WEB-INF/classes");
+        if (classes.isDirectory())
+            r.add(jar(classes));
+        return r;
+    }
+
+    /**
+     * Puts the classes in the given directory into a jar, once.
+     */
+    private File jar(File classes) throws IOException, InterruptedException {
+        synchronized (classesJars) {
+            File jar = classesJars.get(classes);
+            if (jar==null) {
+                jar = File.createTempFile("classes", ".jar");
+                jar.deleteOnExit();
+                OutputStream os = new FileOutputStream(jar);
+                try {
+                    new FilePath(classes).zip(os, "**");
+                } finally {
+                    os.close();
+                }
+                classesJars.put(classes, jar);
+            }
+            return jar;
+        }
+    }
+
+    /**
+     * Gets the singleton instance.
+     */
+    public static SlaveJarCache get() {
+        return ComputerListener.all().get(SlaveJarCache.class);
+    }
+
+    public static boolean DISABLED = Boolean.getBoolean(SlaveJarCache.class.getName()+".disabled");
+
+    private static final Logger LOGGER = Logger.getLogger(SlaveJarCache.class.getName());
+}
@@ -0,0 +1,122 @@
+package jenkins.util;
+
+import hudson.Util;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Thread-safe histogram of durations, with a fixed set of buckets.
+ *
+ * <p>
+ * Meant for keeping track of how long recurring activities take, cheaply enough
+ * to be updated from a hot path.
+ *
+ * @since 1.519
+ */
+public final class LatencyHistogram {
+    /**
+     * Upper bounds of the buckets in milliseconds, in the ascending order.
+     * There's an implicit last bucket for everything longer than that.
+     */
+    private final long[] bounds;
+    private final AtomicLongArray counts;
+    private final AtomicLong count = new AtomicLong();
+    private final AtomicLong sum = new AtomicLong();
+    private final AtomicLong max = new AtomicLong();
+
+    public LatencyHistogram(long... bounds) {
+        this.bounds = bounds.clone();
+        this.counts = new AtomicLongArray(bounds.length+1);
+    }
+
+    public LatencyHistogram() {
+        this(DEFAULT_BOUNDS);
+    }
+
+    /**
+     * Records one observation.
+     */
+    public void record(long millis) {
+        int i=0;
+        while (i<bounds.length && millis>bounds[i])
+            i++;
+        counts.incrementAndGet(i);
+        count.incrementAndGet();
+        sum.addAndGet(millis);
+
+        long m;
+        do {
+            m = max.get();
+        } while (millis>m && !max.compareAndSet(m,millis));
+    }
+
+    public long getCount() {
+        return count.get();
+    }
+
+    public long getMean() {
+        long n = count.get();
+        return n==0 ? 0 : sum.get()/n;
+    }
+
+    public long getMax() {
+        return max.get();
+    }
+
+    /**
+     * Gets the upper bound of the bucket that contains the given percentile.
+     *
+     * @param p
+     *      0-100
+     * @return
+     *      0 if nothing was recorded yet. {@link #getMax()} if the percentile falls into the last, unbounded bucket.
+     */
+    public long getPercentile(double p) {
+        long n = count.get();
+        if (n==0)   return 0;
+        long threshold = (long)Math.ceil(n*p/100);
+        long seen = 0;
+        for (int i=0; i<bounds.length; i++) {
+            seen += counts.get(i);
+            if (seen>=threshold)
+                return bounds[i];
+        }
+        return getMax();
+    }
+
+    public static final class Bucket {
+        /**
+         * Upper bound of this bucket in milliseconds, or -1 for the last bucket.
+         */
+        public final long bound;
+        public final long count;
+
+        Bucket(long bound, long count) {
+            this.bound = bound;
+            this.count = count;
+        }
+
+        public String getLabel() {
+            return bound<0 ? "longer" : "<="+Util.getTimeSpanString(bound);
+        }
+    }
+
+    public List<Bucket> getBuckets() {
+        List<Bucket> r = new ArrayList<Bucket>(bounds.length+1);
+        for (int i=0; i<bounds.length; i++)
+            r.add(new Bucket(bounds[i],counts.get(i)));
+        r.add(new Bucket(-1,counts.get(bounds.length)));
+        return r;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("n=%d mean=%dms p50=%dms p99=%dms max=%dms",
+                getCount(), getMean(), getPercentile(50), getPercentile(99), getMax());
+    }
+
+    private static final long[] DEFAULT_BOUNDS = {10,50,100,500,1000,5000,10000,30000,60000,300000};
+}
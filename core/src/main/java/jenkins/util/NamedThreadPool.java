@@ -0,0 +1,184 @@
+package jenkins.util;
+
+import hudson.util.DaemonThreadFactory;
+import hudson.util.ExceptionCatchingThreadFactory;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.RejectedExecutionHandler;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Thread pool that grows on demand up to the given number of threads like
+ * {@link java.util.concurrent.Executors#newCachedThreadPool()}, and then starts queueing tasks
+ * instead of creating more threads.
+ *
+ * <p>
+ * Idle threads go away after a minute. Threads are daemon threads, named after the pool.
+ * Pools keep track of how busy they are, and all the pools are listed in the system information page.
+ *
+ * @since 1.519
+ */
+public class NamedThreadPool extends ThreadPoolExecutor {
+    private final String name;
+
+    private final AtomicInteger active = new AtomicInteger();
+    private final AtomicInteger peakQueueDepth = new AtomicInteger();
+    private final AtomicLong rejected = new AtomicLong();
+
+    /**
+     * @param maxThreads
+     *      Maximum number of threads. Tasks submitted beyond that are queued.
+     * @param maxQueue
+     *      Maximum number of tasks that can wait in the queue. Tasks submitted beyond that
+     *      are rejected with {@link RejectedExecutionException}.
+     */
+    public NamedThreadPool(String name, int maxThreads, int maxQueue) {
+        super(0, Math.max(1,maxThreads), 60, TimeUnit.SECONDS, new TaskQueue(maxQueue), new Factory(name), new Overflow());
+        this.name = name;
+        ((TaskQueue)getQueue()).pool = this;
+        ALL.add(this);
+    }
+
+    public NamedThreadPool(String name, int maxThreads) {
+        this(name,maxThreads,Integer.MAX_VALUE);
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * Number of threads that are running tasks right now.
+     */
+    @Override
+    public int getActiveCount() {
+        return active.get();
+    }
+
+    /**
+     * Number of tasks waiting for a thread.
+     */
+    public int getQueueDepth() {
+        return getQueue().size();
+    }
+
+    /**
+     * Largest {@link #getQueueDepth()} so far.
+     */
+    public int getPeakQueueDepth() {
+        return peakQueueDepth.get();
+    }
+
+    /**
+     * Number of tasks rejected because the queue was full.
+     */
+    public long getRejectedCount() {
+        return rejected.get();
+    }
+
+    @Override
+    protected void beforeExecute(Thread t, Runnable r) {
+        active.incrementAndGet();
+        super.beforeExecute(t,r);
+    }
+
+    @Override
+    protected void afterExecute(Runnable r, Throwable t) {
+        super.afterExecute(r,t);
+        active.decrementAndGet();
+    }
+
+    @Override
+    protected void terminated() {
+        ALL.remove(this);
+        super.terminated();
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%s: %d active, %d threads (max %d), %d queued",
+                name, getActiveCount(), getPoolSize(), getMaximumPoolSize(), getQueueDepth());
+    }
+
+    /**
+     * Makes {@link ThreadPoolExecutor} create a new thread instead of queueing the task,
+     * as long as there's no idle thread and the pool can still grow.
+     */
+    private static final class TaskQueue extends LinkedBlockingQueue<Runnable> {
+        private volatile NamedThreadPool pool;
+
+        TaskQueue(int capacity) {
+            super(capacity);
+        }
+
+        @Override
+        public boolean offer(Runnable r) {
+            NamedThreadPool p = pool;
+            if (p!=null && p.getPoolSize()<p.getMaximumPoolSize() && p.getPoolSize()<=p.active.get()+size())
+                return false;   // have the executor create a new thread
+            return enqueue(r);
+        }
+
+        boolean enqueue(Runnable r) {
+            if (!super.offer(r))
+                return false;
+            NamedThreadPool p = pool;
+            if (p!=null) {
+                int n = size(), peak;
+                do {
+                    peak = p.peakQueueDepth.get();
+                } while (n>peak && !p.peakQueueDepth.compareAndSet(peak,n));
+            }
+            return true;
+        }
+
+        private static final long serialVersionUID = 1L;
+    }
+
+    /**
+     * Called when the executor couldn't create a new thread, because some other task has taken
+     * the last one. Queue the task then.
+     */
+    private static final class Overflow implements RejectedExecutionHandler {
+        public void rejectedExecution(Runnable r, ThreadPoolExecutor executor) {
+            NamedThreadPool p = (NamedThreadPool)executor;
+            if (!executor.isShutdown() && ((TaskQueue)executor.getQueue()).enqueue(r))
+                return;
+            p.rejected.incrementAndGet();
+            throw new RejectedExecutionException("Too many tasks waiting in "+p.name);
+        }
+    }
+
+    private static final class Factory implements ThreadFactory {
+        private final String name;
+        private final ThreadFactory core = new ExceptionCatchingThreadFactory(new DaemonThreadFactory());
+        private final AtomicInteger n = new AtomicInteger();
+
+        Factory(String name) {
+            this.name = name;
+        }
+
+        public Thread newThread(Runnable r) {
+            Thread t = core.newThread(r);
+            t.setName(name+" thread #"+n.incrementAndGet());
+            return t;
+        }
+    }
+
+    private static final List<NamedThreadPool> ALL = new CopyOnWriteArrayList<NamedThreadPool>();
+
+    /**
+     * All the pools that are alive.
+     */
+    public static List<NamedThreadPool> all() {
+        return new ArrayList<NamedThreadPool>(ALL);
+    }
+}
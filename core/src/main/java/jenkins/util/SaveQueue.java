@@ -0,0 +1,393 @@
+package jenkins.util;
+
+import com.thoughtworks.xstream.io.StreamException;
+import hudson.BulkChange;
+import hudson.XmlFile;
+import hudson.model.Saveable;
+import hudson.model.listeners.SaveableListener;
+import hudson.util.AtomicFileWriter;
+import hudson.util.DaemonThreadFactory;
+import hudson.util.IOException2;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.StringWriter;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Writes the files of {@link Saveable}s behind the callers' backs, so that {@link Saveable#save()}
+ * doesn't have to wait for the disk while holding the lock of the object.
+ *
+ * <p>
+ * Enabled with {@code -Djenkins.util.SaveQueue.enabled=true}. The object is marshalled right away on the
+ * calling thread, while it holds the lock of the object, so only the disk write is deferred.
+ * The writes of each file are coalesced: the file is written {@link #WINDOW} milliseconds after the first save,
+ * on a single background thread, with the contents of the last save. {@link SaveableListener}s are notified once
+ * the file is written, on the thread that wrote it. {@link BulkChange} is checked by the callers before they get here,
+ * just as before.
+ *
+ * <p>
+ * Writes of the same file never overlap, so that the last save always ends up on the disk.
+ * Pending writes are carried out before {@link XmlFile} reads the file, before the directory
+ * of an item is renamed, and on shutdown. They are dropped when the directory gets deleted.
+ * The first write of a file, which creates it, is always done right away.
+ * Since the callers have returned by the time the file is written, failures can only be logged.
+ *
+ * @since 1.519
+ */
+public class SaveQueue {
+    private final ConcurrentMap<File,Pending> pending = new ConcurrentHashMap<File,Pending>();
+
+    private final ScheduledExecutorService writer = Executors.newSingleThreadScheduledExecutor(new DaemonThreadFactory());
+
+    private final LatencyHistogram latencies = new LatencyHistogram();
+    private final AtomicLong writes = new AtomicLong(), coalesced = new AtomicLong(), failures = new AtomicLong();
+
+    SaveQueue() {
+    }
+
+    private final class Pending implements Runnable {
+        final File file;
+        /**
+         * When the first of the coalesced saves came.
+         */
+        final long since = System.currentTimeMillis();
+        private String contents;
+        /**
+         * Run once the file is written.
+         */
+        private Runnable then;
+        private boolean started, done;
+        /**
+         * The write of the same file that was already going on when this one was submitted.
+         * It has to finish before this one starts, or its rename could land last.
+         */
+        private Pending previous;
+
+        Pending(File file, String contents, Runnable then, Pending previous) {
+            this.file = file;
+            this.contents = contents;
+            this.then = then;
+            this.previous = previous;
+        }
+
+        /**
+         * Replaces what gets written, unless it's too late.
+         */
+        synchronized boolean update(String contents, Runnable then) {
+            if (started)
+                return false;
+            this.contents = contents;
+            this.then = then;
+            return true;
+        }
+
+        /**
+         * Called on the writer thread when the window is over.
+         */
+        public void run() {
+            if (start())
+                perform();
+        }
+
+        /**
+         * Writes now on the calling thread, or waits for the writer thread if it's already at it.
+         */
+        void flush() throws InterruptedException {
+            synchronized (this) {
+                if (started) {
+                    while (!done)
+                        wait();
+                    return;
+                }
+            }
+            if (start())
+                perform();
+            else
+                synchronized (this) {
+                    while (!done)
+                        wait();
+                }
+        }
+
+        /**
+         * Drops this write, or waits for it if it has started.
+         */
+        void discard() throws InterruptedException {
+            Pending prev;
+            synchronized (this) {
+                if (!started) {
+                    started = done = true;
+                } else {
+                    while (!done)
+                        wait();
+                }
+                prev = previous;
+                previous = null;
+            }
+            if (prev!=null)
+                prev.awaitDone();
+            pending.remove(file, this);
+        }
+
+        /**
+         * Waits until this write is over, even if interrupted, since the next one mustn't overlap with it.
+         */
+        private void awaitDone() {
+            boolean interrupted = false;
+            synchronized (this) {
+                while (!done) {
+                    try {
+                        wait();
+                    } catch (InterruptedException e) {
+                        interrupted = true;
+                    }
+                }
+            }
+            if (interrupted)
+                Thread.currentThread().interrupt();
+        }
+
+        private synchronized boolean start() {
+            if (started)    return false;
+            started = true;
+            return true;
+        }
+
+        private void perform() {
+            Pending prev;
+            synchronized (this) {
+                prev = previous;
+                previous = null;
+            }
+            if (prev!=null)
+                prev.awaitDone();
+
+            boolean written = false;
+            try {
+                if (file.getParentFile().exists()) {
+                    writeFile(file, contents);
+                    written = true;
+                    writes.incrementAndGet();
+                    latencies.record(System.currentTimeMillis()-since);
+                } else {
+                    LOGGER.fine("Dropping the write of "+file+" since its directory is gone");
+                }
+            } catch (IOException e) {
+                failures.incrementAndGet();
+                LOGGER.log(Level.WARNING, "Failed to write "+file, e);
+            } catch (RuntimeException e) {
+                failures.incrementAndGet();
+                LOGGER.log(Level.WARNING, "Failed to write "+file, e);
+            } finally {
+                synchronized (this) {
+                    done = true;
+                    notifyAll();
+                }
+                pending.remove(file, this);
+            }
+            // only now, as listeners may well read the file
+            if (written)
+                runThen();
+        }
+
+        private void runThen() {
+            try {
+                then.run();
+            } catch (RuntimeException e) {
+                LOGGER.log(Level.WARNING, "Failed to notify the listeners of "+file, e);
+            }
+        }
+    }
+
+    /**
+     * Writes the file of the given object and then notifies {@link SaveableListener}s, either now or a little later.
+     * Call this instead of {@link XmlFile#write(Object)} while holding the lock of the object.
+     */
+    public void save(Saveable o, XmlFile file) throws IOException {
+        if (!isDeferred(file.getFile())) {
+            file.write(o);
+            SaveableListener.fireOnChange(o, file);
+            return;
+        }
+        StringWriter w = new StringWriter();
+        w.write("<?xml version='1.0' encoding='UTF-8'?>\n");
+        try {
+            file.getXStream().toXML(o, w);
+        } catch (StreamException e) {
+            throw new IOException2(e);
+        }
+        submit(file.getFile(), w.toString(), notifier(o, file));
+    }
+
+    /**
+     * Writes the given contents into the file of the given object and then notifies {@link SaveableListener}s,
+     * either now or a little later. For objects that marshal themselves.
+     */
+    public void save(Saveable o, XmlFile file, String contents) throws IOException {
+        submit(file.getFile(), contents, notifier(o, file));
+    }
+
+    private static Runnable notifier(final Saveable o, final XmlFile file) {
+        return new Runnable() {
+            public void run() {
+                SaveableListener.fireOnChange(o, file);
+            }
+        };
+    }
+
+    private boolean isDeferred(File file) {
+        return ENABLED && file.exists();
+    }
+
+    /**
+     * Writes the given contents into the given file, either now or a little later, and then runs {@code then}.
+     */
+    void submit(File file, String contents, Runnable then) throws IOException {
+        if (!isDeferred(file)) {
+            writeFile(file, contents);
+            then.run();
+            return;
+        }
+        while (true) {
+            Pending p = pending.get(file);
+            if (p!=null) {
+                if (p.update(contents, then)) {
+                    coalesced.incrementAndGet();
+                    return;
+                }
+                // too late to change it. the write that's going on might already be missing the change, so write again
+                Pending n = new Pending(file, contents, then, p);
+                if (pending.replace(file, p, n)) {
+                    schedule(n);
+                    return;
+                }
+            } else {
+                Pending n = new Pending(file, contents, then, null);
+                if (pending.putIfAbsent(file, n)==null) {
+                    schedule(n);
+                    return;
+                }
+            }
+        }
+    }
+
+    /*package*/ void writeFile(File file, String contents) throws IOException {
+        AtomicFileWriter w = new AtomicFileWriter(file);
+        try {
+            w.write(contents);
+            w.commit();
+        } finally {
+            w.abort();
+        }
+    }
+
+    private void schedule(Pending p) {
+        writer.schedule(p, WINDOW, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Carries out the pending writes of the given file, or of the files in the given directory, on the calling thread.
+     */
+    public void flush(File fileOrDir) {
+        if (pending.isEmpty())  return;
+        try {
+            for (Pending p : find(fileOrDir))
+                p.flush();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Drops the pending writes of the files in the given directory, which is about to be deleted.
+     */
+    public void discard(File dir) {
+        if (pending.isEmpty())  return;
+        try {
+            for (Pending p : find(dir))
+                p.discard();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private List<Pending> find(File fileOrDir) {
+        List<Pending> r = new ArrayList<Pending>();
+        Pending p = pending.get(fileOrDir);
+        if (p!=null) {
+            r.add(p);
+            return r;
+        }
+        String prefix = fileOrDir.getPath()+File.separatorChar;
+        for (Pending q : pending.values())
+            if (q.file.getPath().startsWith(prefix))
+                r.add(q);
+        return r;
+    }
+
+    /**
+     * Carries out all the pending writes. Called on shutdown.
+     */
+    public void flushAll() {
+        try {
+            for (Pending p : new ArrayList<Pending>(pending.values()))
+                p.flush();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Number of files waiting to be written.
+     */
+    public int getPendingCount() {
+        return pending.size();
+    }
+
+    /**
+     * How long it took from the first save of a file until it was written.
+     */
+    public LatencyHistogram getFlushLatencies() {
+        return latencies;
+    }
+
+    public long getWrites() {
+        return writes.get();
+    }
+
+    /**
+     * Number of saves that were folded into a pending write.
+     */
+    public long getCoalesced() {
+        return coalesced.get();
+    }
+
+    public long getFailures() {
+        return failures.get();
+    }
+
+    public static SaveQueue get() {
+        return INSTANCE;
+    }
+
+    private static final SaveQueue INSTANCE = new SaveQueue();
+
+    private static final Logger LOGGER = Logger.getLogger(SaveQueue.class.getName());
+
+    public static boolean ENABLED = Boolean.getBoolean(SaveQueue.class.getName()+".enabled");
+
+    /**
+     * How long, in milliseconds, saves of the same file are coalesced for.
+     */
+    public static long WINDOW = Long.getLong(SaveQueue.class.getName()+".window", 500);
+}
@@ -0,0 +1,342 @@
+package jenkins.util.io;
+
+import hudson.Extension;
+import hudson.FilePath;
+import hudson.FilePath.FileCallable;
+import hudson.Functions;
+import hudson.Util;
+import hudson.model.Computer;
+import hudson.model.TaskListener;
+import hudson.os.PosixAPI;
+import hudson.remoting.Callable;
+import hudson.remoting.Channel;
+import hudson.remoting.VirtualChannel;
+import hudson.slaves.ComputerListener;
+import jenkins.model.Jenkins;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Remembers the MD5 digests of files, so that {@link FilePath#digest()} doesn't have to
+ * read files that haven't changed since the last time.
+ *
+ * <p>
+ * A file is considered unchanged if its size, timestamp and inode number are the same.
+ * Files modified within the last couple of seconds aren't remembered, as they could still be changed
+ * again without their timestamps telling, given the coarse timestamps of some file systems.
+ * The cache is kept on the node where the files are, and saved into a file in the root directory
+ * of that node (such as {@code $JENKINS_HOME} or the remote FS root of a slave), so that
+ * it survives restarts and reconnections of the slave.
+ *
+ * <p>
+ * Since it's used from {@link FilePath#digest()}, everything that computes digests through it,
+ * such as fingerprinting, benefits from the cache.
+ *
+ * @since 1.519
+ */
+public final class DigestCache {
+    private final File file;
+
+    /**
+     * From absolute path to the last known state of the file. Least recently used entries get evicted first.
+     */
+    private final Map<String,Record> records = new LinkedHashMap<String,Record>(16,0.75f,true) {
+        @Override
+        protected boolean removeEldestEntry(Entry<String,Record> eldest) {
+            return size()>MAX_ENTRIES;
+        }
+    };
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+
+    private boolean dirty;
+    private long lastSaved = System.currentTimeMillis();
+
+    private static final class Record {
+        final long size, lastModified, inode;
+        final String digest;
+
+        Record(long size, long lastModified, long inode, String digest) {
+            this.size = size;
+            this.lastModified = lastModified;
+            this.inode = inode;
+            this.digest = digest;
+        }
+
+        boolean matches(long size, long lastModified, long inode) {
+            return this.size==size && this.lastModified==lastModified && this.inode==inode;
+        }
+    }
+
+    /**
+     * @param file
+     *      File to persist the cache into. If it exists, the cache is loaded from it.
+     */
+    public DigestCache(File file) {
+        this.file = file;
+        try {
+            load();
+        } catch (IOException e) {
+            LOGGER.log(Level.WARNING, "Failed to load the digest cache from "+file, e);
+        }
+    }
+
+    /**
+     * Computes the MD5 digest of the given local file in hex string, or reuse the previously computed value.
+     */
+    public String digest(File f) throws IOException {
+        String path = f.getAbsolutePath();
+        // capture the state before reading the file, so that a concurrent modification
+        // makes the entry look stale rather than the other way around
+        long size = f.length();
+        long lastModified = f.lastModified();
+        long inode = inode(f);
+
+        synchronized (this) {
+            Record r = records.get(path);
+            if (r!=null && r.matches(size,lastModified,inode)) {
+                hits.incrementAndGet();
+                return r.digest;
+            }
+        }
+
+        misses.incrementAndGet();
+        String digest = Util.getDigestOf(new BufferedInputStream(new FileInputStream(f)));
+        // 0 means the file disappeared or couldn't be checked
+        if (lastModified!=0 && Math.abs(System.currentTimeMillis()-lastModified)>=RECENT) {
+            boolean save;
+            synchronized (this) {
+                records.put(path, new Record(size,lastModified,inode,digest));
+                dirty = true;
+                save = System.currentTimeMillis()-lastSaved > SAVE_INTERVAL;
+            }
+            if (save)
+                saveQuietly();
+        }
+        return digest;
+    }
+
+    public long getHits() {
+        return hits.get();
+    }
+
+    public long getMisses() {
+        return misses.get();
+    }
+
+    /**
+     * Percentage of the digest computations served from the cache, or -1 if nothing was computed yet.
+     */
+    public double getHitRate() {
+        long h = hits.get(), total = h+misses.get();
+        return total==0 ? -1 : h*100.0/total;
+    }
+
+    public synchronized int size() {
+        return records.size();
+    }
+
+    private synchronized void load() throws IOException {
+        if (!file.exists())     return;
+        DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)));
+        try {
+            if (in.readInt()!=VERSION)  return; // incompatible format. start fresh
+            int n = in.readInt();
+            for (int i=0; i<n; i++) {
+                String path = in.readUTF();
+                records.put(path, new Record(in.readLong(),in.readLong(),in.readLong(),in.readUTF()));
+            }
+        } catch (EOFException e) {
+            LOGGER.log(Level.FINE, "Truncated digest cache "+file, e);
+        } finally {
+            in.close();
+        }
+    }
+
+    /**
+     * Writes the cache to the disk if it has changed.
+     */
+    public void save() throws IOException {
+        Map<String,Record> copy;
+        synchronized (this) {
+            if (!dirty)     return;
+            copy = new LinkedHashMap<String,Record>(records);
+            dirty = false;
+            lastSaved = System.currentTimeMillis();
+        }
+
+        File tmp = new File(file.getPath()+".tmp");
+        DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tmp)));
+        try {
+            out.writeInt(VERSION);
+            out.writeInt(copy.size());
+            for (Entry<String,Record> e : copy.entrySet()) {
+                Record r = e.getValue();
+                out.writeUTF(e.getKey());
+                out.writeLong(r.size);
+                out.writeLong(r.lastModified);
+                out.writeLong(r.inode);
+                out.writeUTF(r.digest);
+            }
+        } finally {
+            out.close();
+        }
+        if (!tmp.renameTo(file)) {
+            // Windows can't rename over an existing file
+            file.delete();
+            if (!tmp.renameTo(file))
+                throw new IOException("Failed to rename "+tmp+" to "+file);
+        }
+        LOGGER.fine(String.format("Saved %d digests to %s. hit rate: %.1f%%", copy.size(), file, getHitRate()));
+    }
+
+    private void saveQuietly() {
+        try {
+            save();
+        } catch (IOException e) {
+            LOGGER.log(Level.WARNING, "Failed to save the digest cache to "+file, e);
+        }
+    }
+
+    private static long inode(File f) {
+        if (Functions.isWindows())  return -1;
+        try {
+            return PosixAPI.jnr().stat(f.getPath()).ino();
+        } catch (Throwable t) {
+            // no native support, or the file is gone
+            return -1;
+        }
+    }
+
+    private static DigestCache master;
+
+    /**
+     * Writes the cache for the files on the master to the disk, if it has been used. Called on shutdown.
+     */
+    public static void saveMaster() {
+        DigestCache c;
+        synchronized (DigestCache.class) {
+            c = master;
+        }
+        if (c!=null)
+            c.saveQuietly();
+    }
+
+    /**
+     * Gets the cache for the files on this JVM.
+     *
+     * @return
+     *      null if the cache is not available, such as on a slave that the master hasn't
+     *      set up the cache yet.
+     */
+    public static DigestCache get() {
+        if (DISABLED)   return null;
+        Channel ch = Channel.current();
+        if (ch!=null)
+            return ch.getProperty(DigestCache.class);
+
+        Jenkins j = Jenkins.getInstance();
+        if (j==null)    return null;
+        synchronized (DigestCache.class) {
+            if (master==null)
+                master = new DigestCache(new File(j.getRootDir(),FILE_NAME));
+            return master;
+        }
+    }
+
+    /**
+     * Obtains the statistics of the cache on the node at the other end of the channel.
+     *
+     * @return
+     *      {hits, misses, size}, or null if the cache is not in use there.
+     */
+    public static long[] getStatistics(VirtualChannel channel) throws IOException, InterruptedException {
+        return channel.call(new GetStatistics());
+    }
+
+    private static final class GetStatistics implements Callable<long[],IOException> {
+        public long[] call() throws IOException {
+            DigestCache c = get();
+            if (c==null)    return null;
+            return new long[]{c.getHits(),c.getMisses(),c.size()};
+        }
+        private static final long serialVersionUID = 1L;
+    }
+
+    /**
+     * Sets up the cache on slaves as they connect.
+     */
+    @Extension
+    public static class InstallerImpl extends ComputerListener {
+        @Override
+        public void preOnline(Computer c, Channel channel, FilePath root, TaskListener listener) {
+            if (DISABLED)   return;
+            try {
+                root.act(new Install());
+            } catch (Exception e) {
+                LOGGER.log(Level.WARNING, "Failed to set up the digest cache on "+c.getName(), e);
+            }
+        }
+    }
+
+    private static final class Install implements FileCallable<Void> {
+        public Void invoke(File root, VirtualChannel channel) throws IOException {
+            final Channel ch = Channel.current();
+            if (ch==null || ch.getProperty(DigestCache.class)!=null)  return null;
+
+            final DigestCache cache = new DigestCache(new File(root,FILE_NAME));
+            ch.setProperty(DigestCache.class,cache);
+            ch.addListener(new Channel.Listener() {
+                @Override
+                public void onClosed(Channel channel, IOException cause) {
+                    cache.saveQuietly();
+                }
+            });
+            return null;
+        }
+        private static final long serialVersionUID = 1L;
+    }
+
+    private static final int VERSION = 1;
+
+    /**
+     * Files modified within this many milliseconds aren't remembered.
+     */
+    private static final long RECENT = 2000;
+
+    /**
+     * Name of the file in the root directory of a node that the cache is persisted to.
+     */
+    public static final String FILE_NAME = "digestCache.bin";
+
+    /**
+     * Maximum number of files to remember.
+     */
+    public static int MAX_ENTRIES = Integer.getInteger(DigestCache.class.getName()+".maxEntries",100000);
+
+    /**
+     * Changes are written to the disk at most this often, in addition to when the slave disconnects
+     * or Jenkins shuts down.
+     */
+    public static long SAVE_INTERVAL = Long.getLong(DigestCache.class.getName()+".saveInterval",60*1000);
+
+    public static boolean DISABLED = Boolean.getBoolean(DigestCache.class.getName()+".disabled");
+
+    private static final Logger LOGGER = Logger.getLogger(DigestCache.class.getName());
+}
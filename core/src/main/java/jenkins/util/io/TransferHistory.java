@@ -0,0 +1,135 @@
+package jenkins.util.io;
+
+import hudson.FilePath;
+import hudson.FilePath.TarCompression;
+import hudson.remoting.Channel;
+
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Keeps track of recent {@link FilePath} transfers over a {@link Channel},
+ * and picks the compression for the next transfer based on the throughput they achieved.
+ *
+ * <p>
+ * Which compression is the fastest depends on the link and the CPUs on both ends:
+ * on a slow link it pays to compress hard, but on a fast LAN the compressing side
+ * becomes the bottleneck. So rather than guessing, {@link #select()} keeps a moving average
+ * of the throughput for each {@link TarCompression}, uses the best one, and every once in a while
+ * tries the others again in case the situation has changed.
+ *
+ * <p>
+ * One instance is attached to each channel as a {@linkplain Channel#getProperty(Object) channel property}.
+ *
+ * @since 1.519
+ */
+public final class TransferHistory {
+    private final LinkedList<TransferStatistics> recent = new LinkedList<TransferStatistics>();
+    private final Map<TarCompression,Sample> samples = new EnumMap<TarCompression,Sample>(TarCompression.class);
+    private int transfers;
+
+    private static final class Sample {
+        /**
+         * Exponential moving average of {@link TransferStatistics#getThroughput()}.
+         */
+        double throughput;
+        /**
+         * Value of {@link TransferHistory#transfers} when this was last updated.
+         */
+        int lastUpdated;
+    }
+
+    /**
+     * Records a completed transfer.
+     */
+    public synchronized void record(TransferStatistics s) {
+        recent.addFirst(s);
+        while (recent.size()>MAX_RECENT)
+            recent.removeLast();
+
+        // small transfers are dominated by the round-trip time, and tell us nothing about the codec
+        if (s.rawBytes<MIN_SAMPLE_SIZE)
+            return;
+
+        Sample sample = samples.get(s.compression);
+        if (sample==null) {
+            samples.put(s.compression, sample=new Sample());
+            sample.throughput = s.getThroughput();
+        } else {
+            sample.throughput = sample.throughput*(1-DECAY) + s.getThroughput()*DECAY;
+        }
+        sample.lastUpdated = transfers;
+    }
+
+    /**
+     * Picks the compression to use for the next transfer.
+     */
+    public synchronized TarCompression select() {
+        transfers++;
+
+        // try everything at least once
+        for (TarCompression c : CANDIDATES)
+            if (!samples.containsKey(c))
+                return c;
+
+        if (transfers%EXPLORE_INTERVAL==0) {
+            // revisit the one we haven't measured for the longest time
+            TarCompression oldest = null;
+            for (TarCompression c : CANDIDATES)
+                if (oldest==null || samples.get(c).lastUpdated<samples.get(oldest).lastUpdated)
+                    oldest = c;
+            return oldest;
+        }
+
+        TarCompression best = null;
+        for (TarCompression c : CANDIDATES)
+            if (best==null || samples.get(c).throughput>samples.get(best).throughput)
+                best = c;
+        return best;
+    }
+
+    /**
+     * Gets the recent transfers, newest first.
+     */
+    public synchronized List<TransferStatistics> getRecentTransfers() {
+        return new ArrayList<TransferStatistics>(recent);
+    }
+
+    /**
+     * Gets the average throughput in MB/s observed for the given compression, or -1 if it hasn't been measured.
+     */
+    public synchronized double getThroughput(TarCompression c) {
+        Sample s = samples.get(c);
+        return s==null ? -1 : s.throughput;
+    }
+
+    /**
+     * Gets the instance attached to the given channel, creating one if necessary.
+     */
+    public static TransferHistory of(Channel channel) {
+        TransferHistory h = (TransferHistory)channel.getProperty(TransferHistory.class);
+        if (h==null) {
+            // in the unlikely event of a race, we'd just lose a few samples
+            channel.setProperty(TransferHistory.class, h=new TransferHistory());
+        }
+        return h;
+    }
+
+    private static final TarCompression[] CANDIDATES = {TarCompression.GZIP, TarCompression.FAST, TarCompression.NONE};
+
+    /**
+     * Transfers smaller than this don't count toward the throughput.
+     */
+    public static long MIN_SAMPLE_SIZE = Long.getLong(TransferHistory.class.getName()+".minSampleSize",1024*1024);
+
+    /**
+     * Every this many transfers we try a compression that isn't currently the best.
+     */
+    public static int EXPLORE_INTERVAL = Integer.getInteger(TransferHistory.class.getName()+".exploreInterval",20);
+
+    private static final double DECAY = 0.3;
+    private static final int MAX_RECENT = 20;
+}
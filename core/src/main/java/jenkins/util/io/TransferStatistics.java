@@ -0,0 +1,71 @@
+package jenkins.util.io;
+
+import hudson.FilePath;
+import hudson.FilePath.TarCompression;
+
+import java.io.Serializable;
+
+/**
+ * Records how a single {@link FilePath} transfer between two nodes went.
+ *
+ * @since 1.519
+ * @see TransferHistory
+ */
+public final class TransferStatistics implements Serializable {
+    /**
+     * Compression used on the wire.
+     */
+    public final TarCompression compression;
+
+    /**
+     * Number of bytes before compression.
+     */
+    public final long rawBytes;
+
+    /**
+     * Number of bytes that actually went through the channel.
+     */
+    public final long wireBytes;
+
+    /**
+     * Time it took to complete the transfer, in milliseconds.
+     */
+    public final long duration;
+
+    /**
+     * When the transfer completed.
+     */
+    public final long timestamp;
+
+    public TransferStatistics(TarCompression compression, long rawBytes, long wireBytes, long duration) {
+        this.compression = compression;
+        this.rawBytes = rawBytes;
+        this.wireBytes = wireBytes;
+        this.duration = duration;
+        this.timestamp = System.currentTimeMillis();
+    }
+
+    /**
+     * Uncompressed data delivered per second, in MB/s.
+     * This is what the user experiences, and what the adaptive compression tries to maximize.
+     */
+    public double getThroughput() {
+        return rawBytes/1024.0/1024.0 * 1000 / Math.max(1,duration);
+    }
+
+    /**
+     * Uncompressed size divided by the compressed size. 1 if no compression happened.
+     */
+    public double getCompressionRatio() {
+        if (wireBytes==0)   return 1;
+        return (double)rawBytes/wireBytes;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%s: %d bytes (%d on the wire, ratio %.2f) in %dms, %.1f MB/s",
+                compression, rawBytes, wireBytes, getCompressionRatio(), duration, getThroughput());
+    }
+
+    private static final long serialVersionUID = 1L;
+}
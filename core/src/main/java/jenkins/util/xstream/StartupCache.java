@@ -0,0 +1,282 @@
+package jenkins.util.xstream;
+
+import com.thoughtworks.xstream.io.HierarchicalStreamReader;
+import com.thoughtworks.xstream.io.binary.BinaryStreamReader;
+import com.thoughtworks.xstream.io.binary.BinaryStreamWriter;
+import com.thoughtworks.xstream.io.copy.HierarchicalStreamCopier;
+import com.thoughtworks.xstream.io.xml.XppDriver;
+import hudson.XmlFile;
+import hudson.util.DaemonThreadFactory;
+import hudson.util.IOException2;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Snapshot of the configuration files read during the startup, so that the next startup doesn't have to parse
+ * the XML of the files that haven't changed since.
+ *
+ * <p>
+ * Enabled with {@code -Djenkins.model.Jenkins.startupCache=true}. Each file is kept as the XStream binary token stream
+ * of its XML (see {@link BinaryStreamWriter}), stamped with the size and the timestamp the file had when it was converted.
+ * While the cache is {@linkplain #activate(File) active}, {@link XmlFile} unmarshals the files whose stamps still
+ * match from the snapshot, and parses the others as usual. Once the startup completes, the snapshot is rewritten in the
+ * background from the files that were read, so changed files only get parsed once. Files modified within the last
+ * couple of seconds are left out, as they could still change without their size or timestamp telling.
+ *
+ * <p>
+ * The objects themselves still go through the converters, so whatever they do in {@code readResolve()} and
+ * the like happens just the same. What's saved is the XML parsing, character decoding and entity handling.
+ *
+ * @since 1.519
+ */
+public final class StartupCache {
+    private final File snapshot;
+
+    /**
+     * Entries of the previous snapshot, by the absolute path of the file.
+     */
+    private final Map<String,Entry> entries;
+
+    /**
+     * Files read while this cache was active, and their entries if they were restored from the snapshot.
+     * Those that weren't get converted when the snapshot is saved.
+     */
+    private final Map<File,Entry> touched = new ConcurrentHashMap<File,Entry>();
+
+    private final AtomicInteger hits = new AtomicInteger(), misses = new AtomicInteger();
+
+    private static final class Entry {
+        final long size;
+        final long timestamp;
+        final byte[] data;
+
+        Entry(long size, long timestamp, byte[] data) {
+            this.size = size;
+            this.timestamp = timestamp;
+            this.data = data;
+        }
+
+        boolean matches(File f) {
+            return f.length()==size && f.lastModified()==timestamp;
+        }
+    }
+
+    private StartupCache(File snapshot, Map<String,Entry> entries) {
+        this.snapshot = snapshot;
+        this.entries = entries;
+    }
+
+    /**
+     * Gets the reader of the given file from the snapshot, if the cache is active and the file hasn't changed.
+     *
+     * @return
+     *      null if the file needs to be parsed.
+     */
+    public static HierarchicalStreamReader reader(File f) {
+        StartupCache c = active;
+        return c==null ? null : c.read(f);
+    }
+
+    private HierarchicalStreamReader read(File f) {
+        Entry e = entries.get(f.getAbsolutePath());
+        if (e!=null && e.matches(f)) {
+            hits.incrementAndGet();
+            touched.put(f,e);
+            return new BinaryStreamReader(new ByteArrayInputStream(e.data));
+        }
+        misses.incrementAndGet();
+        touched.put(f,MISSING);
+        return null;
+    }
+
+    public int getHits() {
+        return hits.get();
+    }
+
+    public int getMisses() {
+        return misses.get();
+    }
+
+    /**
+     * Stops restoring files from the snapshot. The snapshot is left as it is.
+     */
+    public void deactivate() {
+        synchronized (StartupCache.class) {
+            if (active==this)
+                active = null;
+        }
+    }
+
+    /**
+     * Deactivates the cache, and rewrites the snapshot from the files read while it was active on a background thread.
+     */
+    public void saveInBackground() {
+        deactivate();
+        LOGGER.info(String.format("Restored %d configuration files from the startup cache, and parsed %d", hits.get(), misses.get()));
+        new DaemonThreadFactory().newThread(new Runnable() {
+            public void run() {
+                try {
+                    save();
+                } catch (IOException e) {
+                    LOGGER.log(Level.WARNING, "Failed to save the startup cache to "+snapshot, e);
+                }
+            }
+        }).start();
+    }
+
+    /**
+     * Rewrites the snapshot from the files read while this cache was active.
+     */
+    public void save() throws IOException {
+        long start = System.currentTimeMillis();
+        File tmp = new File(snapshot.getPath()+".tmp");
+        DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tmp)));
+        int n = 0;
+        try {
+            List<Map.Entry<File,Entry>> all = new ArrayList<Map.Entry<File,Entry>>(touched.entrySet());
+            out.writeInt(MAGIC);
+            out.writeInt(all.size());
+            for (Map.Entry<File,Entry> t : all) {
+                File f = t.getKey();
+                Entry e = t.getValue();
+                if (e==MISSING || !e.matches(f)) {
+                    try {
+                        e = convert(f);
+                        if (e!=null && Math.abs(System.currentTimeMillis()-e.timestamp)<RECENT) {
+                            LOGGER.log(Level.FINE, "Not snapshotting {0} since it was just modified", f);
+                            e = null;
+                        }
+                    } catch (IOException x) {
+                        LOGGER.log(Level.FINE, "Failed to convert "+f, x);
+                        e = null;
+                    } catch (RuntimeException x) {// mostly StreamException from malformed files
+                        LOGGER.log(Level.FINE, "Failed to convert "+f, x);
+                        e = null;
+                    }
+                }
+                if (e==null) {
+                    // keeps the count in the header right, and never matches
+                    out.writeUTF("");
+                    out.writeLong(-1);
+                    out.writeLong(-1);
+                    out.writeInt(0);
+                    continue;
+                }
+                out.writeUTF(f.getAbsolutePath());
+                out.writeLong(e.size);
+                out.writeLong(e.timestamp);
+                out.writeInt(e.data.length);
+                out.write(e.data);
+                n++;
+            }
+        } finally {
+            out.close();
+        }
+        snapshot.delete();  // for Windows
+        if (!tmp.renameTo(snapshot))
+            throw new IOException("Failed to rename "+tmp+" to "+snapshot);
+        LOGGER.fine(String.format("Saved %d files to the startup cache in %dms", n, System.currentTimeMillis()-start));
+    }
+
+    /**
+     * Converts the XML of the given file into the binary form.
+     */
+    private static Entry convert(File f) throws IOException {
+        // stamp first, so that a change made while converting shows up as a mismatch next time
+        long size = f.length(), timestamp = f.lastModified();
+        ByteArrayOutputStream buf = new ByteArrayOutputStream((int)size/2);
+        InputStream in = new BufferedInputStream(new FileInputStream(f));
+        try {
+            HierarchicalStreamReader r = DRIVER.createReader(in);
+            BinaryStreamWriter w = new BinaryStreamWriter(buf);
+            new HierarchicalStreamCopier().copy(r,w);
+            w.flush();
+        } finally {
+            in.close();
+        }
+        return new Entry(size, timestamp, buf.toByteArray());
+    }
+
+    /**
+     * Loads the snapshot from the given file, if there's one, and makes it the active cache.
+     * A missing or broken snapshot results in an empty cache, which fills the snapshot in when saved.
+     */
+    public static StartupCache activate(File snapshot) {
+        long start = System.currentTimeMillis();
+        Map<String,Entry> entries;
+        try {
+            entries = load(snapshot);
+        } catch (IOException e) {
+            LOGGER.log(Level.WARNING, "Failed to load the startup cache from "+snapshot, e);
+            entries = new ConcurrentHashMap<String,Entry>();
+        }
+        LOGGER.fine(String.format("Loaded %d files from the startup cache in %dms", entries.size(), System.currentTimeMillis()-start));
+
+        StartupCache c = new StartupCache(snapshot, entries);
+        synchronized (StartupCache.class) {
+            active = c;
+        }
+        return c;
+    }
+
+    private static Map<String,Entry> load(File snapshot) throws IOException {
+        Map<String,Entry> entries = new ConcurrentHashMap<String,Entry>();
+        if (!snapshot.exists())
+            return entries;
+        DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(snapshot)));
+        try {
+            if (in.readInt()!=MAGIC)
+                return entries;     // written by a different version
+            int n = in.readInt();
+            for (int i=0; i<n; i++) {
+                String path = in.readUTF();
+                long size = in.readLong();
+                long timestamp = in.readLong();
+                byte[] data = new byte[in.readInt()];
+                in.readFully(data);
+                if (path.length()>0)
+                    entries.put(path, new Entry(size, timestamp, data));
+            }
+            return entries;
+        } catch (RuntimeException e) {
+            throw new IOException2("Corrupt startup cache "+snapshot, e);
+        } finally {
+            in.close();
+        }
+    }
+
+    private static volatile StartupCache active;
+
+    private static final Entry MISSING = new Entry(-1,-1,new byte[0]);
+
+    /**
+     * Changes whenever the format of the snapshot does.
+     */
+    private static final int MAGIC = 0x4A534331;
+
+    /**
+     * Files modified within this many milliseconds aren't snapshotted.
+     */
+    private static final long RECENT = 2000;
+
+    private static final XppDriver DRIVER = new XppDriver();
+
+    private static final Logger LOGGER = Logger.getLogger(StartupCache.class.getName());
+}
@@ -18,3 +18,19 @@ table(class: 'bigtable') {
         td(style: right) {text(my.resourceLoadingCount)}
     }
 }
+def jars = my.jarCacheStatistics
+if (jars != null) {
+    h1(_('Jar Cache Statistics'))
+    table(class: 'bigtable') {
+        tr {
+            th _('Jars')
+            th _('Sent (KB)')
+            th _('Time (s)')
+        }
+        tr {
+            td(style: right) {text(jars.jars)}
+            td(style: right) {text(jars.transferred.intdiv(1024))}
+            td(style: right) {text(fmt.format(jars.duration / 1000))}
+        }
+    }
+}
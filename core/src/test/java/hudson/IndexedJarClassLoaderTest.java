@@ -0,0 +1,124 @@
+package hudson;
+
+import org.apache.commons.io.IOUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.net.JarURLConnection;
+import java.net.URL;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.jar.Attributes;
+import java.util.jar.JarEntry;
+import java.util.jar.JarFile;
+import java.util.jar.JarOutputStream;
+import java.util.jar.Manifest;
+import java.util.zip.CRC32;
+import java.util.zip.ZipEntry;
+
+import static org.junit.Assert.*;
+
+public class IndexedJarClassLoaderTest {
+    private File dir;
+    private IndexedJarClassLoader cl;
+
+    @Before
+    public void setUp() throws Exception {
+        dir = Util.createTempDir();
+
+        Manifest m = new Manifest();
+        m.getMainAttributes().put(Attributes.Name.MANIFEST_VERSION, "1.0");
+        m.getMainAttributes().put(Attributes.Name.IMPLEMENTATION_VERSION, "1.2");
+        File a = new File(dir, "a.jar");
+        JarOutputStream out = new JarOutputStream(new FileOutputStream(a), m);
+        out.putNextEntry(new JarEntry("org/example/A.class"));
+        out.write(UberClassLoaderBenchmark.emptyClass("org.example.A"));
+        out.putNextEntry(new JarEntry("org/example/hello.txt"));
+        out.write("deflated".getBytes("UTF-8"));
+        out.close();
+
+        // stored rather than deflated
+        File b = new File(dir, "b.jar");
+        out = new JarOutputStream(new FileOutputStream(b));
+        out.setMethod(ZipEntry.STORED);
+        byte[] data = "stored".getBytes("UTF-8");
+        JarEntry e = new JarEntry("org/example/hello.txt");
+        e.setSize(data.length);
+        CRC32 crc = new CRC32();
+        crc.update(data);
+        e.setCrc(crc.getValue());
+        out.putNextEntry(e);
+        out.write(data);
+        out.close();
+
+        File classes = new File(dir, "classes/net/example");
+        classes.mkdirs();
+        FileOutputStream d = new FileOutputStream(new File(classes, "D.class"));
+        d.write(UberClassLoaderBenchmark.emptyClass("net.example.D"));
+        d.close();
+
+        cl = new IndexedJarClassLoader(Arrays.asList(a, b, new File(dir, "classes")), getClass().getClassLoader());
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        cl.close();
+        Util.deleteRecursive(dir);
+    }
+
+    @Test
+    public void classes() throws Exception {
+        Class<?> c = cl.loadClass("org.example.A");
+        assertSame(cl, c.getClassLoader());
+        assertEquals("1.2", c.getPackage().getImplementationVersion());
+        assertEquals(new File(dir, "a.jar").toURI().toURL(), c.getProtectionDomain().getCodeSource().getLocation());
+        assertSame(cl, cl.loadClass("net.example.D").getClassLoader());
+        try {
+            cl.loadClass("org.example.Missing");
+            fail();
+        } catch (ClassNotFoundException e) {
+            // as expected
+        }
+        assertEquals(new HashSet<String>(Arrays.asList("org.example", "net.example")), cl.getPackageNames());
+    }
+
+    @Test
+    public void resources() throws Exception {
+        URL u = cl.getResource("org/example/hello.txt");
+        assertEquals("jar:"+new File(dir, "a.jar").toURI().toURL()+"!/org/example/hello.txt", u.toExternalForm());
+        assertSame(u, cl.getResource("org/example/hello.txt"));
+        assertEquals("deflated", IOUtils.toString(u.openStream(), "UTF-8"));
+        assertEquals("org/example/hello.txt", ((JarURLConnection)u.openConnection()).getEntryName());
+        // one JarFile per jar, closed with the class loader
+        JarFile jf = ((JarURLConnection)u.openConnection()).getJarFile();
+        assertSame(jf, ((JarURLConnection)u.openConnection()).getJarFile());
+        assertNotNull(jf.getEntry("org/example/hello.txt"));
+
+        List<URL> all = Collections.list(cl.getResources("org/example/hello.txt"));
+        assertEquals(2, all.size());
+        assertEquals("stored", IOUtils.toString(all.get(1).openStream(), "UTF-8"));
+
+        assertNull(cl.getResource("org/example/missing.txt"));
+        assertNotNull(cl.getResource("net/example/D.class"));
+    }
+
+    @Test
+    public void closeReleasesJars() throws Exception {
+        URL u = cl.getResource("org/example/hello.txt");
+        cl.close();
+        try {
+            u.openStream();
+            fail();
+        } catch (IOException e) {
+            // as expected
+        }
+        // which fails on Windows while the jar is still mapped
+        assertTrue(new File(dir, "a.jar").delete());
+    }
+}
@@ -0,0 +1,73 @@
+package hudson;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.jar.Attributes;
+import java.util.jar.JarEntry;
+import java.util.jar.JarOutputStream;
+import java.util.jar.Manifest;
+
+import static org.junit.Assert.*;
+
+public class PackageIndexTest {
+    private File dir;
+
+    @Before
+    public void setUp() throws Exception {
+        dir = Util.createTempDir();
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        Util.deleteRecursive(dir);
+    }
+
+    private File jar(String name, String classPath, String... entries) throws Exception {
+        Manifest m = new Manifest();
+        m.getMainAttributes().put(Attributes.Name.MANIFEST_VERSION, "1.0");
+        if (classPath!=null)
+            m.getMainAttributes().put(Attributes.Name.CLASS_PATH, classPath);
+        File f = new File(dir, name);
+        JarOutputStream out = new JarOutputStream(new FileOutputStream(f), m);
+        for (String e : entries) {
+            out.putNextEntry(new JarEntry(e));
+            out.closeEntry();
+        }
+        out.close();
+        return f;
+    }
+
+    @Test
+    public void jarsAndDirectories() throws Exception {
+        File a = jar("a.jar", "b.jar", "org/example/A.class", "org/example/sub/B.class", "org/example/index.jelly", "Top.class");
+        jar("b.jar", null, "com/example/C.class");
+        File classes = new File(dir, "classes");
+        new File(classes, "net/example").mkdirs();
+        new File(classes, "net/example/D.class").createNewFile();
+        new File(classes, "net/resources").mkdirs();
+        new File(classes, "net/resources/E.properties").createNewFile();
+
+        URLClassLoader cl = new URLClassLoader(new URL[]{a.toURI().toURL(), classes.toURI().toURL()});
+        assertEquals(new HashSet<String>(Arrays.asList("org.example", "org.example.sub", "", "com.example", "net.example")),
+                PackageIndex.of(cl));
+    }
+
+    @Test
+    public void unknownClassLoader() throws Exception {
+        assertNull(PackageIndex.of(new ClassLoader() {}));
+    }
+
+    @Test
+    public void packageOf() {
+        assertEquals("org.example", PackageIndex.packageOf("org.example.A$B"));
+        assertEquals("", PackageIndex.packageOf("Top"));
+    }
+}
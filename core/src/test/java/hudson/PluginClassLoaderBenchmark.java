@@ -0,0 +1,152 @@
+package hudson;
+
+import org.apache.tools.ant.AntClassLoader;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.jar.JarEntry;
+import java.util.jar.JarOutputStream;
+
+/**
+ * Compares {@link IndexedJarClassLoader} with the class loaders {@link ClassicPluginStrategy} uses otherwise:
+ * how long they take to be created and to load all the classes of a plugin, and how long resource lookups take.
+ *
+ * <p>
+ * The plugin is made up of jars of empty classes and small resources, like a plugin with lots of libraries
+ * in its {@code WEB-INF/lib}. Run {@link #main(String[])}:
+ *
+ * <pre>
+ * java hudson.PluginClassLoaderBenchmark [-jars N] [-classes N] [-iterations N]
+ * </pre>
+ */
+public class PluginClassLoaderBenchmark {
+    public int jars = 30;
+    public int classesPerJar = 200;
+    public int iterations = 5000;
+
+    private final List<File> paths = new ArrayList<File>();
+    private final List<String> classes = new ArrayList<String>();
+
+    public static void main(String[] args) throws Exception {
+        PluginClassLoaderBenchmark b = new PluginClassLoaderBenchmark();
+        for (int i=0; i<args.length; i++) {
+            String a = args[i];
+            if (a.equals("-jars"))              b.jars = Integer.parseInt(args[++i]);
+            else if (a.equals("-classes"))      b.classesPerJar = Integer.parseInt(args[++i]);
+            else if (a.equals("-iterations"))   b.iterations = Integer.parseInt(args[++i]);
+            else {
+                System.err.println("Unknown option "+a);
+                System.exit(1);
+            }
+        }
+        b.run();
+    }
+
+    private interface Factory {
+        ClassLoader create() throws Exception;
+    }
+
+    public void run() throws Exception {
+        File dir = Util.createTempDir();
+        try {
+            for (int i=0; i<jars; i++)
+                paths.add(createJar(new File(dir, "lib"+i+".jar"), "lib"+i));
+
+            System.out.printf("%d jars with %d classes and %d resources each, %d iterations%n", jars, classesPerJar, classesPerJar, iterations);
+            run("URLClassLoader", new Factory() {
+                public ClassLoader create() throws Exception {
+                    URL[] urls = new URL[paths.size()];
+                    for (int i=0; i<urls.length; i++)
+                        urls[i] = paths.get(i).toURI().toURL();
+                    return new URLClassLoader(urls, null);
+                }
+            });
+            run("AntClassLoader", new Factory() {
+                public ClassLoader create() throws Exception {
+                    AntClassLoader cl = new AntClassLoader(null, true);
+                    for (File f : paths)
+                        cl.addPathElement(f.getPath());
+                    return cl;
+                }
+            });
+            run("IndexedJarClassLoader", new Factory() {
+                public ClassLoader create() throws Exception {
+                    return new IndexedJarClassLoader(paths, null);
+                }
+            });
+        } finally {
+            Util.deleteRecursive(dir);
+        }
+    }
+
+    private void run(String name, Factory f) throws Exception {
+        System.out.println(name+":");
+
+        long start = System.nanoTime();
+        ClassLoader cl = f.create();
+        System.out.printf("  %-28s %10.1fms%n", "create", (System.nanoTime()-start)/1e6);
+
+        start = System.nanoTime();
+        for (String c : classes)
+            cl.loadClass(c);
+        System.out.printf("  %-28s %10.1fms%n", "load all classes", (System.nanoTime()-start)/1e6);
+
+        String hit = "lib"+(jars-1)+"/r"+(classesPerJar-1)+".properties";
+        String miss = "lib0/missing.properties";
+        report("getResource, hit", cl, hit, false);
+        report("getResource, miss", cl, miss, false);
+        report("getResourceAsStream", cl, hit, true);
+
+        if (cl instanceof Closeable)
+            ((Closeable)cl).close();
+        else if (cl instanceof AntClassLoader)
+            ((AntClassLoader)cl).cleanup();
+    }
+
+    private void report(String label, ClassLoader cl, String resource, boolean read) throws IOException {
+        for (int i=0; i<iterations/10; i++)     // warm up
+            lookup(cl, resource, read);
+        long start = System.nanoTime();
+        for (int i=0; i<iterations; i++)
+            lookup(cl, resource, read);
+        System.out.printf("  %-28s %10.1fus%n", label, (System.nanoTime()-start)/1000.0/iterations);
+    }
+
+    private void lookup(ClassLoader cl, String resource, boolean read) throws IOException {
+        if (!read) {
+            cl.getResource(resource);
+            return;
+        }
+        InputStream in = cl.getResourceAsStream(resource);
+        try {
+            while (in.read()>=0)
+                ;
+        } finally {
+            in.close();
+        }
+    }
+
+    private File createJar(File jar, String pkg) throws IOException {
+        JarOutputStream out = new JarOutputStream(new FileOutputStream(jar));
+        try {
+            for (int i=0; i<classesPerJar; i++) {
+                String name = pkg+".C"+i;
+                classes.add(name);
+                out.putNextEntry(new JarEntry(name.replace('.','/')+".class"));
+                out.write(UberClassLoaderBenchmark.emptyClass(name));
+                out.putNextEntry(new JarEntry(pkg+"/r"+i+".properties"));
+                out.write(("key=value "+i+"\n").getBytes("UTF-8"));
+            }
+        } finally {
+            out.close();
+        }
+        return jar;
+    }
+}
@@ -0,0 +1,109 @@
+package hudson;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.Socket;
+import java.net.SocketException;
+import java.net.SocketTimeoutException;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class TcpSlaveAgentListenerTest {
+    private int acceptRate, sourceAcceptRate, handshakeTimeout;
+    private TcpSlaveAgentListener listener;
+    private final List<Socket> sockets = new ArrayList<Socket>();
+
+    @Before
+    public void setUp() {
+        acceptRate = TcpSlaveAgentListener.ACCEPT_RATE;
+        sourceAcceptRate = TcpSlaveAgentListener.SOURCE_ACCEPT_RATE;
+        handshakeTimeout = TcpSlaveAgentListener.HANDSHAKE_TIMEOUT;
+        TcpSlaveAgentListener.ACCEPT_RATE = 0;
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        for (Socket s : sockets)
+            s.close();
+        if (listener!=null)
+            listener.shutdown();
+        TcpSlaveAgentListener.ACCEPT_RATE = acceptRate;
+        TcpSlaveAgentListener.SOURCE_ACCEPT_RATE = sourceAcceptRate;
+        TcpSlaveAgentListener.HANDSHAKE_TIMEOUT = handshakeTimeout;
+    }
+
+    private Socket connect() throws IOException {
+        Socket s = new Socket("localhost", listener.getPort());
+        sockets.add(s);
+        return s;
+    }
+
+    /**
+     * Checks if the listener closed the connection within the given time.
+     */
+    private static boolean isClosedWithin(Socket s, int timeout) throws IOException {
+        s.setSoTimeout(timeout);
+        InputStream in = s.getInputStream();
+        try {
+            return in.read()==-1;
+        } catch (SocketTimeoutException e) {
+            return false;
+        } catch (SocketException e) {
+            return true;    // reset
+        }
+    }
+
+    private void waitForHandshakes(int n) throws InterruptedException {
+        for (int i=0; i<100 && listener.getHandshakesInFlight()!=n; i++)
+            Thread.sleep(100);
+        assertEquals(n, listener.getHandshakesInFlight());
+    }
+
+    @Test
+    public void stalledHandshakeIsDropped() throws Exception {
+        TcpSlaveAgentListener.HANDSHAKE_TIMEOUT = 500;
+        listener = new TcpSlaveAgentListener(0);
+
+        Socket s = connect();
+        waitForHandshakes(1);
+        assertTrue(isClosedWithin(s, 10*1000));
+        waitForHandshakes(0);
+    }
+
+    @Test
+    public void connectionsBeyondSourceRateAreRejected() throws Exception {
+        TcpSlaveAgentListener.HANDSHAKE_TIMEOUT = 60*1000;
+        TcpSlaveAgentListener.SOURCE_ACCEPT_RATE = 1;
+        listener = new TcpSlaveAgentListener(0);
+
+        Socket first = connect();
+        Socket second = connect();
+        assertTrue(isClosedWithin(second, 10*1000));
+        assertFalse(isClosedWithin(first, 500));
+        assertEquals(1, listener.getHandshakesInFlight());
+    }
+
+    /**
+     * The listener takes connections no faster than {@link TcpSlaveAgentListener#ACCEPT_RATE}, but doesn't drop them.
+     */
+    @Test
+    public void acceptRateDelaysConnections() throws Exception {
+        TcpSlaveAgentListener.HANDSHAKE_TIMEOUT = 60*1000;
+        TcpSlaveAgentListener.ACCEPT_RATE = 1;
+        listener = new TcpSlaveAgentListener(0);
+
+        for (int i=0; i<3; i++)
+            connect();
+        Thread.sleep(500);
+        assertEquals(1, listener.getHandshakesInFlight());
+        waitForHandshakes(3);
+        for (Socket s : sockets)
+            assertFalse(isClosedWithin(s, 100));
+    }
+}
@@ -0,0 +1,138 @@
+package hudson;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.util.Collections;
+import java.util.jar.Attributes;
+import java.util.jar.JarEntry;
+import java.util.jar.JarOutputStream;
+import java.util.jar.Manifest;
+
+/**
+ * Measures how long {@link PluginManager#uberClassLoader} takes to load a class that one of the plugins has,
+ * and to fail to find one that none has, with and without {@link PluginManager#INDEXED_LOOKUP}.
+ *
+ * <p>
+ * The plugins are made up: each one is a jar of empty classes in a package of its own. Run {@link #main(String[])}:
+ *
+ * <pre>
+ * java hudson.UberClassLoaderBenchmark [-plugins N] [-classes N] [-iterations N]
+ * </pre>
+ */
+public class UberClassLoaderBenchmark {
+    public int plugins = 200;
+    public int classesPerPlugin = 100;
+    public int iterations = 2000;
+
+    public static void main(String[] args) throws Exception {
+        UberClassLoaderBenchmark b = new UberClassLoaderBenchmark();
+        for (int i=0; i<args.length; i++) {
+            String a = args[i];
+            if (a.equals("-plugins"))           b.plugins = Integer.parseInt(args[++i]);
+            else if (a.equals("-classes"))      b.classesPerPlugin = Integer.parseInt(args[++i]);
+            else if (a.equals("-iterations"))   b.iterations = Integer.parseInt(args[++i]);
+            else {
+                System.err.println("Unknown option "+a);
+                System.exit(1);
+            }
+        }
+        b.run();
+    }
+
+    public void run() throws Exception {
+        File dir = Util.createTempDir();
+        try {
+            PluginManager pm = new LocalPluginManager(dir);
+            for (int i=0; i<plugins; i++)
+                pm.activePlugins.add(createPlugin(pm, new File(dir, "plugin"+i+".jar"), "plugin"+i));
+            ClassLoader uber = pm.uberClassLoader;
+
+            System.out.printf("%d plugins with %d classes each, %d iterations%n", plugins, classesPerPlugin, iterations);
+            String first = "plugin0.C0", last = "plugin"+(plugins-1)+".C"+(classesPerPlugin-1);
+            String missingPackage = "nowhere.Missing", missingClass = "plugin"+(plugins/2)+".Missing";
+            boolean indexed = PluginManager.INDEXED_LOOKUP;
+            try {
+                for (boolean b : new boolean[]{false,true}) {
+                    PluginManager.INDEXED_LOOKUP = b;
+                    System.out.println(b ? "indexed lookup:" : "plain lookup:");
+                    report("  hit in the first plugin",         uber, first, true);
+                    report("  hit in the last plugin",          uber, last, true);
+                    report("  miss in an unknown package",      uber, missingPackage, false);
+                    report("  miss in a package of a plugin",   uber, missingClass, false);
+                }
+            } finally {
+                PluginManager.INDEXED_LOOKUP = indexed;
+            }
+        } finally {
+            Util.deleteRecursive(dir);
+        }
+    }
+
+    private void report(String label, ClassLoader cl, String name, boolean hit) throws Exception {
+        // warm up, which also builds the index
+        time(cl, name, hit, Math.max(1, iterations/10));
+        long ns = time(cl, name, hit, iterations);
+        System.out.printf("%-36s %8.1fus%n", label, ns/1000.0/iterations);
+    }
+
+    private long time(ClassLoader cl, String name, boolean hit, int n) throws Exception {
+        long start = System.nanoTime();
+        for (int i=0; i<n; i++) {
+            try {
+                cl.loadClass(name);
+                if (!hit)   throw new AssertionError(name+" shouldn't have been found");
+            } catch (ClassNotFoundException e) {
+                if (hit)    throw e;
+            }
+        }
+        return System.nanoTime()-start;
+    }
+
+    private PluginWrapper createPlugin(PluginManager pm, File jar, String pkg) throws IOException {
+        Manifest m = new Manifest();
+        m.getMainAttributes().put(Attributes.Name.MANIFEST_VERSION, "1.0");
+        m.getMainAttributes().putValue("Short-Name", pkg);
+        JarOutputStream out = new JarOutputStream(new FileOutputStream(jar), m);
+        try {
+            for (int i=0; i<classesPerPlugin; i++) {
+                String name = pkg+".C"+i;
+                out.putNextEntry(new JarEntry(name.replace('.','/')+".class"));
+                out.write(emptyClass(name));
+            }
+        } finally {
+            out.close();
+        }
+        ClassLoader cl = new URLClassLoader(new URL[]{jar.toURI().toURL()}, PluginManager.class.getClassLoader());
+        return new PluginWrapper(pm, jar, m, jar.toURI().toURL(), cl, new File(jar.getPath()+".disabled"),
+                Collections.<PluginWrapper.Dependency>emptyList(), Collections.<PluginWrapper.Dependency>emptyList());
+    }
+
+    /**
+     * Generates the class file of an empty public class.
+     */
+    static byte[] emptyClass(String name) throws IOException {
+        ByteArrayOutputStream buf = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(buf);
+        out.writeInt(0xCAFEBABE);
+        out.writeShort(0);      // minor version
+        out.writeShort(49);     // Java 5
+        out.writeShort(5);      // constant pool count, plus one
+        out.writeByte(7);   out.writeShort(2);                      // #1 this class
+        out.writeByte(1);   out.writeUTF(name.replace('.','/'));    // #2
+        out.writeByte(7);   out.writeShort(4);                      // #3 super class
+        out.writeByte(1);   out.writeUTF("java/lang/Object");       // #4
+        out.writeShort(0x21);   // ACC_PUBLIC|ACC_SUPER
+        out.writeShort(1);
+        out.writeShort(3);
+        out.writeShort(0);      // interfaces
+        out.writeShort(0);      // fields
+        out.writeShort(0);      // methods
+        out.writeShort(0);      // attributes
+        return buf.toByteArray();
+    }
+}
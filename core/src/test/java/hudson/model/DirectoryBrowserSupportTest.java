@@ -0,0 +1,42 @@
+package hudson.model;
+
+import org.junit.Test;
+
+import static hudson.model.DirectoryBrowserSupport.UNSATISFIABLE;
+import static org.junit.Assert.*;
+
+public class DirectoryBrowserSupportTest {
+    @Test public void parseRange() {
+        assertRange(0, 499, "bytes=0-499", 1000);
+        assertRange(500, 999, "bytes=500-", 1000);
+        assertRange(900, 999, "bytes=-100", 1000);
+        assertRange(0, 999, "bytes=-5000", 1000);
+        assertRange(990, 999, "bytes=990-5000", 1000);
+
+        assertSame(UNSATISFIABLE, DirectoryBrowserSupport.parseRange("bytes=1000-", 1000));
+        assertSame(UNSATISFIABLE, DirectoryBrowserSupport.parseRange("bytes=0-", 0));
+
+        // these are served in full
+        assertNull(DirectoryBrowserSupport.parseRange(null, 1000));
+        assertNull(DirectoryBrowserSupport.parseRange("bytes=0-10,20-30", 1000));
+        assertNull(DirectoryBrowserSupport.parseRange("bytes=10-5", 1000));
+        assertNull(DirectoryBrowserSupport.parseRange("bytes=abc", 1000));
+        assertNull(DirectoryBrowserSupport.parseRange("lines=1-2", 1000));
+    }
+
+    @Test public void matchesETag() {
+        assertTrue(DirectoryBrowserSupport.matchesETag("\"a-b\"", "\"a-b\""));
+        assertTrue(DirectoryBrowserSupport.matchesETag("\"x\", \"a-b\"", "\"a-b\""));
+        assertTrue(DirectoryBrowserSupport.matchesETag("*", "\"a-b\""));
+        assertFalse(DirectoryBrowserSupport.matchesETag("\"a-c\"", "\"a-b\""));
+        assertFalse(DirectoryBrowserSupport.matchesETag(null, "\"a-b\""));
+    }
+
+    private static void assertRange(long start, long end, String header, long length) {
+        long[] r = DirectoryBrowserSupport.parseRange(header, length);
+        assertNotNull(header, r);
+        assertEquals(header, 2, r.length);
+        assertEquals(header, start, r[0]);
+        assertEquals(header, end, r[1]);
+    }
+}
@@ -277,4 +277,22 @@ public class CronTabTest {
         assertEquals("[35, 56]", times.toString());
     }
 
+    @Test(timeout = 1000)
+    public void ceilNeverMatching() throws Exception {
+        try {
+            new CronTab("0 0 30 2 *").ceil(new GregorianCalendar(2013, 2, 21, 16, 21));
+            fail();
+        } catch (IllegalArgumentException x) {
+            // good
+        }
+        assertNull(CronTabList.create("0 0 30 2 *\n0 0 31 4 *").ceil(new GregorianCalendar(2013, 2, 21, 16, 21).getTimeInMillis()));
+        assertNull(CronTabList.create("").ceil(new GregorianCalendar(2013, 2, 21, 16, 21).getTimeInMillis()));
+    }
+
+    @Test public void listCeil() throws Exception {
+        long t = new GregorianCalendar(2013, 2, 21, 16, 21).getTimeInMillis();
+        compare(new GregorianCalendar(2013, 2, 21, 17, 0), CronTabList.create("0 17 * * *\n0 * * * *\n0 0 30 2 *").ceil(t));
+        compare(new GregorianCalendar(2013, 2, 21, 16, 21), CronTabList.create("0 17 * * *\n* * * * *").ceil(t));
+    }
+
 }
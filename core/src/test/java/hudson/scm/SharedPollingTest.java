@@ -0,0 +1,157 @@
+package hudson.scm;
+
+import hudson.model.AbstractProject;
+import hudson.model.TaskListener;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+
+import java.io.IOException;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+import static org.mockito.Matchers.*;
+import static org.mockito.Mockito.*;
+
+public class SharedPollingTest {
+    private SharedPolling polling;
+    private SCM scm;
+    private long maxAge, retention;
+    private ExecutorService executor;
+
+    private static final AbstractProject<?,?> PROJECT = null;
+    private static final SCMRevisionState REMOTE = new SCMRevisionState() {};
+
+    @Before
+    public void setUp() throws Exception {
+        polling = new SharedPolling();
+        scm = mock(SCM.class);
+        when(scm.queryRemoteRevision(any(AbstractProject.class), any(TaskListener.class))).thenReturn(REMOTE);
+        when(scm.compareRevisions(any(AbstractProject.class), any(SCMRevisionState.class), any(SCMRevisionState.class), any(TaskListener.class)))
+                .thenReturn(PollingResult.NO_CHANGES);
+        maxAge = SharedPolling.MAX_AGE;
+        retention = SharedPolling.RETENTION;
+        executor = Executors.newCachedThreadPool();
+        SharedPolling.setRequestTime(0);
+    }
+
+    @After
+    public void tearDown() {
+        SharedPolling.MAX_AGE = maxAge;
+        SharedPolling.RETENTION = retention;
+        SharedPolling.setRequestTime(-1);
+        executor.shutdownNow();
+    }
+
+    private PollingResult poll(String key) throws Exception {
+        return polling.poll(scm, key, PROJECT, TaskListener.NULL, SCMRevisionState.NONE);
+    }
+
+    @Test
+    public void sharesRecentQuery() throws Exception {
+        poll("repo");
+        poll("repo");
+        poll("other");
+
+        verify(scm, times(2)).queryRemoteRevision(any(AbstractProject.class), any(TaskListener.class));
+        verify(scm, times(3)).compareRevisions(PROJECT, REMOTE, SCMRevisionState.NONE, TaskListener.NULL);
+        assertEquals(1, polling.getRepository("repo").getQueries());
+        assertEquals(1, polling.getRepository("repo").getShared());
+        assertEquals(1, polling.getRepository("other").getQueries());
+    }
+
+    @Test
+    public void oldQueryIsNotShared() throws Exception {
+        SharedPolling.MAX_AGE = 0;
+        poll("repo");
+        Thread.sleep(10);
+        poll("repo");
+        assertEquals(2, polling.getRepository("repo").getQueries());
+        assertEquals(0, polling.getRepository("repo").getShared());
+    }
+
+    /**
+     * A post-commit hook needs a query that started after it came in.
+     */
+    @Test
+    public void requestedPollingDoesNotUseEarlierQuery() throws Exception {
+        poll("repo");
+        SharedPolling.setRequestTime(System.currentTimeMillis()+1000);
+        poll("repo");
+        assertEquals(2, polling.getRepository("repo").getQueries());
+    }
+
+    @Test
+    public void failedQueryIsNotShared() throws Exception {
+        when(scm.queryRemoteRevision(any(AbstractProject.class), any(TaskListener.class)))
+                .thenThrow(new IOException("unreachable"))
+                .thenReturn(REMOTE);
+        try {
+            poll("repo");
+            fail();
+        } catch (IOException e) {
+            assertEquals("unreachable", e.getMessage());
+        }
+        assertEquals(PollingResult.NO_CHANGES, poll("repo"));
+        assertEquals(2, polling.getRepository("repo").getQueries());
+        assertEquals(1, polling.getRepository("repo").getFailures());
+    }
+
+    /**
+     * A query that a hook replaced while it was running doesn't mark the new one as failed when it fails.
+     */
+    @Test
+    public void failureOfReplacedQueryDoesNotAffectNewQuery() throws Exception {
+        final CountDownLatch started = new CountDownLatch(1), release = new CountDownLatch(1);
+        when(scm.queryRemoteRevision(any(AbstractProject.class), any(TaskListener.class))).thenAnswer(new Answer<SCMRevisionState>() {
+            private int calls;
+            public SCMRevisionState answer(InvocationOnMock invocation) throws Throwable {
+                if (calls++>0)  return REMOTE;
+                started.countDown();
+                release.await();
+                throw new IOException("slow and broken");
+            }
+        });
+
+        Future<PollingResult> slow = executor.submit(new Callable<PollingResult>() {
+            public PollingResult call() throws Exception {
+                return poll("repo");
+            }
+        });
+        assertTrue(started.await(10, TimeUnit.SECONDS));
+
+        SharedPolling.setRequestTime(System.currentTimeMillis()+1000);
+        poll("repo");
+        release.countDown();
+        try {
+            slow.get(10, TimeUnit.SECONDS);
+            fail();
+        } catch (ExecutionException e) {
+            assertTrue(e.getCause() instanceof IOException);
+        }
+
+        SharedPolling.setRequestTime(0);
+        poll("repo");
+        assertEquals(2, polling.getRepository("repo").getQueries());
+        assertEquals(1, polling.getRepository("repo").getShared());
+    }
+
+    @Test
+    public void forgetsIdleRepositories() throws Exception {
+        SharedPolling.RETENTION = 0;
+        poll("old");
+        Thread.sleep(10);
+        poll("new");
+        assertNull(polling.getRepository("old"));
+        assertNotNull(polling.getRepository("new"));
+        assertEquals(1, polling.getRepositories().size());
+    }
+}
@@ -0,0 +1,193 @@
+package hudson.slaves;
+
+import hudson.model.Slave;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+import static org.mockito.Mockito.*;
+
+public class LaunchSchedulerTest {
+    private ThreadPoolExecutor pool;
+    private LaunchScheduler scheduler;
+    private long baseBackoff, maxBackoff;
+
+    @Before
+    public void setUp() {
+        pool = new ThreadPoolExecutor(2, 2, 60, TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>());
+        scheduler = new LaunchScheduler(pool);
+        baseBackoff = LaunchScheduler.BASE_BACKOFF;
+        maxBackoff = LaunchScheduler.MAX_BACKOFF;
+        LaunchScheduler.BASE_BACKOFF = 1000;
+        LaunchScheduler.MAX_BACKOFF = 60*1000;
+    }
+
+    @After
+    public void tearDown() {
+        pool.shutdownNow();
+        LaunchScheduler.BASE_BACKOFF = baseBackoff;
+        LaunchScheduler.MAX_BACKOFF = maxBackoff;
+    }
+
+    private static SlaveComputer computer(String name, boolean launchSupported) {
+        SlaveComputer c = mock(SlaveComputer.class);
+        when(c.getName()).thenReturn(name);
+        when(c.getNode()).thenReturn(mock(Slave.class));
+        when(c.isLaunchSupported()).thenReturn(launchSupported);
+        return c;
+    }
+
+    private static final Callable<Object> FAIL = new Callable<Object>() {
+        public Object call() throws Exception {
+            throw new IOException("failed to launch");
+        }
+    };
+
+    private static final Callable<Object> SUCCEED = new Callable<Object>() {
+        public Object call() {
+            return null;
+        }
+    };
+
+    /**
+     * Runs a launch forced by the user, which isn't delayed, and waits for it.
+     */
+    private void launch(SlaveComputer c, Callable<Object> task) throws Exception {
+        try {
+            scheduler.submit(c, task, true).get(10, TimeUnit.SECONDS);
+        } catch (ExecutionException e) {
+            // as the task says
+        }
+    }
+
+    @Test
+    public void backoffGrows() throws Exception {
+        LaunchScheduler.MAX_BACKOFF = 5000;
+        SlaveComputer c = computer("a", true);
+        for (int i=1; i<=5; i++) {
+            long before = System.currentTimeMillis();
+            launch(c, FAIL);
+            long after = System.currentTimeMillis();
+
+            LaunchScheduler.NodeRecord r = scheduler.getRecord("a");
+            assertEquals(i, r.getFailures());
+            long nominal = Math.min(5000, 1000L<<(i-1));
+            assertTrue("delay #"+i, r.getNotBefore()>=before+nominal/2);
+            assertTrue("delay #"+i, r.getNotBefore()<=after+nominal*3/2);
+        }
+    }
+
+    @Test
+    public void successResetsBackoff() throws Exception {
+        SlaveComputer c = computer("a", true);
+        launch(c, FAIL);
+        launch(c, FAIL);
+        assertEquals(2, scheduler.getRecord("a").getFailures());
+
+        launch(c, SUCCEED);
+        assertEquals(0, scheduler.getRecord("a").getFailures());
+        assertEquals(0, scheduler.getRecord("a").getNotBefore());
+    }
+
+    /**
+     * A slave that connected by itself, such as through JNLP, is launched right away the next time.
+     */
+    @Test
+    public void onlineResetsBackoff() throws Exception {
+        SlaveComputer c = computer("a", true);
+        launch(c, FAIL);
+        assertTrue(scheduler.getRecord("a").getNotBefore()>System.currentTimeMillis());
+
+        scheduler.onOnline(c);
+        assertEquals(0, scheduler.getRecord("a").getFailures());
+        assertEquals(0, scheduler.getRecord("a").getNotBefore());
+    }
+
+    /**
+     * Launchers that can't launch, like JNLP, always end without a channel, which isn't a failure.
+     */
+    @Test
+    public void noBackoffWhenLaunchIsNotSupported() throws Exception {
+        SlaveComputer c = computer("jnlp", false);
+        for (int i=0; i<3; i++)
+            launch(c, FAIL);
+        assertNull(scheduler.getRecord("jnlp"));
+    }
+
+    @Test
+    public void delayedLaunchWaitsAndCanBeCancelled() throws Exception {
+        SlaveComputer c = computer("a", true);
+        launch(c, FAIL);
+
+        AtomicInteger runs = new AtomicInteger();
+        Future<?> f = scheduler.submit(c, counting(runs), false);
+        assertTrue(scheduler.isWaiting(f));
+        assertEquals(1, scheduler.getBacklog());
+        assertEquals(0, runs.get());
+
+        assertTrue(scheduler.cancelIfWaiting(f));
+        assertTrue(f.isCancelled());
+        assertFalse(scheduler.isWaiting(f));
+        assertEquals(0, scheduler.getBacklog());
+        assertEquals(0, runs.get());
+        assertEquals(1, scheduler.getRecord("a").getFailures());
+    }
+
+    /**
+     * Cancelling a launch that's running, say by a forced reconnect, says nothing about the node.
+     */
+    @Test
+    public void cancelledLaunchIsNotAFailure() throws Exception {
+        SlaveComputer c = computer("a", true);
+        final CountDownLatch started = new CountDownLatch(1), finished = new CountDownLatch(1);
+        Future<?> f = scheduler.submit(c, new Callable<Object>() {
+            public Object call() throws Exception {
+                try {
+                    started.countDown();
+                    Thread.sleep(60*1000);
+                    return null;
+                } finally {
+                    finished.countDown();
+                }
+            }
+        }, true);
+        assertTrue(started.await(10, TimeUnit.SECONDS));
+        assertFalse(scheduler.cancelIfWaiting(f));
+        assertTrue(f.cancel(true));
+        assertTrue(finished.await(10, TimeUnit.SECONDS));
+
+        assertNull(scheduler.getRecord("a"));
+        assertEquals(0, scheduler.getRunning());
+    }
+
+    @Test
+    public void removedNodesAreForgotten() throws Exception {
+        SlaveComputer c = computer("a", true);
+        launch(c, FAIL);
+        Future<?> f = scheduler.submit(c, SUCCEED, false);
+
+        scheduler.onRemoved(c);
+        assertNull(scheduler.getRecord("a"));
+        assertTrue(f.isCancelled());
+    }
+
+    private static Callable<Object> counting(final AtomicInteger runs) {
+        return new Callable<Object>() {
+            public Object call() {
+                runs.incrementAndGet();
+                return null;
+            }
+        };
+    }
+}
@@ -0,0 +1,310 @@
+package hudson.slaves;
+
+import hudson.model.Label;
+import hudson.model.LoadStatistics;
+import hudson.model.labels.LabelAtom;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Replays a trace of the jobs that went through the queue against {@link ProvisioningStrategy}s,
+ * with a simulated cloud, to compare how long the jobs wait and how much capacity gets provisioned.
+ *
+ * <p>
+ * A trace has one job per line, with the second it arrived in the queue, the seconds it took to build,
+ * and optionally its label, separated by spaces. Lines starting with '#' are ignored. The static executors
+ * take jobs of any label, while the nodes the cloud provisions for a label only take jobs of that label.
+ * Run {@link #main(String[])} with trace files to compare the strategies that come with Jenkins:
+ *
+ * <pre>
+ * java hudson.slaves.ProvisioningSimulator [-static N] [-lead SECONDS] [-executors N] [-idle SECONDS] trace...
+ * </pre>
+ */
+public class ProvisioningSimulator {
+    /**
+     * Executors that are always there.
+     */
+    public int staticExecutors = 0;
+    /**
+     * Executors on each node the cloud provisions.
+     */
+    public int executorsPerNode = 1;
+    /**
+     * How long the cloud takes to provision a node, in milliseconds.
+     */
+    public long leadTime = 3*60*1000;
+    /**
+     * How long provisioned nodes stay idle before they're terminated, in milliseconds.
+     */
+    public long idleTimeout = 10*60*1000;
+    /**
+     * How often {@link NodeProvisioner} reviews the load, in milliseconds.
+     */
+    public long tick = 10*1000;
+
+    public static final class Job {
+        /**
+         * When the job arrives, and how long it builds, in milliseconds.
+         */
+        public final long arrival, duration;
+        /**
+         * Label the job is tied to, or null.
+         */
+        public final String label;
+
+        public Job(long arrival, long duration) {
+            this(arrival, duration, null);
+        }
+
+        public Job(long arrival, long duration, String label) {
+            this.arrival = arrival;
+            this.duration = duration;
+            this.label = label;
+        }
+    }
+
+    public static final class Result {
+        public final String strategy;
+        public int jobs;
+        /**
+         * Total and longest milliseconds jobs spent in the queue.
+         */
+        public long totalWait, maxWait;
+        /**
+         * Number of nodes provisioned, in total and for each label.
+         */
+        public int provisioned;
+        public final Map<String,Integer> provisionedFor = new HashMap<String,Integer>();
+        /**
+         * Executor-milliseconds the provisioned nodes were up, which is what they cost.
+         */
+        public long cloudTime;
+
+        Result(String strategy) {
+            this.strategy = strategy;
+        }
+
+        public long getAverageWait() {
+            return jobs==0 ? 0 : totalWait/jobs;
+        }
+
+        public int getProvisioned(String label) {
+            Integer n = provisionedFor.get(label);
+            return n==null ? 0 : n;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%-40s avg wait %5ds, max wait %5ds, %3d nodes provisioned, %6d executor-minutes",
+                    strategy, getAverageWait()/1000, maxWait/1000, provisioned, cloudTime/60000);
+        }
+    }
+
+    private static final class CloudNode {
+        int busy;
+        long idleSince;
+
+        CloudNode(long now) {
+            idleSince = now;
+        }
+    }
+
+    private static final class Build {
+        final Job job;
+        final long end;
+        final CloudNode node;  // null if on a static executor
+        final LabelLoad load;
+
+        Build(Job job, long end, CloudNode node, LabelLoad load) {
+            this.job = job;
+            this.end = end;
+            this.node = node;
+            this.load = load;
+        }
+    }
+
+    /**
+     * What goes on for one label.
+     */
+    private final class LabelLoad {
+        final String name;
+        final Label label;
+        final List<CloudNode> nodes = new ArrayList<CloudNode>();
+        final List<Long> planned = new ArrayList<Long>();
+        float idleEMA = staticExecutors, queueEMA = 0, plannedEMA = 0;
+        int arrivals, completions, queueLength;
+        long completedTime;
+
+        LabelLoad(String name) {
+            this.name = name;
+            this.label = name==null ? null : new LabelAtom(name);
+        }
+
+        int busy() {
+            int n = 0;
+            for (CloudNode c : nodes)
+                n += c.busy;
+            return n;
+        }
+    }
+
+    public Result run(ProvisioningStrategy strategy, List<Job> trace) {
+        List<Job> jobs = new ArrayList<Job>(trace);
+        Collections.sort(jobs, new Comparator<Job>() {
+            public int compare(Job a, Job b) {
+                return a.arrival<b.arrival ? -1 : a.arrival>b.arrival ? 1 : 0;
+            }
+        });
+
+        Result r = new Result(strategy.getClass().getSimpleName());
+        Map<String,LabelLoad> loads = new LinkedHashMap<String,LabelLoad>();
+        for (Job j : jobs)
+            if (!loads.containsKey(j.label))
+                loads.put(j.label, new LabelLoad(j.label));
+        LinkedList<Job> queue = new LinkedList<Job>();
+        List<Build> builds = new ArrayList<Build>();
+        float decay = LoadStatistics.DECAY;
+        int staticBusy = 0;
+        int next = 0;
+
+        for (long t=0; next<jobs.size() || !queue.isEmpty() || !builds.isEmpty(); t+=tick) {
+            while (next<jobs.size() && jobs.get(next).arrival<=t) {
+                Job j = jobs.get(next++);
+                queue.add(j);
+                loads.get(j.label).arrivals++;
+            }
+
+            for (Iterator<Build> itr = builds.iterator(); itr.hasNext();) {
+                Build b = itr.next();
+                if (b.end>t)    continue;
+                itr.remove();
+                b.load.completions++;
+                b.load.completedTime += b.job.duration;
+                if (b.node==null)
+                    staticBusy--;
+                else if (--b.node.busy==0)
+                    b.node.idleSince = t;
+            }
+
+            for (LabelLoad l : loads.values()) {
+                for (Iterator<Long> itr = l.planned.iterator(); itr.hasNext();) {
+                    long started = itr.next();
+                    if (started+leadTime>t)     continue;
+                    itr.remove();
+                    l.nodes.add(new CloudNode(t));
+                    strategy.onProvisioned("cloud", l.label, executorsPerNode, t-started, true);
+                }
+            }
+
+            // jobs that can't start yet don't hold up those of other labels behind them
+            for (Iterator<Job> itr = queue.iterator(); itr.hasNext();) {
+                Job j = itr.next();
+                LabelLoad l = loads.get(j.label);
+                CloudNode n = null;
+                if (staticBusy>=staticExecutors) {
+                    for (CloudNode c : l.nodes)
+                        if (c.busy<executorsPerNode) {
+                            n = c;
+                            break;
+                        }
+                    if (n==null)    continue;  // all busy
+                    n.busy++;
+                } else {
+                    staticBusy++;
+                }
+                itr.remove();
+                long wait = t-j.arrival;
+                r.jobs++;
+                r.totalWait += wait;
+                r.maxWait = Math.max(r.maxWait, wait);
+                builds.add(new Build(j, t+j.duration, n, l));
+            }
+
+            for (LabelLoad l : loads.values()) {
+                for (Iterator<CloudNode> itr = l.nodes.iterator(); itr.hasNext();) {
+                    CloudNode n = itr.next();
+                    if (n.busy==0 && t-n.idleSince>=idleTimeout)
+                        itr.remove();
+                }
+                l.queueLength = 0;
+            }
+            for (Job j : queue)
+                loads.get(j.label).queueLength++;
+
+            for (LabelLoad l : loads.values()) {
+                // the static executors are shared by all the labels, like the executors of a node with several labels
+                int total = staticExecutors+l.nodes.size()*executorsPerNode;
+                int idle = total-staticBusy-l.busy();
+                int plannedCapacity = l.planned.size()*executorsPerNode;
+                l.idleEMA = l.idleEMA*decay + idle*(1-decay);
+                l.queueEMA = l.queueEMA*decay + l.queueLength*(1-decay);
+                l.plannedEMA = l.plannedEMA*decay + plannedCapacity*(1-decay);
+
+                int n = strategy.apply(new ProvisioningStrategy.State(l.label, t, idle, total, l.queueLength, plannedCapacity, l.arrivals,
+                        l.completions, l.completedTime, l.idleEMA, l.queueEMA, l.plannedEMA, Collections.singletonList("cloud")));
+                l.arrivals = l.completions = 0;
+                l.completedTime = 0;
+                for (int i=0; i<n; i+=executorsPerNode) {
+                    l.planned.add(t);
+                    r.provisioned++;
+                    r.provisionedFor.put(l.name, r.getProvisioned(l.name)+1);
+                }
+
+                r.cloudTime += l.nodes.size()*executorsPerNode*tick;
+            }
+        }
+        return r;
+    }
+
+    /**
+     * Reads a trace file.
+     */
+    public static List<Job> load(File trace) throws IOException {
+        List<Job> r = new ArrayList<Job>();
+        BufferedReader in = new BufferedReader(new FileReader(trace));
+        try {
+            String line;
+            while ((line=in.readLine())!=null) {
+                line = line.trim();
+                if (line.length()==0 || line.startsWith("#"))  continue;
+                String[] tokens = line.split("\\s+");
+                r.add(new Job((long)(Double.parseDouble(tokens[0])*1000), (long)(Double.parseDouble(tokens[1])*1000),
+                        tokens.length>2 ? tokens[2] : null));
+            }
+        } finally {
+            in.close();
+        }
+        return r;
+    }
+
+    public static void main(String[] args) throws IOException {
+        ProvisioningSimulator sim = new ProvisioningSimulator();
+        List<File> traces = new ArrayList<File>();
+        for (int i=0; i<args.length; i++) {
+            if (args[i].equals("-static"))          sim.staticExecutors = Integer.parseInt(args[++i]);
+            else if (args[i].equals("-executors"))  sim.executorsPerNode = Integer.parseInt(args[++i]);
+            else if (args[i].equals("-lead"))       sim.leadTime = Long.parseLong(args[++i])*1000;
+            else if (args[i].equals("-idle"))       sim.idleTimeout = Long.parseLong(args[++i])*1000;
+            else                                    traces.add(new File(args[i]));
+        }
+        for (File f : traces) {
+            System.out.println(f);
+            List<Job> trace = load(f);
+            // fresh instances, so that they don't carry over what they learned from the previous trace
+            System.out.println("  "+sim.run(new ClassicProvisioningStrategy(), trace));
+            System.out.println("  "+sim.run(new PredictiveProvisioningStrategy(), trace));
+        }
+    }
+}
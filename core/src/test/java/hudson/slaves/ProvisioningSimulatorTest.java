@@ -0,0 +1,102 @@
+package hudson.slaves;
+
+import hudson.slaves.ProvisioningSimulator.Job;
+import hudson.slaves.ProvisioningSimulator.Result;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class ProvisioningSimulatorTest {
+    /**
+     * The load grows steadily for an hour, so that more and more nodes are needed.
+     */
+    @Test public void ramp() {
+        List<Job> trace = new ArrayList<Job>();
+        double t = 0;
+        while (t<3600) {
+            trace.add(new Job((long)(t*1000), 5*60*1000));
+            t += Math.max(15, 300-t/12);     // from one job every 5 minutes to one every 15 seconds
+        }
+
+        ProvisioningSimulator sim = new ProvisioningSimulator();
+        sim.staticExecutors = 2;
+        sim.leadTime = 3*60*1000;
+        Result classic = sim.run(new ClassicProvisioningStrategy(), trace);
+        Result predictive = sim.run(new PredictiveProvisioningStrategy(), trace);
+
+        assertEquals(trace.size(), predictive.jobs);
+        assertTrue(predictive+" vs "+classic, predictive.getAverageWait()<classic.getAverageWait());
+        assertTrue(predictive+" vs "+classic, predictive.maxWait<classic.maxWait);
+        // getting there sooner shouldn't cost much more
+        assertTrue(predictive+" vs "+classic, predictive.cloudTime<=classic.cloudTime*3/2);
+    }
+
+    /**
+     * A burst of short jobs on top of a light load, which the static executors work off
+     * long before any node the cloud provisions could come up.
+     */
+    @Test public void burstWorkedOffByStaticExecutors() {
+        List<Job> trace = new ArrayList<Job>();
+        for (int t=0; t<3600; t+=60)
+            trace.add(new Job(t*1000, 2*60*1000));
+        for (int i=0; i<40; i++)
+            trace.add(new Job(1800*1000, 30*1000));
+
+        ProvisioningSimulator sim = new ProvisioningSimulator();
+        sim.staticExecutors = 10;
+        sim.leadTime = 5*60*1000;
+        Result predictive = sim.run(new PredictiveProvisioningStrategy(), trace);
+
+        assertEquals(trace.size(), predictive.jobs);
+        assertEquals(predictive.toString(), 0, predictive.provisioned);
+        assertEquals(0, predictive.cloudTime);
+    }
+
+    /**
+     * A burst that does need more capacity.
+     */
+    @Test public void burst() {
+        List<Job> trace = new ArrayList<Job>();
+        for (int t=0; t<3600; t+=60)
+            trace.add(new Job(t*1000, 60*1000));
+        for (int i=0; i<20; i++)
+            trace.add(new Job(1800*1000, 60*1000));
+
+        ProvisioningSimulator sim = new ProvisioningSimulator();
+        sim.staticExecutors = 2;
+        sim.leadTime = 5*60*1000;
+        Result classic = sim.run(new ClassicProvisioningStrategy(), trace);
+        Result predictive = sim.run(new PredictiveProvisioningStrategy(), trace);
+
+        assertEquals(trace.size(), predictive.jobs);
+        assertTrue(predictive+" vs "+classic, predictive.provisioned<=classic.provisioned);
+        assertTrue(predictive+" vs "+classic, predictive.getAverageWait()<=classic.getAverageWait());
+    }
+
+    /**
+     * Two labels share the static executors. One keeps them busy, while the other only has
+     * a job now and then and a small burst, which shouldn't get nodes for the executors
+     * the first label keeps busy.
+     */
+    @Test public void labelsSharingExecutors() {
+        List<Job> trace = new ArrayList<Job>();
+        for (int t=0; t<2*3600; t+=60)
+            trace.add(new Job(t*1000L, 4*60*1000, "busy"));
+        for (int t=0; t<2*3600; t+=20*60)
+            trace.add(new Job(t*1000L, 60*1000, "rare"));
+        for (int i=0; i<5; i++)
+            trace.add(new Job(3600*1000L, 60*1000, "rare"));
+
+        ProvisioningSimulator sim = new ProvisioningSimulator();
+        sim.staticExecutors = 4;
+        Result classic = sim.run(new ClassicProvisioningStrategy(), trace);
+        Result predictive = sim.run(new PredictiveProvisioningStrategy(), trace);
+
+        assertEquals(trace.size(), predictive.jobs);
+        assertTrue(predictive+" vs "+classic, predictive.getProvisioned("rare")<=classic.getProvisioned("rare"));
+        assertTrue(predictive+" vs "+classic, predictive.cloudTime<=2*classic.cloudTime);
+    }
+}
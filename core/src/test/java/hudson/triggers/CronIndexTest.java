@@ -0,0 +1,146 @@
+package hudson.triggers;
+
+import antlr.ANTLRException;
+import hudson.model.AbstractProject;
+import hudson.model.Item;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Calendar;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.*;
+import static org.mockito.Mockito.*;
+
+public class CronIndexTest {
+    private CronIndex index;
+    private AbstractProject<?,?> a, b;
+    private long now;
+
+    @Before
+    public void setUp() {
+        index = new CronIndex();
+        a = mock(AbstractProject.class);
+        b = mock(AbstractProject.class);
+        Calendar cal = Calendar.getInstance();
+        cal.set(2013, Calendar.MAY, 1, 10, 30, 0);
+        cal.set(Calendar.MILLISECOND, 0);
+        now = cal.getTimeInMillis();
+    }
+
+    private static Trigger<Item> trigger(String spec) throws ANTLRException {
+        return new Trigger<Item>(spec) {};
+    }
+
+    private static Map<Trigger<?>,AbstractProject<?,?>> live(Object... triggersAndProjects) {
+        Map<Trigger<?>,AbstractProject<?,?>> r = new IdentityHashMap<Trigger<?>,AbstractProject<?,?>>();
+        for (int i=0; i<triggersAndProjects.length; i+=2)
+            r.put((Trigger<?>)triggersAndProjects[i], (AbstractProject<?,?>)triggersAndProjects[i+1]);
+        return r;
+    }
+
+    private static List<Trigger<?>> triggers(List<CronIndex.Entry> entries) {
+        List<Trigger<?>> r = new ArrayList<Trigger<?>>();
+        for (CronIndex.Entry e : entries)
+            r.add(e.trigger);
+        return r;
+    }
+
+    private static final long MINUTE = 60*1000, HOUR = 60*MINUTE;
+
+    @Test
+    public void onlyDueTriggersArePolled() throws Exception {
+        Trigger<Item> everyMinute = trigger("* * * * *"), hourly = trigger("0 * * * *");
+        index.add(a, everyMinute, now);
+        index.add(b, hourly, now);
+
+        List<CronIndex.Entry> due = index.pollDue(now);
+        assertEquals(1, due.size());
+        assertSame(everyMinute, due.get(0).trigger);
+        assertSame(a, due.get(0).project);
+        assertEquals(now, due.get(0).next);
+        assertEquals(1, index.size());
+
+        assertTrue(index.pollDue(now+29*MINUTE).isEmpty());
+        due = index.pollDue(now+30*MINUTE);
+        assertEquals(1, due.size());
+        assertSame(hourly, due.get(0).trigger);
+        assertEquals(0, index.size());
+    }
+
+    @Test
+    public void triggerAddedAgainIsPolledOnce() throws Exception {
+        Trigger<Item> t = trigger("* * * * *");
+        index.add(a, t, now);
+        index.add(a, t, now+MINUTE);
+        assertEquals(1, index.size());
+
+        assertTrue(index.pollDue(now).isEmpty());
+        List<CronIndex.Entry> due = index.pollDue(now+MINUTE);
+        assertEquals(1, due.size());
+        assertEquals(now+MINUTE, due.get(0).next);
+        assertTrue(index.pollDue(now+HOUR).isEmpty());
+    }
+
+    @Test
+    public void triggerThatNeverMatchesIsNotIndexed() throws Exception {
+        Trigger<Item> t = trigger("* * * * *");
+        index.add(a, t, now);
+        index.add(a, trigger(""), now);
+        assertEquals(1, index.size());
+
+        t.tabs = null;
+        index.add(a, t, now);
+        assertEquals(0, index.size());
+    }
+
+    @Test
+    public void removeDropsTriggersOfProject() throws Exception {
+        Trigger<Item> t1 = trigger("* * * * *"), t2 = trigger("* * * * *"), t3 = trigger("* * * * *");
+        index.add(a, t1, now);
+        index.add(a, t2, now);
+        index.add(b, t3, now);
+
+        index.remove(a);
+        List<CronIndex.Entry> due = index.pollDue(now);
+        assertEquals(1, due.size());
+        assertSame(t3, due.get(0).trigger);
+    }
+
+    @Test
+    public void resyncAddsMissingAndDropsUnusedTriggers() throws Exception {
+        Trigger<Item> kept = trigger("* * * * *"), dropped = trigger("* * * * *"), missing = trigger("* * * * *");
+        index.add(a, kept, now);
+        index.add(a, dropped, now);
+
+        index.resync(index.snapshot(), live(kept, a, missing, b), now);
+        assertEquals(2, index.size());
+        List<Trigger<?>> due = triggers(index.pollDue(now));
+        assertTrue(due.contains(kept));
+        assertTrue(due.contains(missing));
+    }
+
+    /**
+     * A trigger that gets added while the projects are being looked at stays, even if it wasn't seen.
+     */
+    @Test
+    public void resyncKeepsTriggersAddedMeanwhile() throws Exception {
+        Trigger<Item> old = trigger("* * * * *"), added = trigger("* * * * *"), readded = trigger("* * * * *");
+        index.add(a, old, now);
+        index.add(a, readded, now);
+
+        Map<Trigger<?>,CronIndex.Entry> before = index.snapshot();
+        index.add(b, added, now);
+        index.add(a, readded, now);
+        index.resync(before, Collections.<Trigger<?>,AbstractProject<?,?>>emptyMap(), now);
+
+        assertEquals(2, index.size());
+        List<Trigger<?>> due = triggers(index.pollDue(now));
+        assertTrue(due.contains(added));
+        assertTrue(due.contains(readded));
+    }
+}
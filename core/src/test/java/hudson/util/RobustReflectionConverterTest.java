@@ -26,6 +26,7 @@ package hudson.util;
 import junit.framework.TestCase;
 import com.thoughtworks.xstream.XStream;
 import com.thoughtworks.xstream.converters.ConversionException;
+import com.thoughtworks.xstream.core.JVM;
 import java.lang.annotation.Retention;
 import java.lang.annotation.RetentionPolicy;
 import java.util.logging.Level;
@@ -96,6 +97,51 @@ public class RobustReflectionConverterTest extends TestCase {
         Moonwalk s = (Moonwalk) xs.fromXML("<" + prefix1 + "Moonwalk plugin='p2'><lover class='" + prefix2 + "Billy' plugin='p3'/></" + prefix1 + "Moonwalk>");
         assertEquals(Billy.class, s.lover.getClass());
     }
+
+    public void testRepeatedUse() {
+        XStream2 xs = new XStream2();
+        for (int i=0; i<3; i++) {
+            Point p = read(xs);
+            assertEquals(1, p.x);
+            assertEquals(2, p.y);
+            Point q = (Point) xs.fromXML(xs.toXML(p));
+            assertEquals(1, q.x);
+            assertEquals(2, q.y);
+        }
+    }
+
+    public void testMappingChangedAfterUse() {
+        XStream2 xs = new XStream2();
+        Point p = read(xs);
+        assertTrue(xs.toXML(p).contains("<x>1</x>"));
+
+        xs.aliasField("ex", Point.class, "x");
+        assertTrue(xs.toXML(p).contains("<ex>1</ex>"));
+        String clsName = Point.class.getName();
+        assertEquals(5, ((Point) xs.fromXML("<" + clsName + "><ex>5</ex><y>2</y></" + clsName + '>')).x);
+
+        xs.useAttributeFor(Point.class, "y");
+        assertTrue(xs.toXML(p).contains("y=\"2\""));
+        assertEquals(7, ((Point) xs.fromXML("<" + clsName + " y='7'><ex>5</ex></" + clsName + '>')).y);
+    }
+
+    /**
+     * Converters other than the default one, built on the same mapper, see the changes too.
+     */
+    public void testMappingChangedAfterUseByOtherConverter() {
+        XStream2 xs = new XStream2();
+        xs.registerConverter(new RobustReflectionConverter(xs.getMapper(), new JVM().bestReflectionProvider()) {
+            @Override public boolean canConvert(Class type) {
+                return type == Point.class;
+            }
+        }, 100);
+        Point p = read(xs);
+        assertTrue(xs.toXML(p).contains("<x>1</x>"));
+
+        xs.aliasField("ex", Point.class, "x");
+        assertTrue(xs.toXML(p).contains("<ex>1</ex>"));
+    }
+
     @Retention(RetentionPolicy.RUNTIME) @interface Owner {String value();}
     public static class Projekt {
         Bild[] bildz;
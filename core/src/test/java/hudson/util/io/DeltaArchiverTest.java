@@ -0,0 +1,105 @@
+package hudson.util.io;
+
+import hudson.Util;
+import hudson.util.DirScanner;
+import org.apache.commons.io.FileUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class DeltaArchiverTest {
+    private File src, dst;
+
+    @Before public void setUp() throws Exception {
+        src = Util.createTempDir();
+        dst = Util.createTempDir();
+    }
+
+    @After public void tearDown() throws Exception {
+        Util.deleteRecursive(src);
+        Util.deleteRecursive(dst);
+    }
+
+    @Test public void rollingChecksum() {
+        byte[] data = random(4096, 1);
+        int bs = 1024;
+        int c = BlockSignature.weakChecksum(data,0,bs);
+        for (int i=1; i+bs<=data.length; i++) {
+            c = BlockSignature.roll(c,bs,data[i-1],data[i-1+bs]);
+            assertEquals(BlockSignature.weakChecksum(data,i,bs),c);
+        }
+    }
+
+    /**
+     * Inserting a few bytes in the middle of a large file should only send those bytes and the block around it.
+     */
+    @Test public void onlyChangedBlocksAreSent() throws Exception {
+        byte[] original = random(1024*1024, 2);
+        FileUtils.writeByteArrayToFile(new File(dst,"big.bin"),original);
+
+        byte[] modified = new byte[original.length+3];
+        System.arraycopy(original,0,modified,0,500000);
+        modified[500000] = 1;
+        modified[500001] = 2;
+        modified[500002] = 3;
+        System.arraycopy(original,500000,modified,500003,original.length-500000);
+        FileUtils.writeByteArrayToFile(new File(src,"big.bin"),modified);
+        FileUtils.writeStringToFile(new File(src,"small.txt"),"hello");
+
+        DeltaArchiver da = copy();
+
+        assertTrue(Arrays.equals(modified,FileUtils.readFileToByteArray(new File(dst,"big.bin"))));
+        assertEquals("hello",FileUtils.readFileToString(new File(dst,"small.txt")));
+        assertEquals(2,da.countEntries());
+        assertTrue("sent "+da.getLiteralBytes()+" bytes", da.getLiteralBytes() < 2*BlockSignature.blockSizeFor(original.length)+"hello".length());
+        assertTrue(da.getReusedBytes() > original.length*9/10);
+    }
+
+    @Test public void unchangedFilesAreSkipped() throws Exception {
+        byte[] data = random(200*1024, 3);
+        File s = new File(src,"sub/a.bin");
+        File d = new File(dst,"sub/a.bin");
+        FileUtils.writeByteArrayToFile(s,data);
+        FileUtils.writeByteArrayToFile(d,data);
+        d.setLastModified(s.lastModified());
+
+        DeltaArchiver da = copy();
+
+        assertEquals(1,da.getSkippedFiles());
+        assertEquals(0,da.getLiteralBytes());
+        assertTrue(Arrays.equals(data,FileUtils.readFileToByteArray(d)));
+    }
+
+    private DeltaArchiver copy() throws Exception {
+        Map<String,BlockSignature> signatures = new HashMap<String,BlockSignature>();
+        for (String name : new String[]{"big.bin","small.txt","sub/a.bin"}) {
+            File f = new File(dst,name);
+            if (f.exists())
+                signatures.put(name,BlockSignature.compute(f));
+        }
+
+        ByteArrayOutputStream buf = new ByteArrayOutputStream();
+        DeltaArchiver da = new DeltaArchiver(buf,signatures);
+        new DirScanner.Glob("**/*",null).scan(src,da);
+        da.close();
+
+        DeltaArchiver.extract(dst,new ByteArrayInputStream(buf.toByteArray()));
+        return da;
+    }
+
+    private static byte[] random(int size, long seed) {
+        byte[] data = new byte[size];
+        new Random(seed).nextBytes(data);
+        return data;
+    }
+}
@@ -0,0 +1,38 @@
+package hudson.util.io;
+
+import org.apache.commons.io.IOUtils;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.OutputStream;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.zip.GZIPInputStream;
+
+import static org.junit.Assert.*;
+
+public class ParallelGZIPOutputStreamTest {
+    @Test public void roundTrip() throws Exception {
+        byte[] data = new byte[ParallelGZIPOutputStream.BLOCK_SIZE*5/2];
+        Random r = new Random(0);
+        for (int i=0; i<data.length; i++)
+            data[i] = (byte)('a'+r.nextInt(4));    // something compressible
+
+        ByteArrayOutputStream buf = new ByteArrayOutputStream();
+        OutputStream out = new ParallelGZIPOutputStream(buf);
+        out.write(data,0,100);
+        out.write(data[100]);
+        out.write(data,101,data.length-101);
+        out.close();
+
+        assertTrue(buf.size()<data.length/2);
+        assertTrue(Arrays.equals(data, IOUtils.toByteArray(new GZIPInputStream(new ByteArrayInputStream(buf.toByteArray())))));
+    }
+
+    @Test public void empty() throws Exception {
+        ByteArrayOutputStream buf = new ByteArrayOutputStream();
+        new ParallelGZIPOutputStream(buf).close();
+        assertEquals(0, IOUtils.toByteArray(new GZIPInputStream(new ByteArrayInputStream(buf.toByteArray()))).length);
+    }
+}
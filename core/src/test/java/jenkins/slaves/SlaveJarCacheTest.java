@@ -0,0 +1,76 @@
+package jenkins.slaves;
+
+import hudson.Util;
+import org.apache.commons.io.FileUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.jar.JarEntry;
+import java.util.jar.JarFile;
+
+import static org.junit.Assert.*;
+
+public class SlaveJarCacheTest {
+    private File base;
+
+    @Before
+    public void setUp() throws Exception {
+        base = Util.createTempDir();
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        Util.deleteRecursive(base);
+    }
+
+    @Test
+    public void ownJarsButNotLibraries() throws Exception {
+        File lib = new File(base, "WEB-INF/lib");
+        lib.mkdirs();
+        File own = new File(lib, "foo.jar");
+        File classes = new File(lib, "classes.jar");
+        FileUtils.writeStringToFile(own, "own");
+        FileUtils.writeStringToFile(classes, "classes");
+        FileUtils.writeStringToFile(new File(lib, "commons-foo.jar"), "library");
+
+        assertEquals(Arrays.asList(own, classes), new SlaveJarCache().getJars(base, "foo"));
+    }
+
+    @Test
+    public void classesDirectoryIsJarredUpOnce() throws Exception {
+        File dir = new File(base, "WEB-INF/classes/org/example");
+        dir.mkdirs();
+        FileUtils.writeStringToFile(new File(dir, "Foo.class"), "bytecode");
+        FileUtils.writeStringToFile(new File(dir, "Messages.properties"), "x=y");
+
+        SlaveJarCache cache = new SlaveJarCache();
+        List<File> jars = cache.getJars(base, "foo");
+        assertEquals(1, jars.size());
+        File jar = jars.get(0);
+
+        JarFile j = new JarFile(jar);
+        try {
+            List<String> names = new ArrayList<String>();
+            for (JarEntry e : Collections.list(j.entries()))
+                if (!e.isDirectory())
+                    names.add(e.getName());
+            Collections.sort(names);
+            assertEquals(Arrays.asList("org/example/Foo.class", "org/example/Messages.properties"), names);
+        } finally {
+            j.close();
+        }
+
+        assertEquals(jars, cache.getJars(base, "foo"));
+    }
+
+    @Test
+    public void nothingToSend() throws Exception {
+        assertTrue(new SlaveJarCache().getJars(base, "foo").isEmpty());
+    }
+}
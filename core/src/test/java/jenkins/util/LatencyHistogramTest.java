@@ -0,0 +1,29 @@
+package jenkins.util;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class LatencyHistogramTest {
+    @Test public void percentiles() {
+        LatencyHistogram h = new LatencyHistogram(10,100,1000);
+        assertEquals(0, h.getPercentile(50));
+
+        for (int i=0; i<90; i++)
+            h.record(5);
+        for (int i=0; i<9; i++)
+            h.record(50);
+        h.record(5000);
+
+        assertEquals(100, h.getCount());
+        assertEquals(5000, h.getMax());
+        assertEquals(10, h.getPercentile(50));
+        assertEquals(10, h.getPercentile(90));
+        assertEquals(100, h.getPercentile(99));
+        assertEquals(5000, h.getPercentile(100));
+        assertEquals((90*5+9*50+5000)/100, h.getMean());
+
+        assertEquals(4, h.getBuckets().size());
+        assertEquals(1, h.getBuckets().get(3).count);
+    }
+}
@@ -0,0 +1,67 @@
+package jenkins.util;
+
+import org.junit.Test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+public class NamedThreadPoolTest {
+    @Test public void growsThenQueues() throws Exception {
+        NamedThreadPool p = new NamedThreadPool("test",3);
+        try {
+            final CountDownLatch release = new CountDownLatch(1);
+            final CountDownLatch done = new CountDownLatch(5);
+            for (int i=0; i<5; i++) {
+                p.execute(new Runnable() {
+                    public void run() {
+                        try {
+                            release.await();
+                        } catch (InterruptedException e) {
+                            // fall through
+                        }
+                        done.countDown();
+                    }
+                });
+            }
+            assertEquals(3, p.getPoolSize());
+            assertEquals(2, p.getQueueDepth());
+            assertEquals(2, p.getPeakQueueDepth());
+            assertTrue(NamedThreadPool.all().contains(p));
+
+            release.countDown();
+            assertTrue(done.await(10, TimeUnit.SECONDS));
+        } finally {
+            p.shutdown();
+        }
+    }
+
+    @Test public void rejectsWhenTheQueueIsFull() throws Exception {
+        NamedThreadPool p = new NamedThreadPool("test",1,1);
+        final CountDownLatch release = new CountDownLatch(1);
+        Runnable r = new Runnable() {
+            public void run() {
+                try {
+                    release.await();
+                } catch (InterruptedException e) {
+                    // fall through
+                }
+            }
+        };
+        try {
+            p.execute(r);
+            p.execute(r);
+            try {
+                p.execute(r);
+                fail();
+            } catch (RejectedExecutionException e) {
+                assertEquals(1, p.getRejectedCount());
+            }
+        } finally {
+            release.countDown();
+            p.shutdown();
+        }
+    }
+}
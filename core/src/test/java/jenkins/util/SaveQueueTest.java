@@ -0,0 +1,166 @@
+package jenkins.util;
+
+import hudson.Util;
+import org.apache.commons.io.FileUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+
+public class SaveQueueTest {
+    private File dir;
+    private boolean enabled;
+    private long window;
+
+    @Before
+    public void setUp() throws Exception {
+        dir = Util.createTempDir();
+        enabled = SaveQueue.ENABLED;
+        window = SaveQueue.WINDOW;
+        SaveQueue.ENABLED = true;
+        SaveQueue.WINDOW = 60*1000;   // only flushes in these tests
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        SaveQueue.ENABLED = enabled;
+        SaveQueue.WINDOW = window;
+        Util.deleteRecursive(dir);
+    }
+
+    private Runnable counting(final AtomicInteger count) {
+        return new Runnable() {
+            public void run() {
+                count.incrementAndGet();
+            }
+        };
+    }
+
+    @Test
+    public void coalescesUntilFlushed() throws Exception {
+        SaveQueue q = new SaveQueue();
+        File f = new File(dir, "config.xml");
+        AtomicInteger count = new AtomicInteger();
+
+        // the first write creates the file, so it's not deferred
+        q.submit(f, "0", counting(count));
+        assertEquals(1, count.get());
+        assertEquals("0", FileUtils.readFileToString(f));
+
+        for (int i=1; i<=5; i++)
+            q.submit(f, String.valueOf(i), counting(count));
+        assertEquals(1, count.get());
+        assertEquals("0", FileUtils.readFileToString(f));
+        assertEquals(1, q.getPendingCount());
+        assertEquals(4, q.getCoalesced());
+
+        q.flush(dir);
+        assertEquals(2, count.get());
+        assertEquals("5", FileUtils.readFileToString(f));
+        assertEquals(0, q.getPendingCount());
+        assertEquals(1, q.getWrites());
+        assertEquals(1, q.getFlushLatencies().getCount());
+    }
+
+    @Test
+    public void discard() throws Exception {
+        SaveQueue q = new SaveQueue();
+        File sub = new File(dir, "job");
+        sub.mkdirs();
+        File f = new File(sub, "config.xml");
+        f.createNewFile();
+        AtomicInteger count = new AtomicInteger();
+
+        q.submit(f, "x", counting(count));
+        q.discard(sub);
+        q.flushAll();
+        assertEquals(0, count.get());
+        assertEquals("", FileUtils.readFileToString(f));
+        assertEquals(0, q.getPendingCount());
+    }
+
+    /**
+     * Listeners are notified once the file is written, and can read it without waiting for themselves.
+     */
+    @Test
+    public void notifiesAfterWrite() throws Exception {
+        final SaveQueue q = new SaveQueue();
+        final File f = new File(dir, "config.xml");
+        f.createNewFile();
+        final StringBuilder seen = new StringBuilder();
+
+        q.submit(f, "new", new Runnable() {
+            public void run() {
+                try {
+                    q.flush(f);
+                    seen.append(FileUtils.readFileToString(f));
+                } catch (IOException e) {
+                    throw new AssertionError(e);
+                }
+            }
+        });
+        assertEquals(0, seen.length());
+        q.flushAll();
+        assertEquals("new", seen.toString());
+    }
+
+    /**
+     * A save that comes while the previous one is being written, and gets flushed by a reader in the mean time,
+     * waits for that write, so that the file doesn't end up with the older contents.
+     */
+    @Test
+    public void saveDuringWrite() throws Exception {
+        final CountDownLatch writing = new CountDownLatch(1), proceed = new CountDownLatch(1);
+        final SaveQueue q = new SaveQueue() {
+            @Override
+            void writeFile(File file, String contents) throws IOException {
+                if (contents.equals("old")) {
+                    writing.countDown();
+                    try {
+                        proceed.await();
+                    } catch (InterruptedException e) {
+                        throw new AssertionError(e);
+                    }
+                }
+                super.writeFile(file, contents);
+            }
+        };
+        final File f = new File(dir, "config.xml");
+        f.createNewFile();
+        AtomicInteger count = new AtomicInteger();
+
+        q.submit(f, "old", counting(count));
+        Thread first = flushing(q, f);
+        assertTrue(writing.await(10, TimeUnit.SECONDS));
+
+        q.submit(f, "new", counting(count));
+        Thread second = flushing(q, f);
+        second.join(100);
+        assertTrue("the second write waits for the first", second.isAlive());
+
+        proceed.countDown();
+        first.join(10*1000);
+        second.join(10*1000);
+        assertEquals("new", FileUtils.readFileToString(f));
+        assertEquals(2, count.get());
+        assertEquals(0, q.getPendingCount());
+    }
+
+    private Thread flushing(final SaveQueue q, final File f) {
+        Thread t = new Thread() {
+            @Override
+            public void run() {
+                q.flush(f);
+            }
+        };
+        t.start();
+        return t;
+    }
+}
@@ -0,0 +1,67 @@
+package jenkins.util.io;
+
+import hudson.Util;
+import org.apache.commons.io.FileUtils;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+
+import static org.junit.Assert.*;
+
+public class DigestCacheTest {
+    @Rule public TemporaryFolder tmp = new TemporaryFolder();
+
+    private File newFile(String contents) throws Exception {
+        File f = tmp.newFile("a.txt");
+        FileUtils.writeStringToFile(f, contents);
+        f.setLastModified(System.currentTimeMillis()-60*1000);
+        return f;
+    }
+
+    @Test public void reusesDigestsOfUnchangedFiles() throws Exception {
+        File f = newFile("hello");
+        DigestCache c = new DigestCache(new File(tmp.getRoot(), DigestCache.FILE_NAME));
+
+        assertEquals(Util.getDigestOf("hello"), c.digest(f));
+        assertEquals(Util.getDigestOf("hello"), c.digest(f));
+        assertEquals(1, c.getHits());
+        assertEquals(1, c.getMisses());
+        assertEquals(50.0, c.getHitRate(), 0.01);
+
+        FileUtils.writeStringToFile(f, "hello world");
+        f.setLastModified(f.lastModified()+2000);
+        assertEquals(Util.getDigestOf("hello world"), c.digest(f));
+        assertEquals(2, c.getMisses());
+    }
+
+    @Test public void survivesReload() throws Exception {
+        File f = newFile("hello");
+        File store = new File(tmp.getRoot(), DigestCache.FILE_NAME);
+
+        DigestCache c = new DigestCache(store);
+        c.digest(f);
+        c.save();
+
+        c = new DigestCache(store);
+        assertEquals(1, c.size());
+        assertEquals(Util.getDigestOf("hello"), c.digest(f));
+        assertEquals(1, c.getHits());
+        assertEquals(0, c.getMisses());
+    }
+
+    /**
+     * A file that was just modified could still change without its timestamp telling.
+     */
+    @Test public void doesNotRememberRecentlyModifiedFiles() throws Exception {
+        File f = tmp.newFile("a.txt");
+        FileUtils.writeStringToFile(f, "hello");
+        DigestCache c = new DigestCache(new File(tmp.getRoot(), DigestCache.FILE_NAME));
+
+        c.digest(f);
+        c.digest(f);
+        assertEquals(0, c.getHits());
+        assertEquals(0, c.size());
+    }
+}
@@ -0,0 +1,50 @@
+package jenkins.util.io;
+
+import hudson.FilePath.TarCompression;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class TransferHistoryTest {
+    private static final long MB = 1024*1024;
+
+    @Test public void picksTheFastest() {
+        TransferHistory h = new TransferHistory();
+
+        // everything gets tried once
+        assertEquals(TarCompression.GZIP, h.select());
+        h.record(new TransferStatistics(TarCompression.GZIP, 100*MB, 20*MB, 10000));
+        assertEquals(TarCompression.FAST, h.select());
+        h.record(new TransferStatistics(TarCompression.FAST, 100*MB, 30*MB, 4000));
+        assertEquals(TarCompression.NONE, h.select());
+        h.record(new TransferStatistics(TarCompression.NONE, 100*MB, 100*MB, 5000));
+
+        assertEquals(TarCompression.FAST, h.select());
+        assertEquals(25.0, h.getThroughput(TarCompression.FAST), 0.01);
+        assertEquals(3, h.getRecentTransfers().size());
+    }
+
+    @Test public void smallTransfersDoNotCount() {
+        TransferHistory h = new TransferHistory();
+        assertEquals(TarCompression.GZIP, h.select());
+        h.record(new TransferStatistics(TarCompression.GZIP, 1000, 100, 50));
+        assertEquals(-1, h.getThroughput(TarCompression.GZIP), 0);
+        assertEquals(TarCompression.GZIP, h.select());
+    }
+
+    @Test public void revisitsStaleMeasurements() {
+        TransferHistory h = new TransferHistory();
+        for (TarCompression c : new TarCompression[]{TarCompression.GZIP, TarCompression.FAST, TarCompression.NONE}) {
+            assertEquals(c, h.select());
+            h.record(new TransferStatistics(c, 100*MB, 50*MB, c==TarCompression.NONE ? 1000 : 10000));
+        }
+
+        boolean explored = false;
+        for (int i=0; i<TransferHistory.EXPLORE_INTERVAL; i++) {
+            TarCompression c = h.select();
+            if (c!=TarCompression.NONE)     explored = true;
+            h.record(new TransferStatistics(c, 100*MB, 50*MB, c==TarCompression.NONE ? 1000 : 10000));
+        }
+        assertTrue(explored);
+    }
+}
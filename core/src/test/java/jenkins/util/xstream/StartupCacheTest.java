@@ -0,0 +1,129 @@
+package jenkins.util.xstream;
+
+import hudson.Util;
+import hudson.XmlFile;
+import hudson.util.XStream2;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class StartupCacheTest {
+    private File dir;
+    private XStream2 xs;
+
+    public static class Foo {
+        String name;
+        int count;
+        List<String> tags;
+    }
+
+    @Before
+    public void setUp() throws Exception {
+        dir = Util.createTempDir();
+        xs = new XStream2();
+        xs.alias("foo", Foo.class);
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        Util.deleteRecursive(dir);
+    }
+
+    private XmlFile write(String name, String value) throws Exception {
+        Foo foo = new Foo();
+        foo.name = value;
+        foo.count = 3;
+        foo.tags = Arrays.asList("a", "b");
+        XmlFile f = new XmlFile(xs, new File(dir, name));
+        f.write(foo);
+        f.getFile().setLastModified(System.currentTimeMillis()-60*1000);
+        return f;
+    }
+
+    @Test
+    public void restoresUnchangedFiles() throws Exception {
+        File snapshot = new File(dir, "cache.bin");
+        XmlFile a = write("a.xml", "alpha");
+        XmlFile b = write("b.xml", "beta");
+
+        StartupCache c = StartupCache.activate(snapshot);
+        try {
+            a.read();
+            b.read();
+            assertEquals(0, c.getHits());
+            assertEquals(2, c.getMisses());
+        } finally {
+            c.deactivate();
+        }
+        c.save();
+
+        // a changes in size, and b is left alone
+        a = write("a.xml", "alpha, changed");
+
+        c = StartupCache.activate(snapshot);
+        try {
+            Foo fa = (Foo) a.read();
+            Foo fb = (Foo) b.unmarshal(new Foo());
+            assertEquals(1, c.getHits());
+            assertEquals(1, c.getMisses());
+            assertEquals("alpha, changed", fa.name);
+            assertEquals("beta", fb.name);
+            assertEquals(3, fb.count);
+            assertEquals(Arrays.asList("a", "b"), fb.tags);
+        } finally {
+            c.deactivate();
+        }
+        assertNull(StartupCache.reader(b.getFile()));
+    }
+
+    /**
+     * A file that was just modified could still change without its size or timestamp telling.
+     */
+    @Test
+    public void leavesOutRecentlyModifiedFiles() throws Exception {
+        File snapshot = new File(dir, "cache.bin");
+        XmlFile a = write("a.xml", "alpha");
+        a.getFile().setLastModified(System.currentTimeMillis());
+
+        StartupCache c = StartupCache.activate(snapshot);
+        try {
+            a.read();
+        } finally {
+            c.deactivate();
+        }
+        c.save();
+
+        c = StartupCache.activate(snapshot);
+        try {
+            a.read();
+            assertEquals(0, c.getHits());
+            assertEquals(1, c.getMisses());
+        } finally {
+            c.deactivate();
+        }
+    }
+
+    @Test
+    public void brokenSnapshot() throws Exception {
+        File snapshot = new File(dir, "cache.bin");
+        FileWriter w = new FileWriter(snapshot);
+        w.write("garbage");
+        w.close();
+
+        XmlFile a = write("a.xml", "alpha");
+        StartupCache c = StartupCache.activate(snapshot);
+        try {
+            assertEquals("alpha", ((Foo) a.read()).name);
+            assertEquals(1, c.getMisses());
+        } finally {
+            c.deactivate();
+        }
+    }
+}
@@ -90,6 +90,7 @@ import java.util.logging.Logger;
 
 import javax.servlet.ServletException;
 
+import jenkins.model.ItemIndex;
 import jenkins.model.Jenkins;
 import jenkins.model.ModelObjectWithChildren;
 import jenkins.mvn.DefaultGlobalSettingsProvider;
@@ -764,6 +765,7 @@ public class MavenModuleSet extends AbstractMavenProject<MavenModuleSet,MavenMod
                 return module.getModuleName();
             }
         });
+        ItemIndex.onChildrenChanged(this);
         // update the transient nest level field.
         MavenModule root = getRootModule();
         if(root!=null && root.getChildren()!=null) {
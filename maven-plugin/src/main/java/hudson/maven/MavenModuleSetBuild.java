@@ -84,6 +84,7 @@ import java.util.Set;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
+import jenkins.model.ItemIndex;
 import jenkins.model.Jenkins;
 import jenkins.mvn.GlobalSettingsProvider;
 import jenkins.mvn.SettingsProvider;
@@ -945,6 +946,7 @@ public class MavenModuleSetBuild extends AbstractMavenBuild<MavenModuleSet,Maven
                 }
                 modules.putAll(old);
             }
+            ItemIndex.onChildrenChanged(project);
 
             // we might have added new modules
             if (needsDependencyGraphRecalculation) {
@@ -41,6 +41,7 @@ import org.jvnet.hudson.test.recipes.WithPlugin;
 import org.jvnet.hudson.test.recipes.WithPluginManager;
 
 import java.io.File;
+import java.lang.reflect.Proxy;
 import java.net.URL;
 import java.net.URLClassLoader;
 import java.util.Collections;
@@ -200,6 +201,16 @@ public class PluginManagerTest extends HudsonTestCase {
         assertNotNull(jenkins.getDescriptorByType(c));
     }
 
+    /**
+     * Classes that plugins define at runtime are found even though they aren't in the packages of the plugin's jars.
+     */
+    @WithPlugin("tasks.jpi")
+    public void testUberClassLoaderFindsClassesDefinedAtRuntime() throws Exception {
+        ClassLoader tasks = jenkins.getPluginManager().getPlugin("tasks").classLoader;
+        Class<?> c = Proxy.getProxyClass(tasks, Runnable.class);
+        assertSame(c, jenkins.getPluginManager().uberClassLoader.loadClass(c.getName()));
+    }
+
     public void testPrevalidateConfig() throws Exception {
         PersistedList<UpdateSite> sites = jenkins.getUpdateCenter().getSites();
         sites.clear();
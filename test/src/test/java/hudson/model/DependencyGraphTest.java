@@ -27,7 +27,9 @@ import jenkins.model.DependencyDeclarer;
 import hudson.security.ACL;
 import hudson.tasks.BuildTrigger;
 import hudson.tasks.MailMessageIdAction;
+import java.util.Arrays;
 import java.util.Collections;
+import java.util.HashSet;
 import java.util.List;
 import java.util.concurrent.TimeUnit;
 
@@ -107,6 +109,63 @@ public class DependencyGraphTest extends HudsonTestCase {
         }
     }
 
+    public void testIncrementalUpdate() throws Exception {
+        FreeStyleProject a = createFreeStyleProject("a"), b = createFreeStyleProject("b"), c = createFreeStyleProject("c");
+        a.getPublishersList().add(new BuildTrigger("b", Result.SUCCESS));
+        jenkins.rebuildDependencyGraph();
+        DependencyGraph before = jenkins.getDependencyGraph();
+        assertEquals(Collections.singleton(b), before.getTransitiveDownstream(a));
+
+        b.getPublishersList().add(new BuildTrigger("c", Result.SUCCESS));
+        jenkins.updateDependencyGraph(Collections.singleton(b));
+        DependencyGraph after = jenkins.getDependencyGraph();
+        assertEquals(new HashSet<AbstractProject>(Arrays.asList(b, c)), after.getTransitiveDownstream(a));
+        assertEquals(new HashSet<AbstractProject>(Arrays.asList(a, b)), after.getTransitiveUpstream(c));
+        assertEquals(Collections.singletonList(a), after.getUpstream(b));
+        // readers holding on to the old graph don't see the change
+        assertEquals(Collections.singleton(b), before.getTransitiveDownstream(a));
+        assertTrue(before.getDownstream(b).isEmpty());
+
+        b.delete();
+        after = jenkins.getDependencyGraph();
+        assertTrue(after.getDownstream(a).isEmpty());
+        assertTrue(after.getUpstream(c).isEmpty());
+        assertTrue(after.getTransitiveDownstream(a).isEmpty());
+    }
+
+    /**
+     * An edge stays as long as one of the projects that declared it still does.
+     */
+    public void testIncrementalUpdateOfEdgeDeclaredTwice() throws Exception {
+        FreeStyleProject a = createFreeStyleProject("a"), b = createFreeStyleProject("b"), c = createFreeStyleProject("c");
+        a.getBuildersList().add(new EdgeDeclarer(a, c));
+        b.getBuildersList().add(new EdgeDeclarer(a, c));
+        jenkins.rebuildDependencyGraph();
+        assertEquals(1, jenkins.getDependencyGraph().getDownstreamDependencies(a).size());
+
+        a.getBuildersList().clear();
+        jenkins.updateDependencyGraph(Collections.singleton(a));
+        assertEquals(Collections.singletonList(c), jenkins.getDependencyGraph().getDownstream(a));
+        assertEquals(Collections.singletonList(a), jenkins.getDependencyGraph().getUpstream(c));
+
+        b.getBuildersList().clear();
+        jenkins.updateDependencyGraph(Collections.singleton(b));
+        assertTrue(jenkins.getDependencyGraph().getDownstream(a).isEmpty());
+        assertTrue(jenkins.getDependencyGraph().getUpstream(c).isEmpty());
+    }
+
+    private static class EdgeDeclarer extends MockBuilder implements DependencyDeclarer {
+        private final AbstractProject up, down;
+        private EdgeDeclarer(AbstractProject up, AbstractProject down) {
+            super(Result.SUCCESS);
+            this.up = up;
+            this.down = down;
+        }
+        public void buildDependencyGraph(AbstractProject owner, DependencyGraph graph) {
+            graph.addDependency(new DependencyGraph.Dependency(up, down));
+        }
+    }
+
     /**
      * Tests that all dependencies are found even when some projects have restricted visibility.
      */
@@ -23,6 +23,7 @@
  */
 package hudson.model;
 
+import com.gargoylesoftware.htmlunit.WebResponse;
 import hudson.FilePath;
 import hudson.Functions;
 import hudson.tasks.Shell;
@@ -120,4 +121,26 @@ public class DirectoryBrowserSupportTest extends HudsonTestCase {
         assertFalse(text, text.contains("x.txt"));
     }
 
+    /**
+     * Serves part of a file in the workspace of a slave.
+     */
+    public void testRange() throws Exception {
+        FreeStyleProject p = createFreeStyleProject();
+        p.setAssignedNode(createOnlineSlave());
+        p.getBuildersList().add(new TestBuilder() {
+            @Override public boolean perform(AbstractBuild<?, ?> build, Launcher launcher, BuildListener listener) throws InterruptedException, IOException {
+                build.getWorkspace().child("x.bin").write("0123456789", "US-ASCII");
+                return true;
+            }
+        });
+        assertEquals(Result.SUCCESS, p.scheduleBuild2(0).get().getResult());
+
+        WebClient wc = new WebClient();
+        wc.addRequestHeader("Range", "bytes=2-5");
+        WebResponse rsp = wc.goTo("job/"+p.getName()+"/ws/x.bin","application/octet-stream").getWebResponse();
+        assertEquals(206, rsp.getStatusCode());
+        assertEquals("bytes 2-5/10", rsp.getResponseHeaderValue("Content-Range"));
+        assertEquals("2345", rsp.getContentAsString());
+    }
+
 }
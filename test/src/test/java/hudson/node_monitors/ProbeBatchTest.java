@@ -0,0 +1,90 @@
+package hudson.node_monitors;
+
+import hudson.model.Computer;
+import hudson.remoting.Callable;
+import org.jvnet.hudson.test.HudsonTestCase;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.mockito.Mockito.*;
+
+public class ProbeBatchTest extends HudsonTestCase {
+    private long wait;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        wait = ProbeBatch.WAIT;
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        ProbeBatch.WAIT = wait;
+        super.tearDown();
+    }
+
+    private static ProbeBatch.Result run(AbstractNodeMonitorDescriptor<?> d, Computer c) throws Exception {
+        return ProbeBatch.run(d, c, d.createProbe(c));
+    }
+
+    public void testMonitorsShareBatch() throws Exception {
+        Computer c = createOnlineSlave().toComputer();
+        ArchitectureMonitor.DescriptorImpl arch = jenkins.getDescriptorByType(ArchitectureMonitor.DescriptorImpl.class);
+
+        ProbeBatch.Result first = run(DiskSpaceMonitor.DESCRIPTOR, c);
+        ProbeBatch.Result second = run(arch, c);
+        assertNotNull(first.value);
+        assertNotNull(second.value);
+        assertEquals(first.requestTime, second.requestTime);
+    }
+
+    /**
+     * A monitor doesn't wait forever for a batch that got stuck.
+     */
+    public void testStuckBatchIsNotWaitedForever() throws Exception {
+        ProbeBatch.WAIT = 1000;
+        final Computer c = createOnlineSlave().toComputer();
+        ArchitectureMonitor.DescriptorImpl arch = jenkins.getDescriptorByType(ArchitectureMonitor.DescriptorImpl.class);
+
+        // a monitor that isn't configured sends a batch that includes the probes of all the others
+        final AbstractNodeMonitorDescriptor<?> stuck = mock(AbstractNodeMonitorDescriptor.class);
+        ExecutorService es = Executors.newSingleThreadExecutor();
+        try {
+            Future<ProbeBatch.Result> leader = es.submit(new java.util.concurrent.Callable<ProbeBatch.Result>() {
+                public ProbeBatch.Result call() throws Exception {
+                    return ProbeBatch.run(stuck, c, new Sleep());
+                }
+            });
+            Thread.sleep(500);
+            assertFalse(leader.isDone());
+
+            long start = System.currentTimeMillis();
+            ProbeBatch.Result r = run(arch, c);
+            assertNotNull(r.value);
+            assertTrue(r.requestTime>=start+ProbeBatch.WAIT);
+            assertFalse(leader.isDone());
+
+            // the next monitor doesn't wait for it, either
+            start = System.currentTimeMillis();
+            r = run(DiskSpaceMonitor.DESCRIPTOR, c);
+            assertTrue(r.requestTime<start+ProbeBatch.WAIT);
+        } finally {
+            es.shutdownNow();
+        }
+    }
+
+    private static final class Sleep implements Callable<Object,RuntimeException> {
+        public Object call() {
+            try {
+                Thread.sleep(30*1000);
+            } catch (InterruptedException e) {
+                // done
+            }
+            return null;
+        }
+
+        private static final long serialVersionUID = 1L;
+    }
+}
@@ -0,0 +1,48 @@
+package jenkins.model;
+
+import hudson.model.FreeStyleProject;
+import hudson.model.Result;
+import hudson.tasks.BuildTrigger;
+import org.jvnet.hudson.test.HudsonTestCase;
+
+public class DeferredItemLoaderTest extends HudsonTestCase {
+    private boolean lazyLoad;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        lazyLoad = Jenkins.LAZY_LOAD;
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        Jenkins.LAZY_LOAD = lazyLoad;
+        super.tearDown();
+    }
+
+    /**
+     * Downstream jobs get triggered before all the jobs are loaded.
+     */
+    public void testTriggerWhileJobsAreDeferred() throws Exception {
+        FreeStyleProject up = createFreeStyleProject("up");
+        createFreeStyleProject("down");
+        createFreeStyleProject("other");
+        up.getPublishersList().add(new BuildTrigger("down", Result.SUCCESS));
+        up.save();
+
+        Jenkins.LAZY_LOAD = true;
+        jenkins.reload();   // which doesn't start the warm-up
+        DeferredItemLoader d = jenkins.getDeferredItemLoader();
+        assertEquals(3, d.getPendingNames().size());
+
+        up = (FreeStyleProject) jenkins.getItem("up");
+        FreeStyleProject down = (FreeStyleProject) jenkins.getItem("down");
+        assertTrue(d.isPending());
+        assertEquals(1, jenkins.getDependencyGraph().getDownstream(up).size());
+        assertSame(down, jenkins.getDependencyGraph().getDownstream(up).get(0));
+
+        buildAndAssertSuccess(up);
+        waitUntilNoActivity();
+        assertNotNull(down.getLastBuild());
+    }
+}
@@ -27,6 +27,10 @@ import com.gargoylesoftware.htmlunit.FailingHttpStatusCodeException;
 import com.gargoylesoftware.htmlunit.HttpMethod;
 import com.gargoylesoftware.htmlunit.WebRequestSettings;
 import com.gargoylesoftware.htmlunit.html.HtmlForm;
+import hudson.matrix.AxisList;
+import hudson.matrix.MatrixConfiguration;
+import hudson.matrix.MatrixProject;
+import hudson.matrix.TextAxis;
 import hudson.maven.MavenModuleSet;
 import hudson.maven.MavenModuleSetBuild;
 import hudson.model.RootAction;
@@ -44,10 +48,12 @@ import org.junit.Test;
 import org.jvnet.hudson.test.Bug;
 import org.jvnet.hudson.test.ExtractResourceSCM;
 import org.jvnet.hudson.test.HudsonTestCase;
+import org.jvnet.hudson.test.MockFolder;
 import org.jvnet.hudson.test.TestExtension;
 import org.kohsuke.stapler.HttpResponse;
 import java.net.HttpURLConnection;
 import java.net.URL;
+import java.util.Arrays;
 
 /**
  * @author kingfai
@@ -194,6 +200,59 @@ public class JenkinsTest extends HudsonTestCase {
         }
     }
 
+    @Test
+    public void testItemIndexFollowsChanges() throws Exception {
+        FreeStyleProject p = createFreeStyleProject("alpha");
+        assertSame(p, jenkins.getItemByFullName("alpha"));
+        assertSame(p, jenkins.getItemByFullName("ALPHA"));
+        assertTrue(jenkins.getAllItems(FreeStyleProject.class).contains(p));
+
+        p.renameTo("beta");
+        assertNull(jenkins.getItemByFullName("alpha"));
+        assertSame(p, jenkins.getItemByFullName("beta", FreeStyleProject.class));
+        assertNull(jenkins.getItemByFullName("beta", MavenModuleSet.class));
+
+        FreeStyleProject q = createFreeStyleProject("aardvark");
+        assertEquals(Arrays.asList(q, p), jenkins.getAllItems(FreeStyleProject.class));
+
+        p.delete();
+        assertNull(jenkins.getItemByFullName("beta"));
+        assertEquals(Arrays.asList(q), jenkins.getAllItems(FreeStyleProject.class));
+
+        jenkins.reload();
+        FreeStyleProject r = jenkins.getItemByFullName("aardvark", FreeStyleProject.class);
+        assertNotSame(q, r);
+        assertEquals(Arrays.asList(r), jenkins.getAllItems(FreeStyleProject.class));
+    }
+
+    @Test
+    public void testItemIndexFollowsMatrixConfigurations() throws Exception {
+        MatrixProject p = createMatrixProject("m");
+        p.setAxes(new AxisList(new TextAxis("x", "a")));
+        assertEquals(1, jenkins.getAllItems(MatrixConfiguration.class).size());
+
+        // configurations come and go without ItemListener events
+        p.setAxes(new AxisList(new TextAxis("x", "a", "b")));
+        assertEquals(2, jenkins.getAllItems(MatrixConfiguration.class).size());
+        assertSame(p.getItem("x=b"), jenkins.getItemByFullName("m/x=b"));
+    }
+
+    @Test
+    public void testItemIndexChecksGroupsThatDoNotTell() throws Exception {
+        MockFolder d = jenkins.createProject(MockFolder.class, "d");
+        FreeStyleProject p = d.createProject(FreeStyleProject.class, "p");
+        assertSame(p, jenkins.getItemByFullName("d/p"));
+        assertEquals(Arrays.asList(p), jenkins.getAllItems(FreeStyleProject.class));
+
+        // MockFolder doesn't fire ItemListener.onDeleted for its children
+        p.delete();
+        assertNull(jenkins.getItemByFullName("d/p"));
+        assertEquals(0, jenkins.getAllItems(FreeStyleProject.class).size());
+
+        FreeStyleProject q = d.createProject(FreeStyleProject.class, "p");
+        assertSame(q, jenkins.getItemByFullName("d/p"));
+    }
+
     @Test
     public void testDoCheckViewName_NotGoodName() throws Exception {
         String[] viewNames = new String[] {